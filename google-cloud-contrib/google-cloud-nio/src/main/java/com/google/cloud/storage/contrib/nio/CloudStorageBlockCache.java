@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Byte-bounded cache of object blocks, shared by the read channels of all file systems of a
+ * {@link CloudStorageFileSystemProvider} that are configured with the same cache size. Blocks are
+ * keyed by bucket, object name, generation, block size and block index, so a rewritten object
+ * never hits blocks of its previous generation. The least recently used blocks are evicted first.
+ */
+@ThreadSafe
+final class CloudStorageBlockCache {
+
+  private final Cache<BlockKey, byte[]> cache;
+
+  @AutoValue
+  abstract static class BlockKey {
+
+    static BlockKey create(
+        String bucket, String name, @Nullable Long generation, int blockSize, long blockIndex) {
+      return new AutoValue_CloudStorageBlockCache_BlockKey(
+          bucket, name, generation, blockSize, blockIndex);
+    }
+
+    abstract String bucket();
+
+    abstract String name();
+
+    @Nullable
+    abstract Long generation();
+
+    abstract int blockSize();
+
+    abstract long blockIndex();
+  }
+
+  CloudStorageBlockCache(long maxBytes) {
+    checkArgument(maxBytes > 0, "maxBytes must be positive: %s", maxBytes);
+    // A single segment keeps eviction in global LRU order; with more segments the weight limit is
+    // split between them and a block larger than one segment's share would never be cached.
+    cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumWeight(maxBytes)
+        .weigher(new Weigher<BlockKey, byte[]>() {
+          @Override
+          public int weigh(BlockKey key, byte[] block) {
+            return block.length;
+          }
+        })
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Returns the cached block for {@code key}, calling {@code loader} to fetch it on a miss.
+   * Concurrent misses for the same block wait for a single load.
+   */
+  byte[] get(BlockKey key, Callable<byte[]> loader) throws IOException {
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+      Throwables.propagateIfInstanceOf(ex.getCause(), IOException.class);
+      Throwables.propagateIfPossible(ex.getCause());
+      throw new IOException(ex.getCause());
+    }
+  }
+
+  /**
+   * Returns hit, miss, load and eviction counters for this cache.
+   */
+  CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * Returns the number of blocks currently cached.
+   */
+  long size() {
+    return cache.size();
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.cloud.storage.contrib.nio.CloudStorageBlockCache.BlockKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cloud Storage read channel that serves reads from a {@link CloudStorageBlockCache}. The object's
+ * generation is resolved when the channel is opened and every block is fetched from that
+ * generation.
+ *
+ * @see CloudStorageReadChannel
+ */
+@ThreadSafe
+final class CloudStorageCachedReadChannel implements SeekableByteChannel {
+
+  private final Storage gcsStorage;
+  private final BlobId file;
+  private final CloudStorageBlockCache cache;
+  private final int blockSize;
+  private final long size;
+  // max # of times we may reopen the object while fetching blocks
+  private final int maxChannelReopens;
+  // how many times we re-opened the object
+  private int reopens;
+  private long position;
+  private boolean open = true;
+
+  /**
+   * @param blockSize size in bytes of each cached block and of each request made to Cloud Storage.
+   * @param maxChannelReopens max number of times to try re-opening the object if the connection
+   *     closes on us unexpectedly while fetching a block.
+   */
+  @CheckReturnValue
+  static CloudStorageCachedReadChannel create(Storage gcsStorage, BlobId file,
+      CloudStorageBlockCache cache, int blockSize, int maxChannelReopens) throws IOException {
+    BlobInfo blobInfo = gcsStorage.get(file);
+    if (blobInfo == null) {
+      throw new NoSuchFileException(String.format("gs://%s/%s", file.getBucket(), file.getName()));
+    }
+    BlobId pinned = BlobId.of(file.getBucket(), file.getName(), blobInfo.getGeneration());
+    return new CloudStorageCachedReadChannel(gcsStorage, pinned, cache, blockSize,
+        blobInfo.getSize(), maxChannelReopens);
+  }
+
+  private CloudStorageCachedReadChannel(Storage gcsStorage, BlobId file,
+      CloudStorageBlockCache cache, int blockSize, long size, int maxChannelReopens) {
+    checkArgument(blockSize > 0, "blockSize must be positive: %s", blockSize);
+    this.gcsStorage = gcsStorage;
+    this.file = file;
+    this.cache = cache;
+    this.blockSize = blockSize;
+    this.size = size;
+    this.maxChannelReopens = maxChannelReopens;
+  }
+
+  @Override
+  public boolean isOpen() {
+    synchronized (this) {
+      return open;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      open = false;
+    }
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    synchronized (this) {
+      checkOpen();
+      if (position >= size) {
+        return -1;
+      }
+      if (!dst.hasRemaining()) {
+        return 0;
+      }
+      int amt = 0;
+      while (dst.hasRemaining() && position < size) {
+        long blockIndex = position / blockSize;
+        byte[] block = getBlock(blockIndex);
+        int offset = (int) (position - blockIndex * blockSize);
+        int toCopy = Math.min(block.length - offset, dst.remaining());
+        if (toCopy <= 0) {
+          // object is shorter than its metadata claimed
+          break;
+        }
+        dst.put(block, offset, toCopy);
+        position += toCopy;
+        amt += toCopy;
+      }
+      // nothing was copied only if the object ended before the size its metadata claimed
+      return amt > 0 ? amt : -1;
+    }
+  }
+
+  private byte[] getBlock(final long blockIndex) throws IOException {
+    BlockKey key = BlockKey.create(
+        file.getBucket(), file.getName(), file.getGeneration(), blockSize, blockIndex);
+    return cache.get(key, new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws IOException {
+        return fetchBlock(blockIndex);
+      }
+    });
+  }
+
+  private byte[] fetchBlock(long blockIndex) throws IOException {
+    long start = blockIndex * blockSize;
+    int length = (int) Math.min(blockSize, size - start);
+    ByteBuffer block = ByteBuffer.allocate(length);
+    while (true) {
+      try (ReadChannel reader = gcsStorage.reader(file)) {
+        reader.setChunkSize(length);
+        reader.seek(start + block.position());
+        while (block.hasRemaining() && reader.read(block) >= 0) {
+          // keep reading until the block is full or the object ends
+        }
+        break;
+      } catch (StorageException exs) {
+        if (exs.getMessage().contains("Connection closed prematurely")
+            && reopens < maxChannelReopens) {
+          // this error isn't marked as retryable since the channel is closed;
+          // reopen and resume after the bytes we already have.
+          reopens++;
+          sleepForAttempt(reopens);
+          continue;
+        }
+        throw exs;
+      }
+    }
+    return block.hasRemaining() ? Arrays.copyOf(block.array(), block.position()) : block.array();
+  }
+
+  private void sleepForAttempt(int attempt) {
+    try {
+      Thread.sleep((attempt - 1) * 500);
+    } catch (InterruptedException iex) {
+      // reset interrupt flag
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public long size() throws IOException {
+    synchronized (this) {
+      checkOpen();
+      return size;
+    }
+  }
+
+  @Override
+  public long position() throws IOException {
+    synchronized (this) {
+      checkOpen();
+      return position;
+    }
+  }
+
+  @Override
+  public SeekableByteChannel position(long newPosition) throws IOException {
+    checkArgument(newPosition >= 0);
+    synchronized (this) {
+      checkOpen();
+      position = newPosition;
+      return this;
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  private void checkOpen() throws ClosedChannelException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+  }
+}
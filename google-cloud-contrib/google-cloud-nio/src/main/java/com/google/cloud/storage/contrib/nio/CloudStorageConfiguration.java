@@ -65,6 +65,18 @@ public abstract class CloudStorageConfiguration {
    */
   public abstract int maxChannelReopens();
 
+  /**
+   * Returns the number of blocks of {@link #blockSize()} bytes that are fetched in the background
+   * ahead of the current position while reading. {@code 0} disables read-ahead.
+   */
+  public abstract int readAheadBlocks();
+
+  /**
+   * Returns the maximum number of bytes kept in the block cache this file system shares with others
+   * of the same size, or {@code 0} if reads are not cached.
+   */
+  public abstract long blockCacheSize();
+
   /**
    * Creates a new builder, initialized with the following settings:
    *
@@ -89,6 +101,8 @@ public abstract class CloudStorageConfiguration {
     private boolean usePseudoDirectories = true;
     private int blockSize = CloudStorageFileSystem.BLOCK_SIZE_DEFAULT;
     private int maxChannelReopens = 0;
+    private int readAheadBlocks = 0;
+    private long blockCacheSize = 0;
 
     /**
      * Changes current working directory for new filesystem. This defaults to the root directory.
@@ -146,6 +160,39 @@ public abstract class CloudStorageConfiguration {
       return this;
     }
 
+    /**
+     * Sets the number of blocks that are fetched concurrently, ahead of the current position,
+     * while reading. Each block is {@link #blockSize(int)} bytes, so up to
+     * {@code readAheadBlocks * blockSize} bytes are buffered per open channel. Read-ahead is
+     * dropped when the channel's position moves backwards.
+     *
+     * <p>The default is 0, which disables read-ahead.
+     */
+    public Builder readAheadBlocks(int value) {
+      checkArgument(value >= 0, "readAheadBlocks must not be negative: %s", value);
+      readAheadBlocks = value;
+      return this;
+    }
+
+    /**
+     * Enables an in-memory cache of up to {@code bytes} bytes for blocks read through this file
+     * system. Blocks are {@link #blockSize(int)} bytes and are keyed by bucket, object name,
+     * generation and block index, so repeated reads of the same ranges, e.g. index lookups or
+     * footer reads, are served from memory. The least recently used blocks are evicted first.
+     *
+     * <p>The cache is shared by the file systems of the same {@link CloudStorageFileSystemProvider}
+     * that are configured with the same cache size. When the cache is enabled read-ahead is
+     * not used. Hit and miss counters are available through
+     * {@link CloudStorageFileSystemProvider#blockCacheStats()}.
+     *
+     * <p>The default is 0, which disables the cache.
+     */
+    public Builder blockCacheSize(long bytes) {
+      checkArgument(bytes >= 0, "blockCacheSize must not be negative: %s", bytes);
+      blockCacheSize = bytes;
+      return this;
+    }
+
     /**
      * Creates new instance without destroying builder.
      */
@@ -156,7 +203,9 @@ public abstract class CloudStorageConfiguration {
           stripPrefixSlash,
           usePseudoDirectories,
           blockSize,
-          maxChannelReopens);
+          maxChannelReopens,
+          readAheadBlocks,
+          blockCacheSize);
     }
 
     Builder() {}
@@ -184,6 +233,12 @@ public abstract class CloudStorageConfiguration {
         case "maxChannelReopens":
           builder.maxChannelReopens((Integer) entry.getValue());
           break;
+        case "readAheadBlocks":
+          builder.readAheadBlocks((Integer) entry.getValue());
+          break;
+        case "blockCacheSize":
+          builder.blockCacheSize(((Number) entry.getValue()).longValue());
+          break;
         default:
           throw new IllegalArgumentException(entry.getKey());
       }
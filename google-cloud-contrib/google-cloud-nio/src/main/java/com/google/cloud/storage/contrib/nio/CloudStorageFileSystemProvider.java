@@ -26,12 +26,14 @@ import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.CopyWriter;
+import com.google.cloud.storage.ParallelStorage;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
 import com.google.cloud.storage.StorageOptions;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.net.UrlEscapers;
 import com.google.common.primitives.Ints;
@@ -89,6 +91,15 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
 
   private Storage storage;
   private StorageOptions storageOptions;
+  // block caches keyed by their size in bytes, shared by file systems configured with that size.
+  private final Map<Long, CloudStorageBlockCache> blockCaches = new HashMap<>();
+
+  // object fields returned by directory listings: those read by CloudStorageObjectAttributes.
+  private static final Storage.BlobListOption LISTED_FIELDS = Storage.BlobListOption.fields(
+      Storage.BlobField.GENERATION, Storage.BlobField.SIZE, Storage.BlobField.UPDATED,
+      Storage.BlobField.ETAG, Storage.BlobField.CONTENT_TYPE, Storage.BlobField.ACL,
+      Storage.BlobField.CACHE_CONTROL, Storage.BlobField.CONTENT_ENCODING,
+      Storage.BlobField.CONTENT_DISPOSITION, Storage.BlobField.METADATA);
 
   // used only when we create a new instance of CloudStorageFileSystemProvider.
   private static StorageOptions futureStorageOptions;
@@ -108,7 +119,11 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     @Override
     protected Path computeNext() {
       while (blobIterator.hasNext()) {
-        Path path = fileSystem.getPath(blobIterator.next().getName());
+        Blob blob = blobIterator.next();
+        // pseudo-directories of delimited listings are not objects, and have no metadata to keep
+        Path path = blob.isDirectory()
+            ? fileSystem.getPath(blob.getName())
+            : CloudStoragePath.getPath(fileSystem, blob);
         try {
           if (filter.accept(path)) {
             return path;
@@ -156,6 +171,28 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     }
   }
 
+  private synchronized CloudStorageBlockCache getBlockCache(long maxBytes) {
+    CloudStorageBlockCache blockCache = blockCaches.get(maxBytes);
+    if (blockCache == null) {
+      blockCache = new CloudStorageBlockCache(maxBytes);
+      blockCaches.put(maxBytes, blockCache);
+    }
+    return blockCache;
+  }
+
+  /**
+   * Returns hit, miss and eviction counters summed over the block caches of this provider's file
+   * systems. All counters are zero if no file system enabled
+   * {@link CloudStorageConfiguration#blockCacheSize() block caching}.
+   */
+  public synchronized CacheStats blockCacheStats() {
+    CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+    for (CloudStorageBlockCache blockCache : blockCaches.values()) {
+      stats = stats.plus(blockCache.stats());
+    }
+    return stats;
+  }
+
   @Override
   public String getScheme() {
     return CloudStorageFileSystem.URI_SCHEME;
@@ -233,7 +270,10 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
   private SeekableByteChannel newReadChannel(Path path, Set<? extends OpenOption> options)
       throws IOException {
     initStorage();
-    int maxChannelReopens = ((CloudStorageFileSystem) path.getFileSystem()).config().maxChannelReopens();
+    CloudStorageConfiguration config = ((CloudStorageFileSystem) path.getFileSystem()).config();
+    int maxChannelReopens = config.maxChannelReopens();
+    int readAheadBlocks = config.readAheadBlocks();
+    int blockSize = config.blockSize();
     for (OpenOption option : options) {
       if (option instanceof StandardOpenOption) {
         switch ((StandardOpenOption) option) {
@@ -257,6 +297,10 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
         }
       } else if (option instanceof OptionMaxChannelReopens) {
         maxChannelReopens = ((OptionMaxChannelReopens) option).maxChannelReopens();
+      } else if (option instanceof OptionReadAheadBlocks) {
+        readAheadBlocks = ((OptionReadAheadBlocks) option).readAheadBlocks();
+      } else if (option instanceof OptionBlockSize) {
+        blockSize = ((OptionBlockSize) option).size();
       } else {
         throw new UnsupportedOperationException(option.toString());
       }
@@ -265,7 +309,12 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       throw new CloudStoragePseudoDirectoryException(cloudPath);
     }
-    return CloudStorageReadChannel.create(storage, cloudPath.getBlobId(), 0, maxChannelReopens);
+    if (config.blockCacheSize() > 0) {
+      return CloudStorageCachedReadChannel.create(storage, cloudPath.getBlobId(),
+          getBlockCache(config.blockCacheSize()), blockSize, maxChannelReopens);
+    }
+    return CloudStorageReadChannel.create(
+        storage, cloudPath.getBlobId(), 0, maxChannelReopens, readAheadBlocks, blockSize);
   }
 
   private SeekableByteChannel newWriteChannel(Path path, Set<? extends OpenOption> options)
@@ -553,6 +602,15 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     }
   }
 
+  /**
+   * Reads the attributes of a file.
+   *
+   * <p>For paths returned by {@link #newDirectoryStream(Path, Filter)} or
+   * {@link #newRecursiveDirectoryStream(Path, Filter)} the attributes are those of the object as of
+   * when it was listed, so that walking a file tree does not require a request per object. They do
+   * not reflect later changes to the object, including its deletion. All other operations on these
+   * paths, e.g. {@link #checkAccess(Path, AccessMode...)}, query Cloud Storage.
+   */
   @Override
   public <A extends BasicFileAttributes> A readAttributes(
       Path path, Class<A> type, LinkOption... options) throws IOException {
@@ -568,7 +626,11 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
       A result = (A) new CloudStoragePseudoDirectoryAttributes(cloudPath);
       return result;
     }
-    BlobInfo blobInfo = storage.get(cloudPath.getBlobId());
+    // listed paths carry the metadata returned by the listing.
+    BlobInfo blobInfo = cloudPath.getBlobInfo();
+    if (blobInfo == null) {
+      blobInfo = storage.get(cloudPath.getBlobId());
+    }
     // null size indicate a file that we haven't closed yet, so GCS treats it as not there yet.
     if (null == blobInfo || blobInfo.getSize() == null) {
       throw new NoSuchFileException(
@@ -612,15 +674,60 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     CloudStorageUtil.checkNotNullArray(attrs);
   }
 
+  /**
+   * Opens a directory, returning a {@code DirectoryStream} to iterate over its entries.
+   *
+   * <p>The paths returned by the stream carry the metadata of their object as of when it was
+   * listed, which {@link #readAttributes(Path, Class, LinkOption...)} returns instead of querying
+   * Cloud Storage, so that walking a file tree does not require a request per object. Attributes
+   * read this way do not reflect changes made to the objects after they were listed.
+   */
   @Override
   public DirectoryStream<Path> newDirectoryStream(Path dir, final Filter<? super Path> filter) {
     final CloudStoragePath cloudPath = CloudStorageUtil.checkPath(dir);
     checkNotNull(filter);
     initStorage();
     String prefix = cloudPath.toRealPath().toString();
-    final Iterator<Blob> blobIterator = storage.list(cloudPath.bucket(),
+    Iterator<Blob> blobIterator = storage.list(cloudPath.bucket(),
         Storage.BlobListOption.prefix(prefix), Storage.BlobListOption.currentDirectory(),
-        Storage.BlobListOption.fields()).iterateAll().iterator();
+        LISTED_FIELDS).iterateAll().iterator();
+    return newDirectoryStream(cloudPath, blobIterator, filter);
+  }
+
+  /**
+   * Opens a directory, returning a {@code DirectoryStream} to iterate over all the objects under
+   * it, including those in its subdirectories.
+   *
+   * <p>Unlike {@link Files#walk(Path, java.nio.file.FileVisitOption...)} and
+   * {@link Files#walkFileTree(Path, java.nio.file.FileVisitor)}, which list every directory
+   * separately, the objects are fetched with a single listing of the directory prefix, whose pages
+   * are fetched in the background while the stream is consumed. Objects are returned in
+   * lexicographic order. Pseudo-directories are not returned, since they are not objects.
+   *
+   * <p>As for {@link #newDirectoryStream(Path, Filter)}, the returned paths carry the metadata of
+   * their object as of when it was listed.
+   */
+  public DirectoryStream<Path> newRecursiveDirectoryStream(Path dir,
+      Filter<? super Path> filter) {
+    CloudStoragePath cloudPath = CloudStorageUtil.checkPath(dir);
+    checkNotNull(filter);
+    initStorage();
+    String prefix = cloudPath.toRealPath().toString();
+    if (!prefix.isEmpty() && prefix.charAt(prefix.length() - 1) != UnixPath.SEPARATOR) {
+      // do not list the objects of sibling directories that share the name as a prefix
+      prefix += UnixPath.SEPARATOR;
+    }
+    Storage.BlobListOption prefixOption = Storage.BlobListOption.prefix(prefix);
+    // pages are only prefetched by services that implement ParallelStorage
+    Iterator<Blob> blobIterator = storage instanceof ParallelStorage
+        ? ((ParallelStorage) storage).listAll(cloudPath.bucket(), 1, prefixOption, LISTED_FIELDS)
+            .iterator()
+        : storage.list(cloudPath.bucket(), prefixOption, LISTED_FIELDS).iterateAll().iterator();
+    return newDirectoryStream(cloudPath, blobIterator, filter);
+  }
+
+  private static DirectoryStream<Path> newDirectoryStream(final CloudStoragePath cloudPath,
+      final Iterator<Blob> blobIterator, final Filter<? super Path> filter) {
     return new DirectoryStream<Path>() {
       @Override
       public Iterator<Path> iterator() {
@@ -101,5 +101,15 @@ public final class CloudStorageOptions {
     return OptionMaxChannelReopens.create(count);
   }
 
+  /**
+   * Sets the number of blocks that are fetched in the background, ahead of the current position,
+   * when reading a Cloud Storage object.
+   *
+   * <p>The default is taken from {@link CloudStorageConfiguration#readAheadBlocks()}.
+   */
+  public static CloudStorageOption.Open withReadAhead(int blocks) {
+    return OptionReadAheadBlocks.create(blocks);
+  }
+
   private CloudStorageOptions() {}
 }
@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
 import com.google.common.collect.UnmodifiableIterator;
 
 import java.io.File;
@@ -52,15 +53,33 @@ public final class CloudStoragePath implements Path {
 
   private final CloudStorageFileSystem fileSystem;
   private final UnixPath path;
+  @Nullable private final BlobInfo blobInfo;
 
-  private CloudStoragePath(CloudStorageFileSystem fileSystem, UnixPath path) {
+  private CloudStoragePath(
+      CloudStorageFileSystem fileSystem, UnixPath path, @Nullable BlobInfo blobInfo) {
     this.fileSystem = fileSystem;
     this.path = path;
+    this.blobInfo = blobInfo;
   }
 
   static CloudStoragePath getPath(CloudStorageFileSystem fileSystem, String path, String... more) {
     return new CloudStoragePath(
-        fileSystem, UnixPath.getPath(fileSystem.config().permitEmptyPathComponents(), path, more));
+        fileSystem,
+        UnixPath.getPath(fileSystem.config().permitEmptyPathComponents(), path, more),
+        null);
+  }
+
+  /**
+   * Returns a path for the object described by {@code blobInfo}, that remembers its metadata so
+   * that {@link CloudStorageFileSystemProvider#readAttributes(Path, Class, LinkOption...)} does not
+   * need a request to Cloud Storage. Used for paths returned by directory listings, which already
+   * carry the metadata of each object.
+   */
+  static CloudStoragePath getPath(CloudStorageFileSystem fileSystem, BlobInfo blobInfo) {
+    return new CloudStoragePath(
+        fileSystem,
+        UnixPath.getPath(fileSystem.config().permitEmptyPathComponents(), blobInfo.getName()),
+        blobInfo);
   }
 
   /**
@@ -77,6 +96,16 @@ public final class CloudStoragePath implements Path {
     return BlobId.of(bucket(), toRealPath().path.toString());
   }
 
+  /**
+   * Returns the metadata of the object as of when this path was listed, or {@code null} if this
+   * path was not returned by a listing. Only used to read attributes; paths derived from this one
+   * do not carry metadata.
+   */
+  @Nullable
+  BlobInfo getBlobInfo() {
+    return blobInfo;
+  }
+
   boolean seemsLikeADirectory() {
     return path.seemsLikeADirectory();
   }
@@ -321,7 +350,7 @@ public final class CloudStoragePath implements Path {
     if (newPath == path) { // Nonuse of equals is intentional.
       return this;
     } else if (newPath != null) {
-      return new CloudStoragePath(fileSystem, newPath);
+      return new CloudStoragePath(fileSystem, newPath, null);
     } else {
       return null;
     }
@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import com.google.cloud.ReadChannel;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.ParallelStorage;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
 
@@ -48,6 +49,11 @@ final class CloudStorageReadChannel implements SeekableByteChannel {
   private final int maxChannelReopens;
   // how many times we re-opened the file
   private int reopens;
+  // # of blocks to fetch ahead of the current position, 0 to read synchronously
+  private final int readAheadBlocks;
+  private final int blockSize;
+  // metadata fetched when opening, reused to pin the read-ahead channel to its generation
+  private final BlobInfo blobInfo;
   private ReadChannel channel;
   private long position;
   private long size;
@@ -59,22 +65,51 @@ final class CloudStorageReadChannel implements SeekableByteChannel {
   @SuppressWarnings("resource")
   static CloudStorageReadChannel create(Storage gcsStorage, BlobId file, long position, int maxChannelReopens)
       throws IOException {
-    return new CloudStorageReadChannel(gcsStorage, file, position, maxChannelReopens);
+    return create(gcsStorage, file, position, maxChannelReopens, 0,
+        CloudStorageFileSystem.BLOCK_SIZE_DEFAULT);
   }
 
-  private CloudStorageReadChannel(Storage gcsStorage, BlobId file, long position, int maxChannelReopens) throws IOException {
+  /**
+   * @param maxChannelReopens max number of times to try re-opening the channel if it closes on us unexpectedly.
+   * @param readAheadBlocks number of blocks to fetch in the background ahead of the current
+   *     position, or 0 to only fetch when the caller's read needs more data.
+   * @param blockSize size in bytes of each request made to Cloud Storage.
+   */
+  @CheckReturnValue
+  @SuppressWarnings("resource")
+  static CloudStorageReadChannel create(Storage gcsStorage, BlobId file, long position,
+      int maxChannelReopens, int readAheadBlocks, int blockSize) throws IOException {
+    return new CloudStorageReadChannel(
+        gcsStorage, file, position, maxChannelReopens, readAheadBlocks, blockSize);
+  }
+
+  private CloudStorageReadChannel(Storage gcsStorage, BlobId file, long position,
+      int maxChannelReopens, int readAheadBlocks, int blockSize) throws IOException {
     this.gcsStorage = gcsStorage;
     this.file = file;
     this.position = position;
     this.reopens = 0;
     this.maxChannelReopens = maxChannelReopens;
+    this.readAheadBlocks = readAheadBlocks;
+    this.blockSize = blockSize;
     // XXX: Reading size and opening file should be atomic.
-    this.size = fetchSize(gcsStorage, file);
+    this.blobInfo = fetchBlobInfo(gcsStorage, file);
+    this.size = blobInfo.getSize();
     innerOpen();
   }
 
   private void innerOpen() throws IOException {
-    this.channel = gcsStorage.reader(file);
+    if (channel != null) {
+      // release the reads still in flight on the channel being replaced
+      channel.close();
+    }
+    if (readAheadBlocks > 0 && gcsStorage instanceof ParallelStorage) {
+      // Keeps the next blocks in flight; moving backwards drops them.
+      this.channel = ((ParallelStorage) gcsStorage).parallelReader(blobInfo, readAheadBlocks);
+    } else {
+      this.channel = gcsStorage.reader(file);
+    }
+    channel.setChunkSize(blockSize);
     if (position > 0) {
       channel.seek((int) position);
     }
@@ -190,11 +225,11 @@ final class CloudStorageReadChannel implements SeekableByteChannel {
     }
   }
 
-  private static long fetchSize(Storage gcsStorage, BlobId file) throws IOException {
+  private static BlobInfo fetchBlobInfo(Storage gcsStorage, BlobId file) throws IOException {
     BlobInfo blobInfo = gcsStorage.get(file);
     if (blobInfo == null) {
       throw new NoSuchFileException(String.format("gs://%s/%s", file.getBucket(), file.getName()));
     }
-    return blobInfo.getSize();
+    return blobInfo;
   }
 }
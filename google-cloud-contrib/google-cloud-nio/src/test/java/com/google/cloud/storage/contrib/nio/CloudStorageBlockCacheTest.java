@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.storage.contrib.nio.CloudStorageBlockCache.BlockKey;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Unit tests for {@link CloudStorageBlockCache}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageBlockCacheTest {
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private final CloudStorageBlockCache cache = new CloudStorageBlockCache(8);
+
+  @Test
+  public void testGet_countsHitsAndMisses() throws IOException {
+    BlockKey key = BlockKey.create("bucket", "obj", 1L, 4, 0);
+    assertThat(cache.get(key, loader(new byte[] {1, 2, 3, 4}))).isEqualTo(new byte[] {1, 2, 3, 4});
+    assertThat(cache.get(key, failingLoader())).isEqualTo(new byte[] {1, 2, 3, 4});
+    assertThat(cache.stats().missCount()).isEqualTo(1);
+    assertThat(cache.stats().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testGet_differentGenerationMisses() throws IOException {
+    cache.get(BlockKey.create("bucket", "obj", 1L, 4, 0), loader(new byte[] {1}));
+    assertThat(cache.get(BlockKey.create("bucket", "obj", 2L, 4, 0), loader(new byte[] {2})))
+        .isEqualTo(new byte[] {2});
+    assertThat(cache.stats().missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGet_evictsLeastRecentlyUsed() throws IOException {
+    BlockKey first = BlockKey.create("bucket", "obj", 1L, 4, 0);
+    BlockKey second = BlockKey.create("bucket", "obj", 1L, 4, 1);
+    BlockKey third = BlockKey.create("bucket", "obj", 1L, 4, 2);
+    cache.get(first, loader(new byte[4]));
+    cache.get(second, loader(new byte[4]));
+    cache.get(first, failingLoader());
+    cache.get(third, loader(new byte[4]));
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.stats().evictionCount()).isEqualTo(1);
+    cache.get(first, failingLoader());
+    cache.get(third, failingLoader());
+  }
+
+  @Test
+  public void testGet_propagatesIoException() throws IOException {
+    thrown.expect(IOException.class);
+    thrown.expectMessage("boom");
+    cache.get(BlockKey.create("bucket", "obj", 1L, 4, 0), new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws IOException {
+        throw new IOException("boom");
+      }
+    });
+  }
+
+  private static Callable<byte[]> loader(final byte[] block) {
+    return new Callable<byte[]>() {
+      @Override
+      public byte[] call() {
+        return block;
+      }
+    };
+  }
+
+  private static Callable<byte[]> failingLoader() {
+    return new Callable<byte[]>() {
+      @Override
+      public byte[] call() {
+        throw new AssertionError("block should have been cached");
+      }
+    };
+  }
+}
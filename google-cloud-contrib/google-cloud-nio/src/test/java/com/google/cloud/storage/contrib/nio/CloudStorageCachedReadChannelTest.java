@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Unit tests for {@link CloudStorageCachedReadChannel}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageCachedReadChannelTest {
+
+  private static final StorageException CONNECTION_CLOSED = new StorageException(
+      new IOException("Connection closed prematurely: bytesRead = 2, Content-Length = 4"));
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private final Storage gcsStorage = mock(Storage.class);
+  private final BlobId file = BlobId.of("blob", "attack");
+  private final BlobId pinned = BlobId.of("blob", "attack", 7L);
+  private final Blob metadata = mock(Blob.class);
+  private final ReadChannel gcsChannel = mock(ReadChannel.class);
+  private final ReadChannel reopenedChannel = mock(ReadChannel.class);
+
+  @Before
+  public void before() throws IOException {
+    when(metadata.getSize()).thenReturn(4L);
+    when(metadata.getGeneration()).thenReturn(7L);
+    when(gcsStorage.get(file)).thenReturn(metadata);
+  }
+
+  @Test
+  public void testRead_emptyBufferReturnsZero() throws IOException {
+    CloudStorageCachedReadChannel chan = CloudStorageCachedReadChannel.create(
+        gcsStorage, file, new CloudStorageBlockCache(1024), 4, 0);
+    assertThat(chan.read(ByteBuffer.allocate(0))).isEqualTo(0);
+    chan.position(4);
+    assertThat(chan.read(ByteBuffer.allocate(0))).isEqualTo(-1);
+  }
+
+  @Test
+  public void testRead_reopensAfterConnectionClosed() throws IOException {
+    when(gcsStorage.reader(eq(pinned))).thenReturn(gcsChannel, reopenedChannel);
+    when(gcsChannel.read(any(ByteBuffer.class)))
+        .thenAnswer(fill(new byte[] {1, 2}))
+        .thenThrow(CONNECTION_CLOSED);
+    when(reopenedChannel.read(any(ByteBuffer.class))).thenAnswer(fill(new byte[] {3, 4}));
+    CloudStorageCachedReadChannel chan = CloudStorageCachedReadChannel.create(
+        gcsStorage, file, new CloudStorageBlockCache(1024), 4, 1);
+    ByteBuffer buffer = ByteBuffer.allocate(4);
+    assertThat(chan.read(buffer)).isEqualTo(4);
+    assertThat(buffer.array()).isEqualTo(new byte[] {1, 2, 3, 4});
+    verify(gcsChannel).close();
+    // the reopened reader resumes after the bytes that were already received
+    verify(reopenedChannel).seek(2);
+  }
+
+  @Test
+  public void testRead_reopenEventuallyGivesUp() throws IOException {
+    when(gcsStorage.reader(eq(pinned))).thenReturn(gcsChannel);
+    when(gcsChannel.read(any(ByteBuffer.class))).thenThrow(CONNECTION_CLOSED);
+    CloudStorageCachedReadChannel chan = CloudStorageCachedReadChannel.create(
+        gcsStorage, file, new CloudStorageBlockCache(1024), 4, 0);
+    thrown.expect(StorageException.class);
+    chan.read(ByteBuffer.allocate(4));
+  }
+
+  private static Answer<Integer> fill(final byte[] bytes) {
+    return new Answer<Integer>() {
+      @Override
+      public Integer answer(InvocationOnMock invocation) {
+        ((ByteBuffer) invocation.getArguments()[0]).put(bytes);
+        return bytes.length;
+      }
+    };
+  }
+}
@@ -43,12 +43,16 @@ public class CloudStorageConfigurationTest {
             .stripPrefixSlash(false)
             .usePseudoDirectories(false)
             .blockSize(666)
+            .readAheadBlocks(4)
+            .blockCacheSize(1L << 30)
             .build();
     assertThat(config.workingDirectory()).isEqualTo("/omg");
     assertThat(config.permitEmptyPathComponents()).isTrue();
     assertThat(config.stripPrefixSlash()).isFalse();
     assertThat(config.usePseudoDirectories()).isFalse();
     assertThat(config.blockSize()).isEqualTo(666);
+    assertThat(config.readAheadBlocks()).isEqualTo(4);
+    assertThat(config.blockCacheSize()).isEqualTo(1L << 30);
   }
 
   @Test
@@ -61,12 +65,16 @@ public class CloudStorageConfigurationTest {
                 .put("stripPrefixSlash", false)
                 .put("usePseudoDirectories", false)
                 .put("blockSize", 666)
+                .put("readAheadBlocks", 4)
+                .put("blockCacheSize", 1L << 30)
                 .build());
     assertThat(config.workingDirectory()).isEqualTo("/omg");
     assertThat(config.permitEmptyPathComponents()).isTrue();
     assertThat(config.stripPrefixSlash()).isFalse();
     assertThat(config.usePseudoDirectories()).isFalse();
     assertThat(config.blockSize()).isEqualTo(666);
+    assertThat(config.readAheadBlocks()).isEqualTo(4);
+    assertThat(config.blockCacheSize()).isEqualTo(1L << 30);
   }
 
   @Test
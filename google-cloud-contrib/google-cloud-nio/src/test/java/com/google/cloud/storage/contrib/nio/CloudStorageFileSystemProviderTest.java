@@ -45,6 +45,7 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -53,6 +54,8 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -86,6 +89,14 @@ public class CloudStorageFileSystemProviderTest {
 
   private static final String SINGULARITY = "A string";
 
+  private static final DirectoryStream.Filter<Path> ACCEPT_ALL =
+      new DirectoryStream.Filter<Path>() {
+        @Override
+        public boolean accept(Path entry) {
+          return true;
+        }
+      };
+
   @Rule public final ExpectedException thrown = ExpectedException.none();
 
   @Before
@@ -100,6 +111,70 @@ public class CloudStorageFileSystemProviderTest {
     assertThat(Files.size(path)).isEqualTo(SINGULARITY.getBytes(UTF_8).length);
   }
 
+  @Test
+  public void testRead_withBlockCache_servesRepeatedReadsFromCache() throws Exception {
+    CloudStorageConfiguration config =
+        CloudStorageConfiguration.builder().blockSize(4).blockCacheSize(1024).build();
+    try (CloudStorageFileSystem fs = forBucket("bucket", config)) {
+      Path path = fs.getPath("/cached");
+      Files.write(path, SINGULARITY.getBytes(UTF_8));
+      assertThat(new String(Files.readAllBytes(path), UTF_8)).isEqualTo(SINGULARITY);
+      assertThat(fs.provider().blockCacheStats().missCount()).isEqualTo(2);
+      assertThat(new String(Files.readAllBytes(path), UTF_8)).isEqualTo(SINGULARITY);
+      assertThat(fs.provider().blockCacheStats().hitCount()).isEqualTo(2);
+      assertThat(fs.provider().blockCacheStats().missCount()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void testRead_withBlockCache_emptyBufferReturnsZero() throws Exception {
+    CloudStorageConfiguration config =
+        CloudStorageConfiguration.builder().blockSize(4).blockCacheSize(1024).build();
+    try (CloudStorageFileSystem fs = forBucket("bucket", config)) {
+      Path path = fs.getPath("/cached");
+      Files.write(path, SINGULARITY.getBytes(UTF_8));
+      try (SeekableByteChannel chan = Files.newByteChannel(path)) {
+        assertThat(chan.read(ByteBuffer.allocate(0))).isEqualTo(0);
+        chan.position(chan.size());
+        assertThat(chan.read(ByteBuffer.allocate(0))).isEqualTo(-1);
+      }
+    }
+  }
+
+  @Test
+  public void testRead_withBlockCache_honorsBlockSizeOption() throws Exception {
+    CloudStorageConfiguration config =
+        CloudStorageConfiguration.builder().blockSize(4).blockCacheSize(1024).build();
+    try (CloudStorageFileSystem fs = forBucket("bucket", config)) {
+      Path path = fs.getPath("/cached");
+      Files.write(path, SINGULARITY.getBytes(UTF_8));
+      try (SeekableByteChannel chan =
+          Files.newByteChannel(path, CloudStorageOptions.withBlockSize(8))) {
+        ByteBuffer buffer = ByteBuffer.allocate(SINGULARITY.length());
+        assertThat(chan.read(buffer)).isEqualTo(SINGULARITY.length());
+      }
+      assertThat(fs.provider().blockCacheStats().missCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testRead_withBlockCache_cacheSizedPerConfiguration() throws Exception {
+    CloudStorageFileSystemProvider provider = new CloudStorageFileSystemProvider();
+    // blocks of 8 bytes never fit in the first file system's cache
+    CloudStorageFileSystem small = new CloudStorageFileSystem(provider, "bucket",
+        CloudStorageConfiguration.builder().blockSize(8).blockCacheSize(4).build());
+    CloudStorageFileSystem large = new CloudStorageFileSystem(provider, "bucket",
+        CloudStorageConfiguration.builder().blockSize(8).blockCacheSize(1024).build());
+    Path path = small.getPath("/cached");
+    Files.write(path, SINGULARITY.getBytes(UTF_8));
+    assertThat(new String(Files.readAllBytes(path), UTF_8)).isEqualTo(SINGULARITY);
+    Path largePath = large.getPath("/cached");
+    assertThat(new String(Files.readAllBytes(largePath), UTF_8)).isEqualTo(SINGULARITY);
+    assertThat(new String(Files.readAllBytes(largePath), UTF_8)).isEqualTo(SINGULARITY);
+    assertThat(provider.blockCacheStats().hitCount()).isEqualTo(1);
+    assertThat(provider.blockCacheStats().missCount()).isEqualTo(2);
+  }
+
   @Test
   public void testSize_trailingSlash_returnsFakePseudoDirectorySize() throws Exception {
     assertThat(Files.size(Paths.get(URI.create("gs://bucket/wat/")))).isEqualTo(1);
@@ -677,6 +752,49 @@ public class CloudStorageFileSystemProviderTest {
     assertThat(path4.toString()).isEqualTo("/with/a%20percent");
   }
 
+  @Test
+  public void testNewDirectoryStream_pathsCarryAttributes() throws Exception {
+    try (CloudStorageFileSystem fs = forBucket("listing")) {
+      byte[] rapture = SINGULARITY.getBytes(UTF_8);
+      Files.write(fs.getPath("/sub/wat"), rapture);
+      List<Path> listed = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/sub/"))) {
+        for (Path path : stream) {
+          listed.add(path);
+        }
+      }
+      assertThat(listed).containsExactly(fs.getPath("sub/wat"));
+      // attributes of listed paths are read from the listing, not from Cloud Storage
+      Files.delete(fs.getPath("/sub/wat"));
+      assertThat(Files.readAttributes(listed.get(0), BasicFileAttributes.class).size())
+          .isEqualTo(rapture.length);
+      // every other operation queries Cloud Storage
+      assertThat(Files.exists(listed.get(0))).isFalse();
+      thrown.expect(NoSuchFileException.class);
+      Files.getFileAttributeView(listed.get(0), CloudStorageFileAttributeView.class)
+          .readAttributes();
+    }
+  }
+
+  @Test
+  public void testNewRecursiveDirectoryStream() throws Exception {
+    try (CloudStorageFileSystem fs = forBucket("tree")) {
+      for (String name : ImmutableList.of("/dir/a", "/dir/sub/b", "/dir/sub/deeper/c", "/dir2/d")) {
+        Files.write(fs.getPath(name), name.getBytes(UTF_8));
+      }
+      List<Path> listed = new ArrayList<>();
+      try (DirectoryStream<Path> stream =
+          fs.provider().newRecursiveDirectoryStream(fs.getPath("/dir"), ACCEPT_ALL)) {
+        for (Path path : stream) {
+          listed.add(path);
+          assertThat(Files.size(path)).isEqualTo(("/" + path).getBytes(UTF_8).length);
+        }
+      }
+      assertThat(listed).containsExactly(
+          fs.getPath("dir/a"), fs.getPath("dir/sub/b"), fs.getPath("dir/sub/deeper/c"));
+    }
+  }
+
   private static CloudStorageConfiguration permitEmptyPathComponents(boolean value) {
     return CloudStorageConfiguration.builder().permitEmptyPathComponents(value).build();
   }
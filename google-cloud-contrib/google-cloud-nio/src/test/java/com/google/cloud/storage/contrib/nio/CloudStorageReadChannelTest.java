@@ -24,10 +24,13 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import com.google.cloud.ReadChannel;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.ParallelStorage;
 import com.google.cloud.storage.Storage;
 
 import com.google.cloud.storage.StorageException;
@@ -53,7 +56,8 @@ public class CloudStorageReadChannelTest {
 
   private CloudStorageReadChannel chan;
 
-  private final Storage gcsStorage = mock(Storage.class);
+  private final Storage gcsStorage =
+      mock(Storage.class, withSettings().extraInterfaces(ParallelStorage.class));
   private final BlobId file = BlobId.of("blob", "attack");
   private final Blob metadata = mock(Blob.class);
   private final ReadChannel gcsChannel = mock(ReadChannel.class);
@@ -67,6 +71,7 @@ public class CloudStorageReadChannelTest {
     chan = CloudStorageReadChannel.create(gcsStorage, file, 0, 1);
     verify(gcsStorage).get(eq(file));
     verify(gcsStorage).reader(eq(file));
+    verify(gcsChannel).setChunkSize(CloudStorageFileSystem.BLOCK_SIZE_DEFAULT);
   }
 
   @Test
@@ -80,6 +85,35 @@ public class CloudStorageReadChannelTest {
     verify(gcsChannel, times(3)).isOpen();
   }
 
+  @Test
+  public void testReadAhead() throws IOException {
+    ReadChannel prefetchingChannel = mock(ReadChannel.class);
+    when(((ParallelStorage) gcsStorage).parallelReader(eq((BlobInfo) metadata), eq(4)))
+        .thenReturn(prefetchingChannel);
+    when(prefetchingChannel.isOpen()).thenReturn(true);
+    ByteBuffer buffer = ByteBuffer.allocate(1);
+    when(prefetchingChannel.read(eq(buffer))).thenReturn(1);
+    CloudStorageReadChannel readAheadChan =
+        CloudStorageReadChannel.create(gcsStorage, file, 0, 1, 4, 1024);
+    verify(prefetchingChannel).setChunkSize(1024);
+    assertThat(readAheadChan.read(buffer)).isEqualTo(1);
+    assertThat(readAheadChan.position()).isEqualTo(1L);
+    verify(prefetchingChannel).read(any(ByteBuffer.class));
+    // the metadata fetched when opening is reused by the prefetching channel
+    verify(gcsStorage, times(2)).get(eq(file));
+  }
+
+  @Test
+  public void testReadAhead_withoutParallelStorage() throws IOException {
+    Storage plainStorage = mock(Storage.class);
+    ReadChannel plainChannel = mock(ReadChannel.class);
+    when(plainStorage.get(file)).thenReturn(metadata);
+    when(plainStorage.reader(eq(file))).thenReturn(plainChannel);
+    CloudStorageReadChannel.create(plainStorage, file, 0, 1, 4, 1024);
+    // read-ahead falls back to sequential reads
+    verify(plainChannel).setChunkSize(1024);
+  }
+
   @Test
   public void testReadRetry() throws IOException {
     ByteBuffer buffer = ByteBuffer.allocate(1);
@@ -90,6 +124,8 @@ public class CloudStorageReadChannelTest {
     assertThat(chan.read(buffer)).isEqualTo(1);
     assertThat(chan.position()).isEqualTo(1L);
     verify(gcsChannel, times(2)).read(any(ByteBuffer.class));
+    // the channel that failed is closed before being replaced
+    verify(gcsChannel).close();
   }
 
   @Test
@@ -151,6 +151,10 @@ class FakeStorageRpc implements StorageRpc {
       if (processedAsFolder(so, delimiter, prefix, folders)) {
         continue;
       }
+      String key = fullname(so);
+      if (contents.containsKey(key)) {
+        so.setSize(BigInteger.valueOf(contents.get(key).length));
+      }
       values.add(so);
     }
     values.addAll(folders.values());
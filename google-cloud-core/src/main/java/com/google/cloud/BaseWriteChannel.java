@@ -65,6 +65,28 @@ public abstract class BaseWriteChannel<
    */
   protected abstract void flushBuffer(int length, boolean last);
 
+  /**
+   * Returns whether {@code data} can be written with {@link #flushDirect(ByteBuffer)}, skipping
+   * the copy into {@link #getBuffer()}. Implementations that can hand a {@link ByteBuffer} straight
+   * to their transport should override this method and {@link #flushDirect(ByteBuffer)}.
+   */
+  protected boolean isDirectFlushSupported(ByteBuffer data) {
+    return false;
+  }
+
+  /**
+   * Writes the remaining bytes of {@code data} to the {@link #getUploadId()} URL at
+   * {@link #getPosition()} without staging them in {@link #getBuffer()}. The number of remaining
+   * bytes is a non-zero multiple of {@link #getMinChunkSize()} and never completes the upload.
+   * Implementations must not modify the content of {@code data}, and must not rely on it once this
+   * method returns.
+   *
+   * @param data the bytes to write
+   */
+  protected void flushDirect(ByteBuffer data) {
+    throw new UnsupportedOperationException("Direct flush is not supported");
+  }
+
 
   protected ServiceOptionsT getOptions() {
     return options;
@@ -91,6 +113,23 @@ public abstract class BaseWriteChannel<
   }
 
 
+  /**
+   * Replaces the staging buffer with {@code replacement}, or with a new array if it is shorter than
+   * {@link #getChunkSize()}, and returns the previous one. Implementations that upload a chunk in
+   * the background can call this method from {@link #flushBuffer(int, boolean)} to take ownership
+   * of the flushed bytes without copying them; the bytes staged after them are moved to the new
+   * buffer when {@link #flushBuffer(int, boolean)} returns.
+   *
+   * @param replacement the buffer to stage the next bytes into
+   */
+  protected byte[] swapBuffer(byte[] replacement) {
+    byte[] previous = buffer;
+    buffer = replacement != null && replacement.length >= chunkSize
+        ? replacement : new byte[chunkSize];
+    return previous;
+  }
+
+
   protected int getLimit() {
     return limit;
   }
@@ -116,12 +155,21 @@ public abstract class BaseWriteChannel<
   private void flush() {
     if (limit >= chunkSize) {
       final int length = limit - limit % getMinChunkSize();
+      byte[] flushed = buffer;
       flushBuffer(length, false);
       position += length;
       limit -= length;
-      byte[] temp = new byte[chunkSize];
-      System.arraycopy(buffer, length, temp, 0, limit);
-      buffer = temp;
+      if (buffer != flushed) {
+        // the implementation took the flushed buffer, carry the unflushed tail over
+        System.arraycopy(flushed, length, buffer, 0, limit);
+      } else if (buffer.length == chunkSize) {
+        // keep using the same staging buffer in place, moving the unflushed tail to its start
+        System.arraycopy(buffer, length, buffer, 0, limit);
+      } else {
+        byte[] temp = new byte[chunkSize];
+        System.arraycopy(buffer, length, temp, 0, limit);
+        buffer = temp;
+      }
     }
   }
 
@@ -131,19 +179,35 @@ public abstract class BaseWriteChannel<
     }
   }
 
+  private void stage(ByteBuffer byteBuffer, int length) {
+    int spaceInBuffer = buffer.length - limit;
+    if (spaceInBuffer < length) {
+      buffer = Arrays.copyOf(buffer, Math.max(chunkSize, buffer.length + length - spaceInBuffer));
+    }
+    byteBuffer.get(buffer, limit, length);
+    limit += length;
+    flush();
+  }
+
   @Override
   public final int write(ByteBuffer byteBuffer) throws IOException {
     validateOpen();
     int toWrite = byteBuffer.remaining();
-    int spaceInBuffer = buffer.length - limit;
-    if (spaceInBuffer >= toWrite) {
-      byteBuffer.get(buffer, limit, toWrite);
-    } else {
-      buffer = Arrays.copyOf(buffer, Math.max(chunkSize, buffer.length + toWrite - spaceInBuffer));
-      byteBuffer.get(buffer, limit, toWrite);
+    if (limit + toWrite >= chunkSize && isDirectFlushSupported(byteBuffer)) {
+      if (limit > 0) {
+        // complete the staged chunk so that the rest of byteBuffer can be sent as is
+        stage(byteBuffer, Math.max(0, chunkSize - limit));
+      }
+      int directLength = byteBuffer.remaining() - byteBuffer.remaining() % getMinChunkSize();
+      if (limit == 0 && directLength >= chunkSize) {
+        ByteBuffer data = byteBuffer.slice();
+        data.limit(directLength);
+        flushDirect(data);
+        position += directLength;
+        byteBuffer.position(byteBuffer.position() + directLength);
+      }
     }
-    limit += toWrite;
-    flush();
+    stage(byteBuffer, byteBuffer.remaining());
     return toWrite;
   }
 
@@ -152,6 +216,16 @@ public abstract class BaseWriteChannel<
     return isOpen;
   }
 
+  /**
+   * Marks the channel as closed and releases its staging buffer. Implementations whose upload can
+   * no longer be completed can call this method from {@link #flushBuffer(int, boolean)} before
+   * throwing, so that {@link #close()} leaves the channel closed instead of open.
+   */
+  protected void markClosed() {
+    isOpen = false;
+    buffer = null;
+  }
+
   @Override
   public final void close() throws IOException {
     if (isOpen) {
@@ -21,6 +21,8 @@ import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import com.google.cloud.spi.ServiceRpcFactory;
 
@@ -33,7 +35,9 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 public class BaseWriteChannelTest {
@@ -101,6 +105,37 @@ public class BaseWriteChannelTest {
     assertNull(channel.getBuffer());
   }
 
+  @Test
+  public void testCloseAfterMarkClosed() throws IOException {
+    channel = new BaseWriteChannel<CustomServiceOptions, Serializable>(null, ENTITY, UPLOAD_ID) {
+      @Override
+      public RestorableState<WriteChannel> capture() {
+        return null;
+      }
+
+      @Override
+      protected void flushBuffer(int length, boolean last) {
+        markClosed();
+        throw new IllegalStateException("Upload failed");
+      }
+
+      @Override
+      protected BaseState.Builder<CustomServiceOptions, Serializable> stateBuilder() {
+        return null;
+      }
+    };
+    try {
+      channel.close();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+      assertEquals("Upload failed", ex.getMessage());
+    }
+    assertFalse(channel.isOpen());
+    assertNull(channel.getBuffer());
+    // closing again has no effect
+    channel.close();
+  }
+
   @Test
   public void testValidateOpen() throws IOException {
     channel.close();
@@ -137,6 +172,57 @@ public class BaseWriteChannelTest {
     assertArrayEquals(newContent, channel.getBuffer());
   }
 
+  @Test
+  public void testFlushReusesBuffer() throws IOException {
+    channel.write(randomBuffer(MIN_CHUNK_SIZE));
+    byte[] buffer = channel.getBuffer();
+    for (int i = 1; i < DEFAULT_CHUNK_SIZE / MIN_CHUNK_SIZE; i++) {
+      channel.write(randomBuffer(MIN_CHUNK_SIZE));
+    }
+    assertEquals(DEFAULT_CHUNK_SIZE, channel.getPosition());
+    assertEquals(0, channel.getLimit());
+    assertSame(buffer, channel.getBuffer());
+  }
+
+  @Test
+  public void testWriteDirect() throws IOException {
+    final List<ByteBuffer> directWrites = new ArrayList<>();
+    final List<Integer> bufferFlushes = new ArrayList<>();
+    BaseWriteChannel<CustomServiceOptions, Serializable> directChannel =
+        new BaseWriteChannel<CustomServiceOptions, Serializable>(null, ENTITY, UPLOAD_ID) {
+          @Override
+          protected void flushBuffer(int length, boolean last) {
+            bufferFlushes.add(length);
+          }
+
+          @Override
+          protected boolean isDirectFlushSupported(ByteBuffer data) {
+            return true;
+          }
+
+          @Override
+          protected void flushDirect(ByteBuffer data) {
+            directWrites.add(data);
+          }
+
+          @Override
+          protected BaseState.Builder<CustomServiceOptions, Serializable> stateBuilder() {
+            return null;
+          }
+        };
+    directChannel.write(ByteBuffer.wrap(CONTENT));
+    ByteBuffer content = randomBuffer(2 * DEFAULT_CHUNK_SIZE);
+    assertEquals(2 * DEFAULT_CHUNK_SIZE, directChannel.write(content));
+    assertFalse(content.hasRemaining());
+    assertEquals(Arrays.asList(DEFAULT_CHUNK_SIZE), bufferFlushes);
+    assertEquals(1, directWrites.size());
+    ByteBuffer direct = directWrites.get(0);
+    assertEquals(DEFAULT_CHUNK_SIZE, direct.remaining());
+    assertEquals(content.get(DEFAULT_CHUNK_SIZE - CONTENT.length), direct.get(0));
+    assertEquals(2 * DEFAULT_CHUNK_SIZE, directChannel.getPosition());
+    assertEquals(CONTENT.length, directChannel.getLimit());
+  }
+
   private static ByteBuffer randomBuffer(int size) {
     byte[] byteArray = new byte[size];
     RANDOM.nextBytes(byteArray);
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.api.gax.batching.BatchingSettings;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import org.joda.time.Duration;
+
+/**
+ * Tunes the batching settings of a {@link Publisher} from the observed message arrival rate and
+ * publish request latency, within user-given bounds.
+ *
+ * <p>The delay threshold is a fraction of the publish latency, so that batching adds little to the
+ * time a message takes to be published. The element count and byte thresholds are the number of
+ * messages and bytes expected to arrive within that delay: at low traffic batches are sent as soon
+ * as the few messages expected have arrived, instead of waiting for the delay, while at peak
+ * traffic batches grow up to the maximum thresholds, reducing the number of requests.
+ *
+ * <p>The publisher batches messages in several shards, each cutting its own batches, so the
+ * thresholds are sized for the arrival rate of a single shard: the overall rate divided by the
+ * number of shards that received messages. Only the latency of successful publish requests is
+ * taken into account, as failed requests may fail quickly or only after a deadline.
+ *
+ * <p>Observations are recorded concurrently by the publishing threads, while {@link #adjust} is
+ * called periodically by a single thread.
+ */
+class AdaptiveBatchingPolicy {
+  static final Duration ADJUSTMENT_PERIOD = Duration.standardSeconds(1);
+  // Fraction of the publish latency messages may wait to be batched.
+  private static final double DELAY_TO_LATENCY_RATIO = 0.25;
+  // Weight of the latest observations in the smoothed rates and latency.
+  private static final double SMOOTHING_FACTOR = 0.5;
+  private static final double NANOS_PER_MILLI = 1000 * 1000;
+
+  private final BatchingSettings minSettings;
+  private final BatchingSettings maxSettings;
+  // Whether each shard received a message since the last adjustment.
+  private final AtomicIntegerArray activeShards;
+  private final AtomicLong arrivedMessages = new AtomicLong();
+  private final AtomicLong arrivedBytes = new AtomicLong();
+  private final AtomicLong publishLatencyNanos = new AtomicLong();
+  private final AtomicLong publishCount = new AtomicLong();
+  // Only accessed by the thread adjusting the settings.
+  private double messagesPerMilli = -1;
+  private double bytesPerMilli = -1;
+  private double latencyMillis = -1;
+  private volatile BatchingSettings currentSettings;
+
+  AdaptiveBatchingPolicy(
+      BatchingSettings initialSettings,
+      BatchingSettings minSettings,
+      BatchingSettings maxSettings,
+      int shardCount) {
+    this.activeShards = new AtomicIntegerArray(shardCount);
+    this.minSettings = minSettings;
+    this.maxSettings = maxSettings;
+    this.currentSettings =
+        BatchingSettings.newBuilder()
+            .setElementCountThreshold(
+                clamp(
+                    initialSettings.getElementCountThreshold(),
+                    minSettings.getElementCountThreshold(),
+                    maxSettings.getElementCountThreshold()))
+            .setRequestByteThreshold(
+                clamp(
+                    initialSettings.getRequestByteThreshold(),
+                    minSettings.getRequestByteThreshold(),
+                    maxSettings.getRequestByteThreshold()))
+            .setDelayThreshold(
+                Duration.millis(
+                    clamp(
+                        initialSettings.getDelayThreshold().getMillis(),
+                        minSettings.getDelayThreshold().getMillis(),
+                        maxSettings.getDelayThreshold().getMillis())))
+            .build();
+  }
+
+  /** Returns the batching settings currently in use. */
+  BatchingSettings getCurrentSettings() {
+    return currentSettings;
+  }
+
+  void recordArrival(int shard, int messageSize) {
+    if (activeShards.get(shard) == 0) {
+      activeShards.set(shard, 1);
+    }
+    arrivedMessages.incrementAndGet();
+    arrivedBytes.addAndGet(messageSize);
+  }
+
+  /** Records the latency of a successful publish request. */
+  void recordPublishLatency(long latencyNanos) {
+    publishLatencyNanos.addAndGet(latencyNanos);
+    publishCount.incrementAndGet();
+  }
+
+  /**
+   * Updates the batching settings from the observations recorded during the last {@code
+   * elapsedMillis} milliseconds. Until a publish latency was observed, the settings are not
+   * changed.
+   */
+  void adjust(long elapsedMillis) {
+    long messages = arrivedMessages.getAndSet(0);
+    long bytes = arrivedBytes.getAndSet(0);
+    long latencyNanos = publishLatencyNanos.getAndSet(0);
+    long publishes = publishCount.getAndSet(0);
+    int shards = 0;
+    for (int i = 0; i < activeShards.length(); i++) {
+      shards += activeShards.getAndSet(i, 0);
+    }
+    shards = Math.max(1, shards);
+    messagesPerMilli = smooth(messagesPerMilli, (double) messages / shards / elapsedMillis);
+    bytesPerMilli = smooth(bytesPerMilli, (double) bytes / shards / elapsedMillis);
+    if (publishes > 0) {
+      double averageLatencyMillis = (double) latencyNanos / publishes / NANOS_PER_MILLI;
+      latencyMillis = smooth(latencyMillis, averageLatencyMillis);
+    }
+    if (latencyMillis < 0) {
+      return;
+    }
+
+    long delayMillis =
+        clamp(
+            Math.round(latencyMillis * DELAY_TO_LATENCY_RATIO),
+            minSettings.getDelayThreshold().getMillis(),
+            maxSettings.getDelayThreshold().getMillis());
+    currentSettings =
+        BatchingSettings.newBuilder()
+            .setElementCountThreshold(
+                clamp(
+                    (long) Math.ceil(messagesPerMilli * delayMillis),
+                    minSettings.getElementCountThreshold(),
+                    maxSettings.getElementCountThreshold()))
+            .setRequestByteThreshold(
+                clamp(
+                    (long) Math.ceil(bytesPerMilli * delayMillis),
+                    minSettings.getRequestByteThreshold(),
+                    maxSettings.getRequestByteThreshold()))
+            .setDelayThreshold(Duration.millis(delayMillis))
+            .build();
+  }
+
+  private static double smooth(double previous, double sample) {
+    if (previous < 0) {
+      return sample;
+    }
+    return SMOOTHING_FACTOR * sample + (1 - SMOOTHING_FACTOR) * previous;
+  }
+
+  private static long clamp(long value, long min, long max) {
+    return Math.max(min, Math.min(max, value));
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+/**
+ * Accepts a reply to the messages of a batch received by a {@link BatchMessageReceiver}. Replying
+ * to a message that was already replied to has no effect.
+ */
+public interface BatchAckReplyConsumer {
+  /** Acknowledges all the messages of the batch that were not replied to yet. */
+  void ackAll();
+
+  /** Signals that none of the messages of the batch that were not replied to yet were processed. */
+  void nackAll();
+
+  /** Returns the consumer of the reply to the message at {@code index} in the batch. */
+  AckReplyConsumer getReplyConsumer(int index);
+}
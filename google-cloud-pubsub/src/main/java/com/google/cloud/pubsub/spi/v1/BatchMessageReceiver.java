@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.List;
+
+/**
+ * This interface can be implemented by users of {@link Subscriber} to receive messages in batches,
+ * for instance to write them to a database in bulk. See {@link
+ * Subscriber#defaultBuilder(com.google.pubsub.v1.SubscriptionName, BatchMessageReceiver)}.
+ */
+public interface BatchMessageReceiver {
+  /**
+   * Called when a batch of messages is received by the subscriber. The implementation must arrange
+   * for every message to be acked or nacked after processing the {@code messages}, either all at
+   * once with {@link BatchAckReplyConsumer#ackAll()} or {@link BatchAckReplyConsumer#nackAll()},
+   * or one by one with {@link BatchAckReplyConsumer#getReplyConsumer(int)}.
+   *
+   * <p>This method can be called concurrently from multiple threads.
+   *
+   * <pre> {@code
+   * BatchMessageReceiver receiver = new BatchMessageReceiver() {
+   *   public void receiveMessages(List<PubsubMessage> messages, BatchAckReplyConsumer consumer) {
+   *     if (database.insertAll(messages)) {
+   *       consumer.ackAll();
+   *     } else {
+   *       consumer.nackAll();
+   *     }
+   *   }
+   * };
+   * }</pre>
+   */
+  void receiveMessages(List<PubsubMessage> messages, BatchAckReplyConsumer consumer);
+}
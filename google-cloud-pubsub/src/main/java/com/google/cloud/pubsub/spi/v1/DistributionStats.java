@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * A summary of the values recorded for a statistic, such as a latency or a batch size, at the time
+ * the statistics were requested. Values are in the unit of the statistic they summarize.
+ */
+@AutoValue
+public abstract class DistributionStats {
+  /** Number of recorded values. */
+  public abstract long getCount();
+
+  /** Median of the recorded values, or 0 if no value was recorded. */
+  public abstract long getMedian();
+
+  /** 90th percentile of the recorded values, or 0 if no value was recorded. */
+  public abstract long getPercentile90();
+
+  /** 99th percentile of the recorded values, or 0 if no value was recorded. */
+  public abstract long getPercentile99();
+
+  public static Builder newBuilder() {
+    return new AutoValue_DistributionStats.Builder();
+  }
+
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setCount(long value);
+
+    public abstract Builder setMedian(long value);
+
+    public abstract Builder setPercentile90(long value);
+
+    public abstract Builder setPercentile99(long value);
+
+    public abstract DistributionStats build();
+  }
+}
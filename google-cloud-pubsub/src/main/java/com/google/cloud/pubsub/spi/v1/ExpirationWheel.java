@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed wheel of elements that expire at given times.
+ *
+ * <p>Time is divided in ticks of {@code tickMillis}, and each element is kept in the slot of the
+ * tick in which it expires, modulo the number of slots. Each slot has its own lock, so that adding
+ * an element is constant time and only contends with additions to the same slot. Polling visits
+ * the slots of the ticks elapsed since the previous poll, and only scans the elements of those
+ * slots. Elements expiring more than a rotation of the wheel ahead stay in their slot until their
+ * tick is reached.
+ *
+ * <p>This class is thread-safe.
+ */
+class ExpirationWheel<E> {
+  private final long tickMillis;
+  private final List<List<Entry<E>>> slots;
+  // Elements added for a tick that was already polled, returned by the next poll.
+  private final List<Entry<E>> overdue = new ArrayList<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final Object pollLock = new Object();
+  // Only updated while holding the lock of the slot of the tick, see add().
+  private volatile long lastPolledTick;
+
+  private static class Entry<E> {
+    final E element;
+    final long expirationMillis;
+    final long tick;
+
+    Entry(E element, long expirationMillis, long tick) {
+      this.element = element;
+      this.expirationMillis = expirationMillis;
+      this.tick = tick;
+    }
+  }
+
+  /**
+   * Creates a wheel of {@code slotCount} slots of {@code tickMillis} each, starting at {@code
+   * startMillis}. Elements expiring before the start are returned by the first poll.
+   */
+  ExpirationWheel(int slotCount, long tickMillis, long startMillis) {
+    Preconditions.checkArgument(slotCount > 0);
+    Preconditions.checkArgument(tickMillis > 0);
+    this.tickMillis = tickMillis;
+    lastPolledTick = startMillis / tickMillis - 1;
+    slots = new ArrayList<>(slotCount);
+    for (int i = 0; i < slotCount; i++) {
+      slots.add(new ArrayList<Entry<E>>(0));
+    }
+  }
+
+  /** Adds an element expiring at {@code expirationMillis}. */
+  void add(E element, long expirationMillis) {
+    long tick = expirationMillis / tickMillis;
+    Entry<E> entry = new Entry<>(element, expirationMillis, tick);
+    size.incrementAndGet();
+    List<Entry<E>> slot = slotOf(tick);
+    synchronized (slot) {
+      // A poll sets the last polled tick while holding the lock of its slot, so if the tick is
+      // not polled yet the poll that covers it will find the element.
+      if (tick > lastPolledTick) {
+        slot.add(entry);
+        return;
+      }
+    }
+    synchronized (overdue) {
+      overdue.add(entry);
+    }
+  }
+
+  /**
+   * Removes and returns the elements expiring at or before the end of the tick of {@code
+   * timeMillis}.
+   */
+  List<E> pollExpired(long timeMillis) {
+    long targetTick = timeMillis / tickMillis;
+    List<E> expired = new ArrayList<>();
+    synchronized (pollLock) {
+      synchronized (overdue) {
+        for (Entry<E> entry : overdue) {
+          expired.add(entry.element);
+        }
+        overdue.clear();
+      }
+      // Each slot is visited at most once, even if more than a rotation elapsed.
+      long firstTick = Math.max(lastPolledTick + 1, targetTick - slots.size() + 1);
+      for (long tick = firstTick; tick <= targetTick; tick++) {
+        List<Entry<E>> slot = slotOf(tick);
+        synchronized (slot) {
+          lastPolledTick = tick;
+          for (int i = 0; i < slot.size(); ) {
+            if (slot.get(i).tick <= targetTick) {
+              expired.add(slot.get(i).element);
+              // The order of a slot does not matter, swap the last entry in.
+              slot.set(i, slot.get(slot.size() - 1));
+              slot.remove(slot.size() - 1);
+            } else {
+              i++;
+            }
+          }
+        }
+      }
+    }
+    size.addAndGet(-expired.size());
+    return expired;
+  }
+
+  /**
+   * Returns the earliest expiration time of the elements of the wheel, or {@link Long#MAX_VALUE}
+   * if the wheel is empty. If all elements expire more than a rotation of the wheel ahead, the
+   * start of the next rotation is returned instead, so that the caller polls the wheel again by
+   * then.
+   */
+  long nextExpirationMillis() {
+    if (size.get() == 0) {
+      return Long.MAX_VALUE;
+    }
+    long next = Long.MAX_VALUE;
+    synchronized (overdue) {
+      for (Entry<E> entry : overdue) {
+        next = Math.min(next, entry.expirationMillis);
+      }
+    }
+    synchronized (pollLock) {
+      long firstTick = lastPolledTick + 1;
+      for (long tick = firstTick; tick < firstTick + slots.size(); tick++) {
+        List<Entry<E>> slot = slotOf(tick);
+        boolean found = false;
+        synchronized (slot) {
+          for (Entry<E> entry : slot) {
+            if (entry.tick == tick) {
+              next = Math.min(next, entry.expirationMillis);
+              found = true;
+            }
+          }
+        }
+        if (found) {
+          return next;
+        }
+      }
+      return Math.min(next, (firstTick + slots.size()) * tickMillis);
+    }
+  }
+
+  boolean isEmpty() {
+    return size.get() == 0;
+  }
+
+  private List<Entry<E>> slotOf(long tick) {
+    return slots.get((int) (tick % slots.size()));
+  }
+}
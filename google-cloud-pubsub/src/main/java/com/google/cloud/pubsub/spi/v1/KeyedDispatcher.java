@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers the messages that share a key one at a time, in the order in which they were received,
+ * while messages with different keys are delivered concurrently.
+ *
+ * <p>A message is delivered once the reply to the previous message with the same key is known,
+ * that is once it was acked or nacked, or once its {@link MessageReceiver} failed. Each delivery
+ * is a separate task on the executor, so that keys with many messages take turns with the other
+ * keys instead of holding on to a thread.
+ *
+ * <p>Messages waiting for their turn are outstanding for the subscriber flow control. To keep a hot
+ * key from using up the flow control limits, and so starving the other keys, at most {@code
+ * maxOutstandingMessagesPerKey} messages are accepted per key; the caller is expected to nack the
+ * messages that are rejected, which releases their flow control permits.
+ *
+ * <p>This class is thread-safe, and is shared by all the connections of a subscriber so that
+ * messages of the same key are serialized across connections.
+ */
+class KeyedDispatcher {
+  private final MessageKeyExtractor keyExtractor;
+  private final int maxOutstandingMessagesPerKey;
+  private final Executor executor;
+  // Outstanding deliveries per key, the first of which is the one being delivered.
+  private final Map<String, Deque<Delivery>> outstandingDeliveries = new HashMap<>();
+
+  private static class Delivery {
+    final Runnable task;
+    final ListenableFuture<?> reply;
+
+    Delivery(Runnable task, ListenableFuture<?> reply) {
+      this.task = task;
+      this.reply = reply;
+    }
+  }
+
+  KeyedDispatcher(
+      MessageKeyExtractor keyExtractor, int maxOutstandingMessagesPerKey, Executor executor) {
+    this.keyExtractor = keyExtractor;
+    this.maxOutstandingMessagesPerKey = maxOutstandingMessagesPerKey;
+    this.executor = executor;
+  }
+
+  /** Returns the key of {@code message}, or {@code null} if it can be delivered at any time. */
+  String extractKey(PubsubMessage message) {
+    return keyExtractor.extractKey(message);
+  }
+
+  /**
+   * Schedules the delivery of a message with the given {@code key}. {@code task} runs once all the
+   * messages previously submitted for the key have a reply, and {@code reply} must complete once
+   * the message has been processed.
+   *
+   * @return {@code false} if too many messages with the key are outstanding, in which case the
+   *     message is not delivered
+   */
+  boolean submit(String key, Runnable task, ListenableFuture<?> reply) {
+    Delivery delivery = new Delivery(task, reply);
+    synchronized (outstandingDeliveries) {
+      Deque<Delivery> deliveries = outstandingDeliveries.get(key);
+      if (deliveries == null) {
+        deliveries = new ArrayDeque<>();
+        outstandingDeliveries.put(key, deliveries);
+      } else if (deliveries.size() >= maxOutstandingMessagesPerKey) {
+        return false;
+      }
+      deliveries.add(delivery);
+      if (deliveries.size() > 1) {
+        // The delivery will be started when the previous one completes.
+        return true;
+      }
+    }
+    deliver(key, delivery);
+    return true;
+  }
+
+  /** Returns the number of keys with outstanding messages. */
+  int getOutstandingKeyCount() {
+    synchronized (outstandingDeliveries) {
+      return outstandingDeliveries.size();
+    }
+  }
+
+  private void deliver(final String key, Delivery delivery) {
+    delivery.reply.addListener(
+        new Runnable() {
+          @Override
+          public void run() {
+            Delivery next;
+            synchronized (outstandingDeliveries) {
+              Deque<Delivery> deliveries = outstandingDeliveries.get(key);
+              deliveries.poll();
+              next = deliveries.peek();
+              if (next == null) {
+                outstandingDeliveries.remove(key);
+              }
+            }
+            if (next != null) {
+              deliver(key, next);
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+    executor.execute(delivery.task);
+  }
+}
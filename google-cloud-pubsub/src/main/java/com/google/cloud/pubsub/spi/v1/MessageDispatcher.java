@@ -16,28 +16,31 @@
 
 package com.google.cloud.pubsub.spi.v1;
 
+import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.core.FlowController;
 import com.google.api.core.ApiClock;
-import com.google.api.stats.Distribution;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Timestamp;
 import com.google.pubsub.v1.PubsubMessage;
 import com.google.pubsub.v1.ReceivedMessage;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Set;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -56,6 +59,9 @@ class MessageDispatcher {
   private static final int INITIAL_ACK_DEADLINE_EXTENSION_SECONDS = 2;
   @VisibleForTesting static final Duration PENDING_ACKS_SEND_DELAY = Duration.millis(100);
   private static final int MAX_ACK_DEADLINE_EXTENSION_SECS = 10 * 60; // 10m
+  // Ack deadlines are extended at a 1s resolution, a rotation of the wheel covers more than 4m.
+  private static final int EXPIRATION_WHEEL_SLOTS = 256;
+  private static final long EXPIRATION_WHEEL_TICK_MILLIS = 1000;
 
   private final ScheduledExecutorService executor;
   private final ApiClock clock;
@@ -68,27 +74,35 @@ class MessageDispatcher {
   private final FlowController flowController;
   private final MessageWaiter messagesWaiter;
 
-  private final PriorityQueue<ExtensionJob> outstandingAckHandlers;
-  private final Set<String> pendingAcks;
-  private final Set<String> pendingNacks;
+  private final ExpirationWheel<ExtensionJob> outstandingAckHandlers;
+  // Null unless messages with the same key must be delivered one at a time.
+  private final KeyedDispatcher keyedDispatcher;
+  // Null unless messages are handed over to a BatchMessageReceiver, instead of the receiver.
+  private final ReceivedMessageBatcher messageBatcher;
+  private final long maxPendingAckReplies;
+  private final long maxPendingAckReplyBytes;
+  private final Duration pendingAckRepliesDelay;
+  // Acks and nacks waiting to be sent, enqueued without locking by the receiver threads.
+  private final Queue<String> pendingAcks;
+  private final Queue<String> pendingNacks;
+  private final AtomicInteger pendingAckReplies;
+  private final AtomicLong pendingAckReplyBytes;
 
   private final Lock alarmsLock;
   private int messageDeadlineSeconds;
   private ScheduledFuture<?> ackDeadlineExtensionAlarm;
   private Instant nextAckDeadlineExtensionAlarmTime;
-  private ScheduledFuture<?> pendingAcksAlarm;
+  private volatile ScheduledFuture<?> pendingAcksAlarm;
 
-  // To keep track of number of seconds the receiver takes to process messages.
-  private final Distribution ackLatencyDistribution;
+  private final SubscriberStatsRecorder stats;
 
   // ExtensionJob represents a group of {@code AckHandler}s that shares the same expiration.
   //
-  // It is Comparable so that it may be put in a PriorityQueue.
-  // For efficiency, it is also mutable, so great care should be taken to make sure
-  // it is not modified while inside the queue.
+  // It is kept in the expiration wheel at its expiration time. For efficiency, it is mutable and
+  // it is only modified by the ack deadline alarm, after it was polled from the wheel.
   // The hashcode and equals methods are explicitly not implemented to discourage
   // the use of this class as keys in maps or similar containers.
-  private class ExtensionJob implements Comparable<ExtensionJob> {
+  private class ExtensionJob {
     Instant creation;
     Instant expiration;
     int nextExtensionSeconds;
@@ -112,11 +126,6 @@ class MessageDispatcher {
       nextExtensionSeconds = Math.min(2 * nextExtensionSeconds, MAX_ACK_DEADLINE_EXTENSION_SECS);
     }
 
-    @Override
-    public int compareTo(ExtensionJob other) {
-      return expiration.compareTo(other.expiration);
-    }
-
     @Override
     public String toString() {
       ArrayList<String> ackIds = new ArrayList<>();
@@ -184,11 +193,9 @@ class MessageDispatcher {
           "MessageReceiver failed to processes ack ID: " + ackId + ", the message will be nacked.",
           t);
       acked.getAndSet(true);
-      synchronized (pendingNacks) {
-        pendingNacks.add(ackId);
-      }
-      setupPendingAcksAlarm();
+      enqueueAckReply(pendingNacks, ackId);
       flowController.release(1, outstandingBytes);
+      stats.recordNack(outstandingBytes);
       messagesWaiter.incrementPendingMessages(-1);
     }
 
@@ -197,23 +204,18 @@ class MessageDispatcher {
       acked.getAndSet(true);
       switch (reply) {
         case ACK:
-          synchronized (pendingAcks) {
-            pendingAcks.add(ackId);
-          }
-          setupPendingAcksAlarm();
+          enqueueAckReply(pendingAcks, ackId);
           flowController.release(1, outstandingBytes);
           // Record the latency rounded to the next closest integer.
-          ackLatencyDistribution.record(
-              Ints.saturatedCast(
-                  (long) Math.ceil((clock.millisTime() - receivedTime.getMillis()) / 1000D)));
+          stats.recordAck(
+              outstandingBytes,
+              (long) Math.ceil((clock.millisTime() - receivedTime.getMillis()) / 1000D));
           messagesWaiter.incrementPendingMessages(-1);
           return;
         case NACK:
-          synchronized (pendingNacks) {
-            pendingNacks.add(ackId);
-          }
-          setupPendingAcksAlarm();
+          enqueueAckReply(pendingNacks, ackId);
           flowController.release(1, outstandingBytes);
+          stats.recordNack(outstandingBytes);
           messagesWaiter.incrementPendingMessages(-1);
           return;
         default:
@@ -232,7 +234,10 @@ class MessageDispatcher {
       AckProcessor ackProcessor,
       Duration ackExpirationPadding,
       Duration maxAckExtensionPeriod,
-      Distribution ackLatencyDistribution,
+      SubscriberStatsRecorder stats,
+      BatchingSettings ackBatchingSettings,
+      KeyedDispatcher keyedDispatcher,
+      ReceivedMessageBatcher messageBatcher,
       FlowController flowController,
       ScheduledExecutorService executor,
       ApiClock clock) {
@@ -242,11 +247,19 @@ class MessageDispatcher {
     this.receiver = receiver;
     this.ackProcessor = ackProcessor;
     this.flowController = flowController;
-    outstandingAckHandlers = new PriorityQueue<>();
-    pendingAcks = new HashSet<>();
-    pendingNacks = new HashSet<>();
-    // 601 buckets of 1s resolution from 0s to MAX_ACK_DEADLINE_SECONDS
-    this.ackLatencyDistribution = ackLatencyDistribution;
+    outstandingAckHandlers =
+        new ExpirationWheel<>(
+            EXPIRATION_WHEEL_SLOTS, EXPIRATION_WHEEL_TICK_MILLIS, clock.millisTime());
+    this.keyedDispatcher = keyedDispatcher;
+    this.messageBatcher = messageBatcher;
+    maxPendingAckReplies = ackBatchingSettings.getElementCountThreshold();
+    maxPendingAckReplyBytes = ackBatchingSettings.getRequestByteThreshold();
+    pendingAckRepliesDelay = ackBatchingSettings.getDelayThreshold();
+    pendingAcks = new ConcurrentLinkedQueue<>();
+    pendingNacks = new ConcurrentLinkedQueue<>();
+    pendingAckReplies = new AtomicInteger();
+    pendingAckReplyBytes = new AtomicLong();
+    this.stats = stats;
     alarmsLock = new ReentrantLock();
     nextAckDeadlineExtensionAlarmTime = new Instant(Long.MAX_VALUE);
     messagesWaiter = new MessageWaiter();
@@ -254,6 +267,10 @@ class MessageDispatcher {
   }
 
   public void stop() {
+    if (messageBatcher != null) {
+      // Don't wait for the delay threshold to hand over the messages still being batched.
+      messageBatcher.flush();
+    }
     messagesWaiter.waitNoMessages();
     alarmsLock.lock();
     try {
@@ -287,7 +304,16 @@ class MessageDispatcher {
       int messageSize = pubsubMessage.getMessage().getSerializedSize();
       totalByteCount += messageSize;
       ackHandlers.add(new AckHandler(pubsubMessage.getAckId(), messageSize));
+      if (pubsubMessage.getMessage().hasPublishTime()) {
+        Timestamp publishTime = pubsubMessage.getMessage().getPublishTime();
+        stats.recordEndToEndLatency(
+            now.getMillis()
+                - TimeUnit.SECONDS.toMillis(publishTime.getSeconds())
+                - TimeUnit.NANOSECONDS.toMillis(publishTime.getNanos()));
+      }
     }
+    // Count the messages before the receiver can ack them.
+    stats.recordReceived(receivedMessagesCount, totalByteCount);
     Instant expiration = now.plus(messageDeadlineSeconds * 1000);
     logger.log(
         Level.FINER, "Received {0} messages at {1}", new Object[] {responseMessages.size(), now});
@@ -298,6 +324,11 @@ class MessageDispatcher {
       final PubsubMessage message = userMessage.getMessage();
       final AckHandler ackHandler = acksIterator.next();
       final SettableFuture<AckReply> response = SettableFuture.create();
+      Futures.addCallback(response, ackHandler);
+      if (messageBatcher != null) {
+        messageBatcher.add(message, response);
+        continue;
+      }
       final AckReplyConsumer consumer =
           new AckReplyConsumer() {
             @Override
@@ -310,8 +341,7 @@ class MessageDispatcher {
               response.set(AckReply.NACK);
             }
           };
-      Futures.addCallback(response, ackHandler);
-      executor.submit(
+      Runnable delivery =
           new Runnable() {
             @Override
             public void run() {
@@ -321,27 +351,73 @@ class MessageDispatcher {
                 response.setException(e);
               }
             }
-          });
+          };
+      if (keyedDispatcher == null) {
+        executor.submit(delivery);
+      } else {
+        dispatchByKey(message, delivery, response);
+      }
     }
-
-    synchronized (outstandingAckHandlers) {
-      outstandingAckHandlers.add(
-          new ExtensionJob(
-              new Instant(clock.millisTime()),
-              expiration,
-              INITIAL_ACK_DEADLINE_EXTENSION_SECONDS,
-              ackHandlers));
+    if (messageBatcher != null) {
+      messageBatcher.onResponseProcessed();
     }
+
+    outstandingAckHandlers.add(
+        new ExtensionJob(
+            new Instant(clock.millisTime()),
+            expiration,
+            INITIAL_ACK_DEADLINE_EXTENSION_SECONDS,
+            ackHandlers),
+        expiration.getMillis());
     setupNextAckDeadlineExtensionAlarm(expiration);
 
+    long reserveStartNanos = System.nanoTime();
     try {
       flowController.reserve(receivedMessagesCount, totalByteCount);
     } catch (FlowController.FlowControlException unexpectedException) {
       throw new IllegalStateException("Flow control unexpected exception", unexpectedException);
     }
+    stats.recordFlowControlBlocked(System.nanoTime() - reserveStartNanos);
+  }
+
+  private void dispatchByKey(
+      PubsubMessage message, Runnable delivery, SettableFuture<AckReply> response) {
+    String key;
+    try {
+      key = keyedDispatcher.extractKey(message);
+    } catch (Exception e) {
+      response.setException(e);
+      return;
+    }
+    if (key == null) {
+      executor.submit(delivery);
+    } else if (!keyedDispatcher.submit(key, delivery, response)) {
+      // Too many messages of this key are waiting, let the service redeliver this one later.
+      logger.log(Level.FINER, "Too many outstanding messages for key {0}, nacking.", key);
+      response.set(AckReply.NACK);
+    }
+  }
+
+  /**
+   * Enqueues an ack or a nack, and sends the pending acks and nacks if they reach the count or byte
+   * threshold of the ack batching settings. Otherwise they are sent after the delay threshold.
+   */
+  private void enqueueAckReply(Queue<String> pendingReplies, String ackId) {
+    pendingReplies.add(ackId);
+    int replies = pendingAckReplies.incrementAndGet();
+    long replyBytes = pendingAckReplyBytes.addAndGet(ackId.length());
+    if (replies >= maxPendingAckReplies || replyBytes >= maxPendingAckReplyBytes) {
+      processOutstandingAckOperations();
+    } else {
+      setupPendingAcksAlarm();
+    }
   }
 
   private void setupPendingAcksAlarm() {
+    if (pendingAcksAlarm != null) {
+      // Avoid taking the lock on the hot path, the alarm will send this reply.
+      return;
+    }
     alarmsLock.lock();
     try {
       if (pendingAcksAlarm == null) {
@@ -359,7 +435,7 @@ class MessageDispatcher {
                     processOutstandingAckOperations();
                   }
                 },
-                PENDING_ACKS_SEND_DELAY.getMillis(),
+                pendingAckRepliesDelay.getMillis(),
                 TimeUnit.MILLISECONDS);
       }
     } finally {
@@ -396,54 +472,58 @@ class MessageDispatcher {
       Instant nextScheduleExpiration = null;
       List<PendingModifyAckDeadline> modifyAckDeadlinesToSend = new ArrayList<>();
 
-      // Holding area for jobs we'll put back into the queue
+      // Holding area for jobs we'll put back into the wheel
       // so we don't process the same job twice.
       List<ExtensionJob> renewJobs = new ArrayList<>();
 
-      synchronized (outstandingAckHandlers) {
-        while (!outstandingAckHandlers.isEmpty()
-            && outstandingAckHandlers.peek().expiration.compareTo(cutOverTime) <= 0) {
-          ExtensionJob job = outstandingAckHandlers.poll();
-
-          if (maxAckExtensionPeriod.getMillis() > 0
-              && job.creation.plus(maxAckExtensionPeriod).compareTo(now) <= 0) {
-            // The job has expired, according to the maxAckExtensionPeriod, we are just going to
-            // drop it.
-            continue;
-          }
-          
-          // If a message has already been acked, remove it, nothing to do.
-          for (int i = 0; i < job.ackHandlers.size(); ) {
-            if (job.ackHandlers.get(i).acked.get()) {
-              Collections.swap(job.ackHandlers, i, job.ackHandlers.size() - 1);
-              job.ackHandlers.remove(job.ackHandlers.size() - 1);
-            } else {
-              i++;
-            }
-          }
+      for (ExtensionJob job : outstandingAckHandlers.pollExpired(cutOverTime.getMillis())) {
+        // The wheel returns whole ticks, jobs expiring later in the tick are not due yet.
+        if (job.expiration.isAfter(cutOverTime)) {
+          renewJobs.add(job);
+          continue;
+        }
 
-          if (job.ackHandlers.isEmpty()) {
-            continue;
-          }
+        if (maxAckExtensionPeriod.getMillis() > 0
+            && job.creation.plus(maxAckExtensionPeriod).compareTo(now) <= 0) {
+          // The job has expired, according to the maxAckExtensionPeriod, we are just going to
+          // drop it.
+          continue;
+        }
 
-          job.extendExpiration(now);
-          int extensionSeconds =
-              Ints.saturatedCast(
-                  new Interval(now, job.expiration).toDuration().getStandardSeconds());
-          PendingModifyAckDeadline pendingModAckDeadline =
-              new PendingModifyAckDeadline(extensionSeconds);
-          for (AckHandler ackHandler : job.ackHandlers) {
-            pendingModAckDeadline.addAckId(ackHandler.ackId);
+        // If a message has already been acked, remove it, nothing to do.
+        for (int i = 0; i < job.ackHandlers.size(); ) {
+          if (job.ackHandlers.get(i).acked.get()) {
+            Collections.swap(job.ackHandlers, i, job.ackHandlers.size() - 1);
+            job.ackHandlers.remove(job.ackHandlers.size() - 1);
+          } else {
+            i++;
           }
-          modifyAckDeadlinesToSend.add(pendingModAckDeadline);
-          renewJobs.add(job);
         }
-        for (ExtensionJob job : renewJobs) {
-          outstandingAckHandlers.add(job);
+
+        if (job.ackHandlers.isEmpty()) {
+          continue;
         }
-        if (!outstandingAckHandlers.isEmpty()) {
-          nextScheduleExpiration = outstandingAckHandlers.peek().expiration;
+
+        job.extendExpiration(now);
+        int extensionSeconds =
+            Ints.saturatedCast(
+                new Interval(now, job.expiration).toDuration().getStandardSeconds());
+        PendingModifyAckDeadline pendingModAckDeadline =
+            new PendingModifyAckDeadline(extensionSeconds);
+        long extendedBytes = 0;
+        for (AckHandler ackHandler : job.ackHandlers) {
+          pendingModAckDeadline.addAckId(ackHandler.ackId);
+          extendedBytes += ackHandler.outstandingBytes;
         }
+        stats.recordAckDeadlineExtensions(job.ackHandlers.size(), extendedBytes);
+        modifyAckDeadlinesToSend.add(pendingModAckDeadline);
+        renewJobs.add(job);
+      }
+      for (ExtensionJob job : renewJobs) {
+        outstandingAckHandlers.add(job, job.expiration.getMillis());
+      }
+      if (!outstandingAckHandlers.isEmpty()) {
+        nextScheduleExpiration = new Instant(outstandingAckHandlers.nextExpirationMillis());
       }
 
       processOutstandingAckOperations(modifyAckDeadlinesToSend);
@@ -492,33 +572,48 @@ class MessageDispatcher {
 
   private void processOutstandingAckOperations(
       List<PendingModifyAckDeadline> ackDeadlineExtensions) {
-    List<PendingModifyAckDeadline> modifyAckDeadlinesToSend =
-        Lists.newArrayList(ackDeadlineExtensions);
-    List<String> acksToSend = new ArrayList<>(pendingAcks.size());
-    synchronized (pendingAcks) {
-      if (!pendingAcks.isEmpty()) {
-        try {
-          acksToSend = new ArrayList<>(pendingAcks);
-          logger.log(Level.FINER, "Sending {0} acks", acksToSend.size());
-        } finally {
-          pendingAcks.clear();
-        }
+    List<String> acksToSend = drainAckReplies(pendingAcks);
+    List<String> nacksToSend = drainAckReplies(pendingNacks);
+    if (acksToSend.isEmpty() && nacksToSend.isEmpty() && ackDeadlineExtensions.isEmpty()) {
+      return;
+    }
+    logger.log(
+        Level.FINER,
+        "Sending {0} acks and {1} nacks",
+        new Object[] {acksToSend.size(), nacksToSend.size()});
+
+    // Coalesce the modifications to the same deadline, so that they share requests.
+    Map<Integer, PendingModifyAckDeadline> modifyAckDeadlines = new LinkedHashMap<>();
+    for (PendingModifyAckDeadline extension : ackDeadlineExtensions) {
+      PendingModifyAckDeadline modifyAckDeadline =
+          modifyAckDeadlines.get(extension.deadlineExtensionSeconds);
+      if (modifyAckDeadline == null) {
+        modifyAckDeadlines.put(extension.deadlineExtensionSeconds, extension);
+      } else {
+        modifyAckDeadline.ackIds.addAll(extension.ackIds);
       }
     }
-    PendingModifyAckDeadline nacksToSend = new PendingModifyAckDeadline(0);
-    synchronized (pendingNacks) {
-      if (!pendingNacks.isEmpty()) {
-        try {
-          for (String ackId : pendingNacks) {
-            nacksToSend.addAckId(ackId);
-          }
-          logger.log(Level.FINER, "Sending {0} nacks", pendingNacks.size());
-        } finally {
-          pendingNacks.clear();
-        }
-        modifyAckDeadlinesToSend.add(nacksToSend);
+    if (!nacksToSend.isEmpty()) {
+      PendingModifyAckDeadline nacks = modifyAckDeadlines.get(0);
+      if (nacks == null) {
+        nacks = new PendingModifyAckDeadline(0);
+        modifyAckDeadlines.put(0, nacks);
       }
+      nacks.ackIds.addAll(nacksToSend);
+    }
+    ackProcessor.sendAckOperations(
+        acksToSend, new ArrayList<PendingModifyAckDeadline>(modifyAckDeadlines.values()));
+  }
+
+  private List<String> drainAckReplies(Queue<String> pendingReplies) {
+    List<String> replies = new ArrayList<>();
+    long replyBytes = 0;
+    for (String ackId = pendingReplies.poll(); ackId != null; ackId = pendingReplies.poll()) {
+      replies.add(ackId);
+      replyBytes += ackId.length();
     }
-    ackProcessor.sendAckOperations(acksToSend, modifyAckDeadlinesToSend);
+    pendingAckReplies.addAndGet(-replies.size());
+    pendingAckReplyBytes.addAndGet(-replyBytes);
+    return replies;
   }
 }
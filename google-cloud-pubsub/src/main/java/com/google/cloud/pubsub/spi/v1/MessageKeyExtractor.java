@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.pubsub.v1.PubsubMessage;
+
+/**
+ * This interface can be implemented by users of {@link Subscriber} to deliver the messages that
+ * share a key one at a time. See {@link Subscriber.Builder#setMessageKeyExtractor}.
+ *
+ * <p>Example of keying messages by one of their attributes:
+ * <pre> {@code
+ * MessageKeyExtractor extractor = new MessageKeyExtractor() {
+ *   public String extractKey(PubsubMessage message) {
+ *     return message.getAttributesMap().get("entity_id");
+ *   }
+ * };
+ * }</pre>
+ */
+public interface MessageKeyExtractor {
+  /**
+   * Returns the key of the {@code message}, or {@code null} if the message can be delivered
+   * concurrently with any other message. This method is called on the thread that receives the
+   * messages, so it should be fast and must not block.
+   */
+  String extractKey(PubsubMessage message);
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs messages into a single envelope message, and unpacks them.
+ *
+ * <p>The data of an envelope is the encoding, by a {@link PayloadCodec}, of the packed messages in
+ * the protocol buffers length-delimited format. Envelopes are identified by the {@link
+ * #PACKED_MESSAGE_COUNT_ATTRIBUTE} attribute, and the name of their codec is in the {@link
+ * #PACKED_MESSAGE_CODEC_ATTRIBUTE} attribute.
+ */
+final class MessagePacker {
+  static final String PACKED_MESSAGE_COUNT_ATTRIBUTE = "googclient_packedmessagecount";
+  static final String PACKED_MESSAGE_CODEC_ATTRIBUTE = "googclient_packedmessagecodec";
+
+  private MessagePacker() {}
+
+  /** Returns an envelope for {@code messages}, whose payload is encoded by {@code codec}. */
+  static PubsubMessage pack(List<PubsubMessage> messages, PayloadCodec codec) throws IOException {
+    ByteString.Output payload = ByteString.newOutput();
+    for (PubsubMessage message : messages) {
+      message.writeDelimitedTo(payload);
+    }
+    return PubsubMessage.newBuilder()
+        .setData(codec.encode(payload.toByteString()))
+        .putAttributes(PACKED_MESSAGE_COUNT_ATTRIBUTE, Integer.toString(messages.size()))
+        .putAttributes(PACKED_MESSAGE_CODEC_ATTRIBUTE, codec.getName())
+        .build();
+  }
+
+  /** Returns whether {@code message} is an envelope created by {@link #pack}. */
+  static boolean isPacked(PubsubMessage message) {
+    return message.getAttributesMap().containsKey(PACKED_MESSAGE_COUNT_ATTRIBUTE);
+  }
+
+  /**
+   * Returns the messages packed in {@code envelope}, decoding its payload with the codec of {@code
+   * codecs} named by the envelope.
+   *
+   * @throws IOException if the codec of the envelope is unknown, or the envelope is malformed
+   */
+  static List<PubsubMessage> unpack(PubsubMessage envelope, Map<String, PayloadCodec> codecs)
+      throws IOException {
+    Map<String, String> attributes = envelope.getAttributesMap();
+    String codecName = attributes.get(PACKED_MESSAGE_CODEC_ATTRIBUTE);
+    PayloadCodec codec = codecs.get(codecName);
+    if (codec == null) {
+      throw new IOException("Unknown codec of packed messages: " + codecName);
+    }
+    int count;
+    try {
+      count = Integer.parseInt(attributes.get(PACKED_MESSAGE_COUNT_ATTRIBUTE));
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed count of packed messages", e);
+    }
+    ByteString decoded = codec.decode(envelope.getData());
+    // Every packed message takes at least its one-byte length prefix.
+    if (count <= 0 || count > decoded.size()) {
+      throw new IOException("Malformed count of packed messages: " + count);
+    }
+    List<PubsubMessage> messages = new ArrayList<>();
+    InputStream payload = decoded.newInput();
+    for (int i = 0; i < count; i++) {
+      PubsubMessage message = PubsubMessage.parseDelimitedFrom(payload);
+      if (message == null) {
+        throw new IOException(
+            String.format("Expected %d packed messages, found %d", count, messages.size()));
+      }
+      // The messages are published with the envelope.
+      messages.add(
+          message
+              .toBuilder()
+              .setMessageId(envelope.getMessageId() + ":" + i)
+              .setPublishTime(envelope.getPublishTime())
+              .build());
+    }
+    return messages;
+  }
+}
@@ -18,21 +18,24 @@ package com.google.cloud.pubsub.spi.v1;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A barrier kind of object that helps to keep track and synchronously wait on pending messages.
  */
 class MessageWaiter {
-  private int pendingMessages;
+  // updated without locking, the monitor is only used to wait for and signal the count reaching 0
+  private final AtomicInteger pendingMessages;
 
   MessageWaiter() {
-    pendingMessages = 0;
+    pendingMessages = new AtomicInteger();
   }
 
-  public synchronized void incrementPendingMessages(int messages) {
-    this.pendingMessages += messages;
-    if (pendingMessages == 0) {
-      notifyAll();
+  public void incrementPendingMessages(int messages) {
+    if (pendingMessages.addAndGet(messages) == 0) {
+      synchronized (this) {
+        notifyAll();
+      }
     }
   }
 
@@ -44,7 +47,7 @@ class MessageWaiter {
   synchronized void waitNoMessages(AtomicBoolean waitReached) {
     boolean interrupted = false;
     try {
-      while (pendingMessages > 0) {
+      while (pendingMessages.get() > 0) {
         try {
           waitReached.set(true);
           wait();
@@ -62,6 +65,6 @@ class MessageWaiter {
   
   @VisibleForTesting
   public int pendingMessages() {
-    return pendingMessages;
+    return pendingMessages.get();
   }
 }
\ No newline at end of file
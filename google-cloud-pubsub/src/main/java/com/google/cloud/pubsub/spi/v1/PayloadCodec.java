@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+
+/**
+ * Encodes the payload of packed messages, for instance to compress it. See {@link
+ * Publisher.Builder#setMessagePacking} and {@link PayloadCodecs} for the built-in codecs.
+ */
+public interface PayloadCodec {
+  /**
+   * Returns the name of the codec. It is sent along with the encoded payload, so that subscribers
+   * can find the codec to decode it.
+   */
+  String getName();
+
+  /** Encodes {@code payload}. */
+  ByteString encode(ByteString payload) throws IOException;
+
+  /** Decodes a payload encoded by {@link #encode}. */
+  ByteString decode(ByteString encodedPayload) throws IOException;
+}
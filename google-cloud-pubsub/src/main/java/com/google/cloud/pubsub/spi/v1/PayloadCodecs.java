@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The built-in {@link PayloadCodec}s. */
+public final class PayloadCodecs {
+  private static final PayloadCodec IDENTITY =
+      new PayloadCodec() {
+        @Override
+        public String getName() {
+          return "identity";
+        }
+
+        @Override
+        public ByteString encode(ByteString payload) {
+          return payload;
+        }
+
+        @Override
+        public ByteString decode(ByteString encodedPayload) {
+          return encodedPayload;
+        }
+      };
+
+  private static final PayloadCodec GZIP =
+      new StreamCodec("gzip") {
+        @Override
+        OutputStream newEncodingStream(OutputStream out) throws IOException {
+          return new GZIPOutputStream(out);
+        }
+
+        @Override
+        InputStream newDecodingStream(InputStream in) throws IOException {
+          return new GZIPInputStream(in);
+        }
+      };
+
+  private static final PayloadCodec DEFLATE =
+      new StreamCodec("deflate") {
+        @Override
+        OutputStream newEncodingStream(OutputStream out) {
+          return new DeflaterOutputStream(out);
+        }
+
+        @Override
+        InputStream newDecodingStream(InputStream in) {
+          return new InflaterInputStream(in);
+        }
+      };
+
+  private PayloadCodecs() {}
+
+  /** Returns a codec that leaves payloads unchanged. */
+  public static PayloadCodec identity() {
+    return IDENTITY;
+  }
+
+  /** Returns a codec that compresses payloads in the gzip format. */
+  public static PayloadCodec gzip() {
+    return GZIP;
+  }
+
+  /** Returns a codec that compresses payloads in the zlib format, with the deflate algorithm. */
+  public static PayloadCodec deflate() {
+    return DEFLATE;
+  }
+
+  static List<PayloadCodec> builtInCodecs() {
+    return ImmutableList.of(IDENTITY, GZIP, DEFLATE);
+  }
+
+  private abstract static class StreamCodec implements PayloadCodec {
+    private final String name;
+
+    StreamCodec(String name) {
+      this.name = name;
+    }
+
+    abstract OutputStream newEncodingStream(OutputStream out) throws IOException;
+
+    abstract InputStream newDecodingStream(InputStream in) throws IOException;
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public ByteString encode(ByteString payload) throws IOException {
+      ByteString.Output out = ByteString.newOutput(payload.size() / 2 + 64);
+      try (OutputStream encodingStream = newEncodingStream(out)) {
+        payload.writeTo(encodingStream);
+      }
+      return out.toByteString();
+    }
+
+    @Override
+    public ByteString decode(ByteString encodedPayload) throws IOException {
+      try (InputStream decodingStream = newDecodingStream(encodedPayload.newInput())) {
+        return ByteString.readFrom(decodingStream);
+      }
+    }
+  }
+}
@@ -18,8 +18,8 @@ package com.google.cloud.pubsub.spi.v1;
 
 import com.google.api.core.AbstractApiService;
 import com.google.api.core.ApiClock;
+import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.core.FlowController;
-import com.google.api.stats.Distribution;
 import com.google.cloud.pubsub.spi.v1.MessageDispatcher.AckProcessor;
 import com.google.cloud.pubsub.spi.v1.MessageDispatcher.PendingModifyAckDeadline;
 import com.google.common.collect.Lists;
@@ -65,7 +65,10 @@ final class PollingSubscriberConnection extends AbstractApiService implements Ac
       MessageReceiver receiver,
       Duration ackExpirationPadding,
       Duration maxAckExtensionPeriod,
-      Distribution ackLatencyDistribution,
+      SubscriberStatsRecorder stats,
+      BatchingSettings ackBatchingSettings,
+      KeyedDispatcher keyedDispatcher,
+      ReceivedMessageBatcher messageBatcher,
       Channel channel,
       FlowController flowController,
       ScheduledExecutorService executor,
@@ -79,7 +82,10 @@ final class PollingSubscriberConnection extends AbstractApiService implements Ac
             this,
             ackExpirationPadding,
             maxAckExtensionPeriod,
-            ackLatencyDistribution,
+            stats,
+            ackBatchingSettings,
+            keyedDispatcher,
+            messageBatcher,
             flowController,
             executor,
             clock);
@@ -40,10 +40,13 @@ import com.google.pubsub.v1.TopicName;
 import io.grpc.ManagedChannel;
 import io.grpc.Status;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
@@ -53,6 +56,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import org.joda.time.Duration;
 
 /**
@@ -65,7 +69,8 @@ import org.joda.time.Duration;
  * <p>With customizable options that control:
  *
  * <ul>
- *   <li>Message batching: such as number of messages or max batch byte size.
+ *   <li>Message batching: such as number of messages or max batch byte size, either fixed or
+ *       adapted to the observed traffic.
  *   <li>Flow control: such as max outstanding messages and maximum outstanding bytes.
  *   <li>Retries: such as the maximum duration of retries for a failing batch of messages.
  * </ul>
@@ -80,16 +85,18 @@ public class Publisher {
   private final String cachedTopicNameString;
 
   private final BatchingSettings batchingSettings;
+  // Null unless the batching settings are tuned from the observed traffic.
+  private final AdaptiveBatchingPolicy adaptiveBatching;
   private final RetrySettings retrySettings;
+  // Null unless the messages of each batch are packed into a single message.
+  private final PayloadCodec messagePackingCodec;
   private final LongRandom longRandom;
 
   private final FlowControlSettings flowControlSettings;
 
-  private final Lock messagesBatchLock;
-  private List<OutstandingPublish> messagesBatch;
-  private int batchedBytes;
-
-  private final AtomicBoolean activeAlarm;
+  private final BatchShard[] batchShards;
+  private final ConcurrentMap<String, OrderedBatchShard> orderedShards =
+      new ConcurrentHashMap<>();
 
   private final FlowController flowController;
   private final ManagedChannel[] channels;
@@ -99,7 +106,11 @@ public class Publisher {
   private final AtomicBoolean shutdown;
   private final List<AutoCloseable> closeables = new ArrayList<>();
   private final MessageWaiter messagesWaiter;
-  private ScheduledFuture<?> currentAlarmFuture;
+
+  private final PublisherStatsRecorder stats = new PublisherStatsRecorder();
+  private final StatsExporter<PublisherStats> statsExporter;
+  private final ScheduledFuture<?> statsExportFuture;
+  private final ScheduledFuture<?> batchingAdjustmentFuture;
 
   /** The maximum number of messages in one request. Defined by the API. */
   public static long getApiMaxRequestElementCount() {
@@ -117,14 +128,12 @@ public class Publisher {
 
     this.batchingSettings = builder.batchingSettings;
     this.retrySettings = builder.retrySettings;
+    this.messagePackingCodec = builder.messagePackingCodec;
     this.longRandom = builder.longRandom;
 
     flowControlSettings = builder.flowControlSettings;
     this.flowController = new FlowController(flowControlSettings);
 
-    messagesBatch = new LinkedList<>();
-    messagesBatchLock = new ReentrantLock();
-    activeAlarm = new AtomicBoolean(false);
     executor = builder.executorProvider.getExecutor();
     if (builder.executorProvider.shouldAutoClose()) {
       closeables.add(
@@ -154,8 +163,52 @@ public class Publisher {
           });
     }
     channelIndex = new AtomicRoundRobin(channels.length);
+    batchShards = new BatchShard[channels.length];
+    for (int i = 0; i < batchShards.length; i++) {
+      batchShards[i] = new BatchShard();
+    }
     shutdown = new AtomicBoolean(false);
     messagesWaiter = new MessageWaiter();
+    statsExporter = builder.statsExporter;
+    if (statsExporter != null) {
+      long exportPeriodMs = builder.statsExportPeriod.getMillis();
+      statsExportFuture =
+          executor.scheduleAtFixedRate(
+              new Runnable() {
+                @Override
+                public void run() {
+                  exportStats();
+                }
+              },
+              exportPeriodMs,
+              exportPeriodMs,
+              TimeUnit.MILLISECONDS);
+    } else {
+      statsExportFuture = null;
+    }
+    if (builder.minBatchingSettings != null) {
+      adaptiveBatching =
+          new AdaptiveBatchingPolicy(
+              batchingSettings,
+              builder.minBatchingSettings,
+              builder.maxBatchingSettings,
+              2 * batchShards.length);
+      final long adjustmentPeriodMs = AdaptiveBatchingPolicy.ADJUSTMENT_PERIOD.getMillis();
+      batchingAdjustmentFuture =
+          executor.scheduleAtFixedRate(
+              new Runnable() {
+                @Override
+                public void run() {
+                  adaptiveBatching.adjust(adjustmentPeriodMs);
+                }
+              },
+              adjustmentPeriodMs,
+              adjustmentPeriodMs,
+              TimeUnit.MILLISECONDS);
+    } else {
+      adaptiveBatching = null;
+      batchingAdjustmentFuture = null;
+    }
   }
 
   /** Topic which the publisher publishes to. */
@@ -163,6 +216,14 @@ public class Publisher {
     return topicName;
   }
 
+  /**
+   * Returns a snapshot of the statistics of this publisher. Taking a snapshot is cheap and does not
+   * block publishing.
+   */
+  public PublisherStats getStats() {
+    return stats.getStats(getCurrentBatchingSettings());
+  }
+
   /**
    * Schedules the publishing of a message. The publishing of the message may occur immediately or
    * be delayed based on the publisher batching options.
@@ -194,130 +255,444 @@ public class Publisher {
    * @return the message ID wrapped in a future.
    */
   public ApiFuture<String> publish(PubsubMessage message) {
+    // Spread the publishing threads over the shards, so that they don't contend on a single lock.
+    return publishWithKey(message, null);
+  }
+
+  /**
+   * Schedules the publishing of a message with an ordering key. Messages with the same ordering
+   * key are published in the order in which this method is called for them, while messages with
+   * different ordering keys are batched and published independently of each other.
+   *
+   * <p>Messages with an ordering key are batched according to the same batching options as
+   * messages without one, but only with messages of the same key, and only one batch per ordering
+   * key is sent at any time. A batch is retried according to the publisher retry options before
+   * the next batch for its key is sent.
+   *
+   * <p>If a batch fails to be published, the messages of that key waiting to be sent are failed as
+   * well, and further publish calls for that key fail immediately with an {@link
+   * IllegalStateException} until {@link #resumePublish(String)} is called for the key. This
+   * ensures that no message is published after a message that precedes it failed to publish.
+   *
+   * <p>The ordering is provided by this publisher only: the ordering key is not sent to the
+   * service, and messages published by other publishers are not ordered with these messages.
+   *
+   * <p>Example of publishing messages in order.
+   *
+   * <pre>{@code
+   * String orderingKey = "my_key";
+   * ApiFuture<String> first = publisher.publish(firstMessage, orderingKey);
+   * ApiFuture<String> second = publisher.publish(secondMessage, orderingKey);
+   * }</pre>
+   *
+   * @param message the message to publish.
+   * @param orderingKey the key identifying the sequence of messages to publish in order.
+   * @return the message ID wrapped in a future.
+   */
+  public ApiFuture<String> publish(PubsubMessage message, String orderingKey) {
+    return publishWithKey(message, Preconditions.checkNotNull(orderingKey));
+  }
+
+  /**
+   * Resumes publishing of messages with the given ordering key, after a failure to publish one of
+   * them. Calling this method for a key whose publishing did not fail has no effect.
+   *
+   * @param orderingKey the key for which to resume publishing.
+   */
+  public void resumePublish(String orderingKey) {
+    OrderedBatchShard shard = orderedShards.get(orderingKey);
+    if (shard != null) {
+      shard.resume();
+    }
+  }
+
+  private ApiFuture<String> publishWithKey(PubsubMessage message, @Nullable String orderingKey) {
     if (shutdown.get()) {
       throw new IllegalStateException("Cannot publish on a shut-down publisher.");
     }
 
     final int messageSize = message.getSerializedSize();
+    long reserveStartNanos = System.nanoTime();
     try {
       flowController.reserve(1, messageSize);
     } catch (FlowController.FlowControlException e) {
       return ApiFutures.immediateFailedFuture(e);
     }
-    OutstandingBatch batchToSend = null;
+    stats.recordSent(messageSize, System.nanoTime() - reserveStartNanos);
+    int shardIndex =
+        orderingKey == null
+            ? (int) (Thread.currentThread().getId() % batchShards.length)
+            : (orderingKey.hashCode() & Integer.MAX_VALUE) % batchShards.length;
+    if (adaptiveBatching != null) {
+      // The ordering keys are tracked as a second set of shards, so that the thresholds are not
+      // sized for fewer shards than the ones receiving messages.
+      adaptiveBatching.recordArrival(
+          orderingKey == null ? shardIndex : batchShards.length + shardIndex, messageSize);
+    }
     SettableApiFuture<String> publishResult = SettableApiFuture.<String>create();
     final OutstandingPublish outstandingPublish = new OutstandingPublish(publishResult, message);
-    messagesBatchLock.lock();
-    try {
-      // Check if the next message makes the batch exceed the current batch byte size.
-      if (!messagesBatch.isEmpty()
-          && hasBatchingBytes()
-          && batchedBytes + messageSize >= getMaxBatchBytes()) {
-        batchToSend = new OutstandingBatch(messagesBatch, batchedBytes);
-        messagesBatch = new LinkedList<>();
-        batchedBytes = 0;
+    // Count the message before it can be sent by another thread's alarm or batch.
+    messagesWaiter.incrementPendingMessages(1);
+    // The shard of an ordering key is only looked up once the message is admitted, so that no
+    // shard is created for a message rejected by flow control.
+    BatchShard shard =
+        orderingKey == null ? batchShards[shardIndex] : getOrderedShard(orderingKey);
+    List<OutstandingBatch> batchesToSend = shard.add(outstandingPublish, messageSize);
+
+    if (!batchesToSend.isEmpty()) {
+      logger.log(Level.FINER, "Scheduling batches for immediate sending.");
+      shard.dispatch(batchesToSend);
+    }
+
+    return publishResult;
+  }
+
+  private OrderedBatchShard getOrderedShard(String orderingKey) {
+    OrderedBatchShard shard = orderedShards.get(orderingKey);
+    if (shard == null) {
+      OrderedBatchShard newShard = new OrderedBatchShard(orderingKey);
+      shard = orderedShards.putIfAbsent(orderingKey, newShard);
+      if (shard == null) {
+        shard = newShard;
       }
+    }
+    return shard;
+  }
+
+  @VisibleForTesting
+  int getOrderedShardCount() {
+    return orderedShards.size();
+  }
+
+  /**
+   * A shard of the messages waiting to be sent. Each shard has its own lock and delay alarm, and
+   * cuts batches according to the current {@link BatchingSettings}, so that a message is never
+   * batched for longer than the delay threshold and no batch exceeds the element count or byte
+   * thresholds.
+   */
+  private class BatchShard {
+    final Lock lock = new ReentrantLock();
+    private final AtomicBoolean activeAlarm = new AtomicBoolean(false);
+    private List<OutstandingPublish> messagesBatch = new ArrayList<>();
+    private int batchedBytes;
+    private ScheduledFuture<?> currentAlarmFuture;
 
-      // Border case if the message to send is greater equals to the max batch size then can't be
-      // included in the current batch and instead sent immediately.
-      if (!hasBatchingBytes() || messageSize < getMaxBatchBytes()) {
-        batchedBytes += messageSize;
-        messagesBatch.add(outstandingPublish);
-
-        // If after adding the message we have reached the batch max messages then we have a batch
-        // to send.
-        if (messagesBatch.size() == getBatchingSettings().getElementCountThreshold()) {
-          batchToSend = new OutstandingBatch(messagesBatch, batchedBytes);
-          messagesBatch = new LinkedList<>();
-          batchedBytes = 0;
+    /**
+     * Adds a message to the shard, returning the batches to send if the message completes one. A
+     * message too large for any batch is returned in its own batch.
+     */
+    List<OutstandingBatch> add(OutstandingPublish outstandingPublish, int messageSize) {
+      List<OutstandingBatch> batchesToSend = new ArrayList<>(2);
+      BatchingSettings currentSettings = getCurrentBatchingSettings();
+      long maxBatchBytes = currentSettings.getRequestByteThreshold();
+      lock.lock();
+      try {
+        // Check if the next message makes the batch exceed the current batch byte size.
+        if (!messagesBatch.isEmpty()
+            && maxBatchBytes > 0
+            && batchedBytes + messageSize >= maxBatchBytes) {
+          batchesToSend.add(takeBatch());
+        }
+
+        // Border case if the message to send is greater equals to the max batch size then can't
+        // be included in the current batch and instead sent immediately.
+        if (maxBatchBytes <= 0 || messageSize < maxBatchBytes) {
+          batchedBytes += messageSize;
+          messagesBatch.add(outstandingPublish);
+
+          // If after adding the message we have reached the batch max messages then we have a
+          // batch to send. The threshold may have been lowered since the batch was started.
+          if (messagesBatch.size() >= currentSettings.getElementCountThreshold()) {
+            batchesToSend.add(takeBatch());
+          }
+        } else {
+          logger.log(
+              Level.FINER, "Message exceeds the max batch bytes, scheduling it for immediate send.");
+          batchesToSend.add(newBatch(ImmutableList.of(outstandingPublish), messageSize));
         }
+        // Setup the next duration based delivery alarm if there are messages batched.
+        if (!messagesBatch.isEmpty()) {
+          setupDurationBasedPublishAlarm();
+        } else if (currentAlarmFuture != null) {
+          logger.log(Level.FINER, "Cancelling alarm, no more messages");
+          cancelAlarm();
+        }
+      } finally {
+        lock.unlock();
+      }
+      return batchesToSend;
+    }
+
+    /** Creates a batch of messages cut from this shard. Called with the lock held. */
+    OutstandingBatch newBatch(List<OutstandingPublish> outstandingPublishes, int batchSizeBytes) {
+      return new OutstandingBatch(this, outstandingPublishes, batchSizeBytes);
+    }
+
+    /** Sends batches cut from this shard. Called without the lock held. */
+    void dispatch(List<OutstandingBatch> batches) {
+      for (final OutstandingBatch batch : batches) {
+        executor.execute(
+            new Runnable() {
+              @Override
+              public void run() {
+                publishOutstandingBatch(batch);
+              }
+            });
       }
-      // Setup the next duration based delivery alarm if there are messages batched.
-      if (!messagesBatch.isEmpty()) {
-        setupDurationBasedPublishAlarm();
-      } else if (currentAlarmFuture != null) {
-        logger.log(Level.FINER, "Cancelling alarm, no more messages");
-        if (activeAlarm.getAndSet(false)) {
-          currentAlarmFuture.cancel(false);
+    }
+
+    /** Invoked when a batch cut from this shard was published. */
+    void onBatchPublished(OutstandingBatch batch) {}
+
+    /** Invoked when a batch cut from this shard failed to publish and won't be retried. */
+    void onBatchFailed(OutstandingBatch batch, Throwable t) {}
+
+    private OutstandingBatch takeBatch() {
+      OutstandingBatch batch = newBatch(messagesBatch, batchedBytes);
+      messagesBatch = new ArrayList<>();
+      batchedBytes = 0;
+      return batch;
+    }
+
+    /** Returns whether messages are waiting to be batched. Called with the lock held. */
+    boolean hasBatchedMessages() {
+      return !messagesBatch.isEmpty();
+    }
+
+    /** Removes the messages waiting to be batched. Called with the lock held. */
+    List<OutstandingPublish> drainBatch() {
+      List<OutstandingPublish> drained = messagesBatch;
+      messagesBatch = new ArrayList<>();
+      batchedBytes = 0;
+      return drained;
+    }
+
+    private void setupDurationBasedPublishAlarm() {
+      if (!activeAlarm.getAndSet(true)) {
+        long delayThresholdMs = getCurrentBatchingSettings().getDelayThreshold().getMillis();
+        logger.log(Level.FINER, "Setting up alarm for the next {0} ms.", delayThresholdMs);
+        currentAlarmFuture =
+            executor.schedule(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    logger.log(Level.FINER, "Sending messages based on schedule.");
+                    activeAlarm.getAndSet(false);
+                    publishAllOutstanding();
+                  }
+                },
+                delayThresholdMs,
+                TimeUnit.MILLISECONDS);
+      }
+    }
+
+    void cancelAlarm() {
+      if (currentAlarmFuture != null && activeAlarm.getAndSet(false)) {
+        currentAlarmFuture.cancel(false);
+      }
+    }
+
+    void publishAllOutstanding() {
+      OutstandingBatch batchToSend;
+      lock.lock();
+      try {
+        if (messagesBatch.isEmpty()) {
+          return;
         }
+        batchToSend = takeBatch();
+      } finally {
+        lock.unlock();
       }
-    } finally {
-      messagesBatchLock.unlock();
+      dispatch(ImmutableList.of(batchToSend));
     }
+  }
 
-    messagesWaiter.incrementPendingMessages(1);
+  /**
+   * A shard of the messages of one ordering key. Batches are queued as they are cut, in the order
+   * of the publish calls, and sent one at a time: the next batch is only sent once the previous
+   * one was published.
+   *
+   * <p>A shard is removed from {@link #orderedShards} once it holds no message, so that the
+   * publisher does not keep a shard for every ordering key it has seen. A shard whose key failed
+   * is kept until the key is resumed. A message added to a removed shard is handed to the current
+   * shard of its key.
+   */
+  private final class OrderedBatchShard extends BatchShard {
+    private final String orderingKey;
+    // Guarded by lock.
+    private final Deque<OutstandingBatch> queuedBatches = new ArrayDeque<>();
+    private boolean batchInFlight;
+    private Throwable failure;
+    private boolean removed;
+
+    OrderedBatchShard(String orderingKey) {
+      this.orderingKey = orderingKey;
+    }
 
-    if (batchToSend != null) {
-      logger.log(Level.FINER, "Scheduling a batch for immediate sending.");
-      final OutstandingBatch finalBatchToSend = batchToSend;
-      executor.execute(
-          new Runnable() {
-            @Override
-            public void run() {
-              publishOutstandingBatch(finalBatchToSend);
-            }
-          });
+    @Override
+    List<OutstandingBatch> add(OutstandingPublish outstandingPublish, int messageSize) {
+      Throwable previousFailure;
+      lock.lock();
+      try {
+        previousFailure = failure;
+        if (!removed && previousFailure == null) {
+          return super.add(outstandingPublish, messageSize);
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (previousFailure == null) {
+        OrderedBatchShard currentShard = getOrderedShard(orderingKey);
+        List<OutstandingBatch> batchesToSend = currentShard.add(outstandingPublish, messageSize);
+        if (!batchesToSend.isEmpty()) {
+          currentShard.dispatch(batchesToSend);
+        }
+        return ImmutableList.of();
+      }
+      failOutstandingPublishes(
+          ImmutableList.of(outstandingPublish), messageSize, keyFailedException(previousFailure));
+      return ImmutableList.of();
+    }
+
+    @Override
+    OutstandingBatch newBatch(List<OutstandingPublish> outstandingPublishes, int batchSizeBytes) {
+      // Queue the batch while holding the lock that cut it, so that batches keep their order.
+      OutstandingBatch batch = super.newBatch(outstandingPublishes, batchSizeBytes);
+      queuedBatches.add(batch);
+      return batch;
     }
 
-    // If the message is over the size limit, it was not added to the pending messages and it will
-    // be sent in its own batch immediately.
-    if (hasBatchingBytes() && messageSize >= getMaxBatchBytes()) {
-      logger.log(
-          Level.FINER, "Message exceeds the max batch bytes, scheduling it for immediate send.");
+    @Override
+    void dispatch(List<OutstandingBatch> batches) {
+      sendNextBatch();
+    }
+
+    @Override
+    void onBatchPublished(OutstandingBatch batch) {
+      lock.lock();
+      try {
+        batchInFlight = false;
+      } finally {
+        lock.unlock();
+      }
+      sendNextBatch();
+      removeIfIdle();
+    }
+
+    @Override
+    void onBatchFailed(OutstandingBatch batch, Throwable t) {
+      List<OutstandingPublish> failedPublishes = new ArrayList<>();
+      int failedBytes = 0;
+      lock.lock();
+      try {
+        batchInFlight = false;
+        failure = t;
+        cancelAlarm();
+        for (OutstandingBatch queuedBatch : queuedBatches) {
+          failedPublishes.addAll(queuedBatch.outstandingPublishes);
+          failedBytes += queuedBatch.batchSizeBytes;
+        }
+        queuedBatches.clear();
+        for (OutstandingPublish outstandingPublish : drainBatch()) {
+          failedPublishes.add(outstandingPublish);
+          failedBytes += outstandingPublish.message.getSerializedSize();
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (!failedPublishes.isEmpty()) {
+        failOutstandingPublishes(failedPublishes, failedBytes, keyFailedException(t));
+      }
+    }
+
+    void resume() {
+      lock.lock();
+      try {
+        failure = null;
+      } finally {
+        lock.unlock();
+      }
+      removeIfIdle();
+    }
+
+    private void removeIfIdle() {
+      lock.lock();
+      try {
+        if (removed
+            || batchInFlight
+            || failure != null
+            || !queuedBatches.isEmpty()
+            || hasBatchedMessages()) {
+          return;
+        }
+        removed = true;
+      } finally {
+        lock.unlock();
+      }
+      orderedShards.remove(orderingKey, this);
+    }
+
+    private void sendNextBatch() {
+      final OutstandingBatch nextBatch;
+      lock.lock();
+      try {
+        if (batchInFlight || failure != null || queuedBatches.isEmpty()) {
+          return;
+        }
+        nextBatch = queuedBatches.poll();
+        batchInFlight = true;
+      } finally {
+        lock.unlock();
+      }
       executor.execute(
           new Runnable() {
             @Override
             public void run() {
-              publishOutstandingBatch(
-                  new OutstandingBatch(ImmutableList.of(outstandingPublish), messageSize));
+              publishOutstandingBatch(nextBatch);
             }
           });
     }
 
-    return publishResult;
-  }
-
-  private void setupDurationBasedPublishAlarm() {
-    if (!activeAlarm.getAndSet(true)) {
-      long delayThresholdMs = getBatchingSettings().getDelayThreshold().getMillis();
-      logger.log(Level.FINER, "Setting up alarm for the next {0} ms.", delayThresholdMs);
-      currentAlarmFuture =
-          executor.schedule(
-              new Runnable() {
-                @Override
-                public void run() {
-                  logger.log(Level.FINER, "Sending messages based on schedule.");
-                  activeAlarm.getAndSet(false);
-                  publishAllOutstanding();
-                }
-              },
-              delayThresholdMs,
-              TimeUnit.MILLISECONDS);
+    private IllegalStateException keyFailedException(Throwable cause) {
+      return new IllegalStateException(
+          "A message with ordering key "
+              + orderingKey
+              + " failed to publish, call resumePublish to publish messages with this key.",
+          cause);
     }
   }
 
-  private void publishAllOutstanding() {
-    messagesBatchLock.lock();
-    OutstandingBatch batchToSend;
+  private void failOutstandingPublishes(
+      List<OutstandingPublish> outstandingPublishes, int bytes, Throwable t) {
     try {
-      if (messagesBatch.isEmpty()) {
-        return;
+      for (OutstandingPublish outstandingPublish : outstandingPublishes) {
+        outstandingPublish.publishResult.setException(t);
       }
-      batchToSend = new OutstandingBatch(messagesBatch, batchedBytes);
-      messagesBatch = new LinkedList<>();
-      batchedBytes = 0;
     } finally {
-      messagesBatchLock.unlock();
+      flowController.release(outstandingPublishes.size(), bytes);
+      stats.recordFailed(outstandingPublishes.size(), bytes);
+      messagesWaiter.incrementPendingMessages(-outstandingPublishes.size());
     }
-    publishOutstandingBatch(batchToSend);
   }
 
   private void publishOutstandingBatch(final OutstandingBatch outstandingBatch) {
     PublishRequest.Builder publishRequest = PublishRequest.newBuilder();
     publishRequest.setTopic(cachedTopicNameString);
-    for (OutstandingPublish outstandingPublish : outstandingBatch.outstandingPublishes) {
-      publishRequest.addMessages(outstandingPublish.message);
+    if (messagePackingCodec == null) {
+      for (OutstandingPublish outstandingPublish : outstandingBatch.outstandingPublishes) {
+        publishRequest.addMessages(outstandingPublish.message);
+      }
+    } else {
+      try {
+        publishRequest.addMessages(outstandingBatch.getEnvelope(messagePackingCodec));
+      } catch (IOException | RuntimeException e) {
+        outstandingBatch.shard.onBatchFailed(outstandingBatch, e);
+        failOutstandingPublishes(
+            outstandingBatch.outstandingPublishes, outstandingBatch.batchSizeBytes, e);
+        return;
+      }
     }
+    final int expectedMessageIds = publishRequest.getMessagesCount();
 
     int currentChannel = channelIndex.next();
 
@@ -327,6 +702,10 @@ public class Publisher {
                 * Math.pow(retrySettings.getRpcTimeoutMultiplier(), outstandingBatch.attempt - 1));
     rpcTimeoutMs = Math.min(rpcTimeoutMs, retrySettings.getMaxRpcTimeout().getMillis());
 
+    if (outstandingBatch.attempt == 1) {
+      stats.recordBatch(outstandingBatch.size());
+    }
+    final long requestStartNanos = System.nanoTime();
     Futures.addCallback(
         PublisherGrpc.newFutureStub(channels[currentChannel])
             .withDeadlineAfter(rpcTimeoutMs, TimeUnit.MILLISECONDS)
@@ -334,35 +713,48 @@ public class Publisher {
         new FutureCallback<PublishResponse>() {
           @Override
           public void onSuccess(PublishResponse result) {
+            recordPublishLatency(System.nanoTime() - requestStartNanos);
+            if (result.getMessageIdsCount() != expectedMessageIds) {
+              Throwable t =
+                  new IllegalStateException(
+                      String.format(
+                          "The publish result count %s does not match "
+                              + "the expected %s results. Please contact Cloud Pub/Sub support "
+                              + "if this frequently occurs",
+                          result.getMessageIdsCount(), expectedMessageIds));
+              // Let the shard stop sending before the failure is reported to the callers.
+              outstandingBatch.shard.onBatchFailed(outstandingBatch, t);
+              failOutstandingPublishes(
+                  outstandingBatch.outstandingPublishes, outstandingBatch.batchSizeBytes, t);
+              return;
+            }
+
             try {
-              if (result.getMessageIdsCount() != outstandingBatch.size()) {
-                Throwable t =
-                    new IllegalStateException(
-                        String.format(
-                            "The publish result count %s does not match "
-                                + "the expected %s results. Please contact Cloud Pub/Sub support "
-                                + "if this frequently occurs",
-                            result.getMessageIdsCount(), outstandingBatch.size()));
-                for (OutstandingPublish oustandingMessage :
-                    outstandingBatch.outstandingPublishes) {
-                  oustandingMessage.publishResult.setException(t);
+              if (messagePackingCodec == null) {
+                Iterator<OutstandingPublish> messagesResultsIt =
+                    outstandingBatch.outstandingPublishes.iterator();
+                for (String messageId : result.getMessageIdsList()) {
+                  messagesResultsIt.next().publishResult.set(messageId);
+                }
+              } else {
+                // Packed messages are identified by their index in the envelope.
+                String envelopeId = result.getMessageIds(0);
+                for (int i = 0; i < outstandingBatch.size(); i++) {
+                  outstandingBatch.outstandingPublishes.get(i).publishResult.set(
+                      envelopeId + ":" + i);
                 }
-                return;
-              }
-
-              Iterator<OutstandingPublish> messagesResultsIt =
-                  outstandingBatch.outstandingPublishes.iterator();
-              for (String messageId : result.getMessageIdsList()) {
-                messagesResultsIt.next().publishResult.set(messageId);
               }
             } finally {
               flowController.release(outstandingBatch.size(), outstandingBatch.batchSizeBytes);
+              stats.recordAcked(outstandingBatch.size(), outstandingBatch.batchSizeBytes);
               messagesWaiter.incrementPendingMessages(-outstandingBatch.size());
             }
+            outstandingBatch.shard.onBatchPublished(outstandingBatch);
           }
 
           @Override
           public void onFailure(Throwable t) {
+            stats.recordPublishLatency(System.nanoTime() - requestStartNanos);
             long nextBackoffDelay =
                 computeNextBackoffDelayMs(outstandingBatch, retrySettings, longRandom);
 
@@ -370,14 +762,10 @@ public class Publisher {
                 || System.currentTimeMillis() + nextBackoffDelay
                     > outstandingBatch.creationTime
                         + retrySettings.getTotalTimeout().getMillis()) {
-              try {
-                for (OutstandingPublish outstandingPublish :
-                    outstandingBatch.outstandingPublishes) {
-                  outstandingPublish.publishResult.setException(t);
-                }
-              } finally {
-                messagesWaiter.incrementPendingMessages(-outstandingBatch.size());
-              }
+              // Let the shard stop sending before the failure is reported to the callers.
+              outstandingBatch.shard.onBatchFailed(outstandingBatch, t);
+              failOutstandingPublishes(
+                  outstandingBatch.outstandingPublishes, outstandingBatch.batchSizeBytes, t);
               return;
             }
 
@@ -394,13 +782,29 @@ public class Publisher {
         });
   }
 
+  /**
+   * Records the latency of a successful publish request. Failed requests are only recorded in the
+   * stats, so that they do not skew the adaptive batching thresholds.
+   */
+  private void recordPublishLatency(long latencyNanos) {
+    stats.recordPublishLatency(latencyNanos);
+    if (adaptiveBatching != null) {
+      adaptiveBatching.recordPublishLatency(latencyNanos);
+    }
+  }
+
   private static final class OutstandingBatch {
+    final BatchShard shard;
     final List<OutstandingPublish> outstandingPublishes;
     final long creationTime;
     int attempt;
     int batchSizeBytes;
+    // The message packing the messages of the batch, created on the first attempt.
+    PubsubMessage envelope;
 
-    OutstandingBatch(List<OutstandingPublish> outstandingPublishes, int batchSizeBytes) {
+    OutstandingBatch(
+        BatchShard shard, List<OutstandingPublish> outstandingPublishes, int batchSizeBytes) {
+      this.shard = shard;
       this.outstandingPublishes = outstandingPublishes;
       attempt = 1;
       creationTime = System.currentTimeMillis();
@@ -410,6 +814,17 @@ public class Publisher {
     public int size() {
       return outstandingPublishes.size();
     }
+
+    PubsubMessage getEnvelope(PayloadCodec codec) throws IOException {
+      if (envelope == null) {
+        List<PubsubMessage> messages = new ArrayList<>(outstandingPublishes.size());
+        for (OutstandingPublish outstandingPublish : outstandingPublishes) {
+          messages.add(outstandingPublish.message);
+        }
+        envelope = MessagePacker.pack(messages, codec);
+      }
+      return envelope;
+    }
   }
 
   private static final class OutstandingPublish {
@@ -427,8 +842,13 @@ public class Publisher {
     return batchingSettings;
   }
 
-  private long getMaxBatchBytes() {
-    return getBatchingSettings().getRequestByteThreshold();
+  /**
+   * The batching settings currently used by this {@code Publisher}. These are the configured
+   * batching settings, unless adaptive batching is enabled with {@link
+   * Builder#setAdaptiveBatchingSettings}.
+   */
+  private BatchingSettings getCurrentBatchingSettings() {
+    return adaptiveBatching != null ? adaptiveBatching.getCurrentSettings() : batchingSettings;
   }
 
   /**
@@ -456,18 +876,33 @@ public class Publisher {
     if (shutdown.getAndSet(true)) {
       throw new IllegalStateException("Cannot shut down a publisher already shut-down.");
     }
-    if (currentAlarmFuture != null && activeAlarm.getAndSet(false)) {
-      currentAlarmFuture.cancel(false);
+    for (BatchShard shard : batchShards) {
+      shard.cancelAlarm();
+      shard.publishAllOutstanding();
+    }
+    for (BatchShard shard : orderedShards.values()) {
+      shard.cancelAlarm();
+      shard.publishAllOutstanding();
     }
-    publishAllOutstanding();
     messagesWaiter.waitNoMessages();
+    if (batchingAdjustmentFuture != null) {
+      batchingAdjustmentFuture.cancel(false);
+    }
+    if (statsExportFuture != null) {
+      statsExportFuture.cancel(false);
+      exportStats();
+    }
     for (AutoCloseable closeable : closeables) {
       closeable.close();
     }
   }
 
-  private boolean hasBatchingBytes() {
-    return getMaxBatchBytes() > 0;
+  private void exportStats() {
+    try {
+      statsExporter.export(stats.getStats(getCurrentBatchingSettings()));
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Failed to export publisher stats.", e);
+    }
   }
 
   private static long computeNextBackoffDelayMs(
@@ -550,6 +985,7 @@ public class Publisher {
             .setRpcTimeoutMultiplier(2)
             .setMaxRpcTimeout(DEFAULT_RPC_TIMEOUT)
             .build();
+    static final Duration DEFAULT_STATS_EXPORT_PERIOD = Duration.standardMinutes(1);
     static final LongRandom DEFAULT_LONG_RANDOM =
         new LongRandom() {
           @Override
@@ -568,6 +1004,9 @@ public class Publisher {
 
     // Batching options
     BatchingSettings batchingSettings = DEFAULT_BATCHING_SETTINGS;
+    PayloadCodec messagePackingCodec;
+    BatchingSettings minBatchingSettings;
+    BatchingSettings maxBatchingSettings;
 
     // Client-side flow control options
     FlowControlSettings flowControlSettings = FlowControlSettings.getDefaultInstance();
@@ -578,6 +1017,9 @@ public class Publisher {
     ChannelProvider channelProvider = TopicAdminSettings.defaultChannelProviderBuilder().build();
     ExecutorProvider executorProvider = DEFAULT_EXECUTOR_PROVIDER;
 
+    StatsExporter<PublisherStats> statsExporter;
+    Duration statsExportPeriod = DEFAULT_STATS_EXPORT_PERIOD;
+
     private Builder(TopicName topic) {
       this.topicName = Preconditions.checkNotNull(topic);
     }
@@ -597,6 +1039,61 @@ public class Publisher {
 
     // Batching options
     public Builder setBatchingSettings(BatchingSettings batchingSettings) {
+      checkBatchingSettings(batchingSettings);
+      this.batchingSettings = batchingSettings;
+      return this;
+    }
+
+    /**
+     * Enables adaptive batching. The element count, request byte and delay thresholds are then
+     * tuned periodically from the observed publish request latency and message arrival rate,
+     * between the thresholds of {@code minBatchingSettings} and those of {@code
+     * maxBatchingSettings}. The delay is kept to a fraction of the publish latency, and batches are
+     * sized to the messages expected within that delay, so that batches are small at low traffic
+     * and grow at peak traffic. The batching settings set with {@link #setBatchingSettings} are
+     * used until the first publish latency is observed.
+     *
+     * <p>The thresholds currently in use are reported by {@link
+     * PublisherStats#getBatchingSettings}.
+     */
+    public Builder setAdaptiveBatchingSettings(
+        BatchingSettings minBatchingSettings, BatchingSettings maxBatchingSettings) {
+      checkBatchingSettings(minBatchingSettings);
+      checkBatchingSettings(maxBatchingSettings);
+      Preconditions.checkArgument(
+          minBatchingSettings.getElementCountThreshold()
+              <= maxBatchingSettings.getElementCountThreshold());
+      Preconditions.checkArgument(
+          minBatchingSettings.getRequestByteThreshold()
+              <= maxBatchingSettings.getRequestByteThreshold());
+      Preconditions.checkArgument(
+          minBatchingSettings
+                  .getDelayThreshold()
+                  .compareTo(maxBatchingSettings.getDelayThreshold())
+              <= 0);
+      this.minBatchingSettings = minBatchingSettings;
+      this.maxBatchingSettings = maxBatchingSettings;
+      return this;
+    }
+
+    /**
+     * Enables message packing. The messages of each batch are then packed into a single message,
+     * whose payload is encoded by {@code codec}, for instance compressed with {@link
+     * PayloadCodecs#gzip()}. This reduces the size and the per-message overhead of publish
+     * requests when publishing many small messages.
+     *
+     * <p>Packed messages are only readable by subscribers that unpack them, with an {@link
+     * UnpackingMessageReceiver}. The message ID returned for a packed message is the message ID of
+     * its envelope, followed by {@code ':'} and its index in the envelope. The request byte
+     * threshold of the batching settings applies to the messages before they are packed, and must
+     * leave room for the envelope within the maximum request size of the API.
+     */
+    public Builder setMessagePacking(PayloadCodec codec) {
+      this.messagePackingCodec = Preconditions.checkNotNull(codec);
+      return this;
+    }
+
+    private static void checkBatchingSettings(BatchingSettings batchingSettings) {
       Preconditions.checkNotNull(batchingSettings);
       Preconditions.checkNotNull(batchingSettings.getElementCountThreshold());
       Preconditions.checkArgument(batchingSettings.getElementCountThreshold() > 0);
@@ -604,8 +1101,6 @@ public class Publisher {
       Preconditions.checkArgument(batchingSettings.getRequestByteThreshold() > 0);
       Preconditions.checkNotNull(batchingSettings.getDelayThreshold());
       Preconditions.checkArgument(batchingSettings.getDelayThreshold().getMillis() > 0);
-      this.batchingSettings = batchingSettings;
-      return this;
     }
 
     // Flow control options
@@ -638,6 +1133,22 @@ public class Publisher {
       return this;
     }
 
+    /**
+     * Sets an exporter to which a snapshot of the publisher statistics is exported periodically,
+     * and once more when the publisher is shut down.
+     */
+    public Builder setStatsExporter(StatsExporter<PublisherStats> statsExporter) {
+      this.statsExporter = Preconditions.checkNotNull(statsExporter);
+      return this;
+    }
+
+    /** Sets the period at which statistics are exported. Defaults to one minute. */
+    public Builder setStatsExportPeriod(Duration statsExportPeriod) {
+      Preconditions.checkArgument(statsExportPeriod.getMillis() > 0);
+      this.statsExportPeriod = statsExportPeriod;
+      return this;
+    }
+
     public Publisher build() throws IOException {
       return new Publisher(this);
     }
@@ -16,6 +16,7 @@
 
 package com.google.cloud.pubsub.spi.v1;
 
+import com.google.api.gax.batching.BatchingSettings;
 import com.google.auto.value.AutoValue;
 
 /**
@@ -23,7 +24,7 @@ import com.google.auto.value.AutoValue;
  * Publisher}.
  */
 @AutoValue
-abstract class PublisherStats {
+public abstract class PublisherStats {
   /** Number of successfully published messages. */
   public abstract long getAckedMessages();
 
@@ -36,12 +37,36 @@ abstract class PublisherStats {
   /** Total messages sent, equal to pending + acked + failed messages. */
   public abstract long getSentMessages();
 
+  /** Size in bytes of the messages pending to publish, includes messages in-flight. */
+  public abstract long getPendingBytes();
+
+  /** Total size in bytes of the messages sent. */
+  public abstract long getSentBytes();
+
+  /** Number of messages in each batch sent to the service. */
+  public abstract DistributionStats getBatchSize();
+
+  /**
+   * Latency in milliseconds of each publish request, including each retry of a batch. Latencies
+   * up to 10 seconds are recorded exactly, longer ones to within 12.5%.
+   */
+  public abstract DistributionStats getPublishLatency();
+
+  /** Total time in milliseconds publish calls were blocked by flow control. */
+  public abstract long getFlowControlBlockedMillis();
+
+  /**
+   * Batching settings in use when the statistics were requested. These change over time when
+   * adaptive batching is enabled.
+   */
+  public abstract BatchingSettings getBatchingSettings();
+
   public static Builder newBuilder() {
     return new AutoValue_PublisherStats.Builder();
   }
 
   @AutoValue.Builder
-  public static abstract class Builder {
+  public abstract static class Builder {
     public abstract Builder setAckedMessages(long value);
 
     public abstract Builder setFailedMessages(long value);
@@ -50,6 +75,18 @@ abstract class PublisherStats {
 
     public abstract Builder setSentMessages(long value);
 
+    public abstract Builder setPendingBytes(long value);
+
+    public abstract Builder setSentBytes(long value);
+
+    public abstract Builder setBatchSize(DistributionStats value);
+
+    public abstract Builder setPublishLatency(DistributionStats value);
+
+    public abstract Builder setFlowControlBlockedMillis(long value);
+
+    public abstract Builder setBatchingSettings(BatchingSettings value);
+
     public abstract PublisherStats build();
   }
 }
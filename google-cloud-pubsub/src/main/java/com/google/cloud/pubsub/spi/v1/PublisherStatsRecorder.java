@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.api.gax.batching.BatchingSettings;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Records the live statistics of a {@link Publisher}. This class is thread-safe. */
+class PublisherStatsRecorder {
+  // Latencies up to this value are recorded exactly.
+  private static final int EXACT_LATENCY_MILLIS = 10 * 1000;
+
+  private final AtomicLong sentMessages = new AtomicLong();
+  private final AtomicLong sentBytes = new AtomicLong();
+  private final AtomicLong ackedMessages = new AtomicLong();
+  private final AtomicLong failedMessages = new AtomicLong();
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private final AtomicLong flowControlBlockedNanos = new AtomicLong();
+  private final StatsDistribution batchSize =
+      new StatsDistribution((int) Publisher.getApiMaxRequestElementCount());
+  private final StatsDistribution publishLatency =
+      new StatsDistribution(EXACT_LATENCY_MILLIS);
+
+  void recordSent(int messageSize, long flowControlBlockedNanos) {
+    sentMessages.incrementAndGet();
+    sentBytes.addAndGet(messageSize);
+    pendingBytes.addAndGet(messageSize);
+    this.flowControlBlockedNanos.addAndGet(flowControlBlockedNanos);
+  }
+
+  void recordBatch(int messageCount) {
+    batchSize.record(messageCount);
+  }
+
+  void recordPublishLatency(long latencyNanos) {
+    publishLatency.record(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+  }
+
+  void recordAcked(int messageCount, int bytes) {
+    ackedMessages.addAndGet(messageCount);
+    pendingBytes.addAndGet(-bytes);
+  }
+
+  void recordFailed(int messageCount, int bytes) {
+    failedMessages.addAndGet(messageCount);
+    pendingBytes.addAndGet(-bytes);
+  }
+
+  PublisherStats getStats(BatchingSettings batchingSettings) {
+    long acked = ackedMessages.get();
+    long failed = failedMessages.get();
+    // Read the sent messages last, so that pending messages are never negative.
+    long sent = sentMessages.get();
+    return PublisherStats.newBuilder()
+        .setSentMessages(sent)
+        .setSentBytes(sentBytes.get())
+        .setAckedMessages(acked)
+        .setFailedMessages(failed)
+        .setPendingMessages(sent - acked - failed)
+        .setPendingBytes(Math.max(0, pendingBytes.get()))
+        .setBatchSize(batchSize.getStats())
+        .setPublishLatency(publishLatency.getStats())
+        .setFlowControlBlockedMillis(
+            TimeUnit.NANOSECONDS.toMillis(flowControlBlockedNanos.get()))
+        .setBatchingSettings(batchingSettings)
+        .build();
+  }
+}
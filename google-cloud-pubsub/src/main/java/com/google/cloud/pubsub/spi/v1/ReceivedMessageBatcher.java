@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.cloud.pubsub.spi.v1.MessageDispatcher.AckReply;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.Duration;
+
+/**
+ * Groups received messages into batches handed to a {@link BatchMessageReceiver}, one executor task
+ * per batch.
+ *
+ * <p>A batch is cut as soon as it reaches the element count or the request byte threshold of the
+ * batching settings, if set. Without a delay threshold, the messages left over once a pull response
+ * has been processed are handed over right away; otherwise they wait up to the delay threshold for
+ * the messages of the following responses.
+ *
+ * <p>This class is thread-safe, and is shared by all the connections of a subscriber.
+ */
+class ReceivedMessageBatcher {
+  private final BatchMessageReceiver receiver;
+  private final long maxBatchMessages;
+  private final long maxBatchBytes;
+  // Null if batches are not kept across pull responses.
+  private final Duration maxBatchDelay;
+  private final ScheduledExecutorService executor;
+
+  private final Object lock = new Object();
+  // Guarded by lock.
+  private List<PubsubMessage> messages = new ArrayList<>();
+  private List<SettableFuture<AckReply>> replies = new ArrayList<>();
+  private long batchBytes;
+  private ScheduledFuture<?> flushAlarm;
+
+  ReceivedMessageBatcher(
+      BatchMessageReceiver receiver,
+      BatchingSettings batchingSettings,
+      ScheduledExecutorService executor) {
+    this.receiver = receiver;
+    this.maxBatchMessages =
+        batchingSettings.getElementCountThreshold() != null
+            ? batchingSettings.getElementCountThreshold()
+            : Long.MAX_VALUE;
+    this.maxBatchBytes =
+        batchingSettings.getRequestByteThreshold() != null
+            ? batchingSettings.getRequestByteThreshold()
+            : Long.MAX_VALUE;
+    this.maxBatchDelay = batchingSettings.getDelayThreshold();
+    this.executor = executor;
+  }
+
+  /**
+   * Adds a message to the current batch. {@code reply} is completed with the reply of the receiver
+   * to the message, or with its failure.
+   */
+  void add(PubsubMessage message, SettableFuture<AckReply> reply) {
+    Batch fullBatch = null;
+    synchronized (lock) {
+      messages.add(message);
+      replies.add(reply);
+      batchBytes += message.getSerializedSize();
+      if (messages.size() >= maxBatchMessages || batchBytes >= maxBatchBytes) {
+        fullBatch = cutBatch();
+      }
+    }
+    if (fullBatch != null) {
+      deliver(fullBatch);
+    }
+  }
+
+  /** Called once all the messages of a pull response have been added. */
+  void onResponseProcessed() {
+    if (maxBatchDelay == null) {
+      flush();
+      return;
+    }
+    synchronized (lock) {
+      if (messages.isEmpty() || flushAlarm != null) {
+        return;
+      }
+      flushAlarm =
+          executor.schedule(
+              new Runnable() {
+                @Override
+                public void run() {
+                  flush();
+                }
+              },
+              maxBatchDelay.getMillis(),
+              TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Hands the current batch over to the receiver, if it is not empty. */
+  void flush() {
+    Batch batch;
+    synchronized (lock) {
+      if (messages.isEmpty()) {
+        return;
+      }
+      batch = cutBatch();
+    }
+    deliver(batch);
+  }
+
+  private Batch cutBatch() {
+    Batch batch = new Batch(messages, replies);
+    messages = new ArrayList<>();
+    replies = new ArrayList<>();
+    batchBytes = 0;
+    if (flushAlarm != null) {
+      flushAlarm.cancel(false);
+      flushAlarm = null;
+    }
+    return batch;
+  }
+
+  private void deliver(final Batch batch) {
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              receiver.receiveMessages(Collections.unmodifiableList(batch.messages), batch);
+            } catch (Exception e) {
+              for (SettableFuture<AckReply> reply : batch.replies) {
+                reply.setException(e);
+              }
+            }
+          }
+        });
+  }
+
+  private static class Batch implements BatchAckReplyConsumer {
+    private final List<PubsubMessage> messages;
+    private final List<SettableFuture<AckReply>> replies;
+
+    Batch(List<PubsubMessage> messages, List<SettableFuture<AckReply>> replies) {
+      this.messages = messages;
+      this.replies = replies;
+    }
+
+    @Override
+    public void ackAll() {
+      replyAll(AckReply.ACK);
+    }
+
+    @Override
+    public void nackAll() {
+      replyAll(AckReply.NACK);
+    }
+
+    @Override
+    public AckReplyConsumer getReplyConsumer(int index) {
+      final SettableFuture<AckReply> reply = replies.get(index);
+      return new AckReplyConsumer() {
+        @Override
+        public void ack() {
+          reply.set(AckReply.ACK);
+        }
+
+        @Override
+        public void nack() {
+          reply.set(AckReply.NACK);
+        }
+      };
+    }
+
+    private void replyAll(AckReply ackReply) {
+      for (SettableFuture<AckReply> reply : replies) {
+        reply.set(ackReply);
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.api.stats.Distribution;
+import com.google.common.primitives.Ints;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Distribution} of values from 0 to a maximum value, extended with coarser buckets for
+ * the values above the maximum. Values up to the maximum are recorded exactly; larger values are
+ * recorded in buckets that are 1/8 of their lower bound wide, so percentiles that fall among them
+ * are accurate to within 12.5%. Negative values are recorded as 0.
+ */
+class StatsDistribution {
+  // Values above maxValue are counted by their highest set bit and the 3 bits below it.
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final int maxValue;
+  private final Distribution distribution;
+  private final AtomicLongArray overflowCounts = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+
+  StatsDistribution(int maxValue) {
+    this.maxValue = maxValue;
+    distribution = new Distribution(maxValue + 1);
+  }
+
+  void record(long value) {
+    if (value <= maxValue) {
+      distribution.record(Ints.checkedCast(Math.max(0, value)));
+    } else {
+      overflowCounts.incrementAndGet(overflowBucket(value));
+    }
+  }
+
+  long getNthPercentile(double percentile) {
+    return getNthPercentile(percentile, distribution.getBucketCounts(), overflowCounts());
+  }
+
+  DistributionStats getStats() {
+    long[] counts = distribution.getBucketCounts();
+    long[] overflow = overflowCounts();
+    long count = 0;
+    for (long bucketCount : counts) {
+      count += bucketCount;
+    }
+    for (long bucketCount : overflow) {
+      count += bucketCount;
+    }
+    return DistributionStats.newBuilder()
+        .setCount(count)
+        .setMedian(getNthPercentile(50, counts, overflow))
+        .setPercentile90(getNthPercentile(90, counts, overflow))
+        .setPercentile99(getNthPercentile(99, counts, overflow))
+        .build();
+  }
+
+  private long[] overflowCounts() {
+    long[] counts = new long[overflowCounts.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = overflowCounts.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the smallest recorded value such that at least {@code percentile}% of the values are
+   * lower or equal, or the upper bound of its bucket if it is above the maximum value. Returns 0 if
+   * no value was recorded.
+   */
+  private static long getNthPercentile(double percentile, long[] counts, long[] overflow) {
+    long count = 0;
+    for (long bucketCount : counts) {
+      count += bucketCount;
+    }
+    for (long bucketCount : overflow) {
+      count += bucketCount;
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    for (int i = 0; i < counts.length; i++) {
+      rank -= counts[i];
+      if (rank <= 0) {
+        return i;
+      }
+    }
+    for (int i = 0; i < overflow.length; i++) {
+      rank -= overflow[i];
+      if (rank <= 0) {
+        return overflowBucketUpperBound(i);
+      }
+    }
+    return overflowBucketUpperBound(overflow.length - 1);
+  }
+
+  private static int overflowBucket(long value) {
+    int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    if (highestBit < SUB_BUCKET_BITS) {
+      return (int) value;
+    }
+    int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return highestBit * SUB_BUCKETS + subBucket;
+  }
+
+  private static long overflowBucketUpperBound(int bucket) {
+    int highestBit = bucket / SUB_BUCKETS;
+    if (highestBit < SUB_BUCKET_BITS) {
+      return bucket;
+    }
+    long upperBound =
+        (long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << (highestBit - SUB_BUCKET_BITS);
+    return upperBound <= 0 ? Long.MAX_VALUE : upperBound - 1;
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+/**
+ * Receives periodic snapshots of the statistics of a {@link Publisher} or a {@link Subscriber}, for
+ * example to export them to a monitoring system.
+ *
+ * <p>Snapshots are exported on the client's executor, so implementations should not block.
+ *
+ * @param <T> the type of the statistics, {@link PublisherStats} or {@link SubscriberStats}
+ */
+public interface StatsExporter<T> {
+  /** Called with a snapshot of the statistics. */
+  void export(T stats);
+}
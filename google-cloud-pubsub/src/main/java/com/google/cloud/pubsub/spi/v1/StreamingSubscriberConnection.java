@@ -18,8 +18,8 @@ package com.google.cloud.pubsub.spi.v1;
 
 import com.google.api.core.AbstractApiService;
 import com.google.api.core.ApiClock;
+import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.core.FlowController;
-import com.google.api.stats.Distribution;
 import com.google.cloud.pubsub.spi.v1.MessageDispatcher.AckProcessor;
 import com.google.cloud.pubsub.spi.v1.MessageDispatcher.PendingModifyAckDeadline;
 import com.google.common.annotations.VisibleForTesting;
@@ -68,7 +68,10 @@ final class StreamingSubscriberConnection extends AbstractApiService implements
       Duration ackExpirationPadding,
       Duration maxAckExtensionPeriod,
       int streamAckDeadlineSeconds,
-      Distribution ackLatencyDistribution,
+      SubscriberStatsRecorder stats,
+      BatchingSettings ackBatchingSettings,
+      KeyedDispatcher keyedDispatcher,
+      ReceivedMessageBatcher messageBatcher,
       Channel channel,
       FlowController flowController,
       ScheduledExecutorService executor,
@@ -82,7 +85,10 @@ final class StreamingSubscriberConnection extends AbstractApiService implements
             this,
             ackExpirationPadding,
             maxAckExtensionPeriod,
-            ackLatencyDistribution,
+            stats,
+            ackBatchingSettings,
+            keyedDispatcher,
+            messageBatcher,
             flowController,
             executor,
             clock);
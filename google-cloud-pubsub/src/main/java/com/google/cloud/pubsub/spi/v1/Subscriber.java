@@ -20,12 +20,12 @@ import com.google.api.core.AbstractApiService;
 import com.google.api.core.ApiClock;
 import com.google.api.core.ApiService;
 import com.google.api.core.CurrentMillisClock;
+import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.core.FlowControlSettings;
 import com.google.api.gax.core.FlowController;
 import com.google.api.gax.grpc.ChannelProvider;
 import com.google.api.gax.grpc.ExecutorProvider;
 import com.google.api.gax.grpc.InstantiatingExecutorProvider;
-import com.google.api.stats.Distribution;
 import com.google.auth.Credentials;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.common.annotations.VisibleForTesting;
@@ -55,7 +55,8 @@ import org.joda.time.Duration;
  * receiver} to which messages are going to be delivered as soon as they are received by the
  * subscriber. The delivered messages then can be {@link AckReplyConsumer#ack() acked} or {@link
  * AckReplyConsumer#nack() nacked} at will as they get processed by the receiver. Nacking a messages
- * implies a later redelivery of such message.
+ * implies a later redelivery of such message. Alternatively, the messages can be delivered in
+ * batches to a {@link BatchMessageReceiver}.
  *
  * <p>The subscriber handles the ack management, by automatically extending the ack deadline while
  * the message is being processed, to then issue the ack or nack of such message when the processing
@@ -89,11 +90,16 @@ public class Subscriber extends AbstractApiService {
   private final SubscriptionName subscriptionName;
   private final String cachedSubscriptionNameString;
   private final FlowControlSettings flowControlSettings;
+  private final BatchingSettings ackBatchingSettings;
   private final Duration ackExpirationPadding;
   private final Duration maxAckExtensionPeriod;
   private final ScheduledExecutorService executor;
-  private final Distribution ackLatencyDistribution =
-      new Distribution(MAX_ACK_DEADLINE_SECONDS + 1);
+  private final KeyedDispatcher keyedDispatcher;
+  private final ReceivedMessageBatcher messageBatcher;
+  private final SubscriberStatsRecorder stats =
+      new SubscriberStatsRecorder(MAX_ACK_DEADLINE_SECONDS);
+  private final StatsExporter<SubscriberStats> statsExporter;
+  private final Duration statsExportPeriod;
   private final int numChannels;
   private final FlowController flowController;
   private final ChannelProvider channelProvider;
@@ -104,11 +110,13 @@ public class Subscriber extends AbstractApiService {
   private final ApiClock clock;
   private final List<AutoCloseable> closeables = new ArrayList<>();
   private ScheduledFuture<?> ackDeadlineUpdater;
+  private ScheduledFuture<?> statsExportFuture;
   private int streamAckDeadlineSeconds;
 
   private Subscriber(Builder builder) throws IOException {
     receiver = builder.receiver;
     flowControlSettings = builder.flowControlSettings;
+    ackBatchingSettings = builder.ackBatchingSettings;
     subscriptionName = builder.subscriptionName;
     cachedSubscriptionNameString = subscriptionName.toString();
     ackExpirationPadding = builder.ackExpirationPadding;
@@ -120,6 +128,8 @@ public class Subscriber extends AbstractApiService {
     clock = builder.clock.isPresent() ? builder.clock.get() : CurrentMillisClock.getDefaultClock();
 
     flowController = new FlowController(builder.flowControlSettings);
+    statsExporter = builder.statsExporter;
+    statsExportPeriod = builder.statsExportPeriod;
 
     executor = builder.executorProvider.getExecutor();
     if (builder.executorProvider.shouldAutoClose()) {
@@ -131,6 +141,18 @@ public class Subscriber extends AbstractApiService {
             }
           });
     }
+    keyedDispatcher =
+        builder.messageKeyExtractor == null
+            ? null
+            : new KeyedDispatcher(
+                builder.messageKeyExtractor,
+                builder.getMaxOutstandingMessagesPerKey(),
+                executor);
+    messageBatcher =
+        builder.batchReceiver == null
+            ? null
+            : new ReceivedMessageBatcher(
+                builder.batchReceiver, builder.receiverBatchingSettings, executor);
 
     channelProvider = builder.channelProvider;
 
@@ -154,6 +176,20 @@ public class Subscriber extends AbstractApiService {
     return new Builder(subscription, receiver);
   }
 
+  /**
+   * Constructs a new {@link Builder} for a subscriber that hands the received messages over in
+   * batches. This reduces the number of executor tasks, and lets the receiver process the messages
+   * in bulk. See {@link Builder#setReceiverBatchingSettings} to configure the size of the batches.
+   *
+   * @param subscription Cloud Pub/Sub subscription to bind the subscriber to
+   * @param receiver an implementation of {@link BatchMessageReceiver} used to process the received
+   *     messages
+   */
+  public static Builder defaultBuilder(
+      SubscriptionName subscription, BatchMessageReceiver receiver) {
+    return new Builder(subscription, receiver);
+  }
+
   /** Subscription which the subscriber is subscribed to. */
   public SubscriptionName getSubscriptionName() {
     return subscriptionName;
@@ -169,6 +205,19 @@ public class Subscriber extends AbstractApiService {
     return flowControlSettings;
   }
 
+  /** The settings used to batch acks and nacks. See {@link Builder#setAckBatchingSettings}. */
+  public BatchingSettings getAckBatchingSettings() {
+    return ackBatchingSettings;
+  }
+
+  /**
+   * Returns a snapshot of the statistics of this subscriber. Taking a snapshot is cheap and does
+   * not block the receipt of messages.
+   */
+  public SubscriberStats getStats() {
+    return stats.getStats();
+  }
+
   /**
    * Initiates service startup and returns immediately.
    *
@@ -223,6 +272,7 @@ public class Subscriber extends AbstractApiService {
     // Streaming pull is not enabled on the service yet.
     // startStreamingConnections();
     startPollingConnections();
+    startStatsExporter();
     notifyStarted();
   }
 
@@ -230,6 +280,7 @@ public class Subscriber extends AbstractApiService {
   protected void doStop() {
     stopAllStreamingConnections();
     stopAllPollingConnections();
+    stopStatsExporter();
     try {
       for (AutoCloseable closeable : closeables) {
         closeable.close();
@@ -250,7 +301,10 @@ public class Subscriber extends AbstractApiService {
                 ackExpirationPadding,
                 maxAckExtensionPeriod,
                 streamAckDeadlineSeconds,
-                ackLatencyDistribution,
+                stats,
+                ackBatchingSettings,
+                keyedDispatcher,
+                messageBatcher,
                 channels.get(i),
                 flowController,
                 executor,
@@ -281,9 +335,13 @@ public class Subscriber extends AbstractApiService {
             new Runnable() {
               @Override
               public void run() {
-                // It is guaranteed this will be <= MAX_ACK_DEADLINE_SECONDS, the max of the API.
+                // Latencies over MAX_ACK_DEADLINE_SECONDS, the max of the API, are recorded too.
                 long ackLatency =
-                    ackLatencyDistribution.getNthPercentile(PERCENTILE_FOR_ACK_DEADLINE_UPDATES);
+                    Math.min(
+                        stats
+                            .getAckLatencyDistribution()
+                            .getNthPercentile(PERCENTILE_FOR_ACK_DEADLINE_UPDATES),
+                        MAX_ACK_DEADLINE_SECONDS);
                 if (ackLatency > 0) {
                   int possibleStreamAckDeadlineSeconds =
                       Math.max(
@@ -325,7 +383,10 @@ public class Subscriber extends AbstractApiService {
                 receiver,
                 ackExpirationPadding,
                 maxAckExtensionPeriod,
-                ackLatencyDistribution,
+                stats,
+                ackBatchingSettings,
+                keyedDispatcher,
+                messageBatcher,
                 channels.get(i),
                 flowController,
                 executor,
@@ -356,6 +417,38 @@ public class Subscriber extends AbstractApiService {
     stopConnections(pollingSubscriberConnections);
   }
 
+  private void startStatsExporter() {
+    if (statsExporter == null) {
+      return;
+    }
+    statsExportFuture =
+        executor.scheduleAtFixedRate(
+            new Runnable() {
+              @Override
+              public void run() {
+                exportStats();
+              }
+            },
+            statsExportPeriod.getMillis(),
+            statsExportPeriod.getMillis(),
+            TimeUnit.MILLISECONDS);
+  }
+
+  private void stopStatsExporter() {
+    if (statsExportFuture != null) {
+      statsExportFuture.cancel(false);
+      exportStats();
+    }
+  }
+
+  private void exportStats() {
+    try {
+      statsExporter.export(stats.getStats());
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Failed to export subscriber stats.", e);
+    }
+  }
+
   private void startConnections(
       List<? extends ApiService> connections, final ApiService.Listener connectionsListener) {
     final CountDownLatch subscribersStarting = new CountDownLatch(numChannels);
@@ -414,6 +507,26 @@ public class Subscriber extends AbstractApiService {
     private static final Duration MIN_ACK_EXPIRATION_PADDING = Duration.millis(100);
     private static final Duration DEFAULT_ACK_EXPIRATION_PADDING = Duration.millis(500);
     private static final Duration DEFAULT_MAX_ACK_EXTENSION_PERIOD = Duration.standardMinutes(60);
+    private static final Duration DEFAULT_STATS_EXPORT_PERIOD = Duration.standardMinutes(1);
+    private static final int DEFAULT_MAX_OUTSTANDING_MESSAGES_PER_KEY = 1000;
+    private static final long DEFAULT_ACK_ELEMENT_COUNT_THRESHOLD = 1000L;
+    private static final long DEFAULT_ACK_REQUEST_BYTES_THRESHOLD = 512L * 1024L; // 512 kB
+
+    private static final long DEFAULT_RECEIVER_ELEMENT_COUNT_THRESHOLD = 1000L;
+    private static final long DEFAULT_RECEIVER_REQUEST_BYTES_THRESHOLD =
+        10L * 1024L * 1024L; // 10 MB
+
+    static final BatchingSettings DEFAULT_RECEIVER_BATCHING_SETTINGS =
+        BatchingSettings.newBuilder()
+            .setElementCountThreshold(DEFAULT_RECEIVER_ELEMENT_COUNT_THRESHOLD)
+            .setRequestByteThreshold(DEFAULT_RECEIVER_REQUEST_BYTES_THRESHOLD)
+            .build();
+    static final BatchingSettings DEFAULT_ACK_BATCHING_SETTINGS =
+        BatchingSettings.newBuilder()
+            .setElementCountThreshold(DEFAULT_ACK_ELEMENT_COUNT_THRESHOLD)
+            .setRequestByteThreshold(DEFAULT_ACK_REQUEST_BYTES_THRESHOLD)
+            .setDelayThreshold(MessageDispatcher.PENDING_ACKS_SEND_DELAY)
+            .build();
 
     static final ExecutorProvider DEFAULT_EXECUTOR_PROVIDER =
         InstantiatingExecutorProvider.newBuilder()
@@ -426,11 +539,16 @@ public class Subscriber extends AbstractApiService {
     SubscriptionName subscriptionName;
     Optional<Credentials> credentials = Optional.absent();
     MessageReceiver receiver;
+    BatchMessageReceiver batchReceiver;
+    BatchingSettings receiverBatchingSettings = DEFAULT_RECEIVER_BATCHING_SETTINGS;
 
     Duration ackExpirationPadding = DEFAULT_ACK_EXPIRATION_PADDING;
     Duration maxAckExtensionPeriod = DEFAULT_MAX_ACK_EXTENSION_PERIOD;
 
     FlowControlSettings flowControlSettings = FlowControlSettings.getDefaultInstance();
+    BatchingSettings ackBatchingSettings = DEFAULT_ACK_BATCHING_SETTINGS;
+    MessageKeyExtractor messageKeyExtractor;
+    Integer maxOutstandingMessagesPerKey;
 
     ExecutorProvider executorProvider = DEFAULT_EXECUTOR_PROVIDER;
     ChannelProvider channelProvider =
@@ -439,11 +557,19 @@ public class Subscriber extends AbstractApiService {
             .build();
     Optional<ApiClock> clock = Optional.absent();
 
+    StatsExporter<SubscriberStats> statsExporter;
+    Duration statsExportPeriod = DEFAULT_STATS_EXPORT_PERIOD;
+
     Builder(SubscriptionName subscriptionName, MessageReceiver receiver) {
       this.subscriptionName = subscriptionName;
       this.receiver = receiver;
     }
 
+    Builder(SubscriptionName subscriptionName, BatchMessageReceiver batchReceiver) {
+      this.subscriptionName = subscriptionName;
+      this.batchReceiver = batchReceiver;
+    }
+
     /**
      * Credentials to authenticate with.
      *
@@ -473,6 +599,82 @@ public class Subscriber extends AbstractApiService {
       return this;
     }
 
+    /**
+     * Sets the settings used to batch acks and nacks.
+     *
+     * <p>Acks and nacks are buffered and sent together, as soon as the number of buffered replies
+     * reaches the element count threshold, their ack IDs add up to the request byte threshold, or
+     * the delay threshold has elapsed since the first of them was buffered. Nacks and ack deadline
+     * modifications to the same deadline share requests.
+     */
+    public Builder setAckBatchingSettings(BatchingSettings ackBatchingSettings) {
+      Preconditions.checkNotNull(ackBatchingSettings);
+      Preconditions.checkNotNull(ackBatchingSettings.getElementCountThreshold());
+      Preconditions.checkArgument(ackBatchingSettings.getElementCountThreshold() > 0);
+      Preconditions.checkNotNull(ackBatchingSettings.getRequestByteThreshold());
+      Preconditions.checkArgument(ackBatchingSettings.getRequestByteThreshold() > 0);
+      Preconditions.checkNotNull(ackBatchingSettings.getDelayThreshold());
+      Preconditions.checkArgument(ackBatchingSettings.getDelayThreshold().getMillis() > 0);
+      this.ackBatchingSettings = ackBatchingSettings;
+      return this;
+    }
+
+    /**
+     * Sets the settings used to batch the messages handed over to a {@link BatchMessageReceiver}.
+     * A batch is handed over as soon as it reaches the element count threshold or the request byte
+     * threshold, in serialized message bytes. Without a delay threshold, which is the default, the
+     * messages of each pull response are handed over as soon as they are received, in batches of at
+     * most those thresholds. With a delay threshold, messages wait up to that delay to be batched
+     * with the messages of the following responses.
+     *
+     * <p>These settings have no effect on subscribers with a {@link MessageReceiver}.
+     */
+    public Builder setReceiverBatchingSettings(BatchingSettings receiverBatchingSettings) {
+      Preconditions.checkNotNull(receiverBatchingSettings);
+      Preconditions.checkArgument(
+          receiverBatchingSettings.getElementCountThreshold() == null
+              || receiverBatchingSettings.getElementCountThreshold() > 0);
+      Preconditions.checkArgument(
+          receiverBatchingSettings.getRequestByteThreshold() == null
+              || receiverBatchingSettings.getRequestByteThreshold() > 0);
+      Preconditions.checkArgument(
+          receiverBatchingSettings.getDelayThreshold() == null
+              || receiverBatchingSettings.getDelayThreshold().getMillis() > 0);
+      this.receiverBatchingSettings = receiverBatchingSettings;
+      return this;
+    }
+
+    /**
+     * Sets an extractor of the keys of the received messages. Messages with the same key are
+     * delivered to the {@link MessageReceiver} one at a time, in the order in which they are
+     * received: a message is delivered once the previous message with its key has been acked or
+     * nacked. Messages with different keys, or without a key, are delivered concurrently.
+     *
+     * <p>Note that Cloud Pub/Sub does not guarantee the order in which messages are received, nor
+     * that a message is not redelivered.
+     */
+    public Builder setMessageKeyExtractor(MessageKeyExtractor messageKeyExtractor) {
+      Preconditions.checkState(
+          batchReceiver == null, "Messages are not delivered by key to a BatchMessageReceiver.");
+      this.messageKeyExtractor = Preconditions.checkNotNull(messageKeyExtractor);
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of messages with the same key that can be outstanding when a {@link
+     * #setMessageKeyExtractor message key extractor} is set. Further messages with that key are
+     * nacked right away, so that a key with many messages does not use up the flow control limits
+     * while its messages wait to be delivered one at a time. It must be lower than the maximum
+     * outstanding element count of the {@link #setFlowControlSettings flow control settings}, if
+     * any. Defaults to half that count, or to 1000 if the flow control settings have no element
+     * count limit.
+     */
+    public Builder setMaxOutstandingMessagesPerKey(int maxOutstandingMessagesPerKey) {
+      Preconditions.checkArgument(maxOutstandingMessagesPerKey > 0);
+      this.maxOutstandingMessagesPerKey = maxOutstandingMessagesPerKey;
+      return this;
+    }
+
     /**
      * Set acknowledgement expiration padding.
      *
@@ -512,6 +714,22 @@ public class Subscriber extends AbstractApiService {
       return this;
     }
 
+    /**
+     * Sets an exporter to which a snapshot of the subscriber statistics is exported periodically
+     * while the subscriber is running, and once more when it stops.
+     */
+    public Builder setStatsExporter(StatsExporter<SubscriberStats> statsExporter) {
+      this.statsExporter = Preconditions.checkNotNull(statsExporter);
+      return this;
+    }
+
+    /** Sets the period at which statistics are exported. Defaults to one minute. */
+    public Builder setStatsExportPeriod(Duration statsExportPeriod) {
+      Preconditions.checkArgument(statsExportPeriod.getMillis() > 0);
+      this.statsExportPeriod = statsExportPeriod;
+      return this;
+    }
+
     /** Gives the ability to set a custom clock. */
     Builder setClock(ApiClock clock) {
       this.clock = Optional.of(clock);
@@ -519,7 +737,26 @@ public class Subscriber extends AbstractApiService {
     }
 
     public Subscriber build() throws IOException {
+      Integer maxOutstandingElementCount = flowControlSettings.getMaxOutstandingElementCount();
+      Preconditions.checkState(
+          messageKeyExtractor == null
+              || maxOutstandingMessagesPerKey == null
+              || maxOutstandingElementCount == null
+              || maxOutstandingMessagesPerKey < maxOutstandingElementCount,
+          "The maximum outstanding messages per key must be lower than the maximum outstanding "
+              + "element count of the flow control settings.");
       return new Subscriber(this);
     }
+
+    int getMaxOutstandingMessagesPerKey() {
+      if (maxOutstandingMessagesPerKey != null) {
+        return maxOutstandingMessagesPerKey;
+      }
+      Integer maxOutstandingElementCount = flowControlSettings.getMaxOutstandingElementCount();
+      if (maxOutstandingElementCount == null) {
+        return DEFAULT_MAX_OUTSTANDING_MESSAGES_PER_KEY;
+      }
+      return Math.max(1, maxOutstandingElementCount / 2);
+    }
   }
 }
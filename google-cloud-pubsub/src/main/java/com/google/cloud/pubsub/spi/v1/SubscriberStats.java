@@ -23,56 +23,78 @@ import com.google.auto.value.AutoValue;
  * Subscriber}.
  */
 @AutoValue
-abstract class SubscriberStats {
-
-  @AutoValue
-  //TODO: Finish implementation.
-  public abstract static class Stats {}
-
-  /** Number of successfully published messages. */
+public abstract class SubscriberStats {
+  /** Number of received messages. */
   public abstract long getReceivedMessages();
 
-  /** Number of successfully published messages. */
+  /** Total size in bytes of the received messages. */
+  public abstract long getReceivedBytes();
+
+  /** Number of messages acked. */
   public abstract long getAckedMessages();
 
-  /** Number of received messages. */
-  public abstract long getTotalReceivedMessages();
+  /** Number of messages nacked, including messages the receiver failed to process. */
+  public abstract long getNackedMessages();
+
+  /** Number of received messages that are neither acked nor nacked yet. */
+  public abstract long getOutstandingMessages();
 
-  /** Number messages acked. */
-  public abstract long getTotalAckedMessages();
+  /** Size in bytes of the received messages that are neither acked nor nacked yet. */
+  public abstract long getOutstandingBytes();
 
-  /** End to end latency. */
-  public abstract Stats getEndToEndLatency();
+  /**
+   * End to end latency, in milliseconds between the time a message was published and the time it
+   * was received. Latencies up to 10 seconds are recorded exactly, longer ones to within 12.5%.
+   */
+  public abstract DistributionStats getEndToEndLatency();
 
   /**
-   * Acknowledgement latency; time in between the message has been received and then acknowledged or
-   * rejected.
+   * Acknowledgement latency; time in seconds between the message has been received and then
+   * acknowledged. Latencies up to the maximum ack deadline of 10 minutes are recorded exactly,
+   * longer ones to within 12.5%.
    */
-  public abstract Stats getAckLatency();
+  public abstract DistributionStats getAckLatency();
 
-  /** Number of messages for which we have auto extended its acknowledgement deadline. */
+  /** Number of times we have auto extended the acknowledgement deadline of a message. */
   public abstract long getNumberOfAutoExtendedAckDeadlines();
 
+  /**
+   * Total size in bytes of the messages whose acknowledgement deadline we have auto extended,
+   * counted once per extension.
+   */
+  public abstract long getAutoExtendedAckDeadlineBytes();
+
+  /** Total time in milliseconds the receipt of messages was blocked by flow control. */
+  public abstract long getFlowControlBlockedMillis();
+
   public static Builder newBuilder() {
     return new AutoValue_SubscriberStats.Builder();
   }
 
   @AutoValue.Builder
-  public static abstract class Builder {
+  public abstract static class Builder {
     public abstract Builder setReceivedMessages(long value);
 
+    public abstract Builder setReceivedBytes(long value);
+
     public abstract Builder setAckedMessages(long value);
 
-    public abstract Builder setTotalReceivedMessages(long value);
+    public abstract Builder setNackedMessages(long value);
+
+    public abstract Builder setOutstandingMessages(long value);
 
-    public abstract Builder setTotalAckedMessages(long value);
+    public abstract Builder setOutstandingBytes(long value);
 
-    public abstract Builder setEndToEndLatency(Stats value);
+    public abstract Builder setEndToEndLatency(DistributionStats value);
 
-    public abstract Builder setAckLatency(Stats value);
+    public abstract Builder setAckLatency(DistributionStats value);
 
     public abstract Builder setNumberOfAutoExtendedAckDeadlines(long value);
 
+    public abstract Builder setAutoExtendedAckDeadlineBytes(long value);
+
+    public abstract Builder setFlowControlBlockedMillis(long value);
+
     public abstract SubscriberStats build();
   }
 }
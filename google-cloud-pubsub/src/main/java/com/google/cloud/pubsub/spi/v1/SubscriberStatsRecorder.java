@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the live statistics of a {@link Subscriber}, shared by all its connections. This class is
+ * thread-safe.
+ */
+class SubscriberStatsRecorder {
+  // End to end latencies up to this value are recorded exactly.
+  private static final int EXACT_LATENCY_MILLIS = 10 * 1000;
+
+  private final AtomicLong receivedMessages = new AtomicLong();
+  private final AtomicLong receivedBytes = new AtomicLong();
+  private final AtomicLong ackedMessages = new AtomicLong();
+  private final AtomicLong nackedMessages = new AtomicLong();
+  private final AtomicLong outstandingBytes = new AtomicLong();
+  private final AtomicLong ackDeadlineExtensions = new AtomicLong();
+  private final AtomicLong ackDeadlineExtensionBytes = new AtomicLong();
+  private final AtomicLong flowControlBlockedNanos = new AtomicLong();
+  private final StatsDistribution endToEndLatency =
+      new StatsDistribution(EXACT_LATENCY_MILLIS);
+  // To keep track of number of seconds the receiver takes to process messages.
+  private final StatsDistribution ackLatency;
+
+  SubscriberStatsRecorder(int exactAckLatencySeconds) {
+    ackLatency = new StatsDistribution(exactAckLatencySeconds);
+  }
+
+  /** The distribution of the ack latencies, in seconds. */
+  StatsDistribution getAckLatencyDistribution() {
+    return ackLatency;
+  }
+
+  void recordReceived(int messageCount, int bytes) {
+    receivedMessages.addAndGet(messageCount);
+    receivedBytes.addAndGet(bytes);
+    outstandingBytes.addAndGet(bytes);
+  }
+
+  void recordEndToEndLatency(long latencyMillis) {
+    endToEndLatency.record(latencyMillis);
+  }
+
+  void recordAck(int bytes, long ackLatencySeconds) {
+    ackedMessages.incrementAndGet();
+    outstandingBytes.addAndGet(-bytes);
+    ackLatency.record(ackLatencySeconds);
+  }
+
+  void recordNack(int bytes) {
+    nackedMessages.incrementAndGet();
+    outstandingBytes.addAndGet(-bytes);
+  }
+
+  void recordAckDeadlineExtensions(int messageCount, long bytes) {
+    ackDeadlineExtensions.addAndGet(messageCount);
+    ackDeadlineExtensionBytes.addAndGet(bytes);
+  }
+
+  void recordFlowControlBlocked(long blockedNanos) {
+    flowControlBlockedNanos.addAndGet(blockedNanos);
+  }
+
+  SubscriberStats getStats() {
+    long acked = ackedMessages.get();
+    long nacked = nackedMessages.get();
+    // Read the received messages last, so that outstanding messages are never negative.
+    long received = receivedMessages.get();
+    return SubscriberStats.newBuilder()
+        .setReceivedMessages(received)
+        .setReceivedBytes(receivedBytes.get())
+        .setAckedMessages(acked)
+        .setNackedMessages(nacked)
+        .setOutstandingMessages(received - acked - nacked)
+        .setOutstandingBytes(Math.max(0, outstandingBytes.get()))
+        .setEndToEndLatency(endToEndLatency.getStats())
+        .setAckLatency(ackLatency.getStats())
+        .setNumberOfAutoExtendedAckDeadlines(ackDeadlineExtensions.get())
+        .setAutoExtendedAckDeadlineBytes(ackDeadlineExtensionBytes.get())
+        .setFlowControlBlockedMillis(
+            TimeUnit.NANOSECONDS.toMillis(flowControlBlockedNanos.get()))
+        .build();
+  }
+}
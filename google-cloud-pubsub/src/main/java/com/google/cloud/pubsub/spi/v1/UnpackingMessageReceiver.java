@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.common.base.Preconditions;
+import com.google.pubsub.v1.PubsubMessage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link MessageReceiver} that unpacks the messages packed by a publisher with {@link
+ * Publisher.Builder#setMessagePacking}, and delivers them one by one to another receiver. Messages
+ * that were not packed are delivered unchanged.
+ *
+ * <p>The messages unpacked from an envelope have the publish time of the envelope, and the
+ * message ID of the envelope followed by {@code ':'} and their index in the envelope, as returned
+ * to the publisher.
+ *
+ * <p>Cloud Pub/Sub acknowledges an envelope as a whole: the envelope is acked once all the
+ * messages it packs have been acked, and nacked once all of them have been replied to, if any of
+ * them was nacked. A nacked envelope is redelivered with all its messages, including those that
+ * were acked, so receivers should tolerate duplicates. The ack deadline of the envelope is extended
+ * until all of its messages have been replied to.
+ *
+ * <p>Example of receiving packed messages:
+ *
+ * <pre>{@code
+ * Subscriber subscriber =
+ *     Subscriber.defaultBuilder(subscription, new UnpackingMessageReceiver(receiver)).build();
+ * }</pre>
+ */
+public class UnpackingMessageReceiver implements MessageReceiver {
+  private static final Logger logger = Logger.getLogger(UnpackingMessageReceiver.class.getName());
+
+  private final MessageReceiver receiver;
+  private final Map<String, PayloadCodec> codecs = new HashMap<>();
+
+  /** Creates a receiver that unpacks messages encoded with any of the {@link PayloadCodecs}. */
+  public UnpackingMessageReceiver(MessageReceiver receiver) {
+    this(receiver, new PayloadCodec[0]);
+  }
+
+  /**
+   * Creates a receiver that unpacks messages encoded with any of the {@link PayloadCodecs} or of
+   * {@code codecs}.
+   */
+  public UnpackingMessageReceiver(MessageReceiver receiver, PayloadCodec... codecs) {
+    this.receiver = Preconditions.checkNotNull(receiver);
+    for (PayloadCodec codec : PayloadCodecs.builtInCodecs()) {
+      this.codecs.put(codec.getName(), codec);
+    }
+    for (PayloadCodec codec : codecs) {
+      this.codecs.put(codec.getName(), codec);
+    }
+  }
+
+  @Override
+  public void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+    if (!MessagePacker.isPacked(message)) {
+      receiver.receiveMessage(message, consumer);
+      return;
+    }
+    List<PubsubMessage> messages;
+    try {
+      messages = MessagePacker.unpack(message, codecs);
+    } catch (IOException e) {
+      logger.log(
+          Level.WARNING, "Failed to unpack message " + message.getMessageId() + ", nacking it.", e);
+      consumer.nack();
+      return;
+    }
+    if (messages.isEmpty()) {
+      consumer.ack();
+      return;
+    }
+    EnvelopeReplyConsumer envelopeConsumer = new EnvelopeReplyConsumer(consumer, messages.size());
+    for (PubsubMessage packedMessage : messages) {
+      AckReplyConsumer messageConsumer = envelopeConsumer.newMessageConsumer();
+      try {
+        receiver.receiveMessage(packedMessage, messageConsumer);
+      } catch (RuntimeException e) {
+        logger.log(
+            Level.WARNING,
+            "MessageReceiver failed to process message "
+                + packedMessage.getMessageId()
+                + ", the message will be nacked.",
+            e);
+        messageConsumer.nack();
+      }
+    }
+  }
+
+  /** Replies to an envelope once all of its messages have been replied to. */
+  private static class EnvelopeReplyConsumer {
+    private final AckReplyConsumer consumer;
+    private final AtomicInteger pendingReplies;
+    private final AtomicBoolean nacked = new AtomicBoolean();
+
+    EnvelopeReplyConsumer(AckReplyConsumer consumer, int messageCount) {
+      this.consumer = consumer;
+      this.pendingReplies = new AtomicInteger(messageCount);
+    }
+
+    AckReplyConsumer newMessageConsumer() {
+      final AtomicBoolean replied = new AtomicBoolean();
+      return new AckReplyConsumer() {
+        @Override
+        public void ack() {
+          if (!replied.getAndSet(true)) {
+            reply(true);
+          }
+        }
+
+        @Override
+        public void nack() {
+          if (!replied.getAndSet(true)) {
+            reply(false);
+          }
+        }
+      };
+    }
+
+    private void reply(boolean ack) {
+      if (!ack) {
+        nacked.set(true);
+      }
+      if (pendingReplies.decrementAndGet() == 0) {
+        if (nacked.get()) {
+          consumer.nack();
+        } else {
+          consumer.ack();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.api.gax.batching.BatchingSettings;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link AdaptiveBatchingPolicy}. */
+@RunWith(JUnit4.class)
+public class AdaptiveBatchingPolicyTest {
+
+  private static final BatchingSettings MIN_SETTINGS = settings(1, 1, 1);
+  private static final BatchingSettings MAX_SETTINGS = settings(1000, 1000 * 1000, 100);
+  private static final int MESSAGE_SIZE = 100;
+  private static final int SHARD_COUNT = 4;
+
+  @Test
+  public void testInitialSettingsAreBounded() {
+    AdaptiveBatchingPolicy policy =
+        new AdaptiveBatchingPolicy(
+            settings(5000, 1000, 1), MIN_SETTINGS, MAX_SETTINGS, SHARD_COUNT);
+    assertEquals(settings(1000, 1000, 1), policy.getCurrentSettings());
+
+    // Settings are kept until a publish latency is observed
+    record(policy, 10, 0);
+    policy.adjust(1000);
+    assertEquals(settings(1000, 1000, 1), policy.getCurrentSettings());
+  }
+
+  @Test
+  public void testLowTraffic() {
+    AdaptiveBatchingPolicy policy =
+        new AdaptiveBatchingPolicy(settings(100, 1000, 1), MIN_SETTINGS, MAX_SETTINGS, SHARD_COUNT);
+    record(policy, 10, 40);
+    policy.adjust(1000);
+
+    // Waits a quarter of the latency, and sends batches as soon as one message arrives
+    assertEquals(settings(1, 10, 10), policy.getCurrentSettings());
+  }
+
+  @Test
+  public void testPeakTraffic() {
+    AdaptiveBatchingPolicy policy =
+        new AdaptiveBatchingPolicy(settings(100, 1000, 1), MIN_SETTINGS, MAX_SETTINGS, SHARD_COUNT);
+    record(policy, 100 * 1000, 200);
+    policy.adjust(1000);
+
+    // 100 messages arrive per millisecond, batches are capped at the maximum element count
+    assertEquals(settings(1000, 500 * 1000, 50), policy.getCurrentSettings());
+  }
+
+  @Test
+  public void testObservationsAreSmoothed() {
+    AdaptiveBatchingPolicy policy =
+        new AdaptiveBatchingPolicy(settings(100, 1000, 1), MIN_SETTINGS, MAX_SETTINGS, SHARD_COUNT);
+    record(policy, 1000, 40);
+    policy.adjust(1000);
+    assertEquals(settings(10, 1000, 10), policy.getCurrentSettings());
+
+    record(policy, 3000, 120);
+    policy.adjust(1000);
+    // Rate of 2 messages per millisecond, latency of 80 milliseconds
+    assertEquals(settings(40, 4000, 20), policy.getCurrentSettings());
+  }
+
+  @Test
+  public void testThresholdsArePerShard() {
+    AdaptiveBatchingPolicy policy =
+        new AdaptiveBatchingPolicy(settings(100, 1000, 1), MIN_SETTINGS, MAX_SETTINGS, SHARD_COUNT);
+    for (int i = 0; i < 4000; i++) {
+      policy.recordArrival(i % 2, MESSAGE_SIZE);
+    }
+    policy.recordPublishLatency(TimeUnit.MILLISECONDS.toNanos(40));
+    policy.adjust(1000);
+
+    // 4 messages arrive per millisecond, spread over 2 shards
+    assertEquals(settings(20, 2000, 10), policy.getCurrentSettings());
+  }
+
+  private static void record(AdaptiveBatchingPolicy policy, int messages, long latencyMillis) {
+    for (int i = 0; i < messages; i++) {
+      policy.recordArrival(0, MESSAGE_SIZE);
+    }
+    if (latencyMillis > 0) {
+      policy.recordPublishLatency(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+    }
+  }
+
+  private static BatchingSettings settings(long elementCount, long requestBytes, long delayMillis) {
+    return BatchingSettings.newBuilder()
+        .setElementCountThreshold(elementCount)
+        .setRequestByteThreshold(requestBytes)
+        .setDelayThreshold(Duration.millis(delayMillis))
+        .build();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ExpirationWheel}. */
+@RunWith(JUnit4.class)
+public class ExpirationWheelTest {
+
+  @Test
+  public void testPollExpired() {
+    ExpirationWheel<String> wheel = new ExpirationWheel<>(8, 1000, 0);
+    wheel.add("a", 1500);
+    wheel.add("b", 3000);
+    wheel.add("c", 3999);
+    wheel.add("d", 5000);
+
+    assertEquals(1500, wheel.nextExpirationMillis());
+    assertEquals(ImmutableSet.of("a"), new HashSet<>(wheel.pollExpired(2000)));
+    assertEquals(3000, wheel.nextExpirationMillis());
+    // The whole tick of the polled time is returned.
+    assertEquals(ImmutableSet.of("b", "c"), new HashSet<>(wheel.pollExpired(3000)));
+    assertEquals(5000, wheel.nextExpirationMillis());
+    assertTrue(wheel.pollExpired(4000).isEmpty());
+    assertEquals(ImmutableSet.of("d"), new HashSet<>(wheel.pollExpired(5000)));
+    assertTrue(wheel.isEmpty());
+    assertEquals(Long.MAX_VALUE, wheel.nextExpirationMillis());
+  }
+
+  @Test
+  public void testAddAlreadyPolledTick() {
+    ExpirationWheel<String> wheel = new ExpirationWheel<>(8, 1000, 0);
+    wheel.pollExpired(5000);
+    wheel.add("a", 3500);
+    assertEquals(3500, wheel.nextExpirationMillis());
+    assertEquals(ImmutableSet.of("a"), new HashSet<>(wheel.pollExpired(5000)));
+    assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void testElementsBeyondOneRotation() {
+    ExpirationWheel<String> wheel = new ExpirationWheel<>(8, 1000, 0);
+    wheel.add("a", 2000);
+    wheel.add("b", 10000);
+    wheel.add("c", 20000);
+
+    assertEquals(ImmutableSet.of("a"), new HashSet<>(wheel.pollExpired(2000)));
+    // "b" shares its slot with the tick 2, but expires in the next rotation.
+    assertEquals(10000, wheel.nextExpirationMillis());
+    assertEquals(ImmutableSet.of("b"), new HashSet<>(wheel.pollExpired(10000)));
+    // "c" is more than a rotation ahead, the wheel asks to be polled at the next rotation.
+    assertEquals(19000, wheel.nextExpirationMillis());
+    assertTrue(wheel.pollExpired(19000).isEmpty());
+    assertEquals(20000, wheel.nextExpirationMillis());
+    // Polling after more than a rotation elapsed visits each slot once.
+    wheel.add("d", 25000);
+    assertEquals(ImmutableSet.of("c", "d"), new HashSet<>(wheel.pollExpired(100000)));
+    assertTrue(wheel.isEmpty());
+  }
+}
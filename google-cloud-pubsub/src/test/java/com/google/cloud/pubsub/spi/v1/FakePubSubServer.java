@@ -0,0 +1,520 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.Empty;
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.GetSubscriptionRequest;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+import com.google.pubsub.v1.PublisherGrpc.PublisherImplBase;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.PullRequest;
+import com.google.pubsub.v1.PullResponse;
+import com.google.pubsub.v1.ReceivedMessage;
+import com.google.pubsub.v1.StreamingPullRequest;
+import com.google.pubsub.v1.StreamingPullResponse;
+import com.google.pubsub.v1.SubscriberGrpc.SubscriberImplBase;
+import com.google.pubsub.v1.Subscription;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.joda.time.Duration;
+
+/**
+ * An in-process stand-in for the Cloud Pub/Sub service, that can be used to exercise and benchmark
+ * a {@link Publisher} and a {@link Subscriber} without network access.
+ *
+ * <p>The server holds a single in-memory backlog: every message published to any topic is
+ * delivered to any subscription, through Pull or StreamingPull. Acknowledged messages are dropped.
+ * Messages whose ack deadline is modified to zero are redelivered immediately, and messages whose
+ * ack deadline expires are redelivered within {@link #EXPIRATION_CHECK_PERIOD_MILLIS}. Pulled
+ * messages have an ack deadline of {@link #ACK_DEADLINE_SECONDS}; messages delivered on a stream
+ * have the ack deadline requested when the stream was opened.
+ *
+ * <p>Latency and errors can be injected in every response, to observe how clients behave with a
+ * slow or unreliable service.
+ */
+class FakePubSubServer implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(FakePubSubServer.class.getName());
+
+  static final int ACK_DEADLINE_SECONDS = 10;
+  private static final int MAX_MESSAGES_PER_STREAMING_RESPONSE = 1000;
+  private static final long PULL_WAIT_MILLIS = 100;
+  private static final long STREAMING_DELIVERY_PERIOD_MILLIS = 1;
+  static final long EXPIRATION_CHECK_PERIOD_MILLIS = 100;
+
+  private final String name;
+  private final Server server;
+  private final ScheduledExecutorService executor;
+  private final LinkedBlockingDeque<PubsubMessage> backlog = new LinkedBlockingDeque<>();
+  private final ConcurrentHashMap<String, Lease> outstandingMessages = new ConcurrentHashMap<>();
+  private final List<Stream> streams = new CopyOnWriteArrayList<>();
+  private final AtomicLong nextMessageId = new AtomicLong(1);
+  private final AtomicLong nextAckId = new AtomicLong(1);
+  private final AtomicLong publishedMessages = new AtomicLong();
+  private final AtomicLong deliveredMessages = new AtomicLong();
+  private final AtomicLong ackedMessages = new AtomicLong();
+  private final AtomicLong nackedMessages = new AtomicLong();
+  private final AtomicLong expiredMessages = new AtomicLong();
+  private final AtomicLong extendedAckDeadlines = new AtomicLong();
+
+  private volatile long latencyMillis;
+  private volatile long latencyJitterMillis;
+  private volatile double errorProbability;
+  private volatile Status injectedError = Status.UNAVAILABLE;
+
+  private static class Lease {
+    private final PubsubMessage message;
+    private volatile long expirationMillis;
+
+    Lease(PubsubMessage message, long expirationMillis) {
+      this.message = message;
+      this.expirationMillis = expirationMillis;
+    }
+  }
+
+  private static class Stream {
+    private final ServerCallStreamObserver<StreamingPullResponse> responseObserver;
+    private volatile boolean initialized;
+    private volatile int ackDeadlineSeconds = ACK_DEADLINE_SECONDS;
+
+    Stream(ServerCallStreamObserver<StreamingPullResponse> responseObserver) {
+      this.responseObserver = responseObserver;
+    }
+  }
+
+  /**
+   * Starts a server, that can be reached with channels built for the in-process transport {@code
+   * name}.
+   */
+  FakePubSubServer(String name) throws IOException {
+    this.name = name;
+    this.executor =
+        Executors.newScheduledThreadPool(
+            4,
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("fake-pubsub-server-%d")
+                .build());
+    this.server =
+        InProcessServerBuilder.forName(name)
+            .addService(new PublisherService())
+            .addService(new SubscriberService())
+            .build()
+            .start();
+    executor.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              deliverToStreams();
+            } catch (RuntimeException e) {
+              // keep delivering to the other streams
+              logger.log(Level.WARNING, "Failed to deliver messages", e);
+            }
+          }
+        },
+        STREAMING_DELIVERY_PERIOD_MILLIS,
+        STREAMING_DELIVERY_PERIOD_MILLIS,
+        TimeUnit.MILLISECONDS);
+    executor.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            expireLeases();
+          }
+        },
+        EXPIRATION_CHECK_PERIOD_MILLIS,
+        EXPIRATION_CHECK_PERIOD_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Returns a new channel to this server. */
+  ManagedChannel newChannel() {
+    return InProcessChannelBuilder.forName(name).build();
+  }
+
+  /**
+   * Delays every response by {@code latency}, plus a random amount between zero and {@code
+   * jitter}.
+   */
+  FakePubSubServer setLatency(Duration latency, Duration jitter) {
+    this.latencyMillis = latency.getMillis();
+    this.latencyJitterMillis = jitter.getMillis();
+    return this;
+  }
+
+  /**
+   * Fails each response with {@code error} with the given probability. A failed request has no
+   * effect on the state of the server.
+   */
+  FakePubSubServer setErrors(double probability, Status error) {
+    this.errorProbability = probability;
+    this.injectedError = error;
+    return this;
+  }
+
+  long getPublishedMessages() {
+    return publishedMessages.get();
+  }
+
+  long getDeliveredMessages() {
+    return deliveredMessages.get();
+  }
+
+  long getAckedMessages() {
+    return ackedMessages.get();
+  }
+
+  long getNackedMessages() {
+    return nackedMessages.get();
+  }
+
+  /** Returns the number of deliveries whose ack deadline expired before they were acknowledged. */
+  long getExpiredMessages() {
+    return expiredMessages.get();
+  }
+
+  /** Returns the number of times the ack deadline of a message was extended. */
+  long getExtendedAckDeadlines() {
+    return extendedAckDeadlines.get();
+  }
+
+  /** Returns the number of published messages that were not delivered yet. */
+  int getBacklogSize() {
+    return backlog.size();
+  }
+
+  /** Returns the number of delivered messages that were not acknowledged yet. */
+  int getOutstandingMessageCount() {
+    return outstandingMessages.size();
+  }
+
+  @Override
+  public void close() {
+    server.shutdownNow();
+    executor.shutdownNow();
+  }
+
+  private class PublisherService extends PublisherImplBase {
+    @Override
+    public void publish(
+        final PublishRequest request, StreamObserver<PublishResponse> responseObserver) {
+      respond(
+          responseObserver,
+          new Callable<PublishResponse>() {
+            @Override
+            public PublishResponse call() {
+              long now = System.currentTimeMillis();
+              Timestamp publishTime =
+                  Timestamp.newBuilder()
+                      .setSeconds(TimeUnit.MILLISECONDS.toSeconds(now))
+                      .setNanos((int) TimeUnit.MILLISECONDS.toNanos(now % 1000))
+                      .build();
+              PublishResponse.Builder response = PublishResponse.newBuilder();
+              for (PubsubMessage message : request.getMessagesList()) {
+                String messageId = Long.toString(nextMessageId.getAndIncrement());
+                backlog.add(
+                    message
+                        .toBuilder()
+                        .setMessageId(messageId)
+                        .setPublishTime(publishTime)
+                        .build());
+                response.addMessageIds(messageId);
+              }
+              publishedMessages.addAndGet(request.getMessagesCount());
+              return response.build();
+            }
+          });
+    }
+  }
+
+  private class SubscriberService extends SubscriberImplBase {
+    @Override
+    public void getSubscription(
+        final GetSubscriptionRequest request, StreamObserver<Subscription> responseObserver) {
+      respond(
+          responseObserver,
+          new Callable<Subscription>() {
+            @Override
+            public Subscription call() {
+              return Subscription.newBuilder()
+                  .setName(request.getSubscription())
+                  .setAckDeadlineSeconds(ACK_DEADLINE_SECONDS)
+                  .setTopic("fake-topic")
+                  .build();
+            }
+          });
+    }
+
+    @Override
+    public void pull(final PullRequest request, StreamObserver<PullResponse> responseObserver) {
+      respond(
+          responseObserver,
+          new Callable<PullResponse>() {
+            @Override
+            public PullResponse call() throws InterruptedException {
+              PullResponse.Builder response = PullResponse.newBuilder();
+              PubsubMessage message = backlog.poll();
+              if (message == null && !request.getReturnImmediately()) {
+                message = backlog.poll(PULL_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+              }
+              while (message != null) {
+                response.addReceivedMessages(lease(message, ACK_DEADLINE_SECONDS));
+                if (response.getReceivedMessagesCount() >= request.getMaxMessages()) {
+                  break;
+                }
+                message = backlog.poll();
+              }
+              return response.build();
+            }
+          });
+    }
+
+    @Override
+    public void acknowledge(
+        final AcknowledgeRequest request, StreamObserver<Empty> responseObserver) {
+      respond(
+          responseObserver,
+          new Callable<Empty>() {
+            @Override
+            public Empty call() {
+              acknowledgeMessages(request.getAckIdsList());
+              return Empty.getDefaultInstance();
+            }
+          });
+    }
+
+    @Override
+    public void modifyAckDeadline(
+        final ModifyAckDeadlineRequest request, StreamObserver<Empty> responseObserver) {
+      respond(
+          responseObserver,
+          new Callable<Empty>() {
+            @Override
+            public Empty call() {
+              for (String ackId : request.getAckIdsList()) {
+                modifyMessageAckDeadline(ackId, request.getAckDeadlineSeconds());
+              }
+              return Empty.getDefaultInstance();
+            }
+          });
+    }
+
+    @Override
+    public StreamObserver<StreamingPullRequest> streamingPull(
+        StreamObserver<StreamingPullResponse> responseObserver) {
+      final Stream stream =
+          new Stream((ServerCallStreamObserver<StreamingPullResponse>) responseObserver);
+      return new StreamObserver<StreamingPullRequest>() {
+        @Override
+        public void onNext(StreamingPullRequest request) {
+          if (!stream.initialized) {
+            if (request.getSubscription().isEmpty()) {
+              stream.responseObserver.onError(
+                  Status.INVALID_ARGUMENT
+                      .withDescription("The first request must set a subscription.")
+                      .asException());
+              return;
+            }
+            if (request.getStreamAckDeadlineSeconds() > 0) {
+              stream.ackDeadlineSeconds = request.getStreamAckDeadlineSeconds();
+            }
+            stream.initialized = true;
+            streams.add(stream);
+          }
+          acknowledgeMessages(request.getAckIdsList());
+          Iterator<String> ackIds = request.getModifyDeadlineAckIdsList().iterator();
+          Iterator<Integer> seconds = request.getModifyDeadlineSecondsList().iterator();
+          while (ackIds.hasNext() && seconds.hasNext()) {
+            modifyMessageAckDeadline(ackIds.next(), seconds.next());
+          }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          streams.remove(stream);
+        }
+
+        @Override
+        public void onCompleted() {
+          streams.remove(stream);
+          synchronized (stream) {
+            stream.responseObserver.onCompleted();
+          }
+        }
+      };
+    }
+  }
+
+  private ReceivedMessage lease(PubsubMessage message, int ackDeadlineSeconds) {
+    String ackId = "ack-" + nextAckId.getAndIncrement();
+    outstandingMessages.put(
+        ackId,
+        new Lease(
+            message, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ackDeadlineSeconds)));
+    deliveredMessages.incrementAndGet();
+    return ReceivedMessage.newBuilder().setAckId(ackId).setMessage(message).build();
+  }
+
+  private void acknowledgeMessages(List<String> ackIds) {
+    for (String ackId : ackIds) {
+      if (outstandingMessages.remove(ackId) != null) {
+        ackedMessages.incrementAndGet();
+      }
+    }
+  }
+
+  private void modifyMessageAckDeadline(String ackId, int seconds) {
+    if (seconds > 0) {
+      Lease lease = outstandingMessages.get(ackId);
+      if (lease != null) {
+        lease.expirationMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        extendedAckDeadlines.incrementAndGet();
+      }
+      return;
+    }
+    Lease lease = outstandingMessages.remove(ackId);
+    if (lease != null) {
+      nackedMessages.incrementAndGet();
+      backlog.addFirst(lease.message);
+    }
+  }
+
+  /** Puts the messages whose ack deadline expired back in the backlog. */
+  private void expireLeases() {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, Lease> entry : outstandingMessages.entrySet()) {
+      Lease lease = entry.getValue();
+      if (lease.expirationMillis <= now && outstandingMessages.remove(entry.getKey(), lease)) {
+        expiredMessages.incrementAndGet();
+        backlog.addFirst(lease.message);
+      }
+    }
+  }
+
+  /** Sends the backlog to the streams that can receive more messages. */
+  private void deliverToStreams() {
+    for (final Stream stream : streams) {
+      if (backlog.isEmpty()) {
+        return;
+      }
+      if (!stream.responseObserver.isReady()) {
+        continue;
+      }
+      final List<PubsubMessage> messages = new ArrayList<>();
+      backlog.drainTo(messages, MAX_MESSAGES_PER_STREAMING_RESPONSE);
+      final Status error = nextInjectedError();
+      Runnable send =
+          new Runnable() {
+            @Override
+            public void run() {
+              synchronized (stream) {
+                if (error == null
+                    && streams.contains(stream)
+                    && !stream.responseObserver.isCancelled()) {
+                  StreamingPullResponse.Builder response = StreamingPullResponse.newBuilder();
+                  for (PubsubMessage message : messages) {
+                    response.addReceivedMessages(lease(message, stream.ackDeadlineSeconds));
+                  }
+                  stream.responseObserver.onNext(response.build());
+                  return;
+                }
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                  backlog.addFirst(messages.get(i));
+                }
+                if (error != null && streams.remove(stream)) {
+                  stream.responseObserver.onError(error.asException());
+                }
+              }
+            }
+          };
+      schedule(send);
+    }
+  }
+
+  /**
+   * Answers a unary call with the result of {@code handler}, after the injected latency, or fails
+   * it with the injected error without running {@code handler}.
+   */
+  private <T> void respond(final StreamObserver<T> responseObserver, final Callable<T> handler) {
+    final Status error = nextInjectedError();
+    schedule(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (error != null) {
+              responseObserver.onError(error.asException());
+              return;
+            }
+            T response;
+            try {
+              response = handler.call();
+            } catch (Exception e) {
+              responseObserver.onError(Status.INTERNAL.withCause(e).asException());
+              return;
+            }
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+          }
+        });
+  }
+
+  private void schedule(Runnable task) {
+    long delayMillis = latencyMillis;
+    if (latencyJitterMillis > 0) {
+      delayMillis += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+    }
+    if (delayMillis > 0) {
+      executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    } else {
+      task.run();
+    }
+  }
+
+  private Status nextInjectedError() {
+    double probability = errorProbability;
+    if (probability > 0 && ThreadLocalRandom.current().nextDouble() < probability) {
+      return injectedError;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+import com.google.pubsub.v1.PublisherGrpc;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.PullRequest;
+import com.google.pubsub.v1.PullResponse;
+import com.google.pubsub.v1.SubscriberGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FakePubSubServerTest {
+
+  private static final String TOPIC = "projects/test-project/topics/test-topic";
+  private static final String SUBSCRIPTION =
+      "projects/test-project/subscriptions/test-subscription";
+
+  @Rule public TestName testName = new TestName();
+
+  private FakePubSubServer server;
+  private ManagedChannel channel;
+  private PublisherGrpc.PublisherBlockingStub publisherStub;
+  private SubscriberGrpc.SubscriberBlockingStub subscriberStub;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakePubSubServer(testName.getMethodName());
+    channel = server.newChannel();
+    publisherStub = PublisherGrpc.newBlockingStub(channel);
+    subscriberStub = SubscriberGrpc.newBlockingStub(channel);
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.close();
+  }
+
+  @Test
+  public void testPublishPullAndAck() {
+    PublishResponse publishResponse = publish("A", "B");
+    assertEquals(2, publishResponse.getMessageIdsCount());
+    assertEquals(2, server.getPublishedMessages());
+
+    PullResponse pullResponse = pull(10);
+    assertEquals(2, pullResponse.getReceivedMessagesCount());
+    assertEquals(
+        publishResponse.getMessageIds(0),
+        pullResponse.getReceivedMessages(0).getMessage().getMessageId());
+    assertEquals(
+        ByteString.copyFromUtf8("B"), pullResponse.getReceivedMessages(1).getMessage().getData());
+    assertTrue(pullResponse.getReceivedMessages(0).getMessage().hasPublishTime());
+    assertEquals(2, server.getOutstandingMessageCount());
+
+    subscriberStub.acknowledge(
+        AcknowledgeRequest.newBuilder()
+            .setSubscription(SUBSCRIPTION)
+            .addAckIds(pullResponse.getReceivedMessages(0).getAckId())
+            .addAckIds(pullResponse.getReceivedMessages(1).getAckId())
+            .build());
+    assertEquals(2, server.getAckedMessages());
+    assertEquals(0, server.getOutstandingMessageCount());
+    assertEquals(0, pull(10).getReceivedMessagesCount());
+  }
+
+  @Test
+  public void testPullRespectsMaxMessages() {
+    publish("A", "B", "C");
+    assertEquals(2, pull(2).getReceivedMessagesCount());
+    assertEquals(1, server.getBacklogSize());
+  }
+
+  @Test
+  public void testNackedMessagesAreRedelivered() {
+    publish("A");
+    PullResponse pullResponse = pull(10);
+    subscriberStub.modifyAckDeadline(
+        ModifyAckDeadlineRequest.newBuilder()
+            .setSubscription(SUBSCRIPTION)
+            .addAckIds(pullResponse.getReceivedMessages(0).getAckId())
+            .setAckDeadlineSeconds(0)
+            .build());
+    assertEquals(1, server.getNackedMessages());
+
+    PullResponse redelivery = pull(10);
+    assertEquals(1, redelivery.getReceivedMessagesCount());
+    assertEquals(
+        pullResponse.getReceivedMessages(0).getMessage(),
+        redelivery.getReceivedMessages(0).getMessage());
+    assertEquals(2, server.getDeliveredMessages());
+  }
+
+  @Test
+  public void testExpiredMessagesAreRedelivered() throws InterruptedException {
+    publish("A");
+    PullResponse pullResponse = pull(10);
+    subscriberStub.modifyAckDeadline(
+        ModifyAckDeadlineRequest.newBuilder()
+            .setSubscription(SUBSCRIPTION)
+            .addAckIds(pullResponse.getReceivedMessages(0).getAckId())
+            .setAckDeadlineSeconds(1)
+            .build());
+    assertEquals(1, server.getExtendedAckDeadlines());
+    assertEquals(0, pull(10).getReceivedMessagesCount());
+
+    Thread.sleep(1000 + 2 * FakePubSubServer.EXPIRATION_CHECK_PERIOD_MILLIS);
+    assertEquals(1, server.getExpiredMessages());
+    PullResponse redelivery = pull(10);
+    assertEquals(1, redelivery.getReceivedMessagesCount());
+    assertEquals(
+        pullResponse.getReceivedMessages(0).getMessage(),
+        redelivery.getReceivedMessages(0).getMessage());
+  }
+
+  @Test
+  public void testInjectedErrors() {
+    server.setErrors(1, Status.UNAVAILABLE);
+    try {
+      publish("A");
+      fail("Expected the publish to fail");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+    }
+    assertEquals(0, server.getPublishedMessages());
+
+    server.setErrors(0, Status.UNAVAILABLE);
+    publish("A");
+    assertEquals(1, server.getPublishedMessages());
+  }
+
+  @Test
+  public void testInjectedLatency() {
+    server.setLatency(Duration.millis(50), Duration.millis(10));
+    long start = System.currentTimeMillis();
+    publish("A");
+    assertTrue(System.currentTimeMillis() - start >= 50);
+  }
+
+  private PublishResponse publish(String... data) {
+    PublishRequest.Builder request = PublishRequest.newBuilder().setTopic(TOPIC);
+    for (String element : data) {
+      request.addMessages(PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8(element)));
+    }
+    return publisherStub.publish(request.build());
+  }
+
+  private PullResponse pull(int maxMessages) {
+    return subscriberStub.pull(
+        PullRequest.newBuilder()
+            .setSubscription(SUBSCRIPTION)
+            .setMaxMessages(maxMessages)
+            .setReturnImmediately(true)
+            .build());
+  }
+}
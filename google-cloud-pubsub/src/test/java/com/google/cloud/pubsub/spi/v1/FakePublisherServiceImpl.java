@@ -24,6 +24,7 @@ import io.grpc.stub.StreamObserver;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A fake implementation of {@link PublisherImplBase}, that can be used to test clients of a Cloud
@@ -33,6 +34,8 @@ class FakePublisherServiceImpl extends PublisherImplBase {
 
   private final LinkedBlockingQueue<PublishRequest> requests = new LinkedBlockingQueue<>();
   private final LinkedBlockingQueue<Response> publishResponses = new LinkedBlockingQueue<>();
+  private final AtomicInteger nextMessageId = new AtomicInteger(1);
+  private volatile boolean autoPublishResponse;
 
   /** Class used to save the state of a possible response. */
   private static class Response {
@@ -73,6 +76,15 @@ class FakePublisherServiceImpl extends PublisherImplBase {
   @Override
   public void publish(PublishRequest request, StreamObserver<PublishResponse> responseObserver) {
     requests.add(request);
+    if (autoPublishResponse) {
+      PublishResponse.Builder builder = PublishResponse.newBuilder();
+      for (int i = 0; i < request.getMessagesCount(); i++) {
+        builder.addMessageIds(Integer.toString(nextMessageId.getAndIncrement()));
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+      return;
+    }
     Response response;
     try {
       response = publishResponses.take();
@@ -87,6 +99,15 @@ class FakePublisherServiceImpl extends PublisherImplBase {
     }
   }
 
+  /**
+   * Makes the service answer every request with generated message IDs, rather than with the
+   * responses added with {@link #addPublishResponse(PublishResponse)}.
+   */
+  public FakePublisherServiceImpl setAutoPublishResponse(boolean autoPublishResponse) {
+    this.autoPublishResponse = autoPublishResponse;
+    return this;
+  }
+
   public FakePublisherServiceImpl addPublishResponse(PublishResponse publishResponse) {
     publishResponses.add(new Response(publishResponse));
     return this;
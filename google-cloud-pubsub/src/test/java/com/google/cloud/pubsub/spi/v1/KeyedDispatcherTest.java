@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link KeyedDispatcher}. */
+@RunWith(JUnit4.class)
+public class KeyedDispatcherTest {
+
+  private static final MessageKeyExtractor ATTRIBUTE_KEY_EXTRACTOR =
+      new MessageKeyExtractor() {
+        @Override
+        public String extractKey(PubsubMessage message) {
+          return message.getAttributesMap().get("key");
+        }
+      };
+
+  private final List<String> delivered = new ArrayList<>();
+  // Runs the deliveries on the calling thread.
+  private final Executor executor =
+      new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          command.run();
+        }
+      };
+
+  @Test
+  public void testExtractKey() {
+    KeyedDispatcher dispatcher = new KeyedDispatcher(ATTRIBUTE_KEY_EXTRACTOR, 10, executor);
+    assertEquals(
+        "a", dispatcher.extractKey(PubsubMessage.newBuilder().putAttributes("key", "a").build()));
+    assertEquals(null, dispatcher.extractKey(PubsubMessage.getDefaultInstance()));
+  }
+
+  @Test
+  public void testSameKeyDeliveredInOrder() {
+    KeyedDispatcher dispatcher = new KeyedDispatcher(ATTRIBUTE_KEY_EXTRACTOR, 10, executor);
+    SettableFuture<Void> first = SettableFuture.create();
+    SettableFuture<Void> second = SettableFuture.create();
+    SettableFuture<Void> third = SettableFuture.create();
+    assertTrue(dispatcher.submit("a", delivery("1"), first));
+    assertTrue(dispatcher.submit("a", delivery("2"), second));
+    assertTrue(dispatcher.submit("a", delivery("3"), third));
+
+    // Only the first message is delivered until it is replied to
+    assertEquals(ImmutableList.of("1"), delivered);
+    first.set(null);
+    assertEquals(ImmutableList.of("1", "2"), delivered);
+    second.setException(new RuntimeException("receiver failed"));
+    assertEquals(ImmutableList.of("1", "2", "3"), delivered);
+    third.set(null);
+    assertEquals(0, dispatcher.getOutstandingKeyCount());
+  }
+
+  @Test
+  public void testDifferentKeysDeliveredConcurrently() {
+    KeyedDispatcher dispatcher = new KeyedDispatcher(ATTRIBUTE_KEY_EXTRACTOR, 10, executor);
+    SettableFuture<Void> first = SettableFuture.create();
+    SettableFuture<Void> second = SettableFuture.create();
+    assertTrue(dispatcher.submit("a", delivery("1"), first));
+    assertTrue(dispatcher.submit("b", delivery("2"), second));
+
+    assertEquals(ImmutableList.of("1", "2"), delivered);
+    assertEquals(2, dispatcher.getOutstandingKeyCount());
+    second.set(null);
+    first.set(null);
+    assertEquals(0, dispatcher.getOutstandingKeyCount());
+  }
+
+  @Test
+  public void testMaxOutstandingMessagesPerKey() {
+    KeyedDispatcher dispatcher = new KeyedDispatcher(ATTRIBUTE_KEY_EXTRACTOR, 2, executor);
+    SettableFuture<Void> first = SettableFuture.create();
+    assertTrue(dispatcher.submit("a", delivery("1"), first));
+    assertTrue(dispatcher.submit("a", delivery("2"), SettableFuture.<Void>create()));
+    assertFalse(dispatcher.submit("a", delivery("3"), SettableFuture.<Void>create()));
+    // Other keys are not affected
+    assertTrue(dispatcher.submit("b", delivery("4"), SettableFuture.<Void>create()));
+
+    first.set(null);
+    assertTrue(dispatcher.submit("a", delivery("5"), SettableFuture.<Void>create()));
+    assertEquals(ImmutableList.of("1", "4", "2"), delivered);
+  }
+
+  private Runnable delivery(final String name) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        delivered.add(name);
+      }
+    };
+  }
+}
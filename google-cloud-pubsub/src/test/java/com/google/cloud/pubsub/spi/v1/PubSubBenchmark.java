@@ -0,0 +1,323 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.core.FlowControlSettings;
+import com.google.api.gax.grpc.ChannelProvider;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.SubscriptionName;
+import com.google.pubsub.v1.TopicName;
+import io.grpc.ManagedChannel;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.joda.time.Duration;
+
+/**
+ * A throughput benchmark of {@link Publisher} and {@link Subscriber}, run against a {@link
+ * FakePubSubServer} so that it needs neither network access nor a Cloud project.
+ *
+ * <p>Each scenario publishes a fixed number of messages while a subscriber acknowledges them, and
+ * reports the publish throughput, the ack throughput and the end-to-end latency percentiles. The
+ * scenarios cover combinations of publisher batching settings, subscriber flow control settings
+ * and numbers of channels. Run it with:
+ *
+ * <pre>{@code
+ * PubSubBenchmark [messageCount] [messageSizeBytes] [serverLatencyMillis]
+ * }</pre>
+ */
+class PubSubBenchmark {
+
+  private static final TopicName TOPIC = TopicName.create("benchmark-project", "benchmark-topic");
+  private static final SubscriptionName SUBSCRIPTION =
+      SubscriptionName.create("benchmark-project", "benchmark-subscription");
+  private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private static final int DEFAULT_MESSAGE_COUNT = 100000;
+  private static final int DEFAULT_MESSAGE_SIZE = 1000;
+  private static final long DEFAULT_SERVER_LATENCY_MILLIS = 0;
+
+  /** A combination of settings to benchmark. */
+  static final class Scenario {
+    private final String name;
+    private final BatchingSettings batchingSettings;
+    private final FlowControlSettings flowControlSettings;
+    private final int channelCount;
+
+    Scenario(
+        String name,
+        BatchingSettings batchingSettings,
+        FlowControlSettings flowControlSettings,
+        int channelCount) {
+      this.name = name;
+      this.batchingSettings = batchingSettings;
+      this.flowControlSettings = flowControlSettings;
+      this.channelCount = channelCount;
+    }
+
+    String getName() {
+      return name;
+    }
+  }
+
+  /** The measurements of one scenario. */
+  static final class Result {
+    private final long publishedMessages;
+    private final long ackedMessages;
+    private final double publishMessagesPerSecond;
+    private final double ackMessagesPerSecond;
+    private final DistributionStats endToEndLatency;
+
+    Result(
+        long publishedMessages,
+        long ackedMessages,
+        double publishMessagesPerSecond,
+        double ackMessagesPerSecond,
+        DistributionStats endToEndLatency) {
+      this.publishedMessages = publishedMessages;
+      this.ackedMessages = ackedMessages;
+      this.publishMessagesPerSecond = publishMessagesPerSecond;
+      this.ackMessagesPerSecond = ackMessagesPerSecond;
+      this.endToEndLatency = endToEndLatency;
+    }
+
+    long getPublishedMessages() {
+      return publishedMessages;
+    }
+
+    long getAckedMessages() {
+      return ackedMessages;
+    }
+
+    double getPublishMessagesPerSecond() {
+      return publishMessagesPerSecond;
+    }
+
+    double getAckMessagesPerSecond() {
+      return ackMessagesPerSecond;
+    }
+
+    DistributionStats getEndToEndLatency() {
+      return endToEndLatency;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "publish %.0f msgs/s, ack %.0f msgs/s, end-to-end latency p50 %d ms, p90 %d ms, "
+              + "p99 %d ms",
+          publishMessagesPerSecond,
+          ackMessagesPerSecond,
+          endToEndLatency.getMedian(),
+          endToEndLatency.getPercentile90(),
+          endToEndLatency.getPercentile99());
+    }
+  }
+
+  /** Hands out channels to a fixed number of in-process connections, round robin. */
+  private static class ChannelPool implements ChannelProvider {
+    private final ManagedChannel[] channels;
+    private final AtomicRoundRobin channelIndex;
+
+    ChannelPool(FakePubSubServer server, int channelCount) {
+      channels = new ManagedChannel[channelCount];
+      for (int i = 0; i < channelCount; i++) {
+        channels[i] = server.newChannel();
+      }
+      channelIndex = new AtomicRoundRobin(channelCount);
+    }
+
+    @Override
+    public boolean shouldAutoClose() {
+      // the channels are shared by the publisher and the subscriber, see close()
+      return false;
+    }
+
+    @Override
+    public boolean needsExecutor() {
+      return false;
+    }
+
+    @Override
+    public ManagedChannel getChannel() {
+      return channels[channelIndex.next()];
+    }
+
+    @Override
+    public ManagedChannel getChannel(Executor executor) {
+      throw new IllegalStateException("The channel pool doesn't need an executor");
+    }
+
+    void close() {
+      for (ManagedChannel channel : channels) {
+        channel.shutdownNow();
+      }
+    }
+  }
+
+  static List<Scenario> getScenarios() {
+    List<BatchingSettings> batchingSettings =
+        ImmutableList.of(
+            Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                .toBuilder()
+                .setElementCountThreshold(1L)
+                .build(),
+            Publisher.Builder.DEFAULT_BATCHING_SETTINGS,
+            BatchingSettings.newBuilder()
+                .setElementCountThreshold(Publisher.getApiMaxRequestElementCount())
+                .setRequestByteThreshold(Publisher.getApiMaxRequestBytes())
+                .setDelayThreshold(Duration.millis(10))
+                .build());
+    List<FlowControlSettings> flowControlSettings =
+        ImmutableList.of(
+            FlowControlSettings.getDefaultInstance(),
+            FlowControlSettings.newBuilder().setMaxOutstandingElementCount(1000).build());
+    List<Integer> channelCounts = ImmutableList.of(1, 4, 16);
+    ImmutableList.Builder<Scenario> scenarios = ImmutableList.builder();
+    for (BatchingSettings batching : batchingSettings) {
+      for (FlowControlSettings flowControl : flowControlSettings) {
+        for (int channelCount : channelCounts) {
+          scenarios.add(
+              new Scenario(
+                  String.format(
+                      "batch=%d/%dB/%dms flow=%s channels=%d",
+                      batching.getElementCountThreshold(),
+                      batching.getRequestByteThreshold(),
+                      batching.getDelayThreshold().getMillis(),
+                      flowControl.getMaxOutstandingElementCount(),
+                      channelCount),
+                  batching,
+                  flowControl,
+                  channelCount));
+        }
+      }
+    }
+    return scenarios.build();
+  }
+
+  /**
+   * Publishes {@code messageCount} messages of {@code messageSize} bytes with the settings of
+   * {@code scenario}, and waits until all of them are acknowledged.
+   */
+  static Result run(final Scenario scenario, int messageCount, int messageSize, Duration latency)
+      throws Exception {
+    try (FakePubSubServer server =
+        new FakePubSubServer("pubsub-benchmark-" + scenario.getName())
+            .setLatency(latency, Duration.ZERO)) {
+      ChannelPool channelPool = new ChannelPool(server, scenario.channelCount);
+      final AtomicLong firstReceivedNanos = new AtomicLong();
+      final CountDownLatch received = new CountDownLatch(messageCount);
+      Subscriber subscriber =
+          Subscriber.defaultBuilder(
+                  SUBSCRIPTION,
+                  new MessageReceiver() {
+                    @Override
+                    public void receiveMessage(
+                        PubsubMessage message, AckReplyConsumer consumer) {
+                      firstReceivedNanos.compareAndSet(0, System.nanoTime());
+                      consumer.ack();
+                      received.countDown();
+                    }
+                  })
+              .setChannelProvider(channelPool)
+              .setFlowControlSettings(scenario.flowControlSettings)
+              .build();
+      Publisher publisher =
+          Publisher.defaultBuilder(TOPIC)
+              .setChannelProvider(channelPool)
+              .setBatchingSettings(scenario.batchingSettings)
+              .build();
+      try {
+        subscriber.startAsync().awaitRunning();
+        PubsubMessage message =
+            PubsubMessage.newBuilder().setData(ByteString.copyFrom(new byte[messageSize])).build();
+        final CountDownLatch published = new CountDownLatch(messageCount);
+        final AtomicLong failedPublishes = new AtomicLong();
+        ApiFutureCallback<String> publishCallback =
+            new ApiFutureCallback<String>() {
+              @Override
+              public void onSuccess(String messageId) {
+                published.countDown();
+              }
+
+              @Override
+              public void onFailure(Throwable t) {
+                failedPublishes.incrementAndGet();
+                published.countDown();
+              }
+            };
+        long publishStartNanos = System.nanoTime();
+        for (int i = 0; i < messageCount; i++) {
+          ApiFutures.addCallback(publisher.publish(message), publishCallback);
+        }
+        await(published, "publish");
+        long publishNanos = System.nanoTime() - publishStartNanos;
+        await(received, "receive");
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (server.getAckedMessages() < messageCount - failedPublishes.get()) {
+          if (System.currentTimeMillis() > deadline) {
+            throw new IllegalStateException("Timed out waiting for acks");
+          }
+          Thread.sleep(1);
+        }
+        long ackNanos = System.nanoTime() - firstReceivedNanos.get();
+        return new Result(
+            server.getPublishedMessages(),
+            server.getAckedMessages(),
+            perSecond(server.getPublishedMessages(), publishNanos),
+            perSecond(server.getAckedMessages(), ackNanos),
+            subscriber.getStats().getEndToEndLatency());
+      } finally {
+        publisher.shutdown();
+        subscriber.stopAsync().awaitTerminated();
+        channelPool.close();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MESSAGE_COUNT;
+    int messageSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MESSAGE_SIZE;
+    Duration latency =
+        Duration.millis(args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SERVER_LATENCY_MILLIS);
+    System.out.printf(
+        "%d messages of %d bytes, server latency %d ms%n",
+        messageCount, messageSize, latency.getMillis());
+    for (Scenario scenario : getScenarios()) {
+      Result result = run(scenario, messageCount, messageSize, latency);
+      System.out.printf("%s: %s%n", scenario.getName(), result);
+    }
+  }
+
+  private static void await(CountDownLatch latch, String operation) throws InterruptedException {
+    if (!latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      throw new IllegalStateException(
+          "Timed out waiting to " + operation + ", " + latch.getCount() + " messages remaining");
+    }
+  }
+
+  private static double perSecond(long count, long nanos) {
+    return count * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+  }
+}
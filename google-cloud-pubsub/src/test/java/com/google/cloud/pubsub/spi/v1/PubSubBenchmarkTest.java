@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Runs a short benchmark scenario, so that the benchmark keeps working as the clients change. */
+@RunWith(JUnit4.class)
+public class PubSubBenchmarkTest {
+
+  private static final int MESSAGE_COUNT = 200;
+
+  @Test
+  public void testRunScenario() throws Exception {
+    PubSubBenchmark.Scenario scenario = PubSubBenchmark.getScenarios().get(0);
+    PubSubBenchmark.Result result =
+        PubSubBenchmark.run(scenario, MESSAGE_COUNT, 10, Duration.millis(1));
+    assertEquals(MESSAGE_COUNT, result.getPublishedMessages());
+    assertEquals(MESSAGE_COUNT, result.getAckedMessages());
+    assertTrue(result.getPublishMessagesPerSecond() > 0);
+    assertTrue(result.getAckMessagesPerSecond() > 0);
+    assertEquals(MESSAGE_COUNT, result.getEndToEndLatency().getCount());
+  }
+}
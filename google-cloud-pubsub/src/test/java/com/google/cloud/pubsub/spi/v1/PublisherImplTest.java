@@ -30,7 +30,9 @@ import com.google.api.gax.grpc.ExecutorProvider;
 import com.google.api.gax.grpc.FixedExecutorProvider;
 import com.google.api.gax.grpc.InstantiatingExecutorProvider;
 import com.google.cloud.pubsub.spi.v1.Publisher.Builder;
+import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PublishRequest;
 import com.google.pubsub.v1.PublishResponse;
 import com.google.pubsub.v1.PubsubMessage;
 import com.google.pubsub.v1.TopicName;
@@ -40,6 +42,12 @@ import io.grpc.StatusException;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.internal.ServerImpl;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import org.joda.time.Duration;
@@ -255,6 +263,11 @@ public class PublisherImplTest {
         PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8(data)).build());
   }
 
+  private ApiFuture<String> sendTestMessage(Publisher publisher, String data, String orderingKey) {
+    return publisher.publish(
+        PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8(data)).build(), orderingKey);
+  }
+
   @Test
   public void testPublishFailureRetries() throws Exception {
     Publisher publisher =
@@ -343,6 +356,314 @@ public class PublisherImplTest {
     }
   }
 
+  @Test
+  public void testPublishFromManyThreads() throws Exception {
+    final Publisher publisher =
+        getTestPublisherBuilder()
+            .setBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(10L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .build();
+    testPublisherServiceImpl.setAutoPublishResponse(true);
+
+    final int threadCount = 8;
+    final int messagesPerThread = 25;
+    final List<ApiFuture<String>> publishFutures =
+        Collections.synchronizedList(new ArrayList<ApiFuture<String>>());
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int j = 0; j < messagesPerThread; j++) {
+                    publishFutures.add(sendTestMessage(publisher, "msg" + j));
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // Sends the messages still waiting for their batch to fill up.
+    publisher.shutdown();
+
+    Set<String> messageIds = new HashSet<>();
+    for (ApiFuture<String> publishFuture : publishFutures) {
+      messageIds.add(publishFuture.get());
+    }
+    assertEquals(threadCount * messagesPerThread, messageIds.size());
+    int publishedMessages = 0;
+    for (PublishRequest request : testPublisherServiceImpl.getCapturedRequests()) {
+      assertTrue(request.getMessagesCount() <= 10);
+      publishedMessages += request.getMessagesCount();
+    }
+    assertEquals(threadCount * messagesPerThread, publishedMessages);
+  }
+
+  @Test
+  public void testPublishWithOrderingKey() throws Exception {
+    Publisher publisher =
+        getTestPublisherBuilder()
+            .setExecutorProvider(SINGLE_THREAD_EXECUTOR)
+            .setBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(1L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .build();
+    testPublisherServiceImpl.setAutoPublishResponse(true);
+
+    List<ApiFuture<String>> publishFutures = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      publishFutures.add(sendTestMessage(publisher, "a" + i, "keyA"));
+      publishFutures.add(sendTestMessage(publisher, "b" + i, "keyB"));
+    }
+    for (ApiFuture<String> publishFuture : publishFutures) {
+      publishFuture.get();
+    }
+
+    // Batches of a key are sent one at a time, so they reach the service in order.
+    List<String> keyAMessages = new ArrayList<>();
+    List<String> keyBMessages = new ArrayList<>();
+    for (PublishRequest request : testPublisherServiceImpl.getCapturedRequests()) {
+      assertEquals(1, request.getMessagesCount());
+      String data = request.getMessages(0).getData().toStringUtf8();
+      if (data.startsWith("a")) {
+        keyAMessages.add(data);
+      } else {
+        keyBMessages.add(data);
+      }
+    }
+    assertEquals(Arrays.asList("a0", "a1", "a2", "a3", "a4"), keyAMessages);
+    assertEquals(Arrays.asList("b0", "b1", "b2", "b3", "b4"), keyBMessages);
+    publisher.shutdown();
+  }
+
+  @Test
+  public void testPublishWithMessagePacking() throws Exception {
+    Publisher publisher =
+        getTestPublisherBuilder()
+            .setBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(2L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .setMessagePacking(PayloadCodecs.gzip())
+            .build();
+
+    testPublisherServiceImpl.addPublishResponse(PublishResponse.newBuilder().addMessageIds("1"));
+
+    ApiFuture<String> publishFuture1 = sendTestMessage(publisher, "A");
+    ApiFuture<String> publishFuture2 = sendTestMessage(publisher, "B");
+
+    assertEquals("1:0", publishFuture1.get());
+    assertEquals("1:1", publishFuture2.get());
+
+    List<PublishRequest> requests = testPublisherServiceImpl.getCapturedRequests();
+    assertEquals(1, requests.size());
+    assertEquals(1, requests.get(0).getMessagesCount());
+    PubsubMessage envelope = requests.get(0).getMessages(0);
+    assertEquals(
+        "gzip", envelope.getAttributesMap().get(MessagePacker.PACKED_MESSAGE_CODEC_ATTRIBUTE));
+    List<PubsubMessage> packedMessages =
+        MessagePacker.unpack(
+            envelope, ImmutableMap.<String, PayloadCodec>of("gzip", PayloadCodecs.gzip()));
+    assertEquals(2, packedMessages.size());
+    assertEquals("A", packedMessages.get(0).getData().toStringUtf8());
+    assertEquals("B", packedMessages.get(1).getData().toStringUtf8());
+    publisher.shutdown();
+  }
+
+  @Test
+  public void testPublishWithOrderingKey_failureAndResume() throws Exception {
+    Publisher publisher =
+        getTestPublisherBuilder()
+            .setExecutorProvider(SINGLE_THREAD_EXECUTOR)
+            .setBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(1L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .build();
+    testPublisherServiceImpl.addPublishError(new StatusException(Status.INVALID_ARGUMENT));
+    testPublisherServiceImpl.addPublishResponse(PublishResponse.newBuilder().addMessageIds("4"));
+
+    ApiFuture<String> publishFuture1 = sendTestMessage(publisher, "A", "key");
+    ApiFuture<String> publishFuture2 = sendTestMessage(publisher, "B", "key");
+    try {
+      publishFuture1.get();
+      fail("Should have thrown an ExecutionException");
+    } catch (ExecutionException expected) {
+      // Expected
+    }
+    // The following message was not sent, and messages published after the failure are rejected.
+    ApiFuture<String> publishFuture3 = sendTestMessage(publisher, "C", "key");
+    for (ApiFuture<String> publishFuture : Arrays.asList(publishFuture2, publishFuture3)) {
+      try {
+        publishFuture.get();
+        fail("Should have thrown an ExecutionException");
+      } catch (ExecutionException expected) {
+        assertTrue(expected.getCause() instanceof IllegalStateException);
+      }
+    }
+    assertEquals(1, testPublisherServiceImpl.getCapturedRequests().size());
+
+    publisher.resumePublish("key");
+    assertEquals("4", sendTestMessage(publisher, "D", "key").get());
+    assertEquals(2, testPublisherServiceImpl.getCapturedRequests().size());
+    publisher.shutdown();
+  }
+
+  @Test
+  public void testPublishWithOrderingKey_idleShardsAreRemoved() throws Exception {
+    Publisher publisher =
+        getTestPublisherBuilder()
+            .setExecutorProvider(SINGLE_THREAD_EXECUTOR)
+            .setBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(1L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .build();
+    testPublisherServiceImpl.addPublishError(new StatusException(Status.INVALID_ARGUMENT));
+
+    try {
+      sendTestMessage(publisher, "A", "failedKey").get();
+      fail("Should have thrown an ExecutionException");
+    } catch (ExecutionException expected) {
+      // Expected
+    }
+    testPublisherServiceImpl.setAutoPublishResponse(true);
+    List<ApiFuture<String>> publishFutures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      publishFutures.add(sendTestMessage(publisher, "B" + i, "key" + i));
+    }
+    for (ApiFuture<String> publishFuture : publishFutures) {
+      publishFuture.get();
+    }
+    // The shard of the failed key is kept until the key is resumed.
+    awaitOrderedShardCount(publisher, 1);
+
+    publisher.resumePublish("failedKey");
+    assertEquals(0, publisher.getOrderedShardCount());
+    sendTestMessage(publisher, "C", "failedKey").get();
+    awaitOrderedShardCount(publisher, 0);
+    publisher.shutdown();
+  }
+
+  private static void awaitOrderedShardCount(Publisher publisher, int expectedCount)
+      throws InterruptedException {
+    // A shard is removed after the futures of its last batch are completed.
+    long deadlineMillis = System.currentTimeMillis() + 10000;
+    while (publisher.getOrderedShardCount() != expectedCount
+        && System.currentTimeMillis() < deadlineMillis) {
+      Thread.sleep(10);
+    }
+    assertEquals(expectedCount, publisher.getOrderedShardCount());
+  }
+
+  @Test
+  public void testAdaptiveBatchingSettingsAreApplied() throws Exception {
+    Publisher publisher =
+        getTestPublisherBuilder()
+            .setBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(10L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .setAdaptiveBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(1L)
+                    .setDelayThreshold(Duration.millis(1))
+                    .build(),
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(10L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .build();
+    testPublisherServiceImpl.setAutoPublishResponse(true);
+
+    // The initial settings are used until a publish latency is observed.
+    ApiFuture<String> publishFuture1 = sendTestMessage(publisher, "A");
+    fakeExecutor.advanceTime(Duration.standardSeconds(10));
+    assertFalse(publishFuture1.isDone());
+    fakeExecutor.advanceTime(Duration.standardSeconds(90));
+    publishFuture1.get();
+
+    // At this low traffic, each message is sent as soon as it is published.
+    fakeExecutor.advanceTime(AdaptiveBatchingPolicy.ADJUSTMENT_PERIOD);
+    assertEquals(1L, (long) publisher.getStats().getBatchingSettings().getElementCountThreshold());
+    sendTestMessage(publisher, "B").get();
+    assertEquals(2, testPublisherServiceImpl.getCapturedRequests().size());
+    publisher.shutdown();
+  }
+
+  @Test
+  public void testPublisherStats() throws Exception {
+    final List<PublisherStats> exportedStats = new ArrayList<>();
+    Publisher publisher =
+        getTestPublisherBuilder()
+            .setBatchingSettings(
+                Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+                    .toBuilder()
+                    .setElementCountThreshold(2L)
+                    .setDelayThreshold(Duration.standardSeconds(100))
+                    .build())
+            .setStatsExporter(
+                new StatsExporter<PublisherStats>() {
+                  @Override
+                  public void export(PublisherStats stats) {
+                    exportedStats.add(stats);
+                  }
+                })
+            .build();
+
+    testPublisherServiceImpl.addPublishResponse(
+        PublishResponse.newBuilder().addMessageIds("1").addMessageIds("2"));
+    testPublisherServiceImpl.addPublishError(new StatusException(Status.INVALID_ARGUMENT));
+
+    ApiFuture<String> publishFuture1 = sendTestMessage(publisher, "A");
+    ApiFuture<String> publishFuture2 = sendTestMessage(publisher, "B");
+    assertEquals("1", publishFuture1.get());
+    assertEquals("2", publishFuture2.get());
+    ApiFuture<String> publishFuture3 = sendTestMessage(publisher, "C");
+
+    // Sends the last message, which fails.
+    publisher.shutdown();
+    try {
+      publishFuture3.get();
+      fail("Should have thrown an ExecutionException");
+    } catch (ExecutionException expected) {
+      // Expected
+    }
+
+    PublisherStats stats = publisher.getStats();
+    assertEquals(3, stats.getSentMessages());
+    assertEquals(2, stats.getAckedMessages());
+    assertEquals(1, stats.getFailedMessages());
+    assertEquals(0, stats.getPendingMessages());
+    assertEquals(0, stats.getPendingBytes());
+    assertEquals(2, stats.getBatchSize().getCount());
+    assertEquals(2, stats.getPublishLatency().getCount());
+    assertEquals(publisher.getBatchingSettings(), stats.getBatchingSettings());
+    // The final snapshot is exported when the publisher shuts down.
+    assertEquals(stats, exportedStats.get(exportedStats.size() - 1));
+  }
+
   @Test
   public void testPublisherGetters() throws Exception {
     Publisher.Builder builder = Publisher.defaultBuilder(TEST_TOPIC);
@@ -397,6 +718,18 @@ public class PublisherImplTest {
   public void testBuilderInvalidArguments() {
     Publisher.Builder builder = Publisher.defaultBuilder(TEST_TOPIC);
 
+    try {
+      builder.setAdaptiveBatchingSettings(
+          Publisher.Builder.DEFAULT_BATCHING_SETTINGS,
+          Publisher.Builder.DEFAULT_BATCHING_SETTINGS
+              .toBuilder()
+              .setElementCountThreshold(Publisher.Builder.DEFAULT_ELEMENT_COUNT_THRESHOLD - 1)
+              .build());
+      fail("Should have thrown an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected
+    }
+
     try {
       builder.setChannelProvider(null);
       fail("Should have thrown an IllegalArgumentException");
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StatsDistributionTest {
+  @Test
+  public void testValuesInRangeAreExact() {
+    StatsDistribution distribution = new StatsDistribution(100);
+    for (int i = 1; i <= 100; i++) {
+      distribution.record(i);
+    }
+    DistributionStats stats = distribution.getStats();
+    assertEquals(100, stats.getCount());
+    assertEquals(50, stats.getMedian());
+    assertEquals(90, stats.getPercentile90());
+    assertEquals(99, stats.getPercentile99());
+  }
+
+  @Test
+  public void testValuesOverMaximumAreNotClamped() {
+    StatsDistribution distribution = new StatsDistribution(100);
+    for (int i = 0; i < 90; i++) {
+      distribution.record(10);
+    }
+    for (int i = 0; i < 10; i++) {
+      distribution.record(60000);
+    }
+    DistributionStats stats = distribution.getStats();
+    assertEquals(100, stats.getCount());
+    assertEquals(10, stats.getMedian());
+    assertEquals(10, stats.getPercentile90());
+    long percentile99 = stats.getPercentile99();
+    assertTrue(percentile99 >= 60000);
+    assertTrue(percentile99 <= 60000 * 1.125);
+  }
+
+  @Test
+  public void testExtremeValues() {
+    StatsDistribution distribution = new StatsDistribution(10);
+    distribution.record(-5);
+    distribution.record(Long.MAX_VALUE);
+    assertEquals(0, distribution.getNthPercentile(50));
+    assertEquals(Long.MAX_VALUE, distribution.getNthPercentile(100));
+  }
+
+  @Test
+  public void testEmpty() {
+    StatsDistribution distribution = new StatsDistribution(10);
+    assertEquals(0, distribution.getStats().getCount());
+    assertEquals(0, distribution.getNthPercentile(99));
+  }
+}
@@ -20,6 +20,8 @@ import static com.google.cloud.pubsub.spi.v1.MessageDispatcher.PENDING_ACKS_SEND
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.core.FlowControlSettings;
 import com.google.api.gax.grpc.FixedChannelProvider;
 import com.google.api.gax.grpc.FixedExecutorProvider;
 import com.google.api.gax.grpc.InstantiatingExecutorProvider;
@@ -29,6 +31,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.pubsub.v1.PubsubMessage;
 import com.google.pubsub.v1.PullResponse;
 import com.google.pubsub.v1.ReceivedMessage;
@@ -282,6 +285,99 @@ public class SubscriberImplTest {
     subscriber.stopAsync().awaitTerminated();
   }
 
+  @Test
+  public void testBatchAcks_elementCountThreshold() throws Exception {
+    Subscriber subscriber =
+        startSubscriber(
+            getTestSubscriberBuilder(testReceiver)
+                .setAckBatchingSettings(
+                    Subscriber.Builder.DEFAULT_ACK_BATCHING_SETTINGS
+                        .toBuilder()
+                        .setElementCountThreshold(3L)
+                        .setDelayThreshold(Duration.standardMinutes(1))
+                        .build()));
+
+    // Acks are sent as soon as the threshold is reached, without waiting for the delay
+    List<String> testAckIds = ImmutableList.of("A", "B", "C");
+    sendMessages(testAckIds);
+
+    assertEquivalent(testAckIds, fakeSubscriberServiceImpl.waitAndConsumeReceivedAcks(3));
+
+    subscriber.stopAsync().awaitTerminated();
+  }
+
+  @Test
+  public void testBatchMessageReceiver() throws Exception {
+    final List<Integer> batchSizes = new ArrayList<>();
+    final CountDownLatch batchesReceived = new CountDownLatch(2);
+    BatchMessageReceiver batchReceiver =
+        new BatchMessageReceiver() {
+          @Override
+          public void receiveMessages(
+              List<PubsubMessage> messages, BatchAckReplyConsumer consumer) {
+            batchSizes.add(messages.size());
+            consumer.getReplyConsumer(0).nack();
+            consumer.ackAll();
+            batchesReceived.countDown();
+          }
+        };
+    Subscriber subscriber =
+        startSubscriber(
+            Subscriber.defaultBuilder(TEST_SUBSCRIPTION, batchReceiver)
+                .setReceiverBatchingSettings(
+                    BatchingSettings.newBuilder().setElementCountThreshold(2L).build())
+                .setExecutorProvider(FixedExecutorProvider.create(fakeExecutor))
+                .setChannelProvider(FixedChannelProvider.create(testChannel))
+                .setClock(fakeExecutor.getClock()));
+
+    // The first two messages are handed over together, the third once the response is processed
+    sendResponse(ImmutableList.of("A", "B", "C"));
+    batchesReceived.await();
+
+    fakeExecutor.advanceTime(PENDING_ACKS_SEND_DELAY);
+
+    assertEquivalent(
+        ImmutableList.of("B"), fakeSubscriberServiceImpl.waitAndConsumeReceivedAcks(1));
+    assertEquivalent(
+        ImmutableList.of(new ModifyAckDeadline("A", 0), new ModifyAckDeadline("C", 0)),
+        fakeSubscriberServiceImpl.waitAndConsumeModifyAckDeadlines(2));
+    assertEquals(ImmutableList.of(2, 1), batchSizes);
+
+    subscriber.stopAsync().awaitTerminated();
+  }
+
+  @Test
+  public void testStats() throws Exception {
+    final List<SubscriberStats> exportedStats = new ArrayList<>();
+    Subscriber subscriber =
+        startSubscriber(
+            getTestSubscriberBuilder(testReceiver)
+                .setStatsExporter(
+                    new StatsExporter<SubscriberStats>() {
+                      @Override
+                      public void export(SubscriberStats stats) {
+                        exportedStats.add(stats);
+                      }
+                    }));
+
+    sendMessages(ImmutableList.of("A", "B", "C"));
+    testReceiver.setNackReply();
+    sendMessages(ImmutableList.of("D", "E"));
+
+    subscriber.stopAsync().awaitTerminated();
+
+    SubscriberStats stats = subscriber.getStats();
+    assertEquals(5, stats.getReceivedMessages());
+    assertEquals(5 * TEST_MESSAGE.getSerializedSize(), stats.getReceivedBytes());
+    assertEquals(3, stats.getAckedMessages());
+    assertEquals(2, stats.getNackedMessages());
+    assertEquals(0, stats.getOutstandingMessages());
+    assertEquals(0, stats.getOutstandingBytes());
+    assertEquals(3, stats.getAckLatency().getCount());
+    // The final snapshot is exported when the subscriber stops.
+    assertEquals(stats, exportedStats.get(exportedStats.size() - 1));
+  }
+
   @Test
   public void testModifyAckDeadline() throws Exception {
     Subscriber subscriber =
@@ -507,6 +603,33 @@ public class SubscriberImplTest {
     }
   }
 
+  @Test
+  public void testMaxOutstandingMessagesPerKey_derivedFromFlowControl() throws Exception {
+    Builder builder = getTestSubscriberBuilder(testReceiver);
+    assertEquals(1000, builder.getMaxOutstandingMessagesPerKey());
+    builder.setFlowControlSettings(
+        FlowControlSettings.newBuilder().setMaxOutstandingElementCount(100).build());
+    assertEquals(50, builder.getMaxOutstandingMessagesPerKey());
+    builder.setMaxOutstandingMessagesPerKey(10);
+    assertEquals(10, builder.getMaxOutstandingMessagesPerKey());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMaxOutstandingMessagesPerKey_notLowerThanFlowControl() throws Exception {
+    getTestSubscriberBuilder(testReceiver)
+        .setMessageKeyExtractor(
+            new MessageKeyExtractor() {
+              @Override
+              public String extractKey(PubsubMessage message) {
+                return message.getMessageId();
+              }
+            })
+        .setFlowControlSettings(
+            FlowControlSettings.newBuilder().setMaxOutstandingElementCount(100).build())
+        .setMaxOutstandingMessagesPerKey(100)
+        .build();
+  }
+
   private Subscriber startSubscriber(Builder testSubscriberBuilder) throws Exception {
     Subscriber subscriber = testSubscriberBuilder.build();
     subscriber.startAsync().awaitRunning();
@@ -518,11 +641,16 @@ public class SubscriberImplTest {
   }
 
   private void sendMessages(Iterable<String> ackIds) throws InterruptedException {
+    testReceiver.setExpectedMessages(Iterables.size(ackIds));
+    sendResponse(ackIds);
+    testReceiver.waitForExpectedMessages();
+  }
+
+  private void sendResponse(Iterable<String> ackIds) throws InterruptedException {
     List<ReceivedMessage> messages = new ArrayList<ReceivedMessage>();
     for (String ackId : ackIds) {
       messages.add(ReceivedMessage.newBuilder().setAckId(ackId).setMessage(TEST_MESSAGE).build());
     }
-    testReceiver.setExpectedMessages(messages.size());
     if (isStreamingTest) {
       fakeSubscriberServiceImpl.sendStreamingResponse(
           StreamingPullResponse.newBuilder().addAllReceivedMessages(messages).build());
@@ -530,7 +658,6 @@ public class SubscriberImplTest {
       fakeSubscriberServiceImpl.enqueuePullResponse(
           PullResponse.newBuilder().addAllReceivedMessages(messages).build());
     }
-    testReceiver.waitForExpectedMessages();
   }
 
   private Builder getTestSubscriberBuilder(MessageReceiver receiver) {
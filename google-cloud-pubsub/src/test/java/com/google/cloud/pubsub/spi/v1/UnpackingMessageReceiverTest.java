@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub.spi.v1;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link UnpackingMessageReceiver}. */
+@RunWith(JUnit4.class)
+public class UnpackingMessageReceiverTest {
+
+  private static final PubsubMessage MESSAGE_A =
+      PubsubMessage.newBuilder()
+          .setData(ByteString.copyFromUtf8("A"))
+          .putAttributes("key", "value")
+          .build();
+  private static final PubsubMessage MESSAGE_B =
+      PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("B")).build();
+
+  private final List<PubsubMessage> receivedMessages = new ArrayList<>();
+  private final List<AckReplyConsumer> receivedConsumers = new ArrayList<>();
+  private final List<String> envelopeReplies = new ArrayList<>();
+
+  private final MessageReceiver receiver =
+      new MessageReceiver() {
+        @Override
+        public void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+          receivedMessages.add(message);
+          receivedConsumers.add(consumer);
+        }
+      };
+
+  private final AckReplyConsumer envelopeConsumer =
+      new AckReplyConsumer() {
+        @Override
+        public void ack() {
+          envelopeReplies.add("ack");
+        }
+
+        @Override
+        public void nack() {
+          envelopeReplies.add("nack");
+        }
+      };
+
+  @Test
+  public void testUnpack() throws Exception {
+    for (PayloadCodec codec : PayloadCodecs.builtInCodecs()) {
+      receivedMessages.clear();
+      PubsubMessage envelope =
+          MessagePacker.pack(ImmutableList.of(MESSAGE_A, MESSAGE_B), codec)
+              .toBuilder()
+              .setMessageId("1")
+              .setPublishTime(Timestamp.newBuilder().setSeconds(42))
+              .build();
+      new UnpackingMessageReceiver(receiver).receiveMessage(envelope, envelopeConsumer);
+
+      assertEquals(2, receivedMessages.size());
+      assertEquals(withEnvelopeInfo(MESSAGE_A, envelope, "1:0"), receivedMessages.get(0));
+      assertEquals(withEnvelopeInfo(MESSAGE_B, envelope, "1:1"), receivedMessages.get(1));
+    }
+  }
+
+  @Test
+  public void testMessageNotPacked() {
+    new UnpackingMessageReceiver(receiver).receiveMessage(MESSAGE_A, envelopeConsumer);
+    assertEquals(ImmutableList.of(MESSAGE_A), receivedMessages);
+    assertEquals(envelopeConsumer, receivedConsumers.get(0));
+  }
+
+  @Test
+  public void testEnvelopeAckedOnceAllMessagesAcked() throws Exception {
+    new UnpackingMessageReceiver(receiver)
+        .receiveMessage(
+            MessagePacker.pack(ImmutableList.of(MESSAGE_A, MESSAGE_B), PayloadCodecs.gzip()),
+            envelopeConsumer);
+    receivedConsumers.get(1).ack();
+    assertEquals(ImmutableList.<String>of(), envelopeReplies);
+    receivedConsumers.get(0).ack();
+    // Replying again to a message has no effect
+    receivedConsumers.get(0).nack();
+    assertEquals(ImmutableList.of("ack"), envelopeReplies);
+  }
+
+  @Test
+  public void testEnvelopeNackedOnceAllMessagesReplied() throws Exception {
+    new UnpackingMessageReceiver(receiver)
+        .receiveMessage(
+            MessagePacker.pack(ImmutableList.of(MESSAGE_A, MESSAGE_B), PayloadCodecs.deflate()),
+            envelopeConsumer);
+    receivedConsumers.get(0).nack();
+    assertEquals(ImmutableList.<String>of(), envelopeReplies);
+    receivedConsumers.get(1).ack();
+    assertEquals(ImmutableList.of("nack"), envelopeReplies);
+  }
+
+  @Test
+  public void testUnknownCodecNacked() throws Exception {
+    PubsubMessage envelope =
+        MessagePacker.pack(ImmutableList.of(MESSAGE_A), PayloadCodecs.gzip())
+            .toBuilder()
+            .putAttributes(MessagePacker.PACKED_MESSAGE_CODEC_ATTRIBUTE, "unknown")
+            .build();
+    new UnpackingMessageReceiver(receiver).receiveMessage(envelope, envelopeConsumer);
+    assertEquals(0, receivedMessages.size());
+    assertEquals(ImmutableList.of("nack"), envelopeReplies);
+  }
+
+  @Test
+  public void testNegativeCountNacked() throws Exception {
+    assertMalformedCountNacked("-1");
+  }
+
+  @Test
+  public void testZeroCountNacked() throws Exception {
+    assertMalformedCountNacked("0");
+  }
+
+  @Test
+  public void testHugeCountNacked() throws Exception {
+    assertMalformedCountNacked(Integer.toString(Integer.MAX_VALUE));
+  }
+
+  private void assertMalformedCountNacked(String count) throws Exception {
+    PubsubMessage envelope =
+        MessagePacker.pack(ImmutableList.of(MESSAGE_A), PayloadCodecs.gzip())
+            .toBuilder()
+            .putAttributes(MessagePacker.PACKED_MESSAGE_COUNT_ATTRIBUTE, count)
+            .build();
+    new UnpackingMessageReceiver(receiver).receiveMessage(envelope, envelopeConsumer);
+    assertEquals(0, receivedMessages.size());
+    assertEquals(ImmutableList.of("nack"), envelopeReplies);
+  }
+
+  private static PubsubMessage withEnvelopeInfo(
+      PubsubMessage message, PubsubMessage envelope, String messageId) {
+    return message
+        .toBuilder()
+        .setMessageId(messageId)
+        .setPublishTime(envelope.getPublishTime())
+        .build();
+  }
+}
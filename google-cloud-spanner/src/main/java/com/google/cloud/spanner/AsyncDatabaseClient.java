@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.Timestamp;
+
+/**
+ * Interface for the APIs that read and write data in a Cloud Spanner database without blocking the
+ * calling thread. The {@link DatabaseClient} returned by {@link Spanner#getDatabaseClient} also
+ * implements this interface.
+ *
+ * <pre>{@code
+ * AsyncDatabaseClient asyncClient = (AsyncDatabaseClient) spanner.getDatabaseClient(db);
+ * ApiFuture<Struct> row =
+ *     asyncClient.singleUseAsync().readRowAsync("Users", Key.of(userId), columns);
+ * }</pre>
+ */
+public interface AsyncDatabaseClient {
+
+  /**
+   * Asynchronous version of {@link DatabaseClient#writeAtLeastOnce(Iterable)}: writes the given
+   * mutations atomically to the database without replay protection, and without blocking the
+   * calling thread. Retryable errors are retried with backoff.
+   *
+   * @return a future for the timestamp at which the write was committed
+   */
+  ApiFuture<Timestamp> writeAtLeastOnceAsync(Iterable<Mutation> mutations);
+
+  /**
+   * Returns a context in which a single read can be performed asynchronously using {@link
+   * TimestampBound#strong()} concurrency.
+   */
+  AsyncReadContext singleUseAsync();
+
+  /**
+   * Returns a context in which a single read can be performed asynchronously. Rows are delivered
+   * as they are requested, and resources held by the context are released once the read has
+   * finished.
+   *
+   * @param bound the timestamp bound at which to perform the read
+   */
+  AsyncReadContext singleUseAsync(TimestampBound bound);
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.spanner.Options.QueryOption;
+import com.google.cloud.spanner.Options.ReadOption;
+
+/**
+ * A concurrency context in which to run a read or SQL statement without blocking the calling
+ * thread. Single-row reads return an {@link ApiFuture}, while reads and queries that may return
+ * many rows deliver them to a {@link RowObserver} as they are requested.
+ *
+ * <p>All {@code AsyncReadContext}s are implicitly bound to a {@link Session} and therefore a
+ * particular {@link Database}. Any {@link SpannerException} is reported through the returned future
+ * or the observer rather than thrown by the methods of this interface.
+ */
+public interface AsyncReadContext {
+  /**
+   * Reads zero or more rows from a database, delivering them to {@code observer}.
+   *
+   * @param table the name of the table to read
+   * @param keys the keys and ranges of rows to read. Regardless of ordering in {@code keys}, rows
+   *     are returned in their natural key order.
+   * @param columns the columns to read
+   * @param observer the observer to deliver rows to
+   * @param options the options to configure the read
+   */
+  void readAsync(
+      String table,
+      KeySet keys,
+      Iterable<String> columns,
+      RowObserver observer,
+      ReadOption... options);
+
+  /**
+   * Reads zero or more rows from a database using an index, delivering them to {@code observer}.
+   *
+   * @param table the name of the table to read
+   * @param index the name of the index on {@code table} to use
+   * @param keys the keys and ranges of index rows to read. Regardless of ordering in {@code keys},
+   *     rows are returned in the natural key order of the index.
+   * @param columns the columns to read
+   * @param observer the observer to deliver rows to
+   * @param options the options to configure the read
+   */
+  void readUsingIndexAsync(
+      String table,
+      String index,
+      KeySet keys,
+      Iterable<String> columns,
+      RowObserver observer,
+      ReadOption... options);
+
+  /**
+   * Reads a single row from a database. The returned future yields {@code null} if the row does not
+   * exist.
+   *
+   * @param table the name of the table to read
+   * @param key the row to read
+   * @param columns the columns to return
+   */
+  ApiFuture<Struct> readRowAsync(String table, Key key, Iterable<String> columns);
+
+  /**
+   * Reads a single row from a database using an index. The returned future yields {@code null} if
+   * the row does not exist.
+   *
+   * @param table the name of the table to read
+   * @param index the name of the index on {@code table} to use
+   * @param key the index row to read
+   * @param columns the columns to return
+   */
+  ApiFuture<Struct> readRowUsingIndexAsync(
+      String table, String index, Key key, Iterable<String> columns);
+
+  /**
+   * Executes a query against the database, delivering the rows to {@code observer}.
+   *
+   * @param statement the query statement to execute
+   * @param observer the observer to deliver rows to
+   * @param options the options to configure the query
+   */
+  void executeQueryAsync(Statement statement, RowObserver observer, QueryOption... options);
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.cloud.ByteArray;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of consecutive rows of a {@link ResultSet} laid out by column. Columns of type {@code
+ * INT64}, {@code FLOAT64} and {@code BOOL} are stored as primitive arrays, {@code STRING} columns
+ * are dictionary encoded and {@code BYTES} columns are stored in a single buffer addressed by
+ * offsets. Columns of any other type are stored as an array of objects. The {@code NULL} values of
+ * each column are recorded in a bitmap; the corresponding slots of the column vector hold {@code
+ * 0}, {@code false} or {@code null}.
+ *
+ * <p>Arrays and bitmaps returned by this class are owned by the batch and are not copied: they
+ * must not be modified. Their length is exactly {@link #getRowCount()}, except for the offsets of
+ * a {@code BYTES} column, which have one additional entry.
+ *
+ * <p>Batches are created with {@link ResultSets#nextBatch(ResultSet, int)}.
+ */
+public final class ColumnarBatch {
+  private final Type type;
+  private final int rowCount;
+  private final Object[] vectors;
+  private final BitSet[] nulls;
+
+  private ColumnarBatch(Type type, int rowCount, Object[] vectors, BitSet[] nulls) {
+    this.type = type;
+    this.rowCount = rowCount;
+    this.vectors = vectors;
+    this.nulls = nulls;
+  }
+
+  /**
+   * Reads the rows following the current position of {@code resultSet}, up to {@code maxRows}, into
+   * a new batch. The result set is left positioned over the last row of the batch. The returned
+   * batch has fewer than {@code maxRows} rows only if the result set has been fully consumed.
+   */
+  static ColumnarBatch read(ResultSet resultSet, int maxRows) {
+    checkArgument(maxRows > 0, "maxRows must be greater than 0, got %s", maxRows);
+    Builder builder = null;
+    int rowCount = 0;
+    while (rowCount < maxRows && resultSet.next()) {
+      if (builder == null) {
+        builder = new Builder(resultSet.getType(), maxRows);
+      }
+      builder.addRow(resultSet, rowCount++);
+    }
+    if (builder == null) {
+      builder = new Builder(resultSet.getType(), 0);
+    }
+    return builder.build(rowCount);
+  }
+
+  /** Returns the type of the rows in this batch. */
+  public Type getType() {
+    return type;
+  }
+
+  /** Returns the number of rows in this batch. */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /** Returns the number of columns in this batch. */
+  public int getColumnCount() {
+    return vectors.length;
+  }
+
+  /** Returns the type of the column at {@code columnIndex}. */
+  public Type getColumnType(int columnIndex) {
+    return type.getStructFields().get(columnIndex).getType();
+  }
+
+  /**
+   * Returns {@code true} if the value of column {@code columnIndex} in row {@code rowIndex} is
+   * {@code NULL}.
+   */
+  public boolean isNull(int columnIndex, int rowIndex) {
+    checkElementIndex(rowIndex, rowCount);
+    return nulls[columnIndex].get(rowIndex);
+  }
+
+  /** Returns the bitmap of the rows whose value of column {@code columnIndex} is {@code NULL}. */
+  public BitSet getNulls(int columnIndex) {
+    checkElementIndex(columnIndex, nulls.length);
+    return nulls[columnIndex];
+  }
+
+  /** Returns the values of the {@code BOOL} column at {@code columnIndex}. */
+  public boolean[] getBooleans(int columnIndex) {
+    return (boolean[]) vector(columnIndex, Type.Code.BOOL);
+  }
+
+  /** Returns the values of the {@code INT64} column at {@code columnIndex}. */
+  public long[] getLongs(int columnIndex) {
+    return (long[]) vector(columnIndex, Type.Code.INT64);
+  }
+
+  /** Returns the values of the {@code FLOAT64} column at {@code columnIndex}. */
+  public double[] getDoubles(int columnIndex) {
+    return (double[]) vector(columnIndex, Type.Code.FLOAT64);
+  }
+
+  /**
+   * Returns the dictionary codes of the {@code STRING} column at {@code columnIndex}: the value of
+   * each row is the entry of {@link #getStringDictionary(int)} at its code, or {@code NULL} if the
+   * code is {@code -1}.
+   */
+  public int[] getStringCodes(int columnIndex) {
+    return ((StringVector) vector(columnIndex, Type.Code.STRING)).codes;
+  }
+
+  /** Returns the distinct non-null values of the {@code STRING} column at {@code columnIndex}. */
+  public List<String> getStringDictionary(int columnIndex) {
+    return ((StringVector) vector(columnIndex, Type.Code.STRING)).dictionary;
+  }
+
+  /**
+   * Returns the value of the {@code STRING} column at {@code columnIndex} in row {@code rowIndex},
+   * or {@code null} if it is {@code NULL}.
+   */
+  public String getString(int columnIndex, int rowIndex) {
+    StringVector vector = (StringVector) vector(columnIndex, Type.Code.STRING);
+    checkElementIndex(rowIndex, rowCount);
+    int code = vector.codes[rowIndex];
+    return code < 0 ? null : vector.dictionary.get(code);
+  }
+
+  /**
+   * Returns the buffer holding the values of the {@code BYTES} column at {@code columnIndex}. The
+   * value of row {@code i} is stored between {@code getBytesOffsets(columnIndex)[i]} (inclusive)
+   * and {@code getBytesOffsets(columnIndex)[i + 1]} (exclusive). The buffer may be longer than the
+   * last offset.
+   */
+  public byte[] getBytesData(int columnIndex) {
+    return ((BytesVector) vector(columnIndex, Type.Code.BYTES)).data;
+  }
+
+  /**
+   * Returns the {@code getRowCount() + 1} offsets of the values of the {@code BYTES} column at
+   * {@code columnIndex} in {@link #getBytesData(int)}. {@code NULL} values have a length of zero.
+   */
+  public int[] getBytesOffsets(int columnIndex) {
+    return ((BytesVector) vector(columnIndex, Type.Code.BYTES)).offsets;
+  }
+
+  /**
+   * Returns a copy of the value of the {@code BYTES} column at {@code columnIndex} in row {@code
+   * rowIndex}, or {@code null} if it is {@code NULL}.
+   */
+  public ByteArray getBytes(int columnIndex, int rowIndex) {
+    BytesVector vector = (BytesVector) vector(columnIndex, Type.Code.BYTES);
+    if (isNull(columnIndex, rowIndex)) {
+      return null;
+    }
+    int start = vector.offsets[rowIndex];
+    return ByteArray.copyFrom(
+        ByteBuffer.wrap(vector.data, start, vector.offsets[rowIndex + 1] - start));
+  }
+
+  /**
+   * Returns the values of the column at {@code columnIndex}, which must not be of type {@code
+   * BOOL}, {@code INT64}, {@code FLOAT64}, {@code STRING} or {@code BYTES}. The values have the
+   * types returned by the corresponding {@link StructReader} getters: {@link
+   * com.google.cloud.Timestamp}, {@link com.google.cloud.Date} or {@link List}.
+   */
+  public Object[] getObjects(int columnIndex) {
+    Type.Code code = getColumnType(columnIndex).getCode();
+    checkState(
+        !isVectorized(code), "Column %s of type %s is not stored as objects", columnIndex, code);
+    return (Object[]) vectors[columnIndex];
+  }
+
+  private Object vector(int columnIndex, Type.Code expected) {
+    Type actual = getColumnType(columnIndex);
+    checkState(
+        actual.getCode() == expected,
+        "Column %s is not of correct type: expected %s but was %s",
+        columnIndex,
+        expected,
+        actual);
+    return vectors[columnIndex];
+  }
+
+  private static boolean isVectorized(Type.Code code) {
+    switch (code) {
+      case BOOL:
+      case INT64:
+      case FLOAT64:
+      case STRING:
+      case BYTES:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static final class StringVector {
+    final int[] codes;
+    final List<String> dictionary;
+
+    StringVector(int[] codes, List<String> dictionary) {
+      this.codes = codes;
+      this.dictionary = dictionary;
+    }
+  }
+
+  private static final class BytesVector {
+    final byte[] data;
+    final int[] offsets;
+
+    BytesVector(byte[] data, int[] offsets) {
+      this.data = data;
+      this.offsets = offsets;
+    }
+  }
+
+  /** Accumulates the non-null values of a single column. */
+  private abstract static class ColumnBuilder {
+    abstract void add(StructReader row, int columnIndex, int rowIndex);
+
+    /** Marks the value of row {@code rowIndex} as {@code NULL}. */
+    void addNull(int rowIndex) {}
+
+    abstract Object build(int rowCount);
+  }
+
+  private static final class Builder {
+    private final Type type;
+    private final ColumnBuilder[] columns;
+    private final BitSet[] nulls;
+
+    Builder(Type type, int capacity) {
+      checkArgument(type.getCode() == Type.Code.STRUCT);
+      this.type = type;
+      List<Type.StructField> fields = type.getStructFields();
+      this.columns = new ColumnBuilder[fields.size()];
+      this.nulls = new BitSet[fields.size()];
+      for (int i = 0; i < columns.length; ++i) {
+        columns[i] = newColumnBuilder(fields.get(i).getType(), capacity);
+        nulls[i] = new BitSet(capacity);
+      }
+    }
+
+    void addRow(StructReader row, int rowIndex) {
+      for (int i = 0; i < columns.length; ++i) {
+        if (row.isNull(i)) {
+          nulls[i].set(rowIndex);
+          columns[i].addNull(rowIndex);
+        } else {
+          columns[i].add(row, i, rowIndex);
+        }
+      }
+    }
+
+    ColumnarBatch build(int rowCount) {
+      Object[] vectors = new Object[columns.length];
+      for (int i = 0; i < columns.length; ++i) {
+        vectors[i] = columns[i].build(rowCount);
+      }
+      return new ColumnarBatch(type, rowCount, vectors, nulls);
+    }
+  }
+
+  private static ColumnBuilder newColumnBuilder(Type columnType, int capacity) {
+    switch (columnType.getCode()) {
+      case BOOL:
+        return new BooleanColumnBuilder(capacity);
+      case INT64:
+        return new LongColumnBuilder(capacity);
+      case FLOAT64:
+        return new DoubleColumnBuilder(capacity);
+      case STRING:
+        return new StringColumnBuilder(capacity);
+      case BYTES:
+        return new BytesColumnBuilder(capacity);
+      default:
+        return new ObjectColumnBuilder(columnType, capacity);
+    }
+  }
+
+  private static final class BooleanColumnBuilder extends ColumnBuilder {
+    private boolean[] values;
+
+    BooleanColumnBuilder(int capacity) {
+      values = new boolean[capacity];
+    }
+
+    @Override
+    void add(StructReader row, int columnIndex, int rowIndex) {
+      values[rowIndex] = row.getBoolean(columnIndex);
+    }
+
+    @Override
+    Object build(int rowCount) {
+      return rowCount == values.length ? values : Arrays.copyOf(values, rowCount);
+    }
+  }
+
+  private static final class LongColumnBuilder extends ColumnBuilder {
+    private long[] values;
+
+    LongColumnBuilder(int capacity) {
+      values = new long[capacity];
+    }
+
+    @Override
+    void add(StructReader row, int columnIndex, int rowIndex) {
+      values[rowIndex] = row.getLong(columnIndex);
+    }
+
+    @Override
+    Object build(int rowCount) {
+      return rowCount == values.length ? values : Arrays.copyOf(values, rowCount);
+    }
+  }
+
+  private static final class DoubleColumnBuilder extends ColumnBuilder {
+    private double[] values;
+
+    DoubleColumnBuilder(int capacity) {
+      values = new double[capacity];
+    }
+
+    @Override
+    void add(StructReader row, int columnIndex, int rowIndex) {
+      values[rowIndex] = row.getDouble(columnIndex);
+    }
+
+    @Override
+    Object build(int rowCount) {
+      return rowCount == values.length ? values : Arrays.copyOf(values, rowCount);
+    }
+  }
+
+  private static final class StringColumnBuilder extends ColumnBuilder {
+    private final int[] codes;
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> index = new HashMap<>();
+
+    StringColumnBuilder(int capacity) {
+      codes = new int[capacity];
+    }
+
+    @Override
+    void add(StructReader row, int columnIndex, int rowIndex) {
+      String value = row.getString(columnIndex);
+      Integer code = index.get(value);
+      if (code == null) {
+        code = dictionary.size();
+        dictionary.add(value);
+        index.put(value, code);
+      }
+      codes[rowIndex] = code;
+    }
+
+    @Override
+    void addNull(int rowIndex) {
+      codes[rowIndex] = -1;
+    }
+
+    @Override
+    Object build(int rowCount) {
+      return new StringVector(
+          rowCount == codes.length ? codes : Arrays.copyOf(codes, rowCount),
+          Collections.unmodifiableList(dictionary));
+    }
+  }
+
+  private static final class BytesColumnBuilder extends ColumnBuilder {
+    private final int[] offsets;
+    private byte[] data = new byte[64];
+    private int size;
+
+    BytesColumnBuilder(int capacity) {
+      offsets = new int[capacity + 1];
+    }
+
+    @Override
+    void add(StructReader row, int columnIndex, int rowIndex) {
+      ByteArray value = row.getBytes(columnIndex);
+      int length = value.length();
+      if (data.length - size < length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+      }
+      value.copyTo(ByteBuffer.wrap(data, size, length));
+      size += length;
+      offsets[rowIndex + 1] = size;
+    }
+
+    @Override
+    void addNull(int rowIndex) {
+      offsets[rowIndex + 1] = size;
+    }
+
+    @Override
+    Object build(int rowCount) {
+      return new BytesVector(
+          data, rowCount + 1 == offsets.length ? offsets : Arrays.copyOf(offsets, rowCount + 1));
+    }
+  }
+
+  private static final class ObjectColumnBuilder extends ColumnBuilder {
+    private final Type columnType;
+    private final Object[] values;
+
+    ObjectColumnBuilder(Type columnType, int capacity) {
+      this.columnType = columnType;
+      this.values = new Object[capacity];
+    }
+
+    @Override
+    void add(StructReader row, int columnIndex, int rowIndex) {
+      values[rowIndex] = getObject(row, columnIndex, columnType);
+    }
+
+    @Override
+    Object build(int rowCount) {
+      return rowCount == values.length ? values : Arrays.copyOf(values, rowCount);
+    }
+  }
+
+  private static Object getObject(StructReader row, int columnIndex, Type columnType) {
+    switch (columnType.getCode()) {
+      case TIMESTAMP:
+        return row.getTimestamp(columnIndex);
+      case DATE:
+        return row.getDate(columnIndex);
+      case ARRAY:
+        switch (columnType.getArrayElementType().getCode()) {
+          case BOOL:
+            return row.getBooleanList(columnIndex);
+          case INT64:
+            return row.getLongList(columnIndex);
+          case FLOAT64:
+            return row.getDoubleList(columnIndex);
+          case STRING:
+            return row.getStringList(columnIndex);
+          case BYTES:
+            return row.getBytesList(columnIndex);
+          case TIMESTAMP:
+            return row.getTimestampList(columnIndex);
+          case DATE:
+            return row.getDateList(columnIndex);
+          case STRUCT:
+            return row.getStructList(columnIndex);
+          default:
+            throw new AssertionError("Invalid array element type: " + columnType);
+        }
+      default:
+        throw new AssertionError("Invalid column type: " + columnType);
+    }
+  }
+}
@@ -16,10 +16,12 @@
 
 package com.google.cloud.spanner;
 
+import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.common.util.concurrent.ListenableFuture;
 
-class DatabaseClientImpl implements DatabaseClient {
+class DatabaseClientImpl
+    implements DatabaseClient, AsyncDatabaseClient, SessionPoolStatsProvider {
 
   private final SessionPool pool;
 
@@ -37,6 +39,11 @@ class DatabaseClientImpl implements DatabaseClient {
     return pool.getReadSession().writeAtLeastOnce(mutations);
   }
 
+  @Override
+  public ApiFuture<Timestamp> writeAtLeastOnceAsync(Iterable<Mutation> mutations) {
+    return pool.getReadSession().writeAtLeastOnceAsync(mutations);
+  }
+
   @Override
   public ReadContext singleUse() {
     return pool.getReadSession().singleUse();
@@ -47,6 +54,16 @@ class DatabaseClientImpl implements DatabaseClient {
     return pool.getReadSession().singleUse(bound);
   }
 
+  @Override
+  public AsyncReadContext singleUseAsync() {
+    return pool.getReadSession().singleUseAsync();
+  }
+
+  @Override
+  public AsyncReadContext singleUseAsync(TimestampBound bound) {
+    return pool.getReadSession().singleUseAsync(bound);
+  }
+
   @Override
   public ReadOnlyTransaction singleUseReadOnlyTransaction() {
     return pool.getReadSession().singleUseReadOnlyTransaction();
@@ -72,6 +89,11 @@ class DatabaseClientImpl implements DatabaseClient {
     return pool.getReadWriteSession().readWriteTransaction();
   }
 
+  @Override
+  public SessionPoolStats getSessionPoolStats() {
+    return pool.getStats();
+  }
+
   ListenableFuture<Void> closeAsync() {
     return pool.closeAsync();
   }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import com.google.cloud.spanner.SessionPoolStats.LatencyDistribution;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Longs;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Records latencies in buckets of increasing size, without locking. */
+final class LatencyRecorder {
+
+  // Zero latencies are counted in per-thread stripes, one cache line apart, so that threads
+  // recording them at a high rate do not contend on a single counter.
+  private static final int STRIPES =
+      Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
+  private static final int STRIPE_PADDING = 8;
+
+  static final List<Long> BUCKET_UPPER_BOUNDS_MILLIS =
+      ImmutableList.of(
+          0L, 1L, 2L, 5L, 10L, 20L, 50L, 100L, 200L, 500L, 1000L, 2000L, 5000L, 10000L);
+
+  private final AtomicLongArray bucketCounts =
+      new AtomicLongArray(BUCKET_UPPER_BOUNDS_MILLIS.size() + 1);
+  private final AtomicLongArray zeroCounts = new AtomicLongArray(STRIPES * STRIPE_PADDING);
+
+  void record(long latencyMillis) {
+    int bucket = 0;
+    while (bucket < BUCKET_UPPER_BOUNDS_MILLIS.size()
+        && latencyMillis > BUCKET_UPPER_BOUNDS_MILLIS.get(bucket)) {
+      bucket++;
+    }
+    bucketCounts.incrementAndGet(bucket);
+  }
+
+  /** Records a zero latency. Equivalent to {@code record(0)}, but cheaper under contention. */
+  void recordZero() {
+    int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+    zeroCounts.incrementAndGet(stripe * STRIPE_PADDING);
+  }
+
+  /** Records the time elapsed since {@code startNanos}, a value of {@link System#nanoTime()}. */
+  void recordSince(long startNanos) {
+    record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+
+  LatencyDistribution getDistribution() {
+    long[] counts = new long[bucketCounts.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = bucketCounts.get(i);
+    }
+    for (int i = 0; i < STRIPES; i++) {
+      counts[0] += zeroCounts.get(i * STRIPE_PADDING);
+    }
+    return new LatencyDistribution(BUCKET_UPPER_BOUNDS_MILLIS, Longs.asList(counts));
+  }
+}
@@ -33,6 +33,19 @@ public final class Options {
   /** Marker interface to mark options applicable to list operations in admin API. */
   public interface ListOption {}
 
+  /** Specifies when the column values of a row are decoded. */
+  public enum DecodeMode {
+    /** All columns of a row are decoded as soon as the row is read. This is the default. */
+    EAGER,
+    /**
+     * The raw values of a row are kept, and a column is only decoded when it is first accessed.
+     * {@code getBoolean}, {@code getLong} and {@code getDouble} decode directly from the raw value
+     * without boxing. Errors caused by malformed values are reported by the getter of the column
+     * rather than by {@link ResultSet#next()}.
+     */
+    LAZY
+  }
+
   /**
    * Specifying this will cause the read to yield at most this many rows. This should be greater
    * than 0.
@@ -56,6 +69,15 @@ public final class Options {
     return new FlowControlOption(prefetchChunks);
   }
 
+  /**
+   * Specifying this controls when the column values of each row are decoded. {@link
+   * DecodeMode#LAZY} reduces CPU and garbage for reads and queries that access only some of the
+   * columns that they return.
+   */
+  public static ReadAndQueryOption decodeMode(DecodeMode decodeMode) {
+    return new DecodeModeOption(Preconditions.checkNotNull(decodeMode));
+  }
+
   /**
    * Specifying this will cause the list operations to fetch at most this many records in a page.
    */
@@ -116,8 +138,23 @@ public final class Options {
     }
   }
 
+  /** Option pertaining to row decoding. */
+  static final class DecodeModeOption extends InternalOption implements ReadAndQueryOption {
+    final DecodeMode decodeMode;
+
+    DecodeModeOption(DecodeMode decodeMode) {
+      this.decodeMode = decodeMode;
+    }
+
+    @Override
+    void appendToOptions(Options options) {
+      options.decodeMode = decodeMode;
+    }
+  }
+
   private Long limit;
   private Integer prefetchChunks;
+  private DecodeMode decodeMode;
   private Integer pageSize;
   private String pageToken;
   private String filter;
@@ -141,6 +178,14 @@ public final class Options {
     return prefetchChunks;
   }
 
+  boolean hasDecodeMode() {
+    return decodeMode != null;
+  }
+
+  DecodeMode decodeMode() {
+    return decodeMode;
+  }
+
   boolean hasPageSize() {
     return pageSize != null;
   }
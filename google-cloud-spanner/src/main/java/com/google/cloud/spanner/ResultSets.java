@@ -39,6 +39,30 @@ public final class ResultSets {
     return new PrePopulatedResultSet(type, rows);
   }
 
+  /**
+   * Reads the next rows of {@code resultSet}, up to {@code maxRows}, into a {@link ColumnarBatch}.
+   * The values are copied directly into the column vectors of the batch, without creating a {@link
+   * Struct} per row; combined with {@link Options#decodeMode(Options.DecodeMode)} {@code LAZY},
+   * primitive values are not boxed either. The returned batch has fewer than {@code maxRows} rows
+   * only once {@code resultSet} has been fully consumed, so a bulk export can be written as:
+   *
+   * <pre>{@code
+   * try (ResultSet resultSet = readContext.executeQuery(statement)) {
+   *   ColumnarBatch batch;
+   *   do {
+   *     batch = ResultSets.nextBatch(resultSet, 1024);
+   *     export(batch);
+   *   } while (batch.getRowCount() == 1024);
+   * }
+   * }</pre>
+   *
+   * @param resultSet the result set to read from; it is left positioned over the last row read
+   * @param maxRows the maximum number of rows in the batch, which must be greater than 0
+   */
+  public static ColumnarBatch nextBatch(ResultSet resultSet, int maxRows) {
+    return ColumnarBatch.read(Preconditions.checkNotNull(resultSet), maxRows);
+  }
+
   private static class PrePopulatedResultSet implements ResultSet {
     private final List<Struct> rows;
     private final Type type;
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+/**
+ * Receives the rows of an asynchronous read or query started through an {@link AsyncReadContext}.
+ *
+ * <p>{@link #onStart(RowStream)} is always called first, before the read or query is sent to Cloud
+ * Spanner. It is followed by zero or more {@link #onRow(Struct)} calls, one for each row requested
+ * through the {@link RowStream}, and finally by exactly one of {@link #onCompleted()} or {@link
+ * #onError(SpannerException)}. The final call does not require any outstanding requests.
+ *
+ * <p>Calls are never made concurrently, but they may be made from a gRPC event thread, so
+ * implementations must not block.
+ */
+public interface RowObserver {
+  /**
+   * Called when the read or query is about to start. No rows are delivered until they have been
+   * requested through {@code stream}.
+   */
+  void onStart(RowStream stream);
+
+  /** Called for each requested row, in the order returned by Cloud Spanner. */
+  void onRow(Struct row);
+
+  /** Called once all rows have been delivered. */
+  void onCompleted();
+
+  /** Called when the read or query fails or is cancelled. No further calls are made. */
+  void onError(SpannerException e);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import javax.annotation.Nullable;
+
+/**
+ * Handle to an asynchronous read or query started through an {@link AsyncReadContext}. Rows are
+ * only delivered to the {@link RowObserver} once they have been requested through this handle, and
+ * more data is only fetched from Cloud Spanner while there are outstanding requests. This allows a
+ * slow observer to apply backpressure to the stream without blocking a thread.
+ *
+ * <p>Implementations are thread-safe, and may be used from within the callbacks of the observer.
+ */
+public interface RowStream {
+  /**
+   * Requests that up to {@code numRows} more rows be delivered to the observer. Requests are
+   * cumulative: calling {@code request(2)} twice allows up to four rows to be delivered.
+   *
+   * @param numRows the number of additional rows to deliver; must be positive
+   */
+  void request(int numRows);
+
+  /**
+   * Cancels the read or query. Unless the stream has already finished, the observer receives a
+   * final {@link RowObserver#onError(SpannerException)} call with {@link ErrorCode#CANCELLED}, and
+   * any rows that have been received but not yet delivered are discarded.
+   *
+   * @param message a message to include in the final RPC status
+   */
+  void cancel(@Nullable String message);
+}
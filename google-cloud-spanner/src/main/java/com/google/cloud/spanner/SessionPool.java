@@ -18,6 +18,9 @@ package com.google.cloud.spanner;
 
 import static com.google.cloud.spanner.SpannerExceptionFactory.newSpannerException;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.GrpcTransportOptions;
 import com.google.cloud.GrpcTransportOptions.ExecutorFactory;
 import com.google.cloud.Timestamp;
@@ -25,7 +28,6 @@ import com.google.cloud.spanner.Options.QueryOption;
 import com.google.cloud.spanner.Options.ReadOption;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
@@ -33,9 +35,14 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
@@ -45,9 +52,14 @@ import org.joda.time.Instant;
 
 /**
  * Maintains a pool of sessions some of which might be prepared for write by invoking
- * BeginTransaction rpc. It maintains two queues of sessions(read and write prepared) and two queues
- * of waiters who are waiting for a session to become available. This class itself is thread safe
- * and is meant to be used concurrently across multiple threads.
+ * BeginTransaction rpc. It maintains two stacks of idle sessions(read and write prepared) and two
+ * queues of waiters who are waiting for a session to become available. This class itself is thread
+ * safe and is meant to be used concurrently across multiple threads.
+ *
+ * <p>Idle sessions are checked out and released without locking when no one is waiting for a
+ * session, which is the common case for a pool of the right size. They are reused last in first
+ * out, so that recently used sessions stay warm. Waiters, session creation and preparation are
+ * handled under a lock, and waiters are served in the order they arrived.
  */
 final class SessionPool {
 
@@ -186,7 +198,157 @@ final class SessionPool {
     }
   }
 
-  final class PooledSession implements Session {
+  /**
+   * Wrapper around a single-use {@code AsyncReadContext} that releases the session to the pool once
+   * the read has finished.
+   */
+  private static class AutoClosingAsyncReadContext implements AsyncReadContext {
+    private final AsyncReadContext delegate;
+    private final PooledSession session;
+    // A second read fails without releasing the session, which is still used by the first read.
+    private final AtomicBoolean used = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private AutoClosingAsyncReadContext(AsyncReadContext delegate, PooledSession session) {
+      this.delegate = delegate;
+      this.session = session;
+    }
+
+    private void markUsed() {
+      Preconditions.checkState(
+          !used.getAndSet(true), "Cannot use a single-use AsyncReadContext for multiple reads");
+      session.markUsed();
+    }
+
+    private void close() {
+      if (closed.getAndSet(true)) {
+        return;
+      }
+      session.close();
+    }
+
+    private void closeOnError(SpannerException e) {
+      session.lastException = e;
+      close();
+    }
+
+    private <T> ApiFuture<T> closeWhenDone(ApiFuture<T> future) {
+      ApiFutures.addCallback(
+          future,
+          new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+              close();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              if (t instanceof SpannerException) {
+                closeOnError((SpannerException) t);
+              } else {
+                close();
+              }
+            }
+          });
+      return future;
+    }
+
+    private RowObserver wrap(final RowObserver observer) {
+      return new RowObserver() {
+        @Override
+        public void onStart(RowStream stream) {
+          observer.onStart(stream);
+        }
+
+        @Override
+        public void onRow(Struct row) {
+          observer.onRow(row);
+        }
+
+        @Override
+        public void onCompleted() {
+          close();
+          observer.onCompleted();
+        }
+
+        @Override
+        public void onError(SpannerException e) {
+          closeOnError(e);
+          observer.onError(e);
+        }
+      };
+    }
+
+    @Override
+    public void readAsync(
+        String table,
+        KeySet keys,
+        Iterable<String> columns,
+        RowObserver observer,
+        ReadOption... options) {
+      markUsed();
+      try {
+        delegate.readAsync(table, keys, columns, wrap(observer), options);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public void readUsingIndexAsync(
+        String table,
+        String index,
+        KeySet keys,
+        Iterable<String> columns,
+        RowObserver observer,
+        ReadOption... options) {
+      markUsed();
+      try {
+        delegate.readUsingIndexAsync(table, index, keys, columns, wrap(observer), options);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public ApiFuture<Struct> readRowAsync(String table, Key key, Iterable<String> columns) {
+      markUsed();
+      try {
+        return closeWhenDone(delegate.readRowAsync(table, key, columns));
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public ApiFuture<Struct> readRowUsingIndexAsync(
+        String table, String index, Key key, Iterable<String> columns) {
+      markUsed();
+      try {
+        return closeWhenDone(delegate.readRowUsingIndexAsync(table, index, key, columns));
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public void executeQueryAsync(
+        Statement statement, RowObserver observer, QueryOption... options) {
+      markUsed();
+      try {
+        delegate.executeQueryAsync(statement, wrap(observer), options);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+  }
+
+  final class PooledSession implements Session, AsyncDatabaseClient {
     @VisibleForTesting final Session delegate;
     private volatile Instant lastUseTime;
     private volatile SpannerException lastException;
@@ -220,6 +382,17 @@ final class SessionPool {
       }
     }
 
+    @Override
+    public ApiFuture<Timestamp> writeAtLeastOnceAsync(Iterable<Mutation> mutations) {
+      markUsed();
+      try {
+        return closeWhenDone(asyncDelegate().writeAtLeastOnceAsync(mutations));
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
     @Override
     public ReadContext singleUse() {
       try {
@@ -240,6 +413,26 @@ final class SessionPool {
       }
     }
 
+    @Override
+    public AsyncReadContext singleUseAsync() {
+      try {
+        return new AutoClosingAsyncReadContext(asyncDelegate().singleUseAsync(), this);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public AsyncReadContext singleUseAsync(TimestampBound bound) {
+      try {
+        return new AutoClosingAsyncReadContext(asyncDelegate().singleUseAsync(bound), this);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
     @Override
     public ReadOnlyTransaction singleUseReadOnlyTransaction() {
       try {
@@ -309,9 +502,7 @@ final class SessionPool {
 
     @Override
     public void close() {
-      synchronized (lock) {
-        numSessionsInUse--;
-      }
+      numSessionsInUse.decrementAndGet();
       if (lastException != null && isSessionNotFound(lastException)) {
         invalidateSession();
       } else {
@@ -342,40 +533,105 @@ final class SessionPool {
     private void markUsed() {
       lastUseTime = clock.instant();
     }
-  }
-
-  private static final class SessionOrError {
-    private Session session;
-    private SpannerException e;
 
-    SessionOrError(Session session) {
-      this.session = session;
-      this.e = null;
+    private AsyncDatabaseClient asyncDelegate() {
+      // Sessions created by SpannerImpl support the asynchronous API.
+      return (AsyncDatabaseClient) delegate;
     }
 
-    SessionOrError(SpannerException e) {
-      this.session = null;
-      this.e = e;
+    /** Releases this session to the pool once {@code future} completes. */
+    private <T> ApiFuture<T> closeWhenDone(ApiFuture<T> future) {
+      ApiFutures.addCallback(
+          future,
+          new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+              close();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              if (t instanceof SpannerException) {
+                lastException = (SpannerException) t;
+              }
+              close();
+            }
+          });
+      return future;
     }
   }
 
   private static final class Waiter {
-    private final SynchronousQueue<SessionOrError> waiter = new SynchronousQueue<>();
+    // Handing off a session never blocks, so that sessions can be handed off under the lock.
+    private final SettableFuture<PooledSession> waiter = SettableFuture.create();
 
-    private void put(Session session) {
-      Uninterruptibles.putUninterruptibly(waiter, new SessionOrError(session));
+    private void put(PooledSession session) {
+      waiter.set(session);
     }
 
     private void put(SpannerException e) {
-      Uninterruptibles.putUninterruptibly(waiter, new SessionOrError(e));
+      waiter.setException(e);
     }
 
-    private Session take() throws SpannerException {
-      SessionOrError s = Uninterruptibles.takeUninterruptibly(waiter);
-      if (s.e != null) {
-        throw SpannerExceptionFactory.newSpannerException(s.e);
+    private PooledSession take() throws SpannerException {
+      try {
+        return Uninterruptibles.getUninterruptibly(waiter);
+      } catch (ExecutionException e) {
+        throw SpannerExceptionFactory.newSpannerException(e.getCause());
       }
-      return s.session;
+    }
+  }
+
+  /**
+   * A stack of idle sessions, that can be pushed to and popped from concurrently without locking.
+   * The most recently released sessions are at the top of the stack, and the least recently used
+   * ones at the bottom, where the pool maintainer looks for sessions to close or keep alive.
+   */
+  private static final class SessionStack {
+    private final ConcurrentLinkedDeque<PooledSession> sessions = new ConcurrentLinkedDeque<>();
+    // ConcurrentLinkedDeque.size() walks the whole deque, so keep track of the size separately.
+    private final AtomicInteger size = new AtomicInteger();
+
+    void push(PooledSession session) {
+      sessions.addFirst(session);
+      size.incrementAndGet();
+    }
+
+    @Nullable
+    PooledSession pop() {
+      return decrementIfPresent(sessions.pollFirst());
+    }
+
+    /** Removes and returns the least recently released session. */
+    @Nullable
+    PooledSession pollOldest() {
+      return decrementIfPresent(sessions.pollLast());
+    }
+
+    /** Removes and returns a session that has not been used since {@code threshold}, if any. */
+    @Nullable
+    PooledSession pollUnusedSince(Instant threshold) {
+      Iterator<PooledSession> iterator = sessions.descendingIterator();
+      while (iterator.hasNext()) {
+        PooledSession session = iterator.next();
+        // Only one thread can remove a given session, a concurrent pop() might have taken it.
+        if (session.lastUseTime.isBefore(threshold) && sessions.removeLastOccurrence(session)) {
+          return decrementIfPresent(session);
+        }
+      }
+      return null;
+    }
+
+    /** Returns the number of sessions, which might be off by a few during concurrent updates. */
+    int size() {
+      return Math.max(0, size.get());
+    }
+
+    private PooledSession decrementIfPresent(@Nullable PooledSession session) {
+      if (session != null) {
+        size.decrementAndGet();
+      }
+      return session;
     }
   }
 
@@ -434,22 +690,22 @@ final class SessionPool {
         // Every ten minutes figure out how many sessions need to be closed then close them over
         // next ten minutes.
         if (currTime.isAfter(lastResetTime.plus(windowLength))) {
-          numSessionsToClose = totalSessions - (maxSessionsInUse + options.getMaxIdleSessions());
+          numSessionsToClose =
+              totalSessions - (maxSessionsInUse.getAndSet(0) + options.getMaxIdleSessions());
           if (numSessionsToClose <= options.getMinSessions()) {
             numSessionsToClose = 0;
           } else {
             sessionsToClosePerLoop =
                 (int) Math.ceil((double) numSessionsToClose / numClosureCycles);
           }
-          maxSessionsInUse = 0;
           lastResetTime = currTime;
         }
         if (numSessionsToClose > 0) {
           while (sessionsToClose.size() < Math.min(numSessionsToClose, sessionsToClosePerLoop)) {
-            PooledSession sess = readSessions.poll();
+            PooledSession sess = readSessions.pollOldest();
             if (sess != null) {
               sessionsToClose.add(sess);
-            } else if ((sess = writePreparedSessions.poll()) != null) {
+            } else if ((sess = writePreparedSessions.pollOldest()) != null) {
               sessionsToClose.add(sess);
             } else {
               break;
@@ -457,6 +713,7 @@ final class SessionPool {
           }
           totalSessions -= sessionsToClose.size();
           numSessionsToClose -= sessionsToClose.size();
+          numIdleSessionsClosed.addAndGet(sessionsToClose.size());
         }
       }
       for (PooledSession sess : sessionsToClose) {
@@ -483,12 +740,9 @@ final class SessionPool {
 
       // Keep chugging till there is no session that needs to be kept alive.
       while (numSessionsToKeepAlive > 0) {
-        PooledSession sessionToKeepAlive = null;
-        synchronized (lock) {
-          sessionToKeepAlive = findSessionToKeepAlive(readSessions, keepAliveThreshold);
-          if (sessionToKeepAlive == null) {
-            sessionToKeepAlive = findSessionToKeepAlive(writePreparedSessions, keepAliveThreshold);
-          }
+        PooledSession sessionToKeepAlive = readSessions.pollUnusedSince(keepAliveThreshold);
+        if (sessionToKeepAlive == null) {
+          sessionToKeepAlive = writePreparedSessions.pollUnusedSince(keepAliveThreshold);
         }
         if (sessionToKeepAlive == null) {
           break;
@@ -496,6 +750,7 @@ final class SessionPool {
         try {
           logger.log(Level.FINE, "Keeping alive session " + sessionToKeepAlive.getName());
           numSessionsToKeepAlive--;
+          numKeepAlives.incrementAndGet();
           sessionToKeepAlive.keepAlive();
           releaseSession(sessionToKeepAlive);
         } catch (SpannerException e) {
@@ -528,14 +783,13 @@ final class SessionPool {
   @GuardedBy("lock")
   private int pendingClosure;
 
+  // Written under the lock, but also read without it by the lock-free checkout and release paths.
   @GuardedBy("lock")
-  private SettableFuture<Void> closureFuture;
+  private volatile SettableFuture<Void> closureFuture;
 
-  @GuardedBy("lock")
-  private final Queue<PooledSession> readSessions = new LinkedList<>();
+  private final SessionStack readSessions = new SessionStack();
 
-  @GuardedBy("lock")
-  private final Queue<PooledSession> writePreparedSessions = new LinkedList<>();
+  private final SessionStack writePreparedSessions = new SessionStack();
 
   @GuardedBy("lock")
   private final Queue<Waiter> readWaiters = new LinkedList<>();
@@ -543,20 +797,33 @@ final class SessionPool {
   @GuardedBy("lock")
   private final Queue<Waiter> readWriteWaiters = new LinkedList<>();
 
+  // The total number of read and read write waiters, so that it can be checked without the lock.
+  private final AtomicInteger numWaiters = new AtomicInteger();
+
+  // Volatile, as they are also read without the lock by releaseSession to decide whether to
+  // prepare the session.
   @GuardedBy("lock")
-  private int numSessionsBeingPrepared = 0;
+  private volatile int numSessionsBeingPrepared = 0;
 
   @GuardedBy("lock")
-  private int totalSessions = 0;
+  private volatile int totalSessions = 0;
 
   @GuardedBy("lock")
   private int numSessionsBeingCreated = 0;
 
-  @GuardedBy("lock")
-  private int numSessionsInUse = 0;
+  private final AtomicInteger numSessionsInUse = new AtomicInteger();
+
+  private final AtomicInteger maxSessionsInUse = new AtomicInteger();
+
+  private final LatencyRecorder checkoutWaitLatency = new LatencyRecorder();
+  private final LatencyRecorder sessionCreationLatency = new LatencyRecorder();
+  private final LatencyRecorder sessionPrepareLatency = new LatencyRecorder();
+  private final AtomicLong numKeepAlives = new AtomicLong();
+  private final AtomicLong numIdleSessionsClosed = new AtomicLong();
+  private final AtomicLong numExhaustionEvents = new AtomicLong();
 
   @GuardedBy("lock")
-  private int maxSessionsInUse = 0;
+  private ScheduledFuture<?> statsExportFuture;
 
   // TODO(user): Maybe maintain a list/map of all sessions currently in the pool including those
   // which have been handed out to client.
@@ -613,11 +880,62 @@ final class SessionPool {
 
   private void initPool() {
     poolMaintainer.init();
+    if (options.getStatsExporter() != null) {
+      ScheduledFuture<?> exportFuture =
+          executor.scheduleAtFixedRate(
+              new Runnable() {
+                @Override
+                public void run() {
+                  exportStats();
+                }
+              },
+              options.getStatsExportIntervalSeconds(),
+              options.getStatsExportIntervalSeconds(),
+              TimeUnit.SECONDS);
+      synchronized (lock) {
+        statsExportFuture = exportFuture;
+      }
+    }
     for (int i = 0; i < options.getMinSessions(); i++) {
       createSession();
     }
   }
 
+  private void exportStats() {
+    if (isClosed()) {
+      return;
+    }
+    try {
+      options.getStatsExporter().export(db, getStats());
+    } catch (RuntimeException e) {
+      // Keep exporting, a later export might succeed.
+      logger.log(Level.WARNING, "Failed to export session pool stats", e);
+    }
+  }
+
+  /** Returns a snapshot of the state of the pool. */
+  SessionPoolStats getStats() {
+    synchronized (lock) {
+      return SessionPoolStats.newBuilder()
+          .setSessionsInUse(numSessionsInUse.get())
+          .setMaxSessionsInUse(maxSessionsInUse.get())
+          .setIdleReadSessions(readSessions.size())
+          .setIdleWritePreparedSessions(writePreparedSessions.size())
+          .setSessionsBeingCreated(numSessionsBeingCreated)
+          .setSessionsBeingPrepared(numSessionsBeingPrepared)
+          .setTotalSessions(totalSessions)
+          .setReadWaiters(readWaiters.size())
+          .setReadWriteWaiters(readWriteWaiters.size())
+          .setCheckoutWaitLatency(checkoutWaitLatency.getDistribution())
+          .setSessionCreationLatency(sessionCreationLatency.getDistribution())
+          .setSessionPrepareLatency(sessionPrepareLatency.getDistribution())
+          .setKeepAlives(numKeepAlives.get())
+          .setIdleSessionsClosed(numIdleSessionsClosed.get())
+          .setExhaustionEvents(numExhaustionEvents.get())
+          .build();
+    }
+  }
+
   private boolean isClosed() {
     synchronized (lock) {
       return closureFuture != null;
@@ -644,19 +962,6 @@ final class SessionPool {
     }
   }
 
-  private PooledSession findSessionToKeepAlive(
-      Queue<PooledSession> queue, Instant keepAliveThreshold) {
-    Iterator<PooledSession> iterator = queue.iterator();
-    while (iterator.hasNext()) {
-      PooledSession session = iterator.next();
-      if (session.lastUseTime.isBefore(keepAliveThreshold)) {
-        iterator.remove();
-        return session;
-      }
-    }
-    return null;
-  }
-
   /**
    * Returns a session to be used for read requests to spanner. It will block if a session is not
    * currently available. In case the pool is exhausted and {@link
@@ -666,39 +971,60 @@ final class SessionPool {
    * <p>Implementation strategy:
    *
    * <ol>
-   *   <li> If a read session is available, return that.
-   *   <li> Otherwise if a writePreparedSession is available, return that.
+   *   <li> If a read session is available, return that, without locking.
+   *   <li> Otherwise if a writePreparedSession is available, return that, without locking.
+   *   <li> Otherwise register as a waiter, and check again for a session that might have been
+   *       released in the meantime.
    *   <li> Otherwise if a session can be created, fire a creation request.
    *   <li> Wait for a session to become available. Note that this can be unblocked either by a
    *       session being returned to the pool or a new session being created.
    * </ol>
    */
-  Session getReadSession() throws SpannerException {
-    Waiter waiter = null;
+  PooledSession getReadSession() throws SpannerException {
+    if (closureFuture != null) {
+      throw new IllegalStateException("Pool has been closed");
+    }
+    PooledSession sess = pollReadSession();
+    if (sess != null) {
+      checkoutWaitLatency.recordZero();
+      incrementNumSessionsInUse();
+      return sess;
+    }
+    long startNanos = System.nanoTime();
+    Waiter waiter = new Waiter();
     synchronized (lock) {
       if (closureFuture != null) {
         throw new IllegalStateException("Pool has been closed");
       }
-      Session sess = readSessions.poll();
+      // The waiter is registered before polling again, so that a session released without the
+      // lock is either found here or handed off to the waiter by releaseSession.
+      addWaiter(readWaiters, waiter);
+      sess = pollReadSession();
       if (sess != null) {
+        removeWaiter(readWaiters, waiter);
+        checkoutWaitLatency.recordSince(startNanos);
         incrementNumSessionsInUse();
         return sess;
       }
-      sess = writePreparedSessions.poll();
-      if (sess != null) {
-        incrementNumSessionsInUse();
-
-        return sess;
+      try {
+        maybeCreateSession();
+      } catch (SpannerException e) {
+        removeWaiter(readWaiters, waiter);
+        throw e;
       }
-      maybeCreateSession();
-      waiter = new Waiter();
-      readWaiters.add(waiter);
     }
-    Session session = waiter.take();
+    PooledSession session = waiter.take();
+    checkoutWaitLatency.recordSince(startNanos);
     incrementNumSessionsInUse();
     return session;
   }
 
+  @Nullable
+  private PooledSession pollReadSession() {
+    PooledSession sess = readSessions.pop();
+    return sess != null ? sess : writePreparedSessions.pop();
+  }
+
   /**
    * Returns a session which has been prepared for writes by invoking BeginTransaction rpc. It will
    * block if such a session is not currently available.In case the pool is exhausted and {@link
@@ -718,49 +1044,100 @@ final class SessionPool {
    *       to the pool which is then write prepared.
    * </ol>
    */
-  Session getReadWriteSession() {
-    Waiter waiter = null;
+  PooledSession getReadWriteSession() {
+    if (closureFuture != null) {
+      throw new IllegalStateException("Pool has been closed");
+    }
+    PooledSession sess = writePreparedSessions.pop();
+    if (sess != null) {
+      checkoutWaitLatency.recordZero();
+      incrementNumSessionsInUse();
+      return sess;
+    }
+    long startNanos = System.nanoTime();
+    Waiter waiter = new Waiter();
     synchronized (lock) {
       if (closureFuture != null) {
         throw new IllegalStateException("Pool has been closed");
       }
-      PooledSession sess = writePreparedSessions.poll();
+      addWaiter(readWriteWaiters, waiter);
+      sess = writePreparedSessions.pop();
       if (sess != null) {
+        removeWaiter(readWriteWaiters, waiter);
+        checkoutWaitLatency.recordSince(startNanos);
         incrementNumSessionsInUse();
         return sess;
       }
-      if (numSessionsBeingPrepared <= readWriteWaiters.size()) {
-        sess = readSessions.poll();
+      // Prepare a session unless there are already enough being prepared for the other waiters.
+      if (numSessionsBeingPrepared < readWriteWaiters.size()) {
+        sess = readSessions.pop();
         if (sess != null) {
           prepareSession(sess);
         } else {
-          maybeCreateSession();
+          try {
+            maybeCreateSession();
+          } catch (SpannerException e) {
+            removeWaiter(readWriteWaiters, waiter);
+            throw e;
+          }
         }
       }
-      waiter = new Waiter();
-      readWriteWaiters.add(waiter);
     }
-    Session session = waiter.take();
+    PooledSession session = waiter.take();
+    checkoutWaitLatency.recordSince(startNanos);
     incrementNumSessionsInUse();
     return session;
   }
 
   private void incrementNumSessionsInUse() {
+    int inUse = numSessionsInUse.incrementAndGet();
+    int max = maxSessionsInUse.get();
+    while (inUse > max && !maxSessionsInUse.compareAndSet(max, inUse)) {
+      max = maxSessionsInUse.get();
+    }
+  }
+
+  private void addWaiter(Queue<Waiter> waiters, Waiter waiter) {
+    synchronized (lock) {
+      waiters.add(waiter);
+      numWaiters.incrementAndGet();
+    }
+  }
+
+  private void removeWaiter(Queue<Waiter> waiters, Waiter waiter) {
     synchronized (lock) {
-      if (maxSessionsInUse < ++numSessionsInUse) {
-        maxSessionsInUse = numSessionsInUse;
+      if (waiters.remove(waiter)) {
+        numWaiters.decrementAndGet();
       }
     }
   }
 
+  @Nullable
+  private Waiter pollWaiter(Queue<Waiter> waiters) {
+    synchronized (lock) {
+      Waiter waiter = waiters.poll();
+      if (waiter != null) {
+        numWaiters.decrementAndGet();
+      }
+      return waiter;
+    }
+  }
+
+  /**
+   * Fires a session creation request if the pool can grow and there are more waiters, besides the
+   * one the caller has just registered, than sessions being created.
+   */
   private void maybeCreateSession() {
     synchronized (lock) {
-      if (numWaiters() >= numSessionsBeingCreated) {
+      if (numWaiters() > numSessionsBeingCreated) {
         if (canCreateSession()) {
           createSession();
-        } else if (options.isFailIfPoolExhausted()) {
-          // throw specific exception
-          throw newSpannerException(ErrorCode.RESOURCE_EXHAUSTED, "No session available");
+        } else {
+          numExhaustionEvents.incrementAndGet();
+          if (options.isFailIfPoolExhausted()) {
+            // throw specific exception
+            throw newSpannerException(ErrorCode.RESOURCE_EXHAUSTED, "No session available");
+          }
         }
       }
     }
@@ -771,9 +1148,9 @@ final class SessionPool {
    * <p>Implementation note:
    *
    * <ol>
-   *   <li> If there are no pending waiters, either add to the read sessions queue or start
+   *   <li> If there are no pending waiters, either add to the read sessions stack or start
    *       preparing for write depending on what fraction of sessions are already prepared for
-   *       writes.
+   *       writes. Adding to the read sessions stack does not take the lock.
    *   <li> Otherwise either unblock a waiting reader or start preparing for a write. Exact strategy
    *       on which option we chose, in case there are both waiting readers and writers, is
    *       implemented in {@link #shouldUnblockReader}
@@ -781,6 +1158,18 @@ final class SessionPool {
    */
   private void releaseSession(PooledSession session) {
     Preconditions.checkNotNull(session);
+    if (closureFuture == null && numWaiters.get() == 0 && !shouldPrepareSession()) {
+      readSessions.push(session);
+      if (closureFuture == null && numWaiters.get() == 0) {
+        return;
+      }
+      // The pool was closed, or a waiter registered, while the session was being pushed. Take a
+      // session back, unless someone else already did, and release it under the lock.
+      session = readSessions.pop();
+      if (session == null) {
+        return;
+      }
+    }
     synchronized (lock) {
       if (closureFuture != null) {
         closeSessionAsync(session.delegate);
@@ -791,10 +1180,10 @@ final class SessionPool {
         if (shouldPrepareSession()) {
           prepareSession(session);
         } else {
-          readSessions.add(session);
+          readSessions.push(session);
         }
       } else if (shouldUnblockReader()) {
-        readWaiters.poll().put(session);
+        pollWaiter(readWaiters).put(session);
       } else {
         prepareSession(session);
       }
@@ -804,9 +1193,9 @@ final class SessionPool {
   private void handleCreateSessionFailure(SpannerException e) {
     synchronized (lock) {
       if (readWaiters.size() > 0) {
-        readWaiters.poll().put(e);
+        pollWaiter(readWaiters).put(e);
       } else if (readWriteWaiters.size() > 0) {
-        readWriteWaiters.poll().put(e);
+        pollWaiter(readWriteWaiters).put(e);
       }
     }
   }
@@ -816,7 +1205,7 @@ final class SessionPool {
       if (isSessionNotFound(e)) {
         invalidateSession();
       } else if (readWriteWaiters.size() > 0) {
-        readWriteWaiters.poll().put(e);
+        pollWaiter(readWriteWaiters).put(e);
       } else {
         releaseSession(session);
       }
@@ -835,19 +1224,22 @@ final class SessionPool {
         throw new IllegalStateException("Close has already been invoked");
       }
       // Fail all pending waiters.
-      Waiter waiter = readWaiters.poll();
+      Waiter waiter = pollWaiter(readWaiters);
       while (waiter != null) {
         waiter.put(
             SpannerExceptionFactory.newSpannerException(
                 ErrorCode.INTERNAL, "Client has been closed"));
-        waiter = readWaiters.poll();
+        waiter = pollWaiter(readWaiters);
       }
-      waiter = readWriteWaiters.poll();
+      waiter = pollWaiter(readWriteWaiters);
       while (waiter != null) {
         waiter.put(
             SpannerExceptionFactory.newSpannerException(
                 ErrorCode.INTERNAL, "Client has been closed"));
-        waiter = readWriteWaiters.poll();
+        waiter = pollWaiter(readWriteWaiters);
+      }
+      if (statsExportFuture != null) {
+        statsExportFuture.cancel(false);
       }
       closureFuture = SettableFuture.create();
       retFuture = closureFuture;
@@ -855,8 +1247,10 @@ final class SessionPool {
       if (pendingClosure == 0) {
         closureFuture.set(null);
       } else {
-        for (final PooledSession session :
-            Iterables.consumingIterable(Iterables.concat(readSessions, writePreparedSessions))) {
+        // Sessions released concurrently without the lock see the closure and are closed by
+        // releaseSession, or are still found here.
+        PooledSession session;
+        while ((session = pollReadSession()) != null) {
           closeSessionAsync(session.delegate);
         }
       }
@@ -882,20 +1276,17 @@ final class SessionPool {
     }
   }
 
+  // Called without the lock by releaseSession, in which case the counts might be slightly stale.
   private boolean shouldPrepareSession() {
-    synchronized (lock) {
-      int preparedSessions = writePreparedSessions.size() + numSessionsBeingPrepared;
-      if (preparedSessions < Math.floor(options.getWriteSessionsFraction() * totalSessions)) {
-        return true;
-      }
-      return false;
+    int preparedSessions = writePreparedSessions.size() + numSessionsBeingPrepared;
+    if (preparedSessions < Math.floor(options.getWriteSessionsFraction() * totalSessions)) {
+      return true;
     }
+    return false;
   }
 
   private int numWaiters() {
-    synchronized (lock) {
-      return readWaiters.size() + readWriteWaiters.size();
-    }
+    return numWaiters.get();
   }
 
   private void closeSessionAsync(final Session sess) {
@@ -934,7 +1325,9 @@ final class SessionPool {
             boolean closeSession = false;
             try {
               logger.log(Level.FINE, "Preparing session");
+              long startNanos = System.nanoTime();
               sess.prepareReadWriteTransaction();
+              sessionPrepareLatency.recordSince(startNanos);
               logger.log(Level.FINE, "Session prepared");
               synchronized (lock) {
                 numSessionsBeingPrepared--;
@@ -942,11 +1335,11 @@ final class SessionPool {
                   closeSession = true;
                 } else {
                   if (readWriteWaiters.size() > 0) {
-                    readWriteWaiters.poll().put(sess);
+                    pollWaiter(readWriteWaiters).put(sess);
                   } else if (readWaiters.size() > 0) {
-                    readWaiters.poll().put(sess);
+                    pollWaiter(readWaiters).put(sess);
                   } else {
-                    writePreparedSessions.add(sess);
+                    writePreparedSessions.push(sess);
                   }
                 }
               }
@@ -984,7 +1377,9 @@ final class SessionPool {
             public void run() {
               Session session = null;
               try {
+                long startNanos = System.nanoTime();
                 session = spanner.createSession(db);
+                sessionCreationLatency.recordSince(startNanos);
                 logger.log(Level.FINE, "Session created");
               } catch (SpannerException e) {
                 // Expose this to customer via a metric.
@@ -17,6 +17,7 @@
 package com.google.cloud.spanner;
 
 import com.google.common.base.Preconditions;
+import javax.annotation.Nullable;
 
 /** Options for the session pool used by {@code DatabaseClient}. */
 public class SessionPoolOptions {
@@ -26,6 +27,8 @@ public class SessionPoolOptions {
   private final float writeSessionsFraction;
   private final ActionOnExhaustion actionOnExhaustion;
   private final int keepAliveIntervalMinutes;
+  @Nullable private final SessionPoolStatsExporter statsExporter;
+  private final int statsExportIntervalSeconds;
 
   private SessionPoolOptions(Builder builder) {
     this.minSessions = builder.minSessions;
@@ -34,6 +37,8 @@ public class SessionPoolOptions {
     this.writeSessionsFraction = builder.writeSessionsFraction;
     this.actionOnExhaustion = builder.actionOnExhaustion;
     this.keepAliveIntervalMinutes = builder.keepAliveIntervalMinutes;
+    this.statsExporter = builder.statsExporter;
+    this.statsExportIntervalSeconds = builder.statsExportIntervalSeconds;
   }
 
   public int getMinSessions() {
@@ -56,6 +61,15 @@ public class SessionPoolOptions {
     return keepAliveIntervalMinutes;
   }
 
+  @Nullable
+  public SessionPoolStatsExporter getStatsExporter() {
+    return statsExporter;
+  }
+
+  public int getStatsExportIntervalSeconds() {
+    return statsExportIntervalSeconds;
+  }
+
   public boolean isFailIfPoolExhausted() {
     return actionOnExhaustion == ActionOnExhaustion.FAIL;
   }
@@ -81,6 +95,8 @@ public class SessionPoolOptions {
     private float writeSessionsFraction = 0.2f;
     private ActionOnExhaustion actionOnExhaustion = ActionOnExhaustion.BLOCK;
     private int keepAliveIntervalMinutes = 30;
+    private SessionPoolStatsExporter statsExporter;
+    private int statsExportIntervalSeconds = 60;
 
     /**
      * Minimum number of sessions that this pool will always maintain. These will be created eagerly
@@ -165,6 +181,22 @@ public class SessionPoolOptions {
       return this;
     }
 
+    /**
+     * Exporter to which snapshots of the state of the pool are periodically sent, at the interval
+     * set by {@link #setStatsExportIntervalSeconds}. Stats are not exported by default.
+     */
+    public Builder setStatsExporter(SessionPoolStatsExporter statsExporter) {
+      this.statsExporter = Preconditions.checkNotNull(statsExporter);
+      return this;
+    }
+
+    /** How frequently to export the stats of the pool. Default value is 60 seconds. */
+    public Builder setStatsExportIntervalSeconds(int intervalSeconds) {
+      Preconditions.checkArgument(intervalSeconds > 0, "Stats export interval must be positive");
+      this.statsExportIntervalSeconds = intervalSeconds;
+      return this;
+    }
+
     /** Build a SessionPoolOption object */
     public SessionPoolOptions build() {
       return new SessionPoolOptions(this);
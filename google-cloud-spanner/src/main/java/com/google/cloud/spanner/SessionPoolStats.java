@@ -0,0 +1,351 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * A snapshot of the state and activity of the session pool of a {@link DatabaseClient}, to help
+ * sizing {@link SessionPoolOptions}. Counts of events are cumulative since the pool was created.
+ *
+ * @see SessionPoolOptions.Builder#setStatsExporter(SessionPoolStatsExporter)
+ * @see SessionPoolStatsProvider#getSessionPoolStats()
+ */
+public final class SessionPoolStats {
+
+  private final int sessionsInUse;
+  private final int maxSessionsInUse;
+  private final int idleReadSessions;
+  private final int idleWritePreparedSessions;
+  private final int sessionsBeingCreated;
+  private final int sessionsBeingPrepared;
+  private final int totalSessions;
+  private final int readWaiters;
+  private final int readWriteWaiters;
+  private final LatencyDistribution checkoutWaitLatency;
+  private final LatencyDistribution sessionCreationLatency;
+  private final LatencyDistribution sessionPrepareLatency;
+  private final long keepAlives;
+  private final long idleSessionsClosed;
+  private final long exhaustionEvents;
+
+  /**
+   * A distribution of latencies, in milliseconds, recorded in buckets of increasing size. The
+   * upper bound of each bucket is given by {@link #getBucketUpperBoundsMillis()}, and the last
+   * bucket holds the latencies above the largest bound.
+   */
+  public static final class LatencyDistribution {
+
+    private final List<Long> bucketUpperBoundsMillis;
+    private final List<Long> bucketCounts;
+    private final long count;
+
+    LatencyDistribution(List<Long> bucketUpperBoundsMillis, List<Long> bucketCounts) {
+      Preconditions.checkArgument(bucketCounts.size() == bucketUpperBoundsMillis.size() + 1);
+      this.bucketUpperBoundsMillis = ImmutableList.copyOf(bucketUpperBoundsMillis);
+      this.bucketCounts = ImmutableList.copyOf(bucketCounts);
+      long count = 0;
+      for (long bucketCount : bucketCounts) {
+        count += bucketCount;
+      }
+      this.count = count;
+    }
+
+    /** Returns the number of recorded latencies. */
+    public long getCount() {
+      return count;
+    }
+
+    /** Returns the inclusive upper bounds of the buckets, in milliseconds. */
+    public List<Long> getBucketUpperBoundsMillis() {
+      return bucketUpperBoundsMillis;
+    }
+
+    /**
+     * Returns the number of latencies in each bucket. There is one more bucket than bounds, for
+     * the latencies above the largest bound.
+     */
+    public List<Long> getBucketCounts() {
+      return bucketCounts;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the given percentile, or {@link
+     * Long#MAX_VALUE} if the percentile is above the largest bound. Returns 0 if no latency was
+     * recorded.
+     *
+     * @param percentile a percentile between 0 and 100
+     */
+    public long getPercentileMillis(double percentile) {
+      Preconditions.checkArgument(
+          percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < bucketUpperBoundsMillis.size(); i++) {
+        seen += bucketCounts.get(i);
+        if (seen >= rank) {
+          return bucketUpperBoundsMillis.get(i);
+        }
+      }
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("count", count)
+          .add("p50", getPercentileMillis(50))
+          .add("p90", getPercentileMillis(90))
+          .add("p99", getPercentileMillis(99))
+          .toString();
+    }
+  }
+
+  private SessionPoolStats(Builder builder) {
+    this.sessionsInUse = builder.sessionsInUse;
+    this.maxSessionsInUse = builder.maxSessionsInUse;
+    this.idleReadSessions = builder.idleReadSessions;
+    this.idleWritePreparedSessions = builder.idleWritePreparedSessions;
+    this.sessionsBeingCreated = builder.sessionsBeingCreated;
+    this.sessionsBeingPrepared = builder.sessionsBeingPrepared;
+    this.totalSessions = builder.totalSessions;
+    this.readWaiters = builder.readWaiters;
+    this.readWriteWaiters = builder.readWriteWaiters;
+    this.checkoutWaitLatency = Preconditions.checkNotNull(builder.checkoutWaitLatency);
+    this.sessionCreationLatency = Preconditions.checkNotNull(builder.sessionCreationLatency);
+    this.sessionPrepareLatency = Preconditions.checkNotNull(builder.sessionPrepareLatency);
+    this.keepAlives = builder.keepAlives;
+    this.idleSessionsClosed = builder.idleSessionsClosed;
+    this.exhaustionEvents = builder.exhaustionEvents;
+  }
+
+  /** Returns the number of sessions currently checked out of the pool. */
+  public int getSessionsInUse() {
+    return sessionsInUse;
+  }
+
+  /**
+   * Returns the maximum number of sessions checked out at the same time since the last reset. The
+   * pool resets this value every ten minutes, when it decides how many idle sessions to close, so
+   * it does not cover the whole life of the pool.
+   */
+  public int getMaxSessionsInUse() {
+    return maxSessionsInUse;
+  }
+
+  /** Returns the number of idle sessions that are not prepared for writes. */
+  public int getIdleReadSessions() {
+    return idleReadSessions;
+  }
+
+  /** Returns the number of idle sessions that are prepared for writes. */
+  public int getIdleWritePreparedSessions() {
+    return idleWritePreparedSessions;
+  }
+
+  /** Returns the number of sessions currently being created. */
+  public int getSessionsBeingCreated() {
+    return sessionsBeingCreated;
+  }
+
+  /** Returns the number of sessions currently being prepared for writes. */
+  public int getSessionsBeingPrepared() {
+    return sessionsBeingPrepared;
+  }
+
+  /** Returns the number of sessions in the pool, checked out or not. */
+  public int getTotalSessions() {
+    return totalSessions;
+  }
+
+  /** Returns the number of callers waiting for a session for reads. */
+  public int getReadWaiters() {
+    return readWaiters;
+  }
+
+  /** Returns the number of callers waiting for a session prepared for writes. */
+  public int getReadWriteWaiters() {
+    return readWriteWaiters;
+  }
+
+  /**
+   * Returns the distribution of the time spent waiting to check out a session. Checkouts served by
+   * an idle session are recorded as zero.
+   */
+  public LatencyDistribution getCheckoutWaitLatency() {
+    return checkoutWaitLatency;
+  }
+
+  /** Returns the distribution of the latency of successful session creations. */
+  public LatencyDistribution getSessionCreationLatency() {
+    return sessionCreationLatency;
+  }
+
+  /** Returns the distribution of the latency of successful session preparations for writes. */
+  public LatencyDistribution getSessionPrepareLatency() {
+    return sessionPrepareLatency;
+  }
+
+  /** Returns the number of keep alive queries sent for idle sessions. */
+  public long getKeepAlives() {
+    return keepAlives;
+  }
+
+  /** Returns the number of idle sessions closed to shrink the pool. */
+  public long getIdleSessionsClosed() {
+    return idleSessionsClosed;
+  }
+
+  /**
+   * Returns the number of checkouts that found the pool exhausted: no idle session was available
+   * and {@link SessionPoolOptions#getMaxSessions()} had been reached. Depending on {@link
+   * SessionPoolOptions#isFailIfPoolExhausted()}, these checkouts failed or waited.
+   */
+  public long getExhaustionEvents() {
+    return exhaustionEvents;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("sessionsInUse", sessionsInUse)
+        .add("maxSessionsInUse", maxSessionsInUse)
+        .add("idleReadSessions", idleReadSessions)
+        .add("idleWritePreparedSessions", idleWritePreparedSessions)
+        .add("sessionsBeingCreated", sessionsBeingCreated)
+        .add("sessionsBeingPrepared", sessionsBeingPrepared)
+        .add("totalSessions", totalSessions)
+        .add("readWaiters", readWaiters)
+        .add("readWriteWaiters", readWriteWaiters)
+        .add("checkoutWaitLatency", checkoutWaitLatency)
+        .add("sessionCreationLatency", sessionCreationLatency)
+        .add("sessionPrepareLatency", sessionPrepareLatency)
+        .add("keepAlives", keepAlives)
+        .add("idleSessionsClosed", idleSessionsClosed)
+        .add("exhaustionEvents", exhaustionEvents)
+        .toString();
+  }
+
+  static Builder newBuilder() {
+    return new Builder();
+  }
+
+  static final class Builder {
+    private int sessionsInUse;
+    private int maxSessionsInUse;
+    private int idleReadSessions;
+    private int idleWritePreparedSessions;
+    private int sessionsBeingCreated;
+    private int sessionsBeingPrepared;
+    private int totalSessions;
+    private int readWaiters;
+    private int readWriteWaiters;
+    private LatencyDistribution checkoutWaitLatency;
+    private LatencyDistribution sessionCreationLatency;
+    private LatencyDistribution sessionPrepareLatency;
+    private long keepAlives;
+    private long idleSessionsClosed;
+    private long exhaustionEvents;
+
+    private Builder() {}
+
+    Builder setSessionsInUse(int sessionsInUse) {
+      this.sessionsInUse = sessionsInUse;
+      return this;
+    }
+
+    Builder setMaxSessionsInUse(int maxSessionsInUse) {
+      this.maxSessionsInUse = maxSessionsInUse;
+      return this;
+    }
+
+    Builder setIdleReadSessions(int idleReadSessions) {
+      this.idleReadSessions = idleReadSessions;
+      return this;
+    }
+
+    Builder setIdleWritePreparedSessions(int idleWritePreparedSessions) {
+      this.idleWritePreparedSessions = idleWritePreparedSessions;
+      return this;
+    }
+
+    Builder setSessionsBeingCreated(int sessionsBeingCreated) {
+      this.sessionsBeingCreated = sessionsBeingCreated;
+      return this;
+    }
+
+    Builder setSessionsBeingPrepared(int sessionsBeingPrepared) {
+      this.sessionsBeingPrepared = sessionsBeingPrepared;
+      return this;
+    }
+
+    Builder setTotalSessions(int totalSessions) {
+      this.totalSessions = totalSessions;
+      return this;
+    }
+
+    Builder setReadWaiters(int readWaiters) {
+      this.readWaiters = readWaiters;
+      return this;
+    }
+
+    Builder setReadWriteWaiters(int readWriteWaiters) {
+      this.readWriteWaiters = readWriteWaiters;
+      return this;
+    }
+
+    Builder setCheckoutWaitLatency(LatencyDistribution checkoutWaitLatency) {
+      this.checkoutWaitLatency = checkoutWaitLatency;
+      return this;
+    }
+
+    Builder setSessionCreationLatency(LatencyDistribution sessionCreationLatency) {
+      this.sessionCreationLatency = sessionCreationLatency;
+      return this;
+    }
+
+    Builder setSessionPrepareLatency(LatencyDistribution sessionPrepareLatency) {
+      this.sessionPrepareLatency = sessionPrepareLatency;
+      return this;
+    }
+
+    Builder setKeepAlives(long keepAlives) {
+      this.keepAlives = keepAlives;
+      return this;
+    }
+
+    Builder setIdleSessionsClosed(long idleSessionsClosed) {
+      this.idleSessionsClosed = idleSessionsClosed;
+      return this;
+    }
+
+    Builder setExhaustionEvents(long exhaustionEvents) {
+      this.exhaustionEvents = exhaustionEvents;
+      return this;
+    }
+
+    SessionPoolStats build() {
+      return new SessionPoolStats(this);
+    }
+  }
+}
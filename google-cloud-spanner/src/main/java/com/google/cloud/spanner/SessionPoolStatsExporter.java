@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+/**
+ * Receives periodic snapshots of the state of a session pool, to publish them to a monitoring
+ * system. Exporters are invoked on the pool's background thread and should not block.
+ *
+ * @see SessionPoolOptions.Builder#setStatsExporter(SessionPoolStatsExporter)
+ */
+public interface SessionPoolStatsExporter {
+
+  /** Exports {@code stats}, the state of the session pool of the client for {@code database}. */
+  void export(DatabaseId database, SessionPoolStats stats);
+}
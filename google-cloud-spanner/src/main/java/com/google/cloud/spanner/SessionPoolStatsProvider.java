@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+/**
+ * Interface for the APIs that report on the pool of sessions used by a {@link DatabaseClient}.
+ * The {@link DatabaseClient} returned by {@link Spanner#getDatabaseClient} also implements this
+ * interface.
+ *
+ * <pre>{@code
+ * SessionPoolStatsProvider provider = (SessionPoolStatsProvider) spanner.getDatabaseClient(db);
+ * SessionPoolStats stats = provider.getSessionPoolStats();
+ * int sessionsInUse = stats.getSessionsInUse();
+ * }</pre>
+ */
+public interface SessionPoolStatsProvider {
+
+  /** Returns a snapshot of the state and activity of the pool of sessions used by the client. */
+  SessionPoolStats getSessionPoolStats();
+}
@@ -29,7 +29,8 @@ public interface Spanner extends Service<SpannerOptions> {
 
   /**
    * Returns a {@code DatabaseClient} for the given database. It uses a pool of sessions to talk to
-   * the database.
+   * the database. The returned client also implements {@link AsyncDatabaseClient} and {@link
+   * SessionPoolStatsProvider}.
    */
   DatabaseClient getDatabaseClient(DatabaseId db);
 
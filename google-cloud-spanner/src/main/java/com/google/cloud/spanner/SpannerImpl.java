@@ -26,18 +26,26 @@ import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 
 import com.google.api.client.util.BackOff;
 import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.core.ApiFunction;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
 import com.google.api.pathtemplate.PathTemplate;
 import com.google.cloud.BaseService;
 import com.google.cloud.ByteArray;
 import com.google.cloud.Date;
+import com.google.cloud.GrpcTransportOptions;
 import com.google.api.gax.core.Page;
 import com.google.cloud.PageImpl;
 import com.google.cloud.PageImpl.NextPageFetcher;
 import com.google.cloud.Timestamp;
 import com.google.cloud.spanner.Operation.Parser;
+import com.google.cloud.spanner.Options.DecodeMode;
 import com.google.cloud.spanner.Options.ListOption;
 import com.google.cloud.spanner.Options.QueryOption;
 import com.google.cloud.spanner.Options.ReadOption;
+import com.google.cloud.spanner.spi.v1.AsyncSpannerRpc;
 import com.google.cloud.spanner.spi.v1.SpannerRpc;
 import com.google.cloud.spanner.spi.v1.SpannerRpc.Paginated;
 import com.google.common.annotations.VisibleForTesting;
@@ -80,6 +88,7 @@ import io.grpc.Context;
 import io.grpc.ManagedChannel;
 import java.io.IOException;
 import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
@@ -96,6 +105,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -128,6 +138,9 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
   @GuardedBy("this")
   private boolean spannerIsClosed = false;
 
+  @GuardedBy("this")
+  private ScheduledExecutorService retryExecutor;
+
   SpannerImpl(SpannerRpc rpc, int defaultPrefetchChunks, SpannerOptions options) {
     super(options);
     this.rpc = rpc;
@@ -210,6 +223,81 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     }
   }
 
+  /** A computation that produces its result asynchronously. */
+  interface AsyncCallable<T> {
+    ApiFuture<T> call() throws SpannerException;
+  }
+
+  /**
+   * Asynchronous version of {@link #runWithRetries(Callable)}. Retryable errors are retried with
+   * the same backoff, but the wait is scheduled rather than blocking the calling thread.
+   */
+  <T> ApiFuture<T> runAsyncWithRetries(AsyncCallable<T> callable) {
+    RetryingCall<T> call = new RetryingCall<>(callable);
+    call.run();
+    return call.result;
+  }
+
+  /** One asynchronous operation run by {@link #runAsyncWithRetries(AsyncCallable)}. */
+  private class RetryingCall<T> implements Runnable, ApiFutureCallback<T> {
+    private final SettableApiFuture<T> result = SettableApiFuture.create();
+    private final ExponentialBackOff backOff = newBackOff();
+    private final AsyncCallable<T> callable;
+
+    private RetryingCall(AsyncCallable<T> callable) {
+      this.callable = callable;
+    }
+
+    @Override
+    public void run() {
+      ApiFuture<T> attempt;
+      try {
+        attempt = callable.call();
+      } catch (SpannerException e) {
+        onFailure(e);
+        return;
+      }
+      ApiFutures.addCallback(attempt, this);
+    }
+
+    @Override
+    public void onSuccess(T value) {
+      result.set(value);
+    }
+
+    @Override
+    public void onFailure(Throwable t) {
+      SpannerException e =
+          t instanceof SpannerException ? (SpannerException) t : newSpannerException(t);
+      if (!e.isRetryable() || result.isCancelled()) {
+        result.setException(e);
+        return;
+      }
+      logger.log(Level.FINE, "Retryable exception, will back off and retry", e);
+      try {
+        scheduleRetry(this, nextBackOffMillis(backOff));
+      } catch (RuntimeException scheduleException) {
+        result.setException(e);
+      }
+    }
+  }
+
+  /**
+   * Schedules a retry of an asynchronous operation. The executor is only acquired the first time an
+   * operation needs to back off, and is released when this instance is closed.
+   */
+  private void scheduleRetry(Runnable command, long delayMillis) {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      if (retryExecutor == null) {
+        retryExecutor =
+            ((GrpcTransportOptions) getOptions().getTransportOptions()).getExecutorFactory().get();
+      }
+      executor = retryExecutor;
+    }
+    executor.schedule(command, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
   Session createSession(final DatabaseId db) throws SpannerException {
     final Map<SpannerRpc.Option, ?> options =
         optionMap(SessionOption.channelHint(random.nextLong()));
@@ -269,6 +357,14 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
             for (ManagedChannel channel : getOptions().getRpcChannels()) {
               channel.shutdown();
             }
+            synchronized (SpannerImpl.this) {
+              if (retryExecutor != null) {
+                ((GrpcTransportOptions) getOptions().getTransportOptions())
+                    .getExecutorFactory()
+                    .release(retryExecutor);
+                retryExecutor = null;
+              }
+            }
             return null;
           }
         },
@@ -347,7 +443,6 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
   private abstract class PageFetcher<S, T> implements NextPageFetcher<S> {
     private String nextPageToken;
 
-
     @Override
     public Page<S> getNextPage() {
       Paginated<T> nextPage =
@@ -675,7 +770,7 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     }
   }
 
-  class SessionImpl implements Session {
+  class SessionImpl implements Session, AsyncDatabaseClient {
     private final String name;
     private SessionTransaction activeTransaction;
     private ByteString readyTransactionId;
@@ -712,16 +807,7 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     @Override
     public Timestamp writeAtLeastOnce(Iterable<Mutation> mutations) throws SpannerException {
       setActive(null);
-      List<com.google.spanner.v1.Mutation> mutationsProto = new ArrayList<>();
-      Mutation.toProto(mutations, mutationsProto);
-      final CommitRequest request =
-          CommitRequest.newBuilder()
-              .setSession(name)
-              .addAllMutations(mutationsProto)
-              .setSingleUseTransaction(
-                  TransactionOptions.newBuilder()
-                      .setReadWrite(TransactionOptions.ReadWrite.getDefaultInstance()))
-              .build();
+      final CommitRequest request = newWriteAtLeastOnceRequest(mutations);
       CommitResponse response =
           runWithRetries(
               new Callable<CommitResponse>() {
@@ -730,6 +816,56 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
                   return rpc.commit(request, options);
                 }
               });
+      return parseCommitTimestamp(response);
+    }
+
+    @Override
+    public ApiFuture<Timestamp> writeAtLeastOnceAsync(Iterable<Mutation> mutations) {
+      setActive(null);
+      final CommitRequest request = newWriteAtLeastOnceRequest(mutations);
+      ApiFuture<CommitResponse> response =
+          runAsyncWithRetries(
+              new AsyncCallable<CommitResponse>() {
+                @Override
+                public ApiFuture<CommitResponse> call() {
+                  return commitAsync(request);
+                }
+              });
+      return ApiFutures.transform(
+          response,
+          new ApiFunction<CommitResponse, Timestamp>() {
+            @Override
+            public Timestamp apply(CommitResponse commitResponse) {
+              return parseCommitTimestamp(commitResponse);
+            }
+          });
+    }
+
+    private ApiFuture<CommitResponse> commitAsync(CommitRequest request) {
+      if (rpc instanceof AsyncSpannerRpc) {
+        return ((AsyncSpannerRpc) rpc).commitAsync(request, options);
+      }
+      // The RPC layer only offers a blocking commit, which runs on the calling thread.
+      try {
+        return ApiFutures.immediateFuture(rpc.commit(request, options));
+      } catch (SpannerException e) {
+        return ApiFutures.immediateFailedFuture(e);
+      }
+    }
+
+    private CommitRequest newWriteAtLeastOnceRequest(Iterable<Mutation> mutations) {
+      List<com.google.spanner.v1.Mutation> mutationsProto = new ArrayList<>();
+      Mutation.toProto(mutations, mutationsProto);
+      return CommitRequest.newBuilder()
+          .setSession(name)
+          .addAllMutations(mutationsProto)
+          .setSingleUseTransaction(
+              TransactionOptions.newBuilder()
+                  .setReadWrite(TransactionOptions.ReadWrite.getDefaultInstance()))
+          .build();
+    }
+
+    private Timestamp parseCommitTimestamp(CommitResponse response) {
       try {
         return Timestamp.fromProto(response.getCommitTimestamp());
       } catch (IllegalArgumentException e) {
@@ -747,6 +883,16 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
       return setActive(new SingleReadContext(this, bound, rpc, defaultPrefetchChunks));
     }
 
+    @Override
+    public AsyncReadContext singleUseAsync() {
+      return singleUseAsync(TimestampBound.strong());
+    }
+
+    @Override
+    public AsyncReadContext singleUseAsync(TimestampBound bound) {
+      return setActive(new SingleReadContext(this, bound, rpc, defaultPrefetchChunks));
+    }
+
     @Override
     public ReadOnlyTransaction singleUseReadOnlyTransaction() {
       return singleUseReadOnlyTransaction(TimestampBound.strong());
@@ -812,6 +958,10 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
       return txn.getId();
     }
 
+    void scheduleRetry(Runnable command, long delayMillis) {
+      SpannerImpl.this.scheduleRetry(command, delayMillis);
+    }
+
     private <T extends SessionTransaction> T setActive(@Nullable T ctx) {
       if (activeTransaction != null) {
         activeTransaction.invalidate();
@@ -834,7 +984,7 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
   }
 
   private abstract static class AbstractReadContext
-      implements ReadContext, AbstractResultSet.Listener, SessionTransaction {
+      implements ReadContext, AsyncReadContext, AbstractResultSet.Listener, SessionTransaction {
     final Object lock = new Object();
     final SessionImpl session;
     final SpannerRpc rpc;
@@ -906,29 +1056,76 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
       }
     }
 
+    @Override
+    public final void readAsync(
+        String table,
+        KeySet keys,
+        Iterable<String> columns,
+        RowObserver observer,
+        ReadOption... options) {
+      readAsyncInternal(table, null, keys, columns, observer, options);
+    }
+
+    @Override
+    public final void readUsingIndexAsync(
+        String table,
+        String index,
+        KeySet keys,
+        Iterable<String> columns,
+        RowObserver observer,
+        ReadOption... options) {
+      readAsyncInternal(table, checkNotNull(index), keys, columns, observer, options);
+    }
+
+    @Override
+    public final ApiFuture<Struct> readRowAsync(String table, Key key, Iterable<String> columns) {
+      SingleRowObserver observer = new SingleRowObserver();
+      readAsync(table, KeySet.singleKey(key), columns, observer);
+      return observer.result;
+    }
+
+    @Override
+    public final ApiFuture<Struct> readRowUsingIndexAsync(
+        String table, String index, Key key, Iterable<String> columns) {
+      SingleRowObserver observer = new SingleRowObserver();
+      readUsingIndexAsync(table, index, KeySet.singleKey(key), columns, observer);
+      return observer.result;
+    }
+
+    @Override
+    public final void executeQueryAsync(
+        Statement statement, RowObserver observer, QueryOption... options) {
+      beforeReadOrQuery();
+      final ExecuteSqlRequest request = newExecuteSqlRequest(statement, QueryMode.NORMAL);
+      Options readOptions = Options.fromQueryOptions(options);
+      final int prefetchChunks =
+          readOptions.hasPrefetchChunks() ? readOptions.prefetchChunks() : defaultPrefetchChunks;
+      new AsyncResultStream(
+          observer, this, prefetchChunks, MAX_BUFFERED_CHUNKS, decodeMode(readOptions)) {
+        @Override
+        SpannerRpc.StreamingCall startStream(
+            @Nullable ByteString resumeToken, SpannerRpc.ResultStreamConsumer consumer) {
+          return rpc.executeQuery(
+              resumeToken == null
+                  ? request
+                  : request.toBuilder().setResumeToken(resumeToken).build(),
+              consumer,
+              session.options);
+        }
+
+        @Override
+        void scheduleRetry(Runnable command, long delayMillis) {
+          session.scheduleRetry(command, delayMillis);
+        }
+      }.start();
+    }
+
     private ResultSet executeQueryInternal(
         Statement statement,
         com.google.spanner.v1.ExecuteSqlRequest.QueryMode queryMode,
         QueryOption... options) {
       beforeReadOrQuery();
-      ExecuteSqlRequest.Builder builder =
-          ExecuteSqlRequest.newBuilder()
-              .setSql(statement.getSql())
-              .setQueryMode(queryMode)
-              .setSession(session.name);
-      Map<String, Value> stmtParameters = statement.getParameters();
-      if (!stmtParameters.isEmpty()) {
-        com.google.protobuf.Struct.Builder paramsBuilder = builder.getParamsBuilder();
-        for (Map.Entry<String, Value> param : stmtParameters.entrySet()) {
-          paramsBuilder.putFields(param.getKey(), param.getValue().toProto());
-          builder.putParamTypes(param.getKey(), param.getValue().getType().toProto());
-        }
-      }
-      TransactionSelector selector = getTransactionSelector();
-      if (selector != null) {
-        builder.setTransaction(selector);
-      }
-      final ExecuteSqlRequest request = builder.build();
+      final ExecuteSqlRequest request = newExecuteSqlRequest(statement, queryMode);
       Options readOptions = Options.fromQueryOptions(options);
       final int prefetchChunks =
           readOptions.hasPrefetchChunks() ? readOptions.prefetchChunks() : defaultPrefetchChunks;
@@ -952,7 +1149,33 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
               return stream;
             }
           };
-      return new GrpcResultSet(stream, this, queryMode);
+      return new GrpcResultSet(stream, this, queryMode, decodeMode(readOptions));
+    }
+
+    private static DecodeMode decodeMode(Options readOptions) {
+      return readOptions.hasDecodeMode() ? readOptions.decodeMode() : DecodeMode.EAGER;
+    }
+
+    private ExecuteSqlRequest newExecuteSqlRequest(
+        Statement statement, com.google.spanner.v1.ExecuteSqlRequest.QueryMode queryMode) {
+      ExecuteSqlRequest.Builder builder =
+          ExecuteSqlRequest.newBuilder()
+              .setSql(statement.getSql())
+              .setQueryMode(queryMode)
+              .setSession(session.name);
+      Map<String, Value> stmtParameters = statement.getParameters();
+      if (!stmtParameters.isEmpty()) {
+        com.google.protobuf.Struct.Builder paramsBuilder = builder.getParamsBuilder();
+        for (Map.Entry<String, Value> param : stmtParameters.entrySet()) {
+          paramsBuilder.putFields(param.getKey(), param.getValue().toProto());
+          builder.putParamTypes(param.getKey(), param.getValue().getType().toProto());
+        }
+      }
+      TransactionSelector selector = getTransactionSelector();
+      if (selector != null) {
+        builder.setTransaction(selector);
+      }
+      return builder.build();
     }
 
     /**
@@ -1009,25 +1232,8 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
         Iterable<String> columns,
         ReadOption... options) {
       beforeReadOrQuery();
-      ReadRequest.Builder builder =
-          ReadRequest.newBuilder()
-              .setSession(session.name)
-              .setTable(checkNotNull(table))
-              .addAllColumns(columns);
       Options readOptions = Options.fromReadOptions(options);
-      if (readOptions.hasLimit()) {
-        builder.setLimit(readOptions.limit());
-      }
-
-      keys.appendToProto(builder.getKeySetBuilder());
-      if (index != null) {
-        builder.setIndex(index);
-      }
-      TransactionSelector selector = getTransactionSelector();
-      if (selector != null) {
-        builder.setTransaction(selector);
-      }
-      final ReadRequest request = builder.build();
+      final ReadRequest request = newReadRequest(table, index, keys, columns, readOptions);
       final int prefetchChunks =
           readOptions.hasPrefetchChunks() ? readOptions.prefetchChunks() : defaultPrefetchChunks;
       ResumableStreamIterator stream =
@@ -1051,10 +1257,72 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
             }
           };
       GrpcResultSet resultSet =
-          new GrpcResultSet(stream, this, com.google.spanner.v1.ExecuteSqlRequest.QueryMode.NORMAL);
+          new GrpcResultSet(
+              stream,
+              this,
+              com.google.spanner.v1.ExecuteSqlRequest.QueryMode.NORMAL,
+              decodeMode(readOptions));
       return resultSet;
     }
 
+    private void readAsyncInternal(
+        String table,
+        @Nullable String index,
+        KeySet keys,
+        Iterable<String> columns,
+        RowObserver observer,
+        ReadOption... options) {
+      beforeReadOrQuery();
+      Options readOptions = Options.fromReadOptions(options);
+      final ReadRequest request = newReadRequest(table, index, keys, columns, readOptions);
+      final int prefetchChunks =
+          readOptions.hasPrefetchChunks() ? readOptions.prefetchChunks() : defaultPrefetchChunks;
+      new AsyncResultStream(
+          observer, this, prefetchChunks, MAX_BUFFERED_CHUNKS, decodeMode(readOptions)) {
+        @Override
+        SpannerRpc.StreamingCall startStream(
+            @Nullable ByteString resumeToken, SpannerRpc.ResultStreamConsumer consumer) {
+          return rpc.read(
+              resumeToken == null
+                  ? request
+                  : request.toBuilder().setResumeToken(resumeToken).build(),
+              consumer,
+              session.options);
+        }
+
+        @Override
+        void scheduleRetry(Runnable command, long delayMillis) {
+          session.scheduleRetry(command, delayMillis);
+        }
+      }.start();
+    }
+
+    private ReadRequest newReadRequest(
+        String table,
+        @Nullable String index,
+        KeySet keys,
+        Iterable<String> columns,
+        Options readOptions) {
+      ReadRequest.Builder builder =
+          ReadRequest.newBuilder()
+              .setSession(session.name)
+              .setTable(checkNotNull(table))
+              .addAllColumns(columns);
+      if (readOptions.hasLimit()) {
+        builder.setLimit(readOptions.limit());
+      }
+
+      keys.appendToProto(builder.getKeySetBuilder());
+      if (index != null) {
+        builder.setIndex(index);
+      }
+      TransactionSelector selector = getTransactionSelector();
+      if (selector != null) {
+        builder.setTransaction(selector);
+      }
+      return builder.build();
+    }
+
     private Struct consumeSingleRow(ResultSet resultSet) {
       if (!resultSet.next()) {
         return null;
@@ -1521,6 +1789,11 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
       return new BaseStruct<R>(type, new ArrayList<>(rowData));
     }
 
+    /** Returns the decoded value of column {@code columnIndex}. */
+    Object columnValue(int columnIndex) {
+      return rowData.get(columnIndex);
+    }
+
     @Override
     public Type getType() {
       return type;
@@ -1533,43 +1806,43 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
 
     @Override
     protected boolean getBooleanInternal(int columnIndex) {
-      return (Boolean) rowData.get(columnIndex);
+      return (Boolean) columnValue(columnIndex);
     }
 
     @Override
     protected long getLongInternal(int columnIndex) {
-      return (Long) rowData.get(columnIndex);
+      return (Long) columnValue(columnIndex);
     }
 
     @Override
     protected double getDoubleInternal(int columnIndex) {
-      return (Double) rowData.get(columnIndex);
+      return (Double) columnValue(columnIndex);
     }
 
     @Override
     protected String getStringInternal(int columnIndex) {
-      return (String) rowData.get(columnIndex);
+      return (String) columnValue(columnIndex);
     }
 
     @Override
     protected ByteArray getBytesInternal(int columnIndex) {
-      return (ByteArray) rowData.get(columnIndex);
+      return (ByteArray) columnValue(columnIndex);
     }
 
     @Override
     protected Timestamp getTimestampInternal(int columnIndex) {
-      return (Timestamp) rowData.get(columnIndex);
+      return (Timestamp) columnValue(columnIndex);
     }
 
     @Override
     protected Date getDateInternal(int columnIndex) {
-      return (Date) rowData.get(columnIndex);
+      return (Date) columnValue(columnIndex);
     }
 
     @Override
     protected boolean[] getBooleanArrayInternal(int columnIndex) {
       @SuppressWarnings("unchecked") // We know ARRAY<BOOL> produces a List<Boolean>.
-      List<Boolean> values = (List<Boolean>) rowData.get(columnIndex);
+      List<Boolean> values = (List<Boolean>) columnValue(columnIndex);
       boolean[] r = new boolean[values.size()];
       for (int i = 0; i < values.size(); ++i) {
         if (values.get(i) == null) {
@@ -1583,7 +1856,7 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<BOOL> produces a List<Boolean>.
     protected List<Boolean> getBooleanListInternal(int columnIndex) {
-      return Collections.unmodifiableList((List<Boolean>) rowData.get(columnIndex));
+      return Collections.unmodifiableList((List<Boolean>) columnValue(columnIndex));
     }
 
     @Override
@@ -1594,7 +1867,7 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<INT64> produces an Int64Array.
     protected Int64Array getLongListInternal(int columnIndex) {
-      return (Int64Array) rowData.get(columnIndex);
+      return (Int64Array) columnValue(columnIndex);
     }
 
     @Override
@@ -1605,37 +1878,37 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<FLOAT64> produces a Float64Array.
     protected Float64Array getDoubleListInternal(int columnIndex) {
-      return (Float64Array) rowData.get(columnIndex);
+      return (Float64Array) columnValue(columnIndex);
     }
 
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<STRING> produces a List<String>.
     protected List<String> getStringListInternal(int columnIndex) {
-      return Collections.unmodifiableList((List<String>) rowData.get(columnIndex));
+      return Collections.unmodifiableList((List<String>) columnValue(columnIndex));
     }
 
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<BYTES> produces a List<ByteArray>.
     protected List<ByteArray> getBytesListInternal(int columnIndex) {
-      return Collections.unmodifiableList((List<ByteArray>) rowData.get(columnIndex));
+      return Collections.unmodifiableList((List<ByteArray>) columnValue(columnIndex));
     }
 
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<TIMESTAMP> produces a List<Timestamp>.
     protected List<Timestamp> getTimestampListInternal(int columnIndex) {
-      return Collections.unmodifiableList((List<Timestamp>) rowData.get(columnIndex));
+      return Collections.unmodifiableList((List<Timestamp>) columnValue(columnIndex));
     }
 
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<DATE> produces a List<Date>.
     protected List<Date> getDateListInternal(int columnIndex) {
-      return Collections.unmodifiableList((List<Date>) rowData.get(columnIndex));
+      return Collections.unmodifiableList((List<Date>) columnValue(columnIndex));
     }
 
     @Override
     @SuppressWarnings("unchecked") // We know ARRAY<STRUCT<...>> produces a List<STRUCT>.
     protected List<Struct> getStructListInternal(int columnIndex) {
-      return Collections.unmodifiableList((List<Struct>) rowData.get(columnIndex));
+      return Collections.unmodifiableList((List<Struct>) columnValue(columnIndex));
     }
   }
 
@@ -1763,6 +2036,7 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     private final GrpcValueIterator iterator;
     private final Listener listener;
     private final QueryMode queryMode;
+    private final DecodeMode decodeMode;
     private GrpcStruct currRow;
     private SpannerException error;
     private ResultSetStats statistics;
@@ -1770,9 +2044,18 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
 
     GrpcResultSet(
         CloseableIterator<PartialResultSet> iterator, Listener listener, QueryMode queryMode) {
+      this(iterator, listener, queryMode, DecodeMode.EAGER);
+    }
+
+    GrpcResultSet(
+        CloseableIterator<PartialResultSet> iterator,
+        Listener listener,
+        QueryMode queryMode,
+        DecodeMode decodeMode) {
       this.iterator = new GrpcValueIterator(iterator);
       this.listener = listener;
       this.queryMode = queryMode;
+      this.decodeMode = checkNotNull(decodeMode);
     }
 
     @Override
@@ -1793,7 +2076,9 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
           if (metadata.hasTransaction()) {
             listener.onTransactionMetadata(metadata.getTransaction());
           }
-          currRow = new GrpcStruct(iterator.type(), new ArrayList<>());
+          currRow =
+              new GrpcStruct(
+                  iterator.type(), new ArrayList<>(), decodeMode == DecodeMode.LAZY);
         }
         boolean hasNext = currRow.consumeRow(iterator);
         if (queryMode != QueryMode.NORMAL && !hasNext) {
@@ -1835,9 +2120,72 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     }
   }
 
+  /**
+   * A struct backed by values read from the gRPC value stream. In lazy mode, {@link
+   * #consumeRow(Iterator)} keeps the raw proto of each non-null value and a column is decoded (and
+   * the decoded value cached) only when it is first read. Primitive columns are decoded from the
+   * proto on each access, which avoids boxing.
+   */
   private static class GrpcStruct extends BaseStruct<List<Object>> {
+    private final boolean lazy;
+
     GrpcStruct(Type type, List<Object> rowData) {
+      this(type, rowData, false);
+    }
+
+    GrpcStruct(Type type, List<Object> rowData, boolean lazy) {
       super(type, rowData);
+      this.lazy = lazy;
+    }
+
+    @Override
+    Struct immutableCopy() {
+      // Raw values are immutable protos, so they can be shared with the copy and decoded there.
+      return new GrpcStruct(type, new ArrayList<>(rowData), lazy);
+    }
+
+    @Override
+    Object columnValue(int columnIndex) {
+      Object value = rowData.get(columnIndex);
+      if (value instanceof com.google.protobuf.Value) {
+        value =
+            decodeValue(
+                type.getStructFields().get(columnIndex).getType(),
+                (com.google.protobuf.Value) value);
+        rowData.set(columnIndex, value);
+      }
+      return value;
+    }
+
+    @Override
+    protected boolean getBooleanInternal(int columnIndex) {
+      Object value = rowData.get(columnIndex);
+      if (value instanceof com.google.protobuf.Value) {
+        com.google.protobuf.Value proto = (com.google.protobuf.Value) value;
+        checkType(Type.bool(), proto, KindCase.BOOL_VALUE);
+        return proto.getBoolValue();
+      }
+      return (Boolean) value;
+    }
+
+    @Override
+    protected long getLongInternal(int columnIndex) {
+      Object value = rowData.get(columnIndex);
+      if (value instanceof com.google.protobuf.Value) {
+        com.google.protobuf.Value proto = (com.google.protobuf.Value) value;
+        checkType(Type.int64(), proto, KindCase.STRING_VALUE);
+        return Long.parseLong(proto.getStringValue());
+      }
+      return (Long) value;
+    }
+
+    @Override
+    protected double getDoubleInternal(int columnIndex) {
+      Object value = rowData.get(columnIndex);
+      if (value instanceof com.google.protobuf.Value) {
+        return valueProtoToFloat64((com.google.protobuf.Value) value);
+      }
+      return (Double) value;
     }
 
     boolean consumeRow(Iterator<com.google.protobuf.Value> iterator) {
@@ -1852,7 +2200,13 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
               "Invalid value stream: end of stream reached before row is complete");
         }
         com.google.protobuf.Value value = iterator.next();
-        rowData.add(decodeValue(fieldType.getType(), value));
+        if (!lazy) {
+          rowData.add(decodeValue(fieldType.getType(), value));
+        } else if (value.getKindCase() == KindCase.NULL_VALUE) {
+          rowData.add(null);
+        } else {
+          rowData.add(value);
+        }
       }
       return true;
     }
@@ -2194,6 +2548,442 @@ class SpannerImpl extends BaseService<SpannerOptions> implements Spanner {
     }
   }
 
+  /**
+   * Drives an asynchronous read or query. Partial result sets delivered by gRPC are buffered until
+   * they complete whole rows, and rows are decoded and handed to a {@link RowObserver} only as it
+   * requests them. More chunks are only requested from the server while the observer has
+   * outstanding demand, so a slow observer applies backpressure to the stream instead of blocking a
+   * thread. Like {@link ResumableStreamIterator}, chunks are held back until a resume token is seen
+   * so that the stream can be resumed transparently after a retryable error.
+   */
+  @VisibleForTesting
+  abstract static class AsyncResultStream implements RowStream {
+    private final Object lock = new Object();
+    private final RowObserver observer;
+    private final AbstractResultSet.Listener listener;
+    private final int prefetchChunks;
+    private final int maxBufferSize;
+    private final BackOff backOff = newBackOff();
+    // Only used by the thread that holds the "draining" flag.
+    private final GrpcResultSet resultSet;
+
+    /** Chunks that may be decoded into rows. */
+    @GuardedBy("lock")
+    private final ArrayDeque<PartialResultSet> readyChunks = new ArrayDeque<>();
+
+    /** Chunks received since the last resume token, which are dropped if the stream resumes. */
+    @GuardedBy("lock")
+    private final List<PartialResultSet> pendingChunks = new ArrayList<>();
+
+    @GuardedBy("lock")
+    private Attempt attempt;
+
+    @GuardedBy("lock")
+    private ByteString resumeToken;
+
+    @GuardedBy("lock")
+    private boolean safeToRetry = true;
+
+    @GuardedBy("lock")
+    private int numColumns = -1;
+
+    /** Number of complete values in {@link #readyChunks} that have not been decoded yet. */
+    @GuardedBy("lock")
+    private long readyValues;
+
+    @GuardedBy("lock")
+    private long demand;
+
+    @GuardedBy("lock")
+    private int outstandingChunks;
+
+    @GuardedBy("lock")
+    private boolean finished;
+
+    @GuardedBy("lock")
+    private SpannerException error;
+
+    @GuardedBy("lock")
+    private boolean cancelled;
+
+    @GuardedBy("lock")
+    private boolean draining;
+
+    @GuardedBy("lock")
+    private boolean done;
+
+    AsyncResultStream(
+        RowObserver observer,
+        AbstractResultSet.Listener listener,
+        int prefetchChunks,
+        int maxBufferSize) {
+      this(observer, listener, prefetchChunks, maxBufferSize, DecodeMode.EAGER);
+    }
+
+    AsyncResultStream(
+        RowObserver observer,
+        AbstractResultSet.Listener listener,
+        int prefetchChunks,
+        int maxBufferSize,
+        DecodeMode decodeMode) {
+      checkArgument(prefetchChunks > 0);
+      checkArgument(maxBufferSize >= 0);
+      this.observer = checkNotNull(observer);
+      this.listener = listener;
+      this.prefetchChunks = prefetchChunks;
+      this.maxBufferSize = maxBufferSize;
+      this.resultSet =
+          new GrpcResultSet(new ReadyChunkIterator(), listener, QueryMode.NORMAL, decodeMode);
+    }
+
+    /**
+     * Starts a streaming call, resuming from {@code resumeToken} if it is not null. The call must
+     * deliver its results to {@code consumer}.
+     */
+    abstract SpannerRpc.StreamingCall startStream(
+        @Nullable ByteString resumeToken, SpannerRpc.ResultStreamConsumer consumer);
+
+    /** Runs {@code command} after {@code delayMillis}, to resume the stream after backing off. */
+    abstract void scheduleRetry(Runnable command, long delayMillis);
+
+    void start() {
+      observer.onStart(this);
+      startAttempt();
+    }
+
+    @Override
+    public void request(int numRows) {
+      checkArgument(numRows > 0, "numRows must be positive");
+      synchronized (lock) {
+        demand = demand > Long.MAX_VALUE - numRows ? Long.MAX_VALUE : demand + numRows;
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel(@Nullable String message) {
+      SpannerRpc.StreamingCall call;
+      synchronized (lock) {
+        if (done || cancelled) {
+          return;
+        }
+        call = attempt == null ? null : attempt.call;
+        attempt = null;
+        readyChunks.clear();
+        pendingChunks.clear();
+        readyValues = 0;
+        error =
+            newSpannerException(ErrorCode.CANCELLED, message == null ? "Cancelled" : message);
+        cancelled = true;
+        finished = true;
+      }
+      if (call != null) {
+        call.cancel(message);
+      }
+      drain();
+    }
+
+    private void startAttempt() {
+      Attempt newAttempt = new Attempt();
+      ByteString token;
+      synchronized (lock) {
+        if (finished) {
+          return;
+        }
+        attempt = newAttempt;
+        token = resumeToken;
+        // We get one message for free.
+        outstandingChunks = 1;
+      }
+      SpannerRpc.StreamingCall call;
+      try {
+        call = startStream(token, newAttempt);
+      } catch (SpannerException e) {
+        newAttempt.onError(e);
+        return;
+      }
+      boolean active;
+      boolean cancelledWhileStarting;
+      synchronized (lock) {
+        newAttempt.call = call;
+        active = attempt == newAttempt;
+        cancelledWhileStarting = cancelled;
+        if (active) {
+          outstandingChunks += prefetchChunks - 1;
+        }
+      }
+      if (cancelledWhileStarting) {
+        call.cancel("Stream cancelled");
+      } else if (active && prefetchChunks > 1) {
+        call.request(prefetchChunks - 1);
+      }
+    }
+
+    @GuardedBy("lock")
+    private void flushPendingChunksLocked() {
+      for (PartialResultSet chunk : pendingChunks) {
+        if (numColumns < 0 && chunk.hasMetadata()) {
+          numColumns = chunk.getMetadata().getRowType().getFieldsCount();
+        }
+        // A chunked value is only complete once the chunk that ends it has arrived.
+        readyValues += chunk.getValuesCount() - (chunk.getChunkedValue() ? 1 : 0);
+        readyChunks.add(chunk);
+      }
+      pendingChunks.clear();
+    }
+
+    @GuardedBy("lock")
+    private boolean hasReadyRowLocked() {
+      return numColumns > 0 && readyValues >= numColumns;
+    }
+
+    /**
+     * Delivers as many rows as the observer has requested and the buffered chunks allow, followed
+     * by the final callback once the stream has finished. Only one thread drains at a time; calls
+     * made while another thread is draining return immediately, and the draining thread picks up
+     * their changes before it stops.
+     */
+    private void drain() {
+      synchronized (lock) {
+        if (draining || done) {
+          return;
+        }
+        draining = true;
+      }
+      while (true) {
+        boolean stop = false;
+        SpannerException failure = null;
+        SpannerRpc.StreamingCall call = null;
+        int numChunks = 0;
+        synchronized (lock) {
+          boolean hasRow = hasReadyRowLocked();
+          if (hasRow ? demand == 0 : !finished) {
+            stop = true;
+            draining = false;
+            if (attempt != null
+                && attempt.call != null
+                && demand > (hasRow ? readyValues / numColumns : 0)
+                && outstandingChunks < prefetchChunks) {
+              call = attempt.call;
+              numChunks = prefetchChunks - outstandingChunks;
+              outstandingChunks = prefetchChunks;
+            }
+          } else if (!hasRow && error != null) {
+            failure = error;
+            done = true;
+          }
+        }
+        if (failure != null) {
+          listener.onError(failure);
+          observer.onError(failure);
+          return;
+        }
+        if (stop) {
+          if (call != null) {
+            call.request(numChunks);
+          }
+          return;
+        }
+        if (!deliverNext()) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Decodes the next row and delivers it, or delivers the final callback once the stream has
+     * finished. Returns false once the final callback has been delivered.
+     */
+    private boolean deliverNext() {
+      Struct row;
+      try {
+        if (!resultSet.next()) {
+          synchronized (lock) {
+            done = true;
+          }
+          listener.onDone();
+          observer.onCompleted();
+          return false;
+        }
+        row = resultSet.getCurrentRowAsStruct();
+      } catch (SpannerException e) {
+        synchronized (lock) {
+          done = true;
+        }
+        observer.onError(e);
+        return false;
+      }
+      synchronized (lock) {
+        if (cancelled) {
+          return true;
+        }
+        readyValues -= numColumns;
+        demand--;
+      }
+      try {
+        observer.onRow(row);
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "RowObserver failed, cancelling the stream", e);
+        cancel("RowObserver failed: " + e.getMessage());
+      }
+      return true;
+    }
+
+    /** Iterates over the chunks that are ready to be decoded, for {@link #resultSet}. */
+    private class ReadyChunkIterator extends AbstractIterator<PartialResultSet>
+        implements CloseableIterator<PartialResultSet> {
+      @Override
+      protected PartialResultSet computeNext() {
+        synchronized (lock) {
+          PartialResultSet next = readyChunks.poll();
+          if (next != null) {
+            return next;
+          }
+          if (error != null) {
+            throw newSpannerException(error);
+          }
+          if (!finished) {
+            // Rows are only decoded once all of their values have been received.
+            throw newSpannerException(
+                ErrorCode.INTERNAL, "Invalid value stream: decoding beyond received chunks");
+          }
+        }
+        endOfData();
+        return null;
+      }
+
+      @Override
+      public void close(@Nullable String message) {
+        SpannerRpc.StreamingCall call;
+        synchronized (lock) {
+          call = attempt == null ? null : attempt.call;
+          attempt = null;
+          finished = true;
+        }
+        if (call != null) {
+          call.cancel(message);
+        }
+      }
+    }
+
+    /** Receives the chunks of one streaming call, which is replaced if the stream is resumed. */
+    private class Attempt implements SpannerRpc.ResultStreamConsumer {
+      @GuardedBy("lock")
+      private SpannerRpc.StreamingCall call;
+
+      @Override
+      public void onPartialResultSet(PartialResultSet results) {
+        synchronized (lock) {
+          if (attempt != this) {
+            return;
+          }
+          outstandingChunks--;
+          pendingChunks.add(results);
+          if (!results.getResumeToken().isEmpty()) {
+            resumeToken = results.getResumeToken();
+            safeToRetry = true;
+            flushPendingChunksLocked();
+          } else if (!safeToRetry) {
+            flushPendingChunksLocked();
+          } else if (pendingChunks.size() > maxBufferSize) {
+            // We need to flush without a resume token. Errors encountered until we see such a
+            // token will fail the stream.
+            safeToRetry = false;
+            flushPendingChunksLocked();
+          }
+        }
+        drain();
+      }
+
+      @Override
+      public void onCompleted() {
+        synchronized (lock) {
+          if (attempt != this) {
+            return;
+          }
+          attempt = null;
+          flushPendingChunksLocked();
+          finished = true;
+        }
+        drain();
+      }
+
+      @Override
+      public void onError(SpannerException e) {
+        boolean retry;
+        synchronized (lock) {
+          if (attempt != this) {
+            return;
+          }
+          attempt = null;
+          // Chunks after the last resume token are either replayed by the resumed stream, or must
+          // not be returned because the stream failed before they could be resumed.
+          pendingChunks.clear();
+          retry = safeToRetry && e.isRetryable();
+          if (!retry) {
+            error = e;
+            finished = true;
+          }
+        }
+        if (retry) {
+          logger.log(Level.FINE, "Retryable exception, will back off and resume", e);
+          try {
+            scheduleRetry(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    startAttempt();
+                  }
+                },
+                nextBackOffMillis(backOff));
+            return;
+          } catch (RuntimeException scheduleException) {
+            synchronized (lock) {
+              error = e;
+              finished = true;
+            }
+          }
+        }
+        drain();
+      }
+    }
+  }
+
+  /** Collects the result of an asynchronous single-row read into a future. */
+  private static class SingleRowObserver implements RowObserver {
+    final SettableApiFuture<Struct> result = SettableApiFuture.create();
+    private RowStream stream;
+    private Struct row;
+
+    @Override
+    public void onStart(RowStream stream) {
+      this.stream = stream;
+      // Ask for a second row to detect a read that unexpectedly returns several.
+      stream.request(2);
+    }
+
+    @Override
+    public void onRow(Struct row) {
+      if (this.row != null) {
+        result.setException(
+            newSpannerException(ErrorCode.INTERNAL, "Multiple rows returned for single key"));
+        stream.cancel("Multiple rows returned for single key");
+        return;
+      }
+      this.row = row;
+    }
+
+    @Override
+    public void onCompleted() {
+      result.set(row);
+    }
+
+    @Override
+    public void onError(SpannerException e) {
+      result.setException(e);
+    }
+  }
+
   /**
    * Adapts a stream of {@code PartialResultSet} messages into a stream of {@code Value} messages.
    */
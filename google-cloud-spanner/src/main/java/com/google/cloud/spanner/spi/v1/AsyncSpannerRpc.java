@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner.spi.v1;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.spi.v1.SpannerRpc.Option;
+import com.google.spanner.v1.CommitRequest;
+import com.google.spanner.v1.CommitResponse;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Optional interface of {@link SpannerRpc} implementations that can issue calls without blocking.
+ * The client uses it when the RPC layer implements it, and otherwise issues the blocking call of
+ * {@link SpannerRpc} instead.
+ */
+public interface AsyncSpannerRpc {
+  /**
+   * Issues a commit without blocking. The returned future fails with a {@link SpannerException} if
+   * the commit fails.
+   */
+  ApiFuture<CommitResponse> commitAsync(
+      CommitRequest commitRequest, @Nullable Map<Option, ?> options);
+}
@@ -18,6 +18,8 @@ package com.google.cloud.spanner.spi.v1;
 
 import static com.google.cloud.spanner.SpannerExceptionFactory.newSpannerException;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
 import com.google.api.pathtemplate.PathTemplate;
 import com.google.cloud.NoCredentials;
 import com.google.cloud.spanner.SpannerException;
@@ -26,6 +28,9 @@ import com.google.cloud.spanner.SpannerOptions;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.longrunning.GetOperationRequest;
 import com.google.longrunning.Operation;
 import com.google.longrunning.OperationsGrpc;
@@ -91,7 +96,7 @@ import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 /** Implementation of Cloud Spanner remote calls using gRPC. */
-public class GrpcSpannerRpc implements SpannerRpc {
+public class GrpcSpannerRpc implements SpannerRpc, AsyncSpannerRpc {
   private static final Logger logger = Logger.getLogger(GrpcSpannerRpc.class.getName());
 
   public static final String API_CLIENT =
@@ -381,6 +386,17 @@ public class GrpcSpannerRpc implements SpannerRpc {
             Option.CHANNEL_HINT.getLong(options)));
   }
 
+  @Override
+  public ApiFuture<CommitResponse> commitAsync(
+      CommitRequest commitRequest, @Nullable Map<Option, ?> options) {
+    return toApiFuture(
+        doUnaryCall(
+            SpannerGrpc.METHOD_COMMIT,
+            commitRequest,
+            commitRequest.getSession(),
+            Option.CHANNEL_HINT.getLong(options)));
+  }
+
   @Override
   public void rollback(RollbackRequest request, @Nullable Map<Option, ?> options) {
     get(
@@ -405,7 +421,30 @@ public class GrpcSpannerRpc implements SpannerRpc {
     }
   }
 
-  private <ReqT, RespT> Future<RespT> doUnaryCall(
+  /**
+   * Adapts the future of an async RPC call without blocking, translating any failure into a {@link
+   * SpannerException}.
+   */
+  private static <T> ApiFuture<T> toApiFuture(ListenableFuture<T> future) {
+    final Context context = Context.current();
+    final SettableApiFuture<T> result = SettableApiFuture.create();
+    Futures.addCallback(
+        future,
+        new FutureCallback<T>() {
+          @Override
+          public void onSuccess(T response) {
+            result.set(response);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            result.setException(newSpannerException(context, t));
+          }
+        });
+    return result;
+  }
+
+  private <ReqT, RespT> ListenableFuture<RespT> doUnaryCall(
       MethodDescriptor<ReqT, RespT> method,
       ReqT request,
       @Nullable String resource,
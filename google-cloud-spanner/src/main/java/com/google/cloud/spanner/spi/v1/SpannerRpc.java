@@ -136,8 +136,9 @@ public interface SpannerRpc extends ServiceRpc {
      * so we need to request messages ourself. This gives us more control over how much buffer we
      * maintain in the client. Grpc will request 1 initial message automatically so we don't need to
      * call this at the beginning. After that it should be called whenever there is a flow control
-     * window available based on the flow control setting configured by the client. Currently we do
-     * not have any flow control so this is called automatically when a message is received.
+     * window available based on the flow control setting configured by the client. Blocking result
+     * sets call this automatically when a message is consumed, while asynchronous result streams
+     * only call it while their observer has outstanding demand for rows.
      */
     void request(int numMessages);
 
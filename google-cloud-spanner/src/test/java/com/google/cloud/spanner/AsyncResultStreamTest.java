@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.spanner.spi.v1.SpannerRpc;
+import com.google.protobuf.ByteString;
+import com.google.spanner.v1.PartialResultSet;
+import com.google.spanner.v1.ResultSetMetadata;
+import com.google.spanner.v1.Transaction;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link com.google.cloud.spanner.SpannerImpl.AsyncResultStream}. */
+@RunWith(JUnit4.class)
+public class AsyncResultStreamTest {
+  private static final Type TYPE = Type.struct(Type.StructField.of("C", Type.string()));
+
+  private List<ByteString> resumeTokens;
+  private List<TestCall> calls;
+  private TestObserver observer;
+  private SpannerImpl.AsyncResultStream stream;
+
+  private static class NoOpListener implements SpannerImpl.AbstractResultSet.Listener {
+    @Override
+    public void onTransactionMetadata(Transaction transaction) throws SpannerException {}
+
+    @Override
+    public void onError(SpannerException e) {}
+
+    @Override
+    public void onDone() {}
+  }
+
+  private static class TestCall implements SpannerRpc.StreamingCall {
+    SpannerRpc.ResultStreamConsumer consumer;
+    int requested;
+    String cancelMessage;
+
+    @Override
+    public void request(int numMessages) {
+      requested += numMessages;
+    }
+
+    @Override
+    public void cancel(@Nullable String message) {
+      cancelMessage = message;
+    }
+  }
+
+  private static class TestObserver implements RowObserver {
+    RowStream stream;
+    final List<String> rows = new ArrayList<>();
+    boolean completed;
+    SpannerException error;
+
+    @Override
+    public void onStart(RowStream stream) {
+      this.stream = stream;
+    }
+
+    @Override
+    public void onRow(Struct row) {
+      rows.add(row.getString(0));
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+
+    @Override
+    public void onError(SpannerException e) {
+      error = e;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    resumeTokens = new ArrayList<>();
+    calls = new ArrayList<>();
+    observer = new TestObserver();
+    stream = newStream(2);
+  }
+
+  private SpannerImpl.AsyncResultStream newStream(int prefetchChunks) {
+    return new SpannerImpl.AsyncResultStream(observer, new NoOpListener(), prefetchChunks, 10) {
+      @Override
+      SpannerRpc.StreamingCall startStream(
+          @Nullable ByteString resumeToken, SpannerRpc.ResultStreamConsumer consumer) {
+        resumeTokens.add(resumeToken);
+        TestCall call = new TestCall();
+        call.consumer = consumer;
+        calls.add(call);
+        return call;
+      }
+
+      @Override
+      void scheduleRetry(Runnable command, long delayMillis) {
+        command.run();
+      }
+    };
+  }
+
+  private SpannerRpc.ResultStreamConsumer consumer() {
+    return calls.get(calls.size() - 1).consumer;
+  }
+
+  private static PartialResultSet chunk(
+      @Nullable String resumeToken, boolean chunked, String... values) {
+    PartialResultSet.Builder builder = PartialResultSet.newBuilder().setChunkedValue(chunked);
+    for (String value : values) {
+      builder.addValues(com.google.protobuf.Value.newBuilder().setStringValue(value));
+    }
+    if (resumeToken != null) {
+      builder.setResumeToken(ByteString.copyFromUtf8(resumeToken));
+    }
+    return builder.build();
+  }
+
+  private static PartialResultSet withMetadata(PartialResultSet chunk) {
+    return chunk
+        .toBuilder()
+        .setMetadata(ResultSetMetadata.newBuilder().setRowType(TYPE.toProto().getStructType()))
+        .build();
+  }
+
+  @Test
+  public void rowsAreDeliveredOnlyWhenRequested() {
+    stream.start();
+    consumer().onPartialResultSet(withMetadata(chunk("r1", false, "a", "b", "c")));
+    consumer().onCompleted();
+    assertThat(observer.rows).isEmpty();
+
+    observer.stream.request(1);
+    assertThat(observer.rows).containsExactly("a");
+    assertThat(observer.completed).isFalse();
+
+    observer.stream.request(5);
+    assertThat(observer.rows).containsExactly("a", "b", "c").inOrder();
+    assertThat(observer.completed).isTrue();
+    assertThat(observer.error).isNull();
+  }
+
+  @Test
+  public void chunksAreOnlyRequestedWithDemand() {
+    stream.start();
+    TestCall call = calls.get(0);
+    // One chunk is delivered for free, the rest of the prefetch is requested up front.
+    assertThat(call.requested).isEqualTo(1);
+
+    consumer().onPartialResultSet(withMetadata(chunk("r1", false, "a")));
+    consumer().onPartialResultSet(chunk("r2", false, "b"));
+    assertThat(call.requested).isEqualTo(1);
+
+    observer.stream.request(3);
+    assertThat(observer.rows).containsExactly("a", "b").inOrder();
+    assertThat(call.requested).isEqualTo(3);
+
+    consumer().onPartialResultSet(chunk("r3", false, "c"));
+    assertThat(observer.rows).containsExactly("a", "b", "c").inOrder();
+    assertThat(call.requested).isEqualTo(3);
+  }
+
+  @Test
+  public void chunkedValueIsDeliveredOnceComplete() {
+    stream.start();
+    observer.stream.request(5);
+    consumer().onPartialResultSet(withMetadata(chunk("r1", true, "x", "he")));
+    assertThat(observer.rows).containsExactly("x");
+
+    consumer().onPartialResultSet(chunk("r2", false, "llo"));
+    consumer().onCompleted();
+    assertThat(observer.rows).containsExactly("x", "hello").inOrder();
+    assertThat(observer.completed).isTrue();
+  }
+
+  @Test
+  public void chunksAreHeldBackUntilResumeToken() {
+    stream.start();
+    observer.stream.request(5);
+    consumer().onPartialResultSet(withMetadata(chunk(null, false, "a")));
+    assertThat(observer.rows).isEmpty();
+
+    consumer().onPartialResultSet(chunk("r1", false, "b"));
+    assertThat(observer.rows).containsExactly("a", "b").inOrder();
+  }
+
+  @Test
+  public void resumesAfterRetryableError() {
+    stream.start();
+    observer.stream.request(5);
+    consumer().onPartialResultSet(withMetadata(chunk("r1", false, "a")));
+    consumer().onPartialResultSet(chunk(null, false, "b"));
+    consumer()
+        .onError(SpannerExceptionFactory.newSpannerException(ErrorCode.UNAVAILABLE, "retry"));
+    assertThat(observer.error).isNull();
+    assertThat(resumeTokens).containsExactly(null, ByteString.copyFromUtf8("r1")).inOrder();
+
+    consumer().onPartialResultSet(chunk("r2", false, "b"));
+    consumer().onCompleted();
+    assertThat(observer.rows).containsExactly("a", "b").inOrder();
+    assertThat(observer.completed).isTrue();
+  }
+
+  @Test
+  public void nonRetryableErrorIsDeliveredWithoutDemand() {
+    stream.start();
+    consumer().onPartialResultSet(withMetadata(chunk("r1", false)));
+    consumer()
+        .onError(SpannerExceptionFactory.newSpannerException(ErrorCode.NOT_FOUND, "no table"));
+    assertThat(observer.error.getErrorCode()).isEqualTo(ErrorCode.NOT_FOUND);
+    assertThat(resumeTokens).hasSize(1);
+  }
+
+  @Test
+  public void cancel() {
+    stream.start();
+    consumer().onPartialResultSet(withMetadata(chunk("r1", false, "a", "b")));
+    observer.stream.cancel("stop");
+    assertThat(calls.get(0).cancelMessage).isEqualTo("stop");
+    assertThat(observer.rows).isEmpty();
+    assertThat(observer.error.getErrorCode()).isEqualTo(ErrorCode.CANCELLED);
+  }
+}
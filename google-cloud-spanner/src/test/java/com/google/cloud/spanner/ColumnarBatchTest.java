@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.ByteArray;
+import com.google.cloud.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ColumnarBatch}. */
+@RunWith(JUnit4.class)
+public class ColumnarBatchTest {
+  @Rule public ExpectedException expectedException = ExpectedException.none();
+
+  private static final Type TYPE =
+      Type.struct(
+          Type.StructField.of("b", Type.bool()),
+          Type.StructField.of("i", Type.int64()),
+          Type.StructField.of("d", Type.float64()),
+          Type.StructField.of("s", Type.string()),
+          Type.StructField.of("y", Type.bytes()),
+          Type.StructField.of("t", Type.timestamp()));
+
+  private static Struct row(Boolean b, Long i, Double d, String s, ByteArray y, Timestamp t) {
+    return Struct.newBuilder()
+        .set("b")
+        .to(b)
+        .set("i")
+        .to(i)
+        .set("d")
+        .to(d)
+        .set("s")
+        .to(s)
+        .set("y")
+        .to(y)
+        .set("t")
+        .to(t)
+        .build();
+  }
+
+  private static ResultSet resultSet(Struct... rows) {
+    return ResultSets.forRows(TYPE, Arrays.asList(rows));
+  }
+
+  @Test
+  public void columns() {
+    Timestamp t = Timestamp.ofTimeMicroseconds(10);
+    ColumnarBatch batch =
+        ResultSets.nextBatch(
+            resultSet(
+                row(true, 1L, 1.5, "a", ByteArray.copyFrom("xy"), t),
+                row(null, null, null, null, null, null),
+                row(false, 3L, 3.5, "a", ByteArray.copyFrom("z"), t)),
+            10);
+
+    assertThat(batch.getType()).isEqualTo(TYPE);
+    assertThat(batch.getRowCount()).isEqualTo(3);
+    assertThat(batch.getColumnCount()).isEqualTo(6);
+    for (int i = 0; i < batch.getColumnCount(); ++i) {
+      assertThat(batch.getNulls(i).cardinality()).isEqualTo(1);
+      assertThat(batch.isNull(i, 1)).isTrue();
+      assertThat(batch.isNull(i, 0)).isFalse();
+    }
+    assertThat(Arrays.equals(batch.getBooleans(0), new boolean[] {true, false, false})).isTrue();
+    assertThat(Arrays.equals(batch.getLongs(1), new long[] {1, 0, 3})).isTrue();
+    assertThat(Arrays.equals(batch.getDoubles(2), new double[] {1.5, 0, 3.5})).isTrue();
+
+    assertThat(batch.getStringDictionary(3)).containsExactly("a");
+    assertThat(Arrays.equals(batch.getStringCodes(3), new int[] {0, -1, 0})).isTrue();
+    assertThat(batch.getString(3, 0)).isEqualTo("a");
+    assertThat(batch.getString(3, 1)).isNull();
+
+    assertThat(Arrays.equals(batch.getBytesOffsets(4), new int[] {0, 2, 2, 3})).isTrue();
+    assertThat(batch.getBytes(4, 0)).isEqualTo(ByteArray.copyFrom("xy"));
+    assertThat(batch.getBytes(4, 1)).isNull();
+    assertThat(batch.getBytes(4, 2)).isEqualTo(ByteArray.copyFrom("z"));
+
+    assertThat(Arrays.asList(batch.getObjects(5))).containsExactly(t, null, t).inOrder();
+  }
+
+  @Test
+  public void batches() {
+    ResultSet resultSet =
+        resultSet(
+            row(true, 1L, 1.0, "a", null, null),
+            row(true, 2L, 2.0, "b", null, null),
+            row(true, 3L, 3.0, "c", null, null));
+
+    ColumnarBatch first = ResultSets.nextBatch(resultSet, 2);
+    assertThat(first.getRowCount()).isEqualTo(2);
+    assertThat(Arrays.equals(first.getLongs(1), new long[] {1, 2})).isTrue();
+    assertThat(first.getStringDictionary(3)).containsExactly("a", "b").inOrder();
+
+    ColumnarBatch second = ResultSets.nextBatch(resultSet, 2);
+    assertThat(second.getRowCount()).isEqualTo(1);
+    assertThat(Arrays.equals(second.getLongs(1), new long[] {3})).isTrue();
+    assertThat(Arrays.equals(second.getBytesOffsets(4), new int[] {0, 0})).isTrue();
+
+    ColumnarBatch last = ResultSets.nextBatch(resultSet, 2);
+    assertThat(last.getRowCount()).isEqualTo(0);
+    assertThat(last.getType()).isEqualTo(TYPE);
+    assertThat(last.getLongs(1).length).isEqualTo(0);
+  }
+
+  @Test
+  public void arrayColumn() {
+    Type type = Type.struct(Type.StructField.of("a", Type.array(Type.int64())));
+    ColumnarBatch batch =
+        ResultSets.nextBatch(
+            ResultSets.forRows(
+                type,
+                Arrays.asList(
+                    Struct.newBuilder().add("a", Value.int64Array(new long[] {1, 2})).build())),
+            1);
+    @SuppressWarnings("unchecked")
+    List<Long> value = (List<Long>) batch.getObjects(0)[0];
+    assertThat(value).containsExactly(1L, 2L).inOrder();
+  }
+
+  @Test
+  public void wrongColumnType() {
+    ColumnarBatch batch = ResultSets.nextBatch(resultSet(row(true, 1L, 1.0, "a", null, null)), 1);
+    expectedException.expect(IllegalStateException.class);
+    batch.getLongs(0);
+  }
+
+  @Test
+  public void zeroMaxRows() {
+    expectedException.expect(IllegalArgumentException.class);
+    ResultSets.nextBatch(resultSet(), 0);
+  }
+}
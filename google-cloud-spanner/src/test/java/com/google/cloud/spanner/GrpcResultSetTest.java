@@ -82,6 +82,11 @@ public class GrpcResultSetTest {
     return new SpannerImpl.GrpcResultSet(stream, new NoOpListener(), queryMode);
   }
 
+  private SpannerImpl.GrpcResultSet lazyResultSet() {
+    return new SpannerImpl.GrpcResultSet(
+        stream, new NoOpListener(), QueryMode.NORMAL, Options.DecodeMode.LAZY);
+  }
+
   @Test
   public void metadata() {
     Type rowType = Type.struct(Type.StructField.of("f", Type.string()));
@@ -548,6 +553,86 @@ public class GrpcResultSetTest {
     resultSet.getStats();
   }
 
+  @Test
+  public void lazyDecoding() {
+    Type type =
+        Type.struct(
+            Type.StructField.of("b", Type.bool()),
+            Type.StructField.of("i", Type.int64()),
+            Type.StructField.of("d", Type.float64()),
+            Type.StructField.of("s", Type.string()),
+            Type.StructField.of("a", Type.array(Type.int64())));
+    consumer.onPartialResultSet(
+        PartialResultSet.newBuilder()
+            .setMetadata(makeMetadata(type))
+            .addValues(Value.bool(true).toProto())
+            .addValues(Value.int64(42).toProto())
+            .addValues(Value.float64(1.5).toProto())
+            .addValues(Value.string("x").toProto())
+            .addValues(Value.int64Array(new long[] {1, 2}).toProto())
+            .addValues(Value.bool(null).toProto())
+            .addValues(Value.int64(null).toProto())
+            .addValues(Value.float64(null).toProto())
+            .addValues(Value.string(null).toProto())
+            .addValues(Value.int64Array((long[]) null).toProto())
+            .build());
+    consumer.onCompleted();
+    resultSet = lazyResultSet();
+
+    assertThat(resultSet.next()).isTrue();
+    assertThat(resultSet.getBoolean(0)).isTrue();
+    assertThat(resultSet.getLong(1)).isEqualTo(42);
+    assertThat(resultSet.getDouble(2)).isWithin(0.0).of(1.5);
+    assertThat(resultSet.getString(3)).isEqualTo("x");
+    assertThat(resultSet.getLongList(4)).containsExactly(1L, 2L).inOrder();
+    // Decoded values are cached.
+    assertThat(resultSet.getString(3)).isEqualTo("x");
+    Struct row = resultSet.getCurrentRowAsStruct();
+    assertThat(row)
+        .isEqualTo(
+            Struct.newBuilder()
+                .set("b")
+                .to(true)
+                .set("i")
+                .to(42)
+                .set("d")
+                .to(1.5)
+                .set("s")
+                .to("x")
+                .set("a")
+                .toInt64Array(new long[] {1, 2})
+                .build());
+
+    assertThat(resultSet.next()).isTrue();
+    for (int i = 0; i < type.getStructFields().size(); ++i) {
+      assertThat(resultSet.isNull(i)).isTrue();
+    }
+    assertThat(resultSet.next()).isFalse();
+    // The copy taken from the first row is unaffected by later rows.
+    assertThat(row.getLong(1)).isEqualTo(42);
+    assertThat(row.getString(3)).isEqualTo("x");
+  }
+
+  @Test
+  public void lazyDecodingReportsInvalidValueOnAccess() {
+    Type type =
+        Type.struct(
+            Type.StructField.of("i", Type.int64()), Type.StructField.of("s", Type.string()));
+    consumer.onPartialResultSet(
+        PartialResultSet.newBuilder()
+            .setMetadata(makeMetadata(type))
+            .addValues(com.google.protobuf.Value.newBuilder().setBoolValue(true).build())
+            .addValues(Value.string("x").toProto())
+            .build());
+    consumer.onCompleted();
+    resultSet = lazyResultSet();
+
+    assertThat(resultSet.next()).isTrue();
+    assertThat(resultSet.getString(1)).isEqualTo("x");
+    expectedException.expect(isSpannerException(ErrorCode.INTERNAL));
+    resultSet.getLong(0);
+  }
+
   private <T> void doArrayTest(
       List<T> beforeValue,
       List<T> chunkedValue,
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spanner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.spanner.SessionPoolStats.LatencyDistribution;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link com.google.cloud.spanner.LatencyRecorder}. */
+@RunWith(JUnit4.class)
+public class LatencyRecorderTest {
+  @Test
+  public void percentiles() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    for (int i = 0; i < 90; i++) {
+      recorder.record(0);
+    }
+    for (int i = 0; i < 9; i++) {
+      recorder.record(15);
+    }
+    recorder.record(60000);
+    LatencyDistribution distribution = recorder.getDistribution();
+    assertThat(distribution.getCount()).isEqualTo(100);
+    assertThat(distribution.getBucketCounts())
+        .hasSize(distribution.getBucketUpperBoundsMillis().size() + 1);
+    assertThat(distribution.getPercentileMillis(50)).isEqualTo(0);
+    assertThat(distribution.getPercentileMillis(99)).isEqualTo(20);
+    assertThat(distribution.getPercentileMillis(100)).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void zeroLatencies() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    recorder.recordZero();
+    recorder.recordZero();
+    recorder.record(0);
+    recorder.record(1);
+    LatencyDistribution distribution = recorder.getDistribution();
+    assertThat(distribution.getCount()).isEqualTo(4);
+    assertThat(distribution.getBucketCounts().get(0)).isEqualTo(3);
+    assertThat(distribution.getPercentileMillis(75)).isEqualTo(0);
+  }
+
+  @Test
+  public void empty() {
+    LatencyDistribution distribution = new LatencyRecorder().getDistribution();
+    assertThat(distribution.getCount()).isEqualTo(0);
+    assertThat(distribution.getPercentileMillis(99)).isEqualTo(0);
+  }
+}
@@ -55,11 +55,23 @@ public class OptionsTest {
 
   @Test
   public void allOptionsPresent() {
-    Options options = Options.fromReadOptions(Options.limit(10), Options.prefetchChunks(1));
+    Options options =
+        Options.fromReadOptions(
+            Options.limit(10),
+            Options.prefetchChunks(1),
+            Options.decodeMode(Options.DecodeMode.LAZY));
     assertThat(options.hasLimit()).isTrue();
     assertThat(options.limit()).isEqualTo(10);
     assertThat(options.hasPrefetchChunks()).isTrue();
     assertThat(options.prefetchChunks()).isEqualTo(1);
+    assertThat(options.hasDecodeMode()).isTrue();
+    assertThat(options.decodeMode()).isEqualTo(Options.DecodeMode.LAZY);
+  }
+
+  @Test
+  public void nullDecodeModeNotAllowed() {
+    expectedException.expect(NullPointerException.class);
+    Options.decodeMode(null);
   }
 
   @Test
@@ -67,5 +79,6 @@ public class OptionsTest {
     Options options = Options.fromReadOptions();
     assertThat(options.hasLimit()).isFalse();
     assertThat(options.hasPrefetchChunks()).isFalse();
+    assertThat(options.hasDecodeMode()).isFalse();
   }
 }
@@ -20,7 +20,10 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.spanner.v1.Mutation.Write;
 import static org.junit.Assert.fail;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.spi.v1.AsyncSpannerRpc;
 import com.google.cloud.spanner.spi.v1.SpannerRpc;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.ListValue;
@@ -39,6 +42,7 @@ import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.junit.Before;
@@ -60,7 +64,8 @@ import org.mockito.stubbing.Answer;
 public class SessionImplTest {
   @Rule public ExpectedException expectedException = ExpectedException.none();
 
-  @Mock private SpannerRpc rpc;
+  @Mock(extraInterfaces = AsyncSpannerRpc.class)
+  private SpannerRpc rpc;
   private com.google.cloud.spanner.Session session;
   @Captor private ArgumentCaptor<Map<SpannerRpc.Option, Object>> optionsCaptor;
   private Map<SpannerRpc.Option, Object> options;
@@ -113,6 +118,73 @@ public class SessionImplTest {
     assertThat(request.getMutationsList()).containsExactly(mutation);
   }
 
+  @Test
+  public void writeAtLeastOnceAsync() throws Exception {
+    String timestampString = "2015-10-01T10:54:20.021Z";
+    CommitResponse response =
+        CommitResponse.newBuilder().setCommitTimestamp(Timestamps.parse(timestampString)).build();
+    Mockito.when(
+            ((AsyncSpannerRpc) rpc).commitAsync(Mockito.<CommitRequest>any(), Mockito.eq(options)))
+        .thenReturn(ApiFutures.immediateFuture(response));
+
+    Timestamp timestamp =
+        ((AsyncDatabaseClient) session)
+            .writeAtLeastOnceAsync(
+                Arrays.asList(Mutation.newInsertBuilder("T").set("C").to("x").build()))
+            .get();
+    assertThat(timestamp.getSeconds())
+        .isEqualTo(utcTimeSeconds(2015, Calendar.OCTOBER, 1, 10, 54, 20));
+    assertThat(timestamp.getNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(21));
+  }
+
+  @Test
+  public void writeAtLeastOnceAsyncFailure() throws Exception {
+    Mockito.when(
+            ((AsyncSpannerRpc) rpc).commitAsync(Mockito.<CommitRequest>any(), Mockito.eq(options)))
+        .thenReturn(
+            ApiFutures.<CommitResponse>immediateFailedFuture(
+                SpannerExceptionFactory.newSpannerException(
+                    ErrorCode.FAILED_PRECONDITION, "rejected")));
+
+    ApiFuture<Timestamp> timestamp =
+        ((AsyncDatabaseClient) session)
+            .writeAtLeastOnceAsync(
+                Arrays.asList(Mutation.newInsertBuilder("T").set("C").to("x").build()));
+    try {
+      timestamp.get();
+      fail("Expected exception");
+    } catch (ExecutionException e) {
+      assertThat(((SpannerException) e.getCause()).getErrorCode())
+          .isEqualTo(ErrorCode.FAILED_PRECONDITION);
+    }
+  }
+
+  @Test
+  public void writeAtLeastOnceAsyncWithBlockingRpc() throws Exception {
+    SpannerRpc blockingRpc = Mockito.mock(SpannerRpc.class);
+    String dbName = "projects/p1/instances/i1/databases/d1";
+    Mockito.when(blockingRpc.createSession(Mockito.eq(dbName), optionsCaptor.capture()))
+        .thenReturn(Session.newBuilder().setName(dbName + "/sessions/s1").build());
+    com.google.cloud.spanner.Session blockingSession =
+        new SpannerImpl(blockingRpc, 1, null).createSession(DatabaseId.of(dbName));
+    CommitResponse response =
+        CommitResponse.newBuilder()
+            .setCommitTimestamp(Timestamps.parse("2015-10-01T10:54:20.021Z"))
+            .build();
+    Mockito.when(
+            blockingRpc.commit(Mockito.<CommitRequest>any(), Mockito.eq(optionsCaptor.getValue())))
+        .thenReturn(response);
+
+    // An RPC layer without asynchronous calls commits on the calling thread.
+    Timestamp timestamp =
+        ((AsyncDatabaseClient) blockingSession)
+            .writeAtLeastOnceAsync(
+                Arrays.asList(Mutation.newInsertBuilder("T").set("C").to("x").build()))
+            .get();
+    assertThat(timestamp.getSeconds())
+        .isEqualTo(utcTimeSeconds(2015, Calendar.OCTOBER, 1, 10, 54, 20));
+  }
+
   private static long utcTimeSeconds(int year, int month, int day, int hour, int min, int secs) {
     GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
     calendar.set(year, month, day, hour, min, secs);
@@ -292,6 +364,23 @@ public class SessionImplTest {
             });
   }
 
+  @Test
+  public void singleUseAsyncReadRow() throws Exception {
+    PartialResultSet resultSet =
+        PartialResultSet.newBuilder()
+            .setMetadata(newMetadata(Type.struct(Type.StructField.of("C", Type.string()))))
+            .addValues(com.google.protobuf.Value.newBuilder().setStringValue("x"))
+            .build();
+    mockRead(resultSet);
+
+    Struct row =
+        ((AsyncDatabaseClient) session)
+            .singleUseAsync()
+            .readRowAsync("Dummy", Key.of(), Arrays.asList("C"))
+            .get();
+    assertThat(row.getString(0)).isEqualTo("x");
+  }
+
   @Test
   public void multiUseReadOnlyTransactionReturnsEmptyTransactionMetadata() {
     Transaction txnMetadata = Transaction.newBuilder().setId(ByteString.copyFromUtf8("x")).build();
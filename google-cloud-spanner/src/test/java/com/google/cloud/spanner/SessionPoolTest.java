@@ -18,6 +18,7 @@ package com.google.cloud.spanner;
 
 import static com.google.cloud.spanner.SpannerMatchers.isSpannerException;
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.doAnswer;
@@ -27,8 +28,10 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import com.google.api.core.SettableApiFuture;
 import com.google.cloud.GrpcTransportOptions.ExecutorFactory;
 import com.google.cloud.spanner.SessionPool.Clock;
 import com.google.cloud.spanner.SessionPool.PooledSession;
@@ -52,6 +55,7 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameter;
 import org.junit.runners.Parameterized.Parameters;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -247,6 +251,55 @@ public class SessionPoolTest {
     assertThat(failed.get()).isFalse();
   }
 
+  @Test
+  public void concurrentCheckoutsAndReleases() throws Exception {
+    when(client.createSession(db)).thenReturn(mock(Session.class));
+    pool = createPool();
+    int numThreads = 8;
+    final int numCheckoutsPerThread = 200;
+    final AtomicBoolean failed = new AtomicBoolean(false);
+    final CountDownLatch latch = new CountDownLatch(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    for (int j = 0; j < numCheckoutsPerThread; j++) {
+                      try (Session session = pool.getReadSession()) {
+                        failed.compareAndSet(false, session == null);
+                      }
+                    }
+                  } catch (SpannerException e) {
+                    failed.compareAndSet(false, true);
+                  } finally {
+                    latch.countDown();
+                  }
+                }
+              })
+          .start();
+    }
+    latch.await();
+    assertThat(failed.get()).isFalse();
+    verify(client, atMost(options.getMaxSessions())).createSession(db);
+    pool.closeAsync().get();
+  }
+
+  @Test
+  public void idleSessionsAreReusedLastInFirstOut() {
+    Session mockSession1 = mock(Session.class);
+    Session mockSession2 = mock(Session.class);
+    when(client.createSession(db)).thenReturn(mockSession1).thenReturn(mockSession2);
+    pool = createPool();
+    PooledSession session1 = (PooledSession) pool.getReadSession();
+    PooledSession session2 = (PooledSession) pool.getReadSession();
+    session1.close();
+    session2.close();
+    PooledSession session = (PooledSession) pool.getReadSession();
+    assertThat(session.delegate).isSameAs(session2.delegate);
+    session.close();
+  }
+
   @Test
   public void creationExceptionPropagatesToReadSession() {
     when(client.createSession(db))
@@ -461,6 +514,179 @@ public class SessionPoolTest {
     pool.closeAsync().get();
   }
 
+  @Test
+  public void singleUseAsyncSecondReadFails() throws Exception {
+    Session session =
+        mock(Session.class, withSettings().extraInterfaces(AsyncDatabaseClient.class));
+    AsyncReadContext delegateContext = mock(AsyncReadContext.class);
+    SettableApiFuture<Struct> row = SettableApiFuture.create();
+    when(((AsyncDatabaseClient) session).singleUseAsync()).thenReturn(delegateContext);
+    when(delegateContext.readRowAsync(
+            Mockito.anyString(), any(Key.class), Mockito.<Iterable<String>>any()))
+        .thenReturn(row);
+    when(client.createSession(db)).thenReturn(session);
+    pool = createPool();
+    AsyncReadContext context = pool.getReadSession().singleUseAsync();
+    context.readRowAsync("T", Key.of(), Arrays.asList("C"));
+    try {
+      context.readRowAsync("T", Key.of(), Arrays.asList("C"));
+      fail("Expected exception");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    // The session is released once, when the first read completes.
+    assertThat(pool.getStats().getSessionsInUse()).isEqualTo(1);
+    row.set(null);
+    assertThat(pool.getStats().getSessionsInUse()).isEqualTo(0);
+    verify(delegateContext, times(1))
+        .readRowAsync(Mockito.anyString(), any(Key.class), Mockito.<Iterable<String>>any());
+    pool.closeAsync().get();
+  }
+
+  @Test
+  public void stats() throws Exception {
+    when(client.createSession(db)).thenReturn(mock(Session.class));
+    pool = createPool();
+    Session session = pool.getReadSession();
+    SessionPoolStats stats = pool.getStats();
+    assertThat(stats.getSessionsInUse()).isEqualTo(1);
+    assertThat(stats.getIdleReadSessions()).isEqualTo(0);
+    assertThat(stats.getTotalSessions()).isEqualTo(1);
+    assertThat(stats.getCheckoutWaitLatency().getCount()).isEqualTo(1);
+    assertThat(stats.getSessionCreationLatency().getCount()).isEqualTo(1);
+    session.close();
+    stats = pool.getStats();
+    assertThat(stats.getSessionsInUse()).isEqualTo(0);
+    assertThat(stats.getMaxSessionsInUse()).isEqualTo(1);
+    assertThat(stats.getIdleReadSessions()).isEqualTo(1);
+    pool.closeAsync().get();
+  }
+
+  @Test
+  public void statsFromDatabaseClient() throws Exception {
+    when(client.createSession(db)).thenReturn(mock(Session.class));
+    pool = createPool();
+    DatabaseClient dbClient = new DatabaseClientImpl(pool);
+    SessionPoolStatsProvider provider = (SessionPoolStatsProvider) dbClient;
+    Session session = pool.getReadSession();
+    assertThat(provider.getSessionPoolStats().getSessionsInUse()).isEqualTo(1);
+    session.close();
+    assertThat(provider.getSessionPoolStats().getSessionsInUse()).isEqualTo(0);
+    pool.closeAsync().get();
+  }
+
+  @Test
+  public void statsCountPoolExhaustion() {
+    options =
+        SessionPoolOptions.newBuilder()
+            .setMinSessions(1)
+            .setMaxSessions(1)
+            .setFailIfPoolExhausted()
+            .build();
+    when(client.createSession(db)).thenReturn(mock(Session.class));
+    pool = createPool();
+    Session session = pool.getReadSession();
+    try {
+      pool.getReadSession();
+      fail("Expected exception");
+    } catch (SpannerException e) {
+      assertThat(e.getErrorCode()).isEqualTo(ErrorCode.RESOURCE_EXHAUSTED);
+    }
+    SessionPoolStats stats = pool.getStats();
+    assertThat(stats.getExhaustionEvents()).isEqualTo(1);
+    assertThat(stats.getReadWaiters()).isEqualTo(0);
+    session.close();
+  }
+
+  @Test
+  public void statsAreExported() throws Exception {
+    final CountDownLatch exported = new CountDownLatch(1);
+    options =
+        SessionPoolOptions.newBuilder()
+            .setMinSessions(minSessions)
+            .setMaxSessions(2)
+            .setStatsExporter(
+                new SessionPoolStatsExporter() {
+                  @Override
+                  public void export(DatabaseId database, SessionPoolStats stats) {
+                    if (database.equals(db)) {
+                      exported.countDown();
+                    }
+                  }
+                })
+            .setStatsExportIntervalSeconds(1)
+            .build();
+    when(client.createSession(db)).thenReturn(mock(Session.class));
+    pool = createPool();
+    assertThat(exported.await(10, TimeUnit.SECONDS)).isTrue();
+    pool.closeAsync().get();
+  }
+
+  @Test
+  public void statsExportIsCancelledOnClose() throws Exception {
+    options =
+        SessionPoolOptions.newBuilder()
+            .setMinSessions(0)
+            .setMaxSessions(2)
+            .setStatsExporter(
+                new SessionPoolStatsExporter() {
+                  @Override
+                  public void export(DatabaseId database, SessionPoolStats stats) {}
+                })
+            .build();
+    // The executor outlives the pool, as the default executor shared by all the pools does.
+    final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    executor.setRemoveOnCancelPolicy(true);
+    pool =
+        SessionPool.createPool(
+            options,
+            new ExecutorFactory<ScheduledExecutorService>() {
+              @Override
+              public ScheduledExecutorService get() {
+                return executor;
+              }
+
+              @Override
+              public void release(ScheduledExecutorService executor) {}
+            },
+            db,
+            client);
+    int scheduledTasks = executor.getQueue().size();
+    pool.closeAsync().get();
+    assertThat(executor.getQueue()).hasSize(scheduledTasks - 1);
+    executor.shutdown();
+  }
+
+  @Test
+  public void keepAliveAndIdleClosureAreCounted() throws Exception {
+    options =
+        SessionPoolOptions.newBuilder()
+            .setMinSessions(1)
+            .setMaxSessions(3)
+            .setMaxIdleSessions(0)
+            .build();
+    Session session = mock(Session.class);
+    mockKeepAlive(session);
+    when(client.createSession(db)).thenReturn(session);
+    FakeClock clock = new FakeClock();
+    clock.currentTimeMillis = System.currentTimeMillis();
+    pool = createPool(clock);
+    Session session1 = pool.getReadSession();
+    Session session2 = pool.getReadSession();
+    Session session3 = pool.getReadSession();
+    session1.close();
+    session2.close();
+    session3.close();
+    runMaintainanceLoop(clock, pool, pool.poolMaintainer.numClosureCycles);
+    pool.getReadSession().close();
+    runMaintainanceLoop(clock, pool, pool.poolMaintainer.numClosureCycles);
+    assertThat(pool.getStats().getIdleSessionsClosed()).isEqualTo(2);
+    assertThat(pool.getStats().getKeepAlives()).isEqualTo(0);
+    runMaintainanceLoop(clock, pool, pool.poolMaintainer.numKeepAliveCycles);
+    assertThat(pool.getStats().getKeepAlives()).isGreaterThan(0L);
+    pool.closeAsync().get();
+  }
+
   private void runMaintainanceLoop(FakeClock clock, SessionPool pool, long numCycles) {
     for (int i = 0; i < numCycles; i++) {
       pool.poolMaintainer.maintainPool();
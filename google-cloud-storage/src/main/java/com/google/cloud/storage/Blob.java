@@ -581,6 +581,36 @@ public class Blob extends BlobInfo {
     return storage.reader(getBlobId(), toSourceOptions(this, options));
   }
 
+  /**
+   * Returns a {@code ReadChannel} object for reading this blob's content using up to
+   * {@code parallelism} concurrent ranged reads.
+   *
+   * <p>Example of reading the blob's content with 8 concurrent requests.
+   * <pre> {@code
+   * try (ReadChannel reader = blob.parallelReader(8)) {
+   *   ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+   *   while (reader.read(bytes) > 0) {
+   *     bytes.flip();
+   *     // do something with bytes
+   *     bytes.clear();
+   *   }
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of concurrent ranged reads
+   * @param options blob read options
+   * @throws StorageException upon failure
+   * @see ParallelStorage#parallelReader(BlobId, int, Storage.BlobSourceOption...)
+   */
+  public ReadChannel parallelReader(int parallelism, BlobSourceOption... options) {
+    Storage.BlobSourceOption[] sourceOptions = toSourceOptions(this, options);
+    if (storage instanceof ParallelStorage) {
+      return ((ParallelStorage) storage).parallelReader(getBlobId(), parallelism, sourceOptions);
+    }
+    return new ParallelBlobReadChannel(storage.getOptions(), getBlobId(),
+        StorageImpl.optionMap(getBlobId(), sourceOptions), parallelism);
+  }
+
   /**
    * Returns a {@code WriteChannel} object for writing to this blob. By default any md5 and
    * crc32c values in the current blob are ignored unless requested via the
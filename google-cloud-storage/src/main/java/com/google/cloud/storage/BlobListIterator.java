@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.api.gax.core.Page;
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An iterator over the blobs of a bucket that fetches pages in the background. As soon as a page
+ * is handed to the caller, the request for the following page is sent, so that it is fetched
+ * while the current page is being processed.
+ *
+ * <p>Listings can be split into shards, each listing the blobs under a name prefix. Up to
+ * {@code parallelism} shards are listed concurrently, and their pages are returned in the order
+ * they are received: blobs within a page, and pages within a shard, are in lexicographic order, but
+ * pages of different shards are interleaved. Shards are either provided explicitly or derived from
+ * a listing of the top-level directories, in which case each directory is listed as a shard.
+ *
+ * <p>At most {@code parallelism} pages are fetched at any time, in addition to the page being
+ * returned. Background fetches stop when the iterator is exhausted or abandoned, or when a fetch
+ * fails. In that case the failure is thrown by {@link #hasNext()} and {@link #next()}, and again by
+ * every call after it.
+ */
+class BlobListIterator implements Iterator<Blob> {
+
+  private static final long KEEP_ALIVE_SECONDS = 10;
+
+  private final String bucket;
+  private final StorageOptions serviceOptions;
+  private final int parallelism;
+  private final Deque<Shard> unstartedShards = new ArrayDeque<>();
+  private final Deque<ShardPage> continuations = new ArrayDeque<>();
+  private final ThreadPoolExecutor executor;
+  private final CompletionService<ShardPage> completionService;
+  private int inFlight;
+  private Iterator<Blob> current = Collections.emptyIterator();
+  private RuntimeException failure;
+
+  /**
+   * A listing of the blobs under a prefix. If {@code sharding} is {@code true} the listing is
+   * delimited, and each directory it returns is listed as a separate shard.
+   */
+  private static class Shard {
+
+    private final Map<StorageRpc.Option, ?> options;
+    private final boolean sharding;
+
+    Shard(Map<StorageRpc.Option, ?> options, boolean sharding) {
+      this.options = options;
+      this.sharding = sharding;
+    }
+  }
+
+  private static class ShardPage {
+
+    private final Shard shard;
+    private final Page<Blob> page;
+
+    ShardPage(Shard shard, Page<Blob> page) {
+      this.shard = shard;
+      this.page = page;
+    }
+  }
+
+  private BlobListIterator(String bucket, StorageOptions serviceOptions, int parallelism) {
+    checkArgument(parallelism > 0, "Parallelism must be positive");
+    this.bucket = bucket;
+    this.serviceOptions = serviceOptions;
+    this.parallelism = parallelism;
+    this.executor = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("blob-list-iterator-%d")
+            .build());
+    // idle threads exit, so that abandoned iterators do not hold on to them
+    this.executor.allowCoreThreadTimeOut(true);
+    this.completionService = new ExecutorCompletionService<>(executor);
+  }
+
+  /**
+   * Creates an iterator over the blobs of {@code bucket} that match {@code options}. If
+   * {@code parallelism} is greater than one and {@code options} do not request a directory-like
+   * listing, the blobs under each top-level directory are listed as a separate shard.
+   */
+  static BlobListIterator create(String bucket, StorageOptions serviceOptions, int parallelism,
+      Map<StorageRpc.Option, ?> options) {
+    BlobListIterator iterator = new BlobListIterator(bucket, serviceOptions, parallelism);
+    if (parallelism > 1 && !options.containsKey(StorageRpc.Option.DELIMITER)) {
+      Map<StorageRpc.Option, Object> shardingOptions = copyOf(options);
+      shardingOptions.put(StorageRpc.Option.DELIMITER, StorageImpl.PATH_DELIMITER);
+      iterator.unstartedShards.add(new Shard(shardingOptions, true));
+    } else {
+      iterator.unstartedShards.add(new Shard(options, false));
+    }
+    return iterator;
+  }
+
+  /**
+   * Creates an iterator over the blobs of {@code bucket} that match {@code options} and whose name
+   * starts with one of {@code prefixes}. Each prefix is listed as a separate shard.
+   */
+  static BlobListIterator create(String bucket, StorageOptions serviceOptions, int parallelism,
+      Iterable<String> prefixes, Map<StorageRpc.Option, ?> options) {
+    BlobListIterator iterator = new BlobListIterator(bucket, serviceOptions, parallelism);
+    for (String prefix : prefixes) {
+      iterator.unstartedShards.add(new Shard(shardOptions(options, prefix), false));
+    }
+    return iterator;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      if (failure != null) {
+        throw failure;
+      }
+      if (inFlight == 0 && continuations.isEmpty() && unstartedShards.isEmpty()) {
+        executor.shutdown();
+        return false;
+      }
+      scheduleFetches();
+      ShardPage shardPage = takePage();
+      if (shardPage.page.hasNextPage()) {
+        continuations.add(shardPage);
+      }
+      current = shardPage.shard.sharding ? splitDirectories(shardPage) : pageValues(shardPage);
+      scheduleFetches();
+    }
+    return true;
+  }
+
+  @Override
+  public Blob next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  private void scheduleFetches() {
+    while (inFlight < parallelism && !(continuations.isEmpty() && unstartedShards.isEmpty())) {
+      // prefer continuing shards that were started over starting new ones
+      final ShardPage continuation = continuations.poll();
+      final Shard shard = continuation != null ? continuation.shard : unstartedShards.poll();
+      completionService.submit(new Callable<ShardPage>() {
+        @Override
+        public ShardPage call() {
+          Page<Blob> page = continuation != null
+              ? continuation.page.getNextPage()
+              : StorageImpl.listBlobs(bucket, serviceOptions, shard.options);
+          return new ShardPage(shard, page);
+        }
+      });
+      inFlight++;
+    }
+  }
+
+  private ShardPage takePage() {
+    try {
+      ShardPage shardPage = completionService.take().get();
+      inFlight--;
+      return shardPage;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw fail(new StorageException(BaseServiceException.UNKNOWN_CODE,
+          "Interrupted while listing " + bucket, e));
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw fail((RuntimeException) cause);
+      }
+      throw fail(new StorageException(BaseServiceException.UNKNOWN_CODE, cause.getMessage(),
+          cause));
+    }
+  }
+
+  /**
+   * Stops the background fetches and records {@code exception}, to be thrown by every later call
+   * as the listing cannot continue past the missing page.
+   */
+  private RuntimeException fail(RuntimeException exception) {
+    failure = exception;
+    executor.shutdownNow();
+    return exception;
+  }
+
+  private static Iterator<Blob> pageValues(ShardPage shardPage) {
+    return shardPage.page.getValues().iterator();
+  }
+
+  /**
+   * Returns the blobs of a page of a sharding listing, and adds a shard for each directory.
+   */
+  private Iterator<Blob> splitDirectories(ShardPage shardPage) {
+    Deque<Blob> blobs = new ArrayDeque<>();
+    for (Blob blob : shardPage.page.getValues()) {
+      if (blob.isDirectory()) {
+        Map<StorageRpc.Option, ?> options = shardOptions(shardPage.shard.options, blob.getName());
+        options.remove(StorageRpc.Option.DELIMITER);
+        unstartedShards.add(new Shard(options, false));
+      } else {
+        blobs.add(blob);
+      }
+    }
+    return blobs.iterator();
+  }
+
+  private static Map<StorageRpc.Option, Object> shardOptions(Map<StorageRpc.Option, ?> options,
+      String prefix) {
+    Map<StorageRpc.Option, Object> shardOptions = copyOf(options);
+    shardOptions.remove(StorageRpc.Option.PAGE_TOKEN);
+    shardOptions.put(StorageRpc.Option.PREFIX, prefix);
+    return shardOptions;
+  }
+
+  private static Map<StorageRpc.Option, Object> copyOf(Map<StorageRpc.Option, ?> options) {
+    Map<StorageRpc.Option, Object> copy = new EnumMap<>(StorageRpc.Option.class);
+    copy.putAll(options);
+    return copy;
+  }
+}
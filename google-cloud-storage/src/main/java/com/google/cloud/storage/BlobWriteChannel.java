@@ -19,20 +19,47 @@ package com.google.cloud.storage;
 import static com.google.cloud.RetryHelper.runWithRetries;
 import static java.util.concurrent.Executors.callable;
 
+import com.google.cloud.BaseServiceException;
 import com.google.cloud.BaseWriteChannel;
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryHelper;
 import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.spi.v1.ByteBufferStorageRpc;
 import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Write channel implementation to upload Google Cloud Storage blobs.
+ *
+ * <p>Chunks staged by the channel are uploaded in the background: while a chunk is being sent,
+ * the caller can keep writing into the next one. At most one chunk is in flight at any time, as
+ * resumable uploads must be sent in order, so the channel holds at most two chunks in memory: the
+ * staging buffer and the chunk in flight are swapped on each flush rather than copied. If a
+ * background upload fails, the error is thrown by the next write that needs to flush, or by
+ * {@link #capture()}, and again by every such call after it. {@link #close()} throws it too, but
+ * leaves the channel closed.
  */
 class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
 
+  private static final long KEEP_ALIVE_SECONDS = 10;
+
+  private ExecutorService executor;
+  private Future<?> pendingFlush;
+  // the chunk being uploaded in the background, reused as staging buffer once it is persisted
+  private byte[] flushingBuffer;
+  private RuntimeException failure;
+
   BlobWriteChannel(StorageOptions options, BlobInfo blob, Map<StorageRpc.Option, ?> optionsMap) {
     this(options, blob, open(options, blob, optionsMap));
   }
@@ -43,12 +70,77 @@ class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
 
   @Override
   protected void flushBuffer(final int length, final boolean last) {
+    if (last) {
+      try {
+        awaitPendingFlush();
+      } catch (RuntimeException e) {
+        // the upload cannot be completed past the failed chunk, leave the channel closed
+        markClosed();
+        throw e;
+      }
+      shutdownExecutor();
+      write(getBuffer(), getPosition(), length, true);
+      return;
+    }
+    awaitPendingFlush();
+    // hand the chunk to the background upload and let the caller keep filling the other buffer
+    flushingBuffer = swapBuffer(flushingBuffer);
+    final byte[] chunk = flushingBuffer;
+    final long position = getPosition();
+    pendingFlush = getExecutor().submit(new Runnable() {
+      @Override
+      public void run() {
+        write(chunk, position, length, false);
+      }
+    });
+  }
+
+  @Override
+  protected boolean isDirectFlushSupported(ByteBuffer data) {
+    return true;
+  }
+
+  @Override
+  protected void flushDirect(final ByteBuffer data) {
+    awaitPendingFlush();
+    try {
+      runWithRetries(callable(new Runnable() {
+        @Override
+        public void run() {
+          StorageRpc storageRpc = getOptions().getStorageRpcV1();
+          if (data.hasArray()) {
+            storageRpc.write(getUploadId(), data.array(), data.arrayOffset() + data.position(),
+                getPosition(), data.remaining(), false);
+          } else if (storageRpc instanceof ByteBufferStorageRpc) {
+            ((ByteBufferStorageRpc) storageRpc).write(getUploadId(), data, getPosition(), false);
+          } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            storageRpc.write(getUploadId(), bytes, 0, getPosition(), bytes.length, false);
+          }
+        }
+      }), getOptions().getRetrySettings(), StorageImpl.EXCEPTION_HANDLER, getOptions().getClock());
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  @Override
+  public RestorableState<WriteChannel> capture() {
+    RestorableState<WriteChannel> state = super.capture();
+    // the captured position accounts for the chunk in flight, wait for it to be persisted
+    awaitPendingFlush();
+    return state;
+  }
+
+  private void write(final byte[] bytes, final long position, final int length,
+      final boolean last) {
     try {
       runWithRetries(callable(new Runnable() {
         @Override
         public void run() {
           getOptions().getStorageRpcV1()
-              .write(getUploadId(), getBuffer(), 0, getPosition(), length, last);
+              .write(getUploadId(), bytes, 0, position, length, last);
         }
       }), getOptions().getRetrySettings(), StorageImpl.EXCEPTION_HANDLER, getOptions().getClock());
     } catch (RetryHelper.RetryHelperException e) {
@@ -56,6 +148,62 @@ class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
     }
   }
 
+  /**
+   * Waits for the chunk in flight to be uploaded. If the upload failed, the failure is thrown now
+   * and on every later call, as the upload cannot continue past the missing chunk.
+   */
+  private void awaitPendingFlush() {
+    if (failure != null) {
+      throw failure;
+    }
+    if (pendingFlush == null) {
+      return;
+    }
+    try {
+      pendingFlush.get();
+      pendingFlush = null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      fail(new StorageException(new InterruptedIOException("Interrupted while uploading blob "
+          + getEntity().getBlobId())));
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        fail((RuntimeException) cause);
+      }
+      fail(new StorageException(BaseServiceException.UNKNOWN_CODE, cause.getMessage(), cause));
+    }
+  }
+
+  private void fail(RuntimeException exception) {
+    failure = exception;
+    pendingFlush = null;
+    flushingBuffer = null;
+    shutdownExecutor();
+    throw exception;
+  }
+
+  private ExecutorService getExecutor() {
+    if (executor == null) {
+      ThreadPoolExecutor threadPool = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("blob-writer-%d")
+              .build());
+      // the idle thread exits, so that abandoned channels do not hold on to it
+      threadPool.allowCoreThreadTimeOut(true);
+      executor = threadPool;
+    }
+    return executor;
+  }
+
+  private void shutdownExecutor() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
   protected StateImpl.Builder stateBuilder() {
     return StateImpl.builder(getOptions(), getEntity(), getUploadId());
   }
@@ -0,0 +1,568 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.cloud.storage.spi.v1.StorageRpc.Tuple;
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * ReadChannel implementation that keeps up to {@code parallelism} ranged reads of
+ * {@code chunkSize} bytes in flight and hands them to the caller in order. Before the first read
+ * the blob's metadata is fetched and all ranged reads are pinned to the returned generation, so
+ * that the pieces always belong to the same version of the blob. Seeking forward within the range
+ * of reads already in flight keeps them; any other seek discards them. If a ranged read returns
+ * fewer bytes than requested, the reads after it are discarded and reading resumes right after the
+ * bytes actually received.
+ *
+ * <p>Reads are run on the executor given at construction, if any, which is not shut down when the
+ * channel is closed. Otherwise the channel uses its own pool of {@code parallelism} threads. If a
+ * semaphore of shared slots is given, only one read is kept in flight besides those for which a
+ * slot could be taken, so that channels sharing it buffer a bounded number of pieces in total.
+ */
+class ParallelBlobReadChannel implements ReadChannel {
+
+  private static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+
+  private final StorageOptions serviceOptions;
+  private final BlobId blob;
+  private final Map<StorageRpc.Option, ?> requestOptions;
+  private final int parallelism;
+  private String lastEtag;
+  private Long generation;
+  private Long blobSize;
+  private long position;
+  private long fetchPosition;
+  private boolean isOpen;
+  private boolean endOfStream;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  private final StorageRpc storageRpc;
+  private final Deque<PendingRead> pendingReads = new ArrayDeque<>();
+  private final boolean ownsExecutor;
+  // read slots shared with other channels, or null
+  private final Semaphore sharedSlots;
+  private ExecutorService executor;
+  private StorageObject storageObject;
+  private int bufferPos;
+  private byte[] buffer;
+  // bytes to skip from the next piece, set when seeking forward within the in-flight reads
+  private int skip;
+
+  private static final class PendingRead {
+
+    private final int length;
+    private final Future<Tuple<String, byte[]>> future;
+    // the shared slot taken for this read, or null
+    private Semaphore slot;
+
+    PendingRead(int length, Future<Tuple<String, byte[]>> future, Semaphore slot) {
+      this.length = length;
+      this.future = future;
+      this.slot = slot;
+    }
+
+    void releaseSlot() {
+      if (slot != null) {
+        slot.release();
+        slot = null;
+      }
+    }
+  }
+
+  ParallelBlobReadChannel(StorageOptions serviceOptions, BlobId blob,
+      Map<StorageRpc.Option, ?> requestOptions, int parallelism) {
+    this(serviceOptions, blob, requestOptions, parallelism, null, null);
+  }
+
+  /**
+   * Creates a channel whose ranged reads run on {@code executor}, if not {@code null}. A shared
+   * executor is not shut down when the channel is closed; at most {@code parallelism} reads of
+   * this channel are in flight at any time. If {@code sharedSlots} is not {@code null}, each read
+   * in flight besides the first one takes a slot from it, and no read is issued while none is
+   * available.
+   */
+  ParallelBlobReadChannel(StorageOptions serviceOptions, BlobId blob,
+      Map<StorageRpc.Option, ?> requestOptions, int parallelism, ExecutorService executor,
+      Semaphore sharedSlots) {
+    checkArgument(parallelism > 0, "Parallelism must be positive, is %s", parallelism);
+    this.serviceOptions = serviceOptions;
+    this.blob = blob;
+    this.requestOptions = requestOptions;
+    this.parallelism = parallelism;
+    this.executor = executor;
+    this.ownsExecutor = executor == null;
+    this.sharedSlots = sharedSlots;
+    isOpen = true;
+    storageRpc = serviceOptions.getStorageRpcV1();
+  }
+
+  @Override
+  public RestorableState<ReadChannel> capture() {
+    StateImpl.Builder builder = StateImpl.builder(serviceOptions, blob, requestOptions, parallelism)
+        .setLastEtag(lastEtag)
+        .setGeneration(generation)
+        .setPosition(position)
+        .setIsOpen(isOpen)
+        .setEndOfStream(endOfStream)
+        .setChunkSize(chunkSize);
+    if (buffer != null) {
+      builder.setPosition(position + bufferPos);
+      builder.setEndOfStream(false);
+    } else if (skip > 0) {
+      builder.setPosition(position + skip);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return isOpen;
+  }
+
+  @Override
+  public void close() {
+    if (isOpen) {
+      cancelPendingReads();
+      if (ownsExecutor && executor != null) {
+        executor.shutdownNow();
+      }
+      executor = null;
+      buffer = null;
+      isOpen = false;
+    }
+  }
+
+  private void validateOpen() throws ClosedChannelException {
+    if (!isOpen) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public void seek(long position) throws IOException {
+    validateOpen();
+    long currentPosition = this.position + (buffer != null ? bufferPos : skip);
+    if (!endOfStream && position >= currentPosition && position < fetchPosition) {
+      skipForward(position - currentPosition);
+      return;
+    }
+    cancelPendingReads();
+    this.position = position;
+    fetchPosition = position;
+    buffer = null;
+    bufferPos = 0;
+    skip = 0;
+    endOfStream = false;
+  }
+
+  /**
+   * Moves the channel forward by {@code bytes}, dropping the pieces that are skipped entirely.
+   * The target position must be within the range of reads already in flight.
+   */
+  private void skipForward(long bytes) {
+    long toSkip = bytes;
+    if (buffer != null) {
+      int remaining = buffer.length - bufferPos;
+      if (toSkip < remaining) {
+        bufferPos += toSkip;
+        return;
+      }
+      toSkip -= remaining;
+      position += buffer.length;
+      buffer = null;
+      bufferPos = 0;
+    } else {
+      toSkip += skip;
+    }
+    PendingRead first;
+    while ((first = pendingReads.peekFirst()) != null && toSkip >= first.length) {
+      pendingReads.pollFirst().future.cancel(true);
+      first.releaseSlot();
+      position += first.length;
+      toSkip -= first.length;
+    }
+    skip = (int) toSkip;
+  }
+
+  @Override
+  public void setChunkSize(int chunkSize) {
+    this.chunkSize = chunkSize <= 0 ? DEFAULT_CHUNK_SIZE : chunkSize;
+  }
+
+  @Override
+  public int read(ByteBuffer byteBuffer) throws IOException {
+    validateOpen();
+    while (buffer == null) {
+      if (endOfStream) {
+        return -1;
+      }
+      pinGeneration();
+      scheduleReads();
+      PendingRead next = pendingReads.pollFirst();
+      if (next == null) {
+        endOfStream = true;
+        return -1;
+      }
+      Tuple<String, byte[]> result;
+      try {
+        result = getResult(next.future);
+      } catch (IOException | RuntimeException e) {
+        // the piece is dropped, so the reads must be issued again from the current position
+        next.future.cancel(true);
+        cancelPendingReads();
+        throw e;
+      } finally {
+        next.releaseSlot();
+      }
+      if (result.y().length > 0 && lastEtag != null && !Objects.equals(result.x(), lastEtag)) {
+        cancelPendingReads();
+        StringBuilder messageBuilder = new StringBuilder();
+        messageBuilder.append("Blob ").append(blob).append(" was updated while reading");
+        throw new StorageException(0, messageBuilder.toString());
+      }
+      if (result.y().length == 0) {
+        cancelPendingReads();
+        endOfStream = true;
+        return -1;
+      }
+      lastEtag = result.x();
+      // the reads after a short one start past the bytes received and must be issued again
+      boolean shortRead = result.y().length < next.length;
+      if (skip >= result.y().length) {
+        position += result.y().length;
+        skip -= result.y().length;
+        if (shortRead) {
+          cancelPendingReads();
+        }
+        continue;
+      }
+      buffer = result.y();
+      bufferPos = skip;
+      skip = 0;
+      if (shortRead) {
+        cancelPendingReads();
+      }
+      scheduleReads();
+    }
+    int toWrite = Math.min(buffer.length - bufferPos, byteBuffer.remaining());
+    byteBuffer.put(buffer, bufferPos, toWrite);
+    bufferPos += toWrite;
+    if (bufferPos >= buffer.length) {
+      position += buffer.length;
+      buffer = null;
+      bufferPos = 0;
+      scheduleReads();
+    }
+    return toWrite;
+  }
+
+  /**
+   * Pins all reads to {@code generation}, whose size is known to be {@code size}, so that the
+   * blob's metadata is not fetched before the first read.
+   */
+  void pin(long generation, long size) {
+    this.generation = generation;
+    this.blobSize = size;
+    storageObject = blob.toPb().setGeneration(generation);
+  }
+
+  /**
+   * Fetches the blob's metadata, if not already done, and pins all subsequent reads to the
+   * returned generation.
+   */
+  private void pinGeneration() {
+    if (storageObject != null) {
+      return;
+    }
+    final StorageObject blobPb = blob.toPb();
+    if (generation != null) {
+      blobPb.setGeneration(generation);
+    }
+    try {
+      StorageObject metadata = runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return storageRpc.get(blobPb, requestOptions);
+        }
+      }, serviceOptions.getRetrySettings(), StorageImpl.EXCEPTION_HANDLER,
+          serviceOptions.getClock());
+      if (metadata == null) {
+        throw new StorageException(HTTP_NOT_FOUND, "Blob " + blob + " not found");
+      }
+      generation = metadata.getGeneration();
+      blobSize = metadata.getSize() != null ? metadata.getSize().longValue() : null;
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+    blobPb.setGeneration(generation);
+    storageObject = blobPb;
+  }
+
+  /**
+   * Submits ranged reads until {@code parallelism} reads are in flight or the end of the blob is
+   * reached.
+   */
+  private void scheduleReads() {
+    if (storageObject == null) {
+      return;
+    }
+    if (fetchPosition < position) {
+      fetchPosition = position;
+    }
+    while (pendingReads.size() < parallelism && (blobSize == null || fetchPosition < blobSize)) {
+      Semaphore slot = null;
+      if (sharedSlots != null && !pendingReads.isEmpty()) {
+        if (!sharedSlots.tryAcquire()) {
+          break;
+        }
+        slot = sharedSlots;
+      }
+      final long readPosition = fetchPosition;
+      final int toRead = blobSize == null
+          ? chunkSize : (int) Math.min(chunkSize, blobSize - readPosition);
+      Future<Tuple<String, byte[]>> future;
+      try {
+        future = getExecutor().submit(new Callable<Tuple<String, byte[]>>() {
+          @Override
+          public Tuple<String, byte[]> call() {
+            return runWithRetries(new Callable<Tuple<String, byte[]>>() {
+              @Override
+              public Tuple<String, byte[]> call() {
+                return storageRpc.read(storageObject, requestOptions, readPosition, toRead);
+              }
+            }, serviceOptions.getRetrySettings(), StorageImpl.EXCEPTION_HANDLER,
+                serviceOptions.getClock());
+          }
+        });
+      } catch (RuntimeException e) {
+        if (slot != null) {
+          slot.release();
+        }
+        throw e;
+      }
+      pendingReads.addLast(new PendingRead(toRead, future, slot));
+      fetchPosition += toRead;
+    }
+  }
+
+  private Tuple<String, byte[]> getResult(Future<Tuple<String, byte[]>> future)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading blob " + blob);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RetryHelper.RetryHelperException) {
+        throw StorageException.translateAndThrow((RetryHelper.RetryHelperException) cause);
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new StorageException(BaseServiceException.UNKNOWN_CODE, cause.getMessage(), cause);
+    }
+  }
+
+  private void cancelPendingReads() {
+    for (PendingRead pendingRead : pendingReads) {
+      pendingRead.future.cancel(true);
+      pendingRead.releaseSlot();
+    }
+    pendingReads.clear();
+    fetchPosition = buffer != null ? position + buffer.length : position;
+  }
+
+  private ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("parallel-blob-reader-%d")
+          .build());
+    }
+    return executor;
+  }
+
+  static class StateImpl implements RestorableState<ReadChannel>, Serializable {
+
+    private static final long serialVersionUID = -2416237811457196716L;
+
+    private final StorageOptions serviceOptions;
+    private final BlobId blob;
+    private final Map<StorageRpc.Option, ?> requestOptions;
+    private final int parallelism;
+    private final String lastEtag;
+    private final Long generation;
+    private final long position;
+    private final boolean isOpen;
+    private final boolean endOfStream;
+    private final int chunkSize;
+
+    StateImpl(Builder builder) {
+      this.serviceOptions = builder.serviceOptions;
+      this.blob = builder.blob;
+      this.requestOptions = builder.requestOptions;
+      this.parallelism = builder.parallelism;
+      this.lastEtag = builder.lastEtag;
+      this.generation = builder.generation;
+      this.position = builder.position;
+      this.isOpen = builder.isOpen;
+      this.endOfStream = builder.endOfStream;
+      this.chunkSize = builder.chunkSize;
+    }
+
+    static class Builder {
+      private final StorageOptions serviceOptions;
+      private final BlobId blob;
+      private final Map<StorageRpc.Option, ?> requestOptions;
+      private final int parallelism;
+      private String lastEtag;
+      private Long generation;
+      private long position;
+      private boolean isOpen;
+      private boolean endOfStream;
+      private int chunkSize;
+
+      private Builder(StorageOptions options, BlobId blob, Map<StorageRpc.Option, ?> reqOptions,
+          int parallelism) {
+        this.serviceOptions = options;
+        this.blob = blob;
+        this.requestOptions = reqOptions;
+        this.parallelism = parallelism;
+      }
+
+      Builder setLastEtag(String lastEtag) {
+        this.lastEtag = lastEtag;
+        return this;
+      }
+
+      Builder setGeneration(Long generation) {
+        this.generation = generation;
+        return this;
+      }
+
+      Builder setPosition(long position) {
+        this.position = position;
+        return this;
+      }
+
+      Builder setIsOpen(boolean isOpen) {
+        this.isOpen = isOpen;
+        return this;
+      }
+
+      Builder setEndOfStream(boolean endOfStream) {
+        this.endOfStream = endOfStream;
+        return this;
+      }
+
+      Builder setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+      }
+
+      RestorableState<ReadChannel> build() {
+        return new StateImpl(this);
+      }
+    }
+
+    static Builder builder(StorageOptions options, BlobId blob,
+        Map<StorageRpc.Option, ?> reqOptions, int parallelism) {
+      return new Builder(options, blob, reqOptions, parallelism);
+    }
+
+    @Override
+    public ReadChannel restore() {
+      ParallelBlobReadChannel channel =
+          new ParallelBlobReadChannel(serviceOptions, blob, requestOptions, parallelism);
+      channel.lastEtag = lastEtag;
+      channel.generation = generation;
+      channel.position = position;
+      channel.fetchPosition = position;
+      channel.isOpen = isOpen;
+      channel.endOfStream = endOfStream;
+      channel.chunkSize = chunkSize;
+      return channel;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(serviceOptions, blob, requestOptions, parallelism, lastEtag, generation,
+          position, isOpen, endOfStream, chunkSize);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == null) {
+        return false;
+      }
+      if (!(obj instanceof StateImpl)) {
+        return false;
+      }
+      final StateImpl other = (StateImpl) obj;
+      return Objects.equals(this.serviceOptions, other.serviceOptions)
+          && Objects.equals(this.blob, other.blob)
+          && Objects.equals(this.requestOptions, other.requestOptions)
+          && this.parallelism == other.parallelism
+          && Objects.equals(this.lastEtag, other.lastEtag)
+          && Objects.equals(this.generation, other.generation)
+          && this.position == other.position
+          && this.isOpen == other.isOpen
+          && this.endOfStream == other.endOfStream
+          && this.chunkSize == other.chunkSize;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("blob", blob)
+          .add("parallelism", parallelism)
+          .add("generation", generation)
+          .add("position", position)
+          .add("isOpen", isOpen)
+          .add("endOfStream", endOfStream)
+          .toString();
+    }
+  }
+}
@@ -0,0 +1,577 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.RestorableState;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Write channel implementation that splits the written data in parts of {@code chunkSize} bytes,
+ * uploads up to {@code parallelism} parts concurrently as temporary blobs and, when closed,
+ * composes them into the target blob. If more than {@value #MAX_COMPOSE_SOURCES} parts are
+ * uploaded they are composed recursively into intermediate temporary blobs. Temporary blobs are
+ * deleted when the channel is closed, whether the upload succeeded or not. Blobs smaller than a
+ * part are uploaded directly. Either way, the predefined ACL and the generation and metageneration
+ * match preconditions of the target options are applied to the target blob. Compose requests
+ * support no other target options, so the channel rejects them.
+ *
+ * <p>Several channels can share an executor and a budget of upload slots, see
+ * {@link #ParallelCompositeWriteChannel(StorageOptions, BlobInfo, Map, int, ExecutorService,
+ * Semaphore)}.
+ */
+class ParallelCompositeWriteChannel implements WriteChannel {
+
+  static final int MAX_COMPOSE_SOURCES = 32;
+  private static final int MIN_CHUNK_SIZE = 256 * 1024;
+  private static final int DEFAULT_CHUNK_SIZE = 64 * MIN_CHUNK_SIZE;
+  private static final Map<StorageRpc.Option, ?> EMPTY_OPTIONS = ImmutableMap.of();
+  private static final Set<StorageRpc.Option> SUPPORTED_OPTIONS = ImmutableSet.of(
+      StorageRpc.Option.PREDEFINED_ACL, StorageRpc.Option.IF_GENERATION_MATCH,
+      StorageRpc.Option.IF_METAGENERATION_MATCH);
+
+  private final StorageOptions serviceOptions;
+  private final BlobInfo blobInfo;
+  private final Map<StorageRpc.Option, ?> targetOptions;
+  private final int parallelism;
+  private final String temporaryPrefix;
+  private final StorageRpc storageRpc;
+  private final Semaphore permits;
+  // upload slots shared with other channels, or null
+  private final Semaphore sharedSlots;
+  // the upload slot of this channel that does not count against sharedSlots
+  private final Semaphore ownSlot = new Semaphore(1);
+  private final boolean ownsExecutor;
+  private final List<Future<BlobId>> parts = new ArrayList<>();
+  private final List<BlobId> temporaries = new ArrayList<>();
+  // parts known to have been uploaded successfully
+  private int checkedParts;
+  private ExecutorService executor;
+  private byte[] buffer = new byte[0];
+  private int limit;
+  private boolean isOpen = true;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  ParallelCompositeWriteChannel(StorageOptions serviceOptions, BlobInfo blobInfo,
+      Map<StorageRpc.Option, ?> targetOptions, int parallelism) {
+    this(serviceOptions, blobInfo, targetOptions, parallelism, null, null);
+  }
+
+  /**
+   * Creates a channel whose uploads run on {@code executor}, which is not shut down when the
+   * channel is closed. Besides one upload of its own, the channel only uploads more parts
+   * concurrently while it can take a slot from {@code sharedSlots}, so that channels sharing them
+   * buffer a bounded number of parts in total. Otherwise it waits for its own uploads.
+   */
+  ParallelCompositeWriteChannel(StorageOptions serviceOptions, BlobInfo blobInfo,
+      Map<StorageRpc.Option, ?> targetOptions, int parallelism, ExecutorService executor,
+      Semaphore sharedSlots) {
+    this(serviceOptions, blobInfo, targetOptions, parallelism,
+        blobInfo.getName() + ".parallel-upload-" + UUID.randomUUID() + "-", executor,
+        sharedSlots);
+  }
+
+  private ParallelCompositeWriteChannel(StorageOptions serviceOptions, BlobInfo blobInfo,
+      Map<StorageRpc.Option, ?> targetOptions, int parallelism, String temporaryPrefix,
+      ExecutorService executor, Semaphore sharedSlots) {
+    checkArgument(parallelism > 0, "Parallelism must be positive, is %s", parallelism);
+    checkArgument(!targetOptions.containsKey(StorageRpc.Option.CUSTOMER_SUPPLIED_KEY),
+        "Customer-supplied encryption keys are not supported by parallel composite uploads");
+    for (StorageRpc.Option option : targetOptions.keySet()) {
+      checkArgument(SUPPORTED_OPTIONS.contains(option),
+          "Option %s is not supported by parallel composite uploads", option.value());
+    }
+    this.serviceOptions = serviceOptions;
+    this.blobInfo = blobInfo;
+    this.targetOptions = targetOptions;
+    this.parallelism = parallelism;
+    this.temporaryPrefix = temporaryPrefix;
+    this.storageRpc = serviceOptions.getStorageRpcV1();
+    this.permits = new Semaphore(parallelism);
+    this.executor = executor;
+    this.ownsExecutor = executor == null;
+    this.sharedSlots = sharedSlots;
+  }
+
+  @Override
+  public void setChunkSize(int chunkSize) {
+    chunkSize = (chunkSize / MIN_CHUNK_SIZE) * MIN_CHUNK_SIZE;
+    this.chunkSize = Math.max(MIN_CHUNK_SIZE, chunkSize);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return isOpen;
+  }
+
+  private void validateOpen() throws ClosedChannelException {
+    if (!isOpen) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer byteBuffer) throws IOException {
+    validateOpen();
+    checkFailedParts();
+    int written = 0;
+    while (byteBuffer.hasRemaining()) {
+      if (buffer.length < chunkSize) {
+        buffer = Arrays.copyOf(buffer, chunkSize);
+      }
+      int toWrite = Math.min(byteBuffer.remaining(), Math.max(0, chunkSize - limit));
+      byteBuffer.get(buffer, limit, toWrite);
+      limit += toWrite;
+      written += toWrite;
+      if (limit >= chunkSize) {
+        uploadPart();
+      }
+    }
+    return written;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!isOpen) {
+      return;
+    }
+    isOpen = false;
+    try {
+      if (parts.isEmpty()) {
+        // small blob, upload it directly
+        createBlob(blobInfo.toPb(), buffer, limit, targetOptions);
+        return;
+      }
+      if (limit > 0) {
+        uploadPart();
+      }
+      List<BlobId> sources = new ArrayList<>(parts.size());
+      for (Future<BlobId> part : parts) {
+        sources.add(getResult(part));
+      }
+      compose(sources);
+    } finally {
+      buffer = null;
+      deleteTemporaries();
+      shutdownExecutor();
+    }
+  }
+
+  /**
+   * Closes the channel without creating the target blob, and deletes all temporary blobs.
+   */
+  void abort() {
+    if (!isOpen) {
+      return;
+    }
+    isOpen = false;
+    buffer = null;
+    deleteTemporaries();
+    shutdownExecutor();
+  }
+
+  @Override
+  public RestorableState<WriteChannel> capture() {
+    ImmutableList.Builder<BlobId> uploadedParts = ImmutableList.builder();
+    byte[] bufferToSave = null;
+    if (isOpen) {
+      try {
+        for (Future<BlobId> part : parts) {
+          uploadedParts.add(getResult(part));
+        }
+      } catch (IOException ex) {
+        throw new StorageException(BaseServiceException.UNKNOWN_CODE, ex.getMessage(), ex);
+      }
+      bufferToSave = Arrays.copyOf(buffer, limit);
+    }
+    return StateImpl.builder(serviceOptions, blobInfo, targetOptions, parallelism,
+        temporaryPrefix)
+        .setUploadedParts(uploadedParts.build())
+        .setBuffer(bufferToSave)
+        .setIsOpen(isOpen)
+        .setChunkSize(chunkSize)
+        .build();
+  }
+
+  /**
+   * Submits the buffered data as the next part, blocking while {@code parallelism} parts are
+   * already being uploaded.
+   */
+  private void uploadPart() throws IOException {
+    final byte[] partContent = buffer;
+    final int partLength = limit;
+    final BlobId partId = BlobId.of(blobInfo.getBucket(), temporaryPrefix + parts.size());
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while uploading " + blobInfo.getBlobId());
+    }
+    final Semaphore slot;
+    try {
+      slot = acquireSlot();
+    } catch (IOException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+    temporaries.add(partId);
+    try {
+      parts.add(getExecutor().submit(new Callable<BlobId>() {
+        @Override
+        public BlobId call() {
+          try {
+            StorageObject part = createBlob(partId.toPb(), partContent, partLength, EMPTY_OPTIONS);
+            return BlobId.of(part.getBucket(), part.getName(), part.getGeneration());
+          } finally {
+            releaseSlot(slot);
+            permits.release();
+          }
+        }
+      }));
+    } catch (RuntimeException e) {
+      releaseSlot(slot);
+      permits.release();
+      throw e;
+    }
+    buffer = new byte[chunkSize];
+    limit = 0;
+  }
+
+  /**
+   * Takes the channel's own upload slot or, if it is in use, one of the shared slots, waiting for
+   * the channel's own uploads while neither is available. Returns the semaphore to release the
+   * slot to, or {@code null} if slots are not shared.
+   */
+  private Semaphore acquireSlot() throws IOException {
+    if (sharedSlots == null) {
+      return null;
+    }
+    while (true) {
+      if (ownSlot.tryAcquire()) {
+        return ownSlot;
+      }
+      if (sharedSlots.tryAcquire()) {
+        return sharedSlots;
+      }
+      // never wait for the shared slots, which may be held by channels waiting for this one
+      for (Future<BlobId> part : parts) {
+        if (!part.isDone()) {
+          getResult(part);
+          break;
+        }
+      }
+    }
+  }
+
+  private static void releaseSlot(Semaphore slot) {
+    if (slot != null) {
+      slot.release();
+    }
+  }
+
+  /**
+   * Composes {@code sources} into the target blob, using intermediate temporary blobs while there
+   * are more sources than a single compose request accepts.
+   */
+  private void compose(List<BlobId> sources) throws IOException {
+    int round = 0;
+    while (sources.size() > MAX_COMPOSE_SOURCES) {
+      List<Future<BlobId>> composed = new ArrayList<>();
+      for (int i = 0; i < sources.size(); i += MAX_COMPOSE_SOURCES) {
+        final List<BlobId> group =
+            sources.subList(i, Math.min(i + MAX_COMPOSE_SOURCES, sources.size()));
+        final BlobId intermediate = BlobId.of(blobInfo.getBucket(),
+            temporaryPrefix + "compose-" + round + "-" + i / MAX_COMPOSE_SOURCES);
+        temporaries.add(intermediate);
+        composed.add(getExecutor().submit(new Callable<BlobId>() {
+          @Override
+          public BlobId call() {
+            StorageObject result = composeBlobs(group, intermediate.toPb(), EMPTY_OPTIONS);
+            return BlobId.of(result.getBucket(), result.getName(), result.getGeneration());
+          }
+        }));
+      }
+      List<BlobId> next = new ArrayList<>(composed.size());
+      for (Future<BlobId> future : composed) {
+        next.add(getResult(future));
+      }
+      sources = next;
+      round++;
+    }
+    composeBlobs(sources, blobInfo.toPb(), targetOptions);
+  }
+
+  private StorageObject createBlob(final StorageObject blob, final byte[] content,
+      final int length, final Map<StorageRpc.Option, ?> options) {
+    try {
+      return runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return storageRpc.create(blob, new ByteArrayInputStream(content, 0, length), options);
+        }
+      }, serviceOptions.getRetrySettings(), StorageImpl.EXCEPTION_HANDLER,
+          serviceOptions.getClock());
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  private StorageObject composeBlobs(List<BlobId> sources, final StorageObject target,
+      final Map<StorageRpc.Option, ?> options) {
+    final List<StorageObject> sourcesPb = new ArrayList<>(sources.size());
+    for (BlobId source : sources) {
+      sourcesPb.add(source.toPb());
+    }
+    try {
+      return runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return storageRpc.compose(sourcesPb, target, options);
+        }
+      }, serviceOptions.getRetrySettings(), StorageImpl.EXCEPTION_HANDLER,
+          serviceOptions.getClock());
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  /**
+   * Deletes all temporary blobs, waiting for in-flight uploads first. Failures are ignored: this is
+   * a best effort cleanup and must not hide the outcome of the upload.
+   */
+  private void deleteTemporaries() {
+    for (Future<BlobId> part : parts) {
+      try {
+        part.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // the part was not created, or failed to be
+      }
+    }
+    for (BlobId temporary : temporaries) {
+      try {
+        storageRpc.delete(BlobId.of(temporary.getBucket(), temporary.getName()).toPb(),
+            EMPTY_OPTIONS);
+      } catch (RuntimeException e) {
+        // best effort
+      }
+    }
+    parts.clear();
+    temporaries.clear();
+  }
+
+  private void checkFailedParts() throws IOException {
+    while (checkedParts < parts.size() && parts.get(checkedParts).isDone()) {
+      getResult(parts.get(checkedParts++));
+    }
+  }
+
+  private <T> T getResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while uploading " + blobInfo.getBlobId());
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new StorageException(BaseServiceException.UNKNOWN_CODE, cause.getMessage(), cause);
+    }
+  }
+
+  private void shutdownExecutor() {
+    if (ownsExecutor && executor != null) {
+      executor.shutdownNow();
+    }
+    executor = null;
+  }
+
+  private ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("parallel-composite-upload-%d")
+          .build());
+    }
+    return executor;
+  }
+
+  static class StateImpl implements RestorableState<WriteChannel>, Serializable {
+
+    private static final long serialVersionUID = 2591330860311413264L;
+
+    private final StorageOptions serviceOptions;
+    private final BlobInfo blobInfo;
+    private final Map<StorageRpc.Option, ?> targetOptions;
+    private final int parallelism;
+    private final String temporaryPrefix;
+    private final List<BlobId> uploadedParts;
+    private final byte[] buffer;
+    private final boolean isOpen;
+    private final int chunkSize;
+
+    StateImpl(Builder builder) {
+      this.serviceOptions = builder.serviceOptions;
+      this.blobInfo = builder.blobInfo;
+      this.targetOptions = builder.targetOptions;
+      this.parallelism = builder.parallelism;
+      this.temporaryPrefix = builder.temporaryPrefix;
+      this.uploadedParts = builder.uploadedParts;
+      this.buffer = builder.buffer;
+      this.isOpen = builder.isOpen;
+      this.chunkSize = builder.chunkSize;
+    }
+
+    static class Builder {
+      private final StorageOptions serviceOptions;
+      private final BlobInfo blobInfo;
+      private final Map<StorageRpc.Option, ?> targetOptions;
+      private final int parallelism;
+      private final String temporaryPrefix;
+      private List<BlobId> uploadedParts = ImmutableList.of();
+      private byte[] buffer;
+      private boolean isOpen;
+      private int chunkSize;
+
+      private Builder(StorageOptions options, BlobInfo blobInfo,
+          Map<StorageRpc.Option, ?> targetOptions, int parallelism, String temporaryPrefix) {
+        this.serviceOptions = options;
+        this.blobInfo = blobInfo;
+        this.targetOptions = targetOptions;
+        this.parallelism = parallelism;
+        this.temporaryPrefix = temporaryPrefix;
+      }
+
+      Builder setUploadedParts(List<BlobId> uploadedParts) {
+        this.uploadedParts = uploadedParts;
+        return this;
+      }
+
+      Builder setBuffer(byte[] buffer) {
+        this.buffer = buffer;
+        return this;
+      }
+
+      Builder setIsOpen(boolean isOpen) {
+        this.isOpen = isOpen;
+        return this;
+      }
+
+      Builder setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+      }
+
+      RestorableState<WriteChannel> build() {
+        return new StateImpl(this);
+      }
+    }
+
+    static Builder builder(StorageOptions options, BlobInfo blobInfo,
+        Map<StorageRpc.Option, ?> targetOptions, int parallelism, String temporaryPrefix) {
+      return new Builder(options, blobInfo, targetOptions, parallelism, temporaryPrefix);
+    }
+
+    @Override
+    public WriteChannel restore() {
+      ParallelCompositeWriteChannel channel = new ParallelCompositeWriteChannel(
+          serviceOptions, blobInfo, targetOptions, parallelism, temporaryPrefix, null, null);
+      for (BlobId part : uploadedParts) {
+        channel.parts.add(Futures.immediateFuture(part));
+        channel.temporaries.add(part);
+      }
+      if (buffer != null) {
+        channel.buffer = buffer.clone();
+        channel.limit = buffer.length;
+      }
+      channel.isOpen = isOpen;
+      channel.chunkSize = chunkSize;
+      return channel;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(serviceOptions, blobInfo, targetOptions, parallelism, temporaryPrefix,
+          uploadedParts, Arrays.hashCode(buffer), isOpen, chunkSize);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == null) {
+        return false;
+      }
+      if (!(obj instanceof StateImpl)) {
+        return false;
+      }
+      final StateImpl other = (StateImpl) obj;
+      return Objects.equals(this.serviceOptions, other.serviceOptions)
+          && Objects.equals(this.blobInfo, other.blobInfo)
+          && Objects.equals(this.targetOptions, other.targetOptions)
+          && this.parallelism == other.parallelism
+          && Objects.equals(this.temporaryPrefix, other.temporaryPrefix)
+          && Objects.equals(this.uploadedParts, other.uploadedParts)
+          && Objects.deepEquals(this.buffer, other.buffer)
+          && this.isOpen == other.isOpen
+          && this.chunkSize == other.chunkSize;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("blobInfo", blobInfo)
+          .add("parallelism", parallelism)
+          .add("uploadedParts", uploadedParts.size())
+          .add("isOpen", isOpen)
+          .toString();
+    }
+  }
+}
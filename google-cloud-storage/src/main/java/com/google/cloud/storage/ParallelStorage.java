@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Storage.BlobGetOption;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+
+/**
+ * Interface for the Cloud Storage APIs that spread reads, writes, listings and batches of
+ * operations over concurrent requests. The {@link Storage} returned by
+ * {@link StorageOptions#getService()} also implements this interface.
+ *
+ * <pre>{@code
+ * Storage storage = StorageOptions.getDefaultInstance().getService();
+ * ParallelStorage parallelStorage = (ParallelStorage) storage;
+ * }</pre>
+ */
+public interface ParallelStorage {
+
+  /**
+   * Returns a channel for reading the blob's content using up to {@code parallelism} concurrent
+   * ranged reads. Each ranged read fetches {@link ReadChannel#setChunkSize(int) chunkSize} bytes
+   * and the pieces are returned to the reader in order. Before the first read the blob's metadata
+   * is fetched and all reads are pinned to the blob's generation at that time, so the content is
+   * consistent even if the blob is overwritten while reading. If {@code blob.generation()} is set
+   * data corresponding to that generation is read.
+   *
+   * <p>At most {@code parallelism * chunkSize} bytes are buffered by the returned channel.
+   * Calling {@link ReadChannel#seek(long)} discards any in-flight read.
+   *
+   * <p>Example of reading a large blob's content with 8 concurrent requests.
+   * <pre> {@code
+   * String bucketName = "my_unique_bucket";
+   * String blobName = "my_blob_name";
+   * BlobId blobId = BlobId.of(bucketName, blobName);
+   * try (ReadChannel reader = parallelStorage.parallelReader(blobId, 8)) {
+   *   reader.setChunkSize(16 * 1024 * 1024);
+   *   ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+   *   while (reader.read(bytes) > 0) {
+   *     bytes.flip();
+   *     // do something with bytes
+   *     bytes.clear();
+   *   }
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of concurrent ranged reads
+   * @throws StorageException upon failure
+   */
+  ReadChannel parallelReader(BlobId blob, int parallelism, BlobSourceOption... options);
+
+  /**
+   * Returns a channel for reading the blob's content using up to {@code parallelism} concurrent
+   * ranged reads, as for {@link #parallelReader(BlobId, int, BlobSourceOption...)}. If
+   * {@code blob} has both a generation and a size, for instance because it was just returned by
+   * {@link Storage#get(BlobId, BlobGetOption...)}, the reads are pinned to that generation and its
+   * metadata is not fetched again. Otherwise the metadata of {@code blob.getBlobId()} is fetched
+   * before the first read.
+   *
+   * <p>Example of reading the content of a blob whose metadata is already known.
+   * <pre> {@code
+   * String bucketName = "my_unique_bucket";
+   * String blobName = "my_blob_name";
+   * Blob blob = storage.get(BlobId.of(bucketName, blobName));
+   * try (ReadChannel reader = parallelStorage.parallelReader(blob, 8)) {
+   *   ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+   *   while (reader.read(bytes) > 0) {
+   *     bytes.flip();
+   *     // do something with bytes
+   *     bytes.clear();
+   *   }
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of concurrent ranged reads
+   * @throws StorageException upon failure
+   */
+  ReadChannel parallelReader(BlobInfo blob, int parallelism, BlobSourceOption... options);
+
+  /**
+   * Creates a blob and returns a channel for writing its content using a parallel composite
+   * upload. Written data is split in parts of {@link WriteChannel#setChunkSize(int) chunkSize}
+   * bytes (16 MiB by default) that are uploaded as temporary blobs, up to {@code parallelism} at a
+   * time. When the channel is closed the parts are composed into the target blob, recursively if
+   * there are more than 32 of them, and all temporary blobs are deleted, whether the upload
+   * succeeded or not. Blobs smaller than a part are uploaded directly.
+   *
+   * <p>At most {@code (parallelism + 1) * chunkSize} bytes are buffered by the returned channel.
+   * Temporary blobs are created in the target blob's bucket, with names starting with the target
+   * blob's name. The resulting blob is a composite object: it has a crc32c checksum but no md5
+   * hash. For this reason the {@code BlobWriteOption.md5Match} and
+   * {@code BlobWriteOption.crc32cMatch} options are not supported, nor are customer-supplied
+   * encryption keys. Of the remaining options, only {@code BlobWriteOption.predefinedAcl},
+   * {@code BlobWriteOption.doesNotExist}, {@code BlobWriteOption.generationMatch} and
+   * {@code BlobWriteOption.metagenerationMatch} are supported, as compose requests accept no
+   * others. They are applied to the target blob, including when it is uploaded directly.
+   *
+   * <p>Example of uploading a large blob with 8 concurrent requests.
+   * <pre> {@code
+   * String bucketName = "my_unique_bucket";
+   * String blobName = "my_blob_name";
+   * BlobId blobId = BlobId.of(bucketName, blobName);
+   * BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType("application/octet-stream")
+   *     .build();
+   * try (WriteChannel writer = parallelStorage.parallelWriter(blobInfo, 8)) {
+   *   writer.setChunkSize(32 * 1024 * 1024);
+   *   ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+   *   // fill bytes
+   *   writer.write(bytes);
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of parts uploaded concurrently
+   * @throws StorageException upon failure
+   */
+  WriteChannel parallelWriter(BlobInfo blobInfo, int parallelism, BlobWriteOption... options);
+
+  /**
+   * Lists all the bucket's blobs, fetching pages in the background. The request for the next page
+   * is sent as soon as a page is returned, so that it is fetched while the current page is being
+   * processed. If {@code parallelism} is greater than one, and the
+   * {@link BlobListOption#currentDirectory()} option is not provided, the blobs under each
+   * top-level directory are listed as a separate shard, and up to {@code parallelism} shards are
+   * listed concurrently. In that case blobs are not returned in lexicographic order: the pages of
+   * the different shards are merged in the order they are received. Each call to
+   * {@link Iterable#iterator()} starts a new listing.
+   *
+   * <p>Example of listing all the blobs of a large bucket.
+   * <pre> {@code
+   * String bucketName = "my_unique_bucket";
+   * for (Blob blob : parallelStorage.listAll(bucketName, 8)) {
+   *   // do something with the blob
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of pages fetched concurrently
+   * @throws StorageException upon failure
+   */
+  Iterable<Blob> listAll(String bucket, int parallelism, BlobListOption... options);
+
+  /**
+   * Lists all the bucket's blobs whose name starts with one of {@code prefixes}, fetching pages in
+   * the background. Each prefix is listed as a separate shard, and up to {@code parallelism} shards
+   * are listed concurrently. The pages of the different shards are merged in the order they are
+   * received. Blobs that match more than one prefix are returned once per matching prefix. Each
+   * call to {@link Iterable#iterator()} starts a new listing.
+   *
+   * <p>Example of listing the blobs under a set of directories.
+   * <pre> {@code
+   * String bucketName = "my_unique_bucket";
+   * List<String> directories = Arrays.asList("logs/2017/", "logs/2018/");
+   * for (Blob blob : parallelStorage.listAll(bucketName, directories, 4)) {
+   *   // do something with the blob
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of pages fetched concurrently
+   * @throws StorageException upon failure
+   */
+  Iterable<Blob> listAll(String bucket, Iterable<String> prefixes, int parallelism,
+      BlobListOption... options);
+
+  /**
+   * Creates a new executor for large amounts of delete, update and get operations. The executor
+   * splits the operations into batch requests, submits up to {@code parallelism} of them
+   * concurrently and retries the requests that fail with a retryable error. The executor should be
+   * closed once all operations have been added, to wait for their results and release its threads.
+   *
+   * <p>Example of deleting many blobs.
+   * <pre> {@code
+   * List<BlobId> blobIds = ...;
+   * List<StorageBatchResult<Boolean>> results = new ArrayList<>();
+   * try (StorageBulkExecutor executor = parallelStorage.bulkExecutor(4)) {
+   *   for (BlobId blobId : blobIds) {
+   *     results.add(executor.delete(blobId));
+   *   }
+   * }
+   * for (StorageBatchResult<Boolean> result : results) {
+   *   boolean deleted = result.get(); // throws StorageException if the delete failed
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of batch requests in flight
+   */
+  StorageBulkExecutor bulkExecutor(int parallelism);
+
+  /**
+   * Creates a new copier for large amounts of blobs, or for very large blobs. The copier runs up to
+   * {@code parallelism} copies concurrently, either as server-side rewrites or, for very large
+   * blobs, as parallel ranged copies whose parts are composed into the target blob. The copier
+   * should be closed once all copies have been added, to wait for their results and release its
+   * threads.
+   *
+   * <p>Example of copying many blobs to another bucket, logging their progress.
+   * <pre> {@code
+   * List<BlobId> sources = ...;
+   * StorageBulkCopier.ProgressListener listener = new StorageBulkCopier.ProgressListener() {
+   *   public void onProgress(CopyRequest request, long bytesCopied, long blobSize) {
+   *     System.out.println(request.getSource() + ": " + bytesCopied + "/" + blobSize);
+   *   }
+   * };
+   * try (StorageBulkCopier copier = parallelStorage.bulkCopier(8)) {
+   *   for (BlobId source : sources) {
+   *     CopyRequest request = CopyRequest.newBuilder()
+   *         .setSource(source)
+   *         .setTarget(BlobId.of("other_bucket", source.getName()))
+   *         .setMegabytesCopiedPerChunk(64L)
+   *         .build();
+   *     copier.copy(request, listener);
+   *   }
+   * }
+   * }</pre>
+   *
+   * @param parallelism the maximum number of copies in progress
+   * @see StorageBulkCopier
+   */
+  StorageBulkCopier bulkCopier(int parallelism);
+}
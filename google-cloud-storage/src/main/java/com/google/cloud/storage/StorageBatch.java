@@ -151,7 +151,7 @@ public class StorageBatch {
     batch.submit();
   }
 
-  private RpcBatch.Callback<Void> createDeleteCallback(final StorageBatchResult<Boolean> result) {
+  static RpcBatch.Callback<Void> createDeleteCallback(final StorageBatchResult<Boolean> result) {
     return new RpcBatch.Callback<Void>() {
       @Override
       public void onSuccess(Void response) {
@@ -170,7 +170,7 @@ public class StorageBatch {
     };
   }
 
-  private RpcBatch.Callback<StorageObject> createGetCallback(final StorageOptions serviceOptions,
+  static RpcBatch.Callback<StorageObject> createGetCallback(final StorageOptions serviceOptions,
       final StorageBatchResult<Blob> result) {
     return new RpcBatch.Callback<StorageObject>() {
       @Override
@@ -191,7 +191,7 @@ public class StorageBatch {
     };
   }
 
-  private RpcBatch.Callback<StorageObject> createUpdateCallback(final StorageOptions serviceOptions,
+  static RpcBatch.Callback<StorageObject> createUpdateCallback(final StorageOptions serviceOptions,
       final StorageBatchResult<Blob> result) {
     return new RpcBatch.Callback<StorageObject>() {
       @Override
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.Storage.CopyRequest;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A copier for large amounts of blobs, or for very large blobs. Up to {@code parallelism} copies
+ * run concurrently, each on its own thread.
+ *
+ * <p>Copies added with {@link #copy(CopyRequest, ProgressListener)} are performed by Cloud Storage
+ * with a sequence of rewrite requests, as for {@link Storage#copy(CopyRequest)}. Each request
+ * copies at most {@link CopyRequest#getMegabytesCopiedPerChunk()} megabytes, if set. Running many
+ * rewrites concurrently reduces the time needed to copy many blobs across locations or storage
+ * classes, where each rewrite can take many requests.
+ *
+ * <p>A single rewrite cannot be split, so copies of very large blobs can instead be added with
+ * {@link #rangedCopy(CopyRequest, ProgressListener)}. The blob is then read with concurrent ranged
+ * reads and written with concurrent part uploads that are composed into the target blob, as for
+ * {@link ParallelStorage#parallelReader(BlobId, int, BlobSourceOption...)} and
+ * {@link ParallelStorage#parallelWriter(BlobInfo, int, Storage.BlobWriteOption...)}. The content is
+ * transferred through the client, and the target blob is a composite object. All ranged copies
+ * share one pool of {@code parallelism} threads for their reads and uploads. Each of them keeps
+ * one read and one upload in flight, and they share {@code parallelism} slots for more, so the
+ * memory used grows linearly with {@code parallelism}: at most about {@code 5 * parallelism}
+ * ranges are buffered in total.
+ *
+ * <p>Adding a copy blocks while {@code parallelism} copies are in progress, so the copier can be
+ * fed an unbounded stream of copies. Progress listeners are invoked on the copier's threads.
+ * Results are guaranteed to be available once {@link #flush()} or {@link #close()} returns.
+ *
+ * <p>Example of copying a stream of blobs to another bucket:
+ * <pre>{@code
+ * try (StorageBulkCopier copier = parallelStorage.bulkCopier(8)) {
+ *   for (BlobId source : sources) {
+ *     copier.copy(CopyRequest.of(source, BlobId.of("other_bucket", source.getName())));
+ *   }
+ * }
+ * }</pre>
+ *
+ * <p>This class is thread-safe.
+ */
+public class StorageBulkCopier implements AutoCloseable {
+
+  static final int DEFAULT_RANGE_SIZE = 16 * 1024 * 1024;
+  private static final int TRANSFER_BUFFER_SIZE = 256 * 1024;
+  private static final ProgressListener NO_PROGRESS = new ProgressListener() {
+    @Override
+    public void onProgress(CopyRequest request, long bytesCopied, long blobSize) {
+      // nothing to do
+    }
+  };
+
+  private final StorageOptions options;
+  private final int parallelism;
+  private final int rangeSize;
+  private final Semaphore inFlightCopies;
+  private final ExecutorService executor;
+  // runs the ranged reads and part uploads of all ranged copies
+  private final ExecutorService transferExecutor;
+  // read-ahead and upload slots shared by all ranged copies, beyond one of each per copy
+  private final Semaphore transferSlots;
+  private boolean isOpen = true;
+
+  /**
+   * A listener notified of the progress of a copy.
+   */
+  public interface ProgressListener {
+
+    /**
+     * Invoked each time more bytes of the source blob of {@code request} have been copied.
+     *
+     * @param request the copy request
+     * @param bytesCopied the number of bytes copied so far
+     * @param blobSize the size of the source blob
+     */
+    void onProgress(CopyRequest request, long bytesCopied, long blobSize);
+  }
+
+  StorageBulkCopier(StorageOptions options, int parallelism) {
+    this(options, parallelism, DEFAULT_RANGE_SIZE);
+  }
+
+  StorageBulkCopier(StorageOptions options, int parallelism, int rangeSize) {
+    checkArgument(parallelism > 0, "Parallelism must be positive");
+    checkArgument(rangeSize > 0, "Range size must be positive");
+    this.options = options;
+    this.parallelism = parallelism;
+    this.rangeSize = rangeSize;
+    this.inFlightCopies = new Semaphore(parallelism);
+    this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("storage-bulk-copier-%d")
+        .build());
+    this.transferExecutor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("storage-bulk-copier-transfer-%d")
+        .build());
+    this.transferSlots = new Semaphore(parallelism);
+  }
+
+  /**
+   * Adds a server-side copy to this copier. Calling {@link StorageBatchResult#get()} on the
+   * return value yields the copied {@link Blob} if successful, or throws a
+   * {@link StorageException} if the copy failed.
+   */
+  public StorageBatchResult<Blob> copy(CopyRequest request) {
+    return copy(request, NO_PROGRESS);
+  }
+
+  /**
+   * Adds a server-side copy to this copier. {@code listener} is notified after each rewrite
+   * request. Calling {@link StorageBatchResult#get()} on the return value yields the copied
+   * {@link Blob} if successful, or throws a {@link StorageException} if the copy failed.
+   */
+  public StorageBatchResult<Blob> copy(final CopyRequest request,
+      final ProgressListener listener) {
+    checkNotNull(request);
+    checkNotNull(listener);
+    return submit(new Callable<Blob>() {
+      @Override
+      public Blob call() {
+        CopyWriter copyWriter = options.getService().copy(request);
+        listener.onProgress(request, copyWriter.getTotalBytesCopied(), copyWriter.getBlobSize());
+        while (!copyWriter.isDone()) {
+          copyWriter.copyChunk();
+          listener.onProgress(request, copyWriter.getTotalBytesCopied(),
+              copyWriter.getBlobSize());
+        }
+        return copyWriter.getResult();
+      }
+    });
+  }
+
+  /**
+   * Adds a parallel ranged copy to this copier. Calling {@link StorageBatchResult#get()} on the
+   * return value yields the copied {@link Blob} if successful, or throws a
+   * {@link StorageException} if the copy failed.
+   */
+  public StorageBatchResult<Blob> rangedCopy(CopyRequest request) {
+    return rangedCopy(request, NO_PROGRESS);
+  }
+
+  /**
+   * Adds a parallel ranged copy to this copier. {@code listener} is notified each time a range of
+   * the source blob has been copied. Calling {@link StorageBatchResult#get()} on the return value
+   * yields the copied {@link Blob} if successful, or throws a {@link StorageException} if the copy
+   * failed.
+   *
+   * <p>The same restrictions as for {@link ParallelStorage#parallelWriter(BlobInfo, int,
+   * Storage.BlobWriteOption...)} apply to the target blob and its options.
+   */
+  public StorageBatchResult<Blob> rangedCopy(final CopyRequest request,
+      final ProgressListener listener) {
+    checkNotNull(request);
+    checkNotNull(listener);
+    return submit(new Callable<Blob>() {
+      @Override
+      public Blob call() throws IOException {
+        return copyRanges(request, listener);
+      }
+    });
+  }
+
+  /**
+   * Waits for all copies in progress to complete.
+   */
+  public synchronized void flush() {
+    checkState(isOpen, "The copier is closed");
+    inFlightCopies.acquireUninterruptibly(parallelism);
+    inFlightCopies.release(parallelism);
+  }
+
+  /**
+   * Waits for all copies in progress to complete and releases the copier's threads. Calling this
+   * method on a closed copier has no effect.
+   */
+  @Override
+  public synchronized void close() {
+    if (isOpen) {
+      flush();
+      isOpen = false;
+      executor.shutdown();
+      transferExecutor.shutdown();
+    }
+  }
+
+  private synchronized StorageBatchResult<Blob> submit(final Callable<Blob> copy) {
+    checkState(isOpen, "The copier is closed");
+    final StorageBatchResult<Blob> result = new StorageBatchResult<>();
+    inFlightCopies.acquireUninterruptibly();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            result.success(copy.call());
+          } catch (StorageException ex) {
+            result.error(ex);
+          } catch (Exception ex) {
+            result.error(
+                new StorageException(BaseServiceException.UNKNOWN_CODE, ex.getMessage(), ex));
+          } finally {
+            inFlightCopies.release();
+          }
+        }
+      });
+    } catch (RuntimeException ex) {
+      inFlightCopies.release();
+      throw ex;
+    }
+    return result;
+  }
+
+  private Blob copyRanges(CopyRequest request, ProgressListener listener) throws IOException {
+    BlobId sourceId = request.getSource();
+    Map<StorageRpc.Option, ?> sourceOptions = StorageImpl.optionMap(sourceId,
+        request.getSourceOptions().toArray(new BlobSourceOption[0]));
+    StorageObject source = getBlob(sourceId.toPb(), sourceOptions);
+    if (source == null) {
+      throw new StorageException(404, "Source blob " + sourceId + " not found");
+    }
+    BlobInfo sourceInfo = BlobInfo.fromPb(source);
+    BlobInfo target = request.getTarget();
+    if (!request.overrideInfo()) {
+      target = target.toBuilder()
+          .setContentType(sourceInfo.getContentType())
+          .setContentEncoding(sourceInfo.getContentEncoding())
+          .setContentDisposition(sourceInfo.getContentDisposition())
+          .setContentLanguage(sourceInfo.getContentLanguage())
+          .setCacheControl(sourceInfo.getCacheControl())
+          .setMetadata(sourceInfo.getMetadata())
+          .build();
+    }
+    Map<StorageRpc.Option, ?> targetOptions = StorageImpl.optionMap(target,
+        request.getTargetOptions().toArray(new BlobTargetOption[0]));
+    long blobSize = sourceInfo.getSize();
+    long bytesCopied = 0;
+    // pin the reads to the generation whose size is known
+    BlobId pinnedSource = BlobId.of(sourceInfo.getBucket(), sourceInfo.getName(),
+        sourceInfo.getGeneration());
+    ParallelCompositeWriteChannel writer = new ParallelCompositeWriteChannel(options, target,
+        targetOptions, parallelism, transferExecutor, transferSlots);
+    try (ReadChannel reader = new ParallelBlobReadChannel(options, pinnedSource, sourceOptions,
+        parallelism, transferExecutor, transferSlots)) {
+      reader.setChunkSize(rangeSize);
+      writer.setChunkSize(rangeSize);
+      ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+      long nextProgress = rangeSize;
+      int read;
+      while ((read = reader.read(buffer)) >= 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          writer.write(buffer);
+        }
+        buffer.clear();
+        bytesCopied += read;
+        if (bytesCopied >= nextProgress) {
+          listener.onProgress(request, bytesCopied, blobSize);
+          nextProgress = bytesCopied - bytesCopied % rangeSize + rangeSize;
+        }
+      }
+    } catch (IOException | RuntimeException ex) {
+      // do not compose the parts copied so far into a truncated target blob
+      writer.abort();
+      throw ex;
+    }
+    writer.close();
+    listener.onProgress(request, bytesCopied, blobSize);
+    StorageObject copied = getBlob(target.getBlobId().toPb(), StorageImpl.optionMap());
+    if (copied == null) {
+      throw new StorageException(404, "Target blob " + target.getBlobId() + " not found");
+    }
+    return Blob.fromPb(options.getService(), copied);
+  }
+
+  private StorageObject getBlob(final StorageObject blob,
+      final Map<StorageRpc.Option, ?> optionsMap) {
+    final StorageRpc storageRpc = options.getStorageRpcV1();
+    try {
+      return runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return storageRpc.get(blob, optionsMap);
+        }
+      }, options.getRetrySettings(), StorageImpl.EXCEPTION_HANDLER, options.getClock());
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+}
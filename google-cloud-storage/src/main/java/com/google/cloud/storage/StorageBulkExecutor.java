@@ -0,0 +1,470 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.Storage.BlobGetOption;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.spi.v1.RpcBatch;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor for large amounts of delete, update and get operations. Operations are grouped into
+ * batches of at most {@value #MAX_BATCH_SIZE} requests, and up to {@code parallelism} batches are
+ * submitted concurrently. Requests that fail with a retryable error are sent again in a later
+ * batch, according to the service's {@link StorageOptions#getRetrySettings() retry settings}.
+ *
+ * <p>Adding an operation blocks while {@code parallelism} batches are in flight, so the executor
+ * can be fed an unbounded stream of operations using a bounded amount of memory. A batch is only
+ * submitted when the next operation is added or when {@link #flush()} is called, so callbacks can
+ * be registered on the returned result until then. Callbacks are invoked on the executor's
+ * threads and must not add operations to the executor; exceptions thrown by callbacks are ignored.
+ * Results are guaranteed to be available once {@link #flush()} or {@link #close()} returns.
+ *
+ * <p>Example of deleting a stream of blobs:
+ * <pre>{@code
+ * try (StorageBulkExecutor executor = parallelStorage.bulkExecutor(4)) {
+ *   for (BlobId blobId : blobIds) {
+ *     executor.delete(blobId);
+ *   }
+ * }
+ * }</pre>
+ *
+ * <p>This class is thread-safe.
+ */
+public class StorageBulkExecutor implements AutoCloseable {
+
+  static final int MAX_BATCH_SIZE = 100;
+
+  private final StorageOptions options;
+  private final StorageRpc storageRpc;
+  private final int parallelism;
+  private final Semaphore inFlightBatches;
+  private final ExecutorService executor;
+  private final AtomicLong operationCount = new AtomicLong();
+  private final AtomicLong completedCount = new AtomicLong();
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong batchCount = new AtomicLong();
+  private final Stopwatch stopwatch = Stopwatch.createUnstarted();
+  private List<Operation<?>> pending = new ArrayList<>();
+  // batches taken from pending that are waiting for a permit to be submitted
+  private int submitting;
+  private boolean isOpen = true;
+
+  StorageBulkExecutor(StorageOptions options, int parallelism) {
+    checkArgument(parallelism > 0, "Parallelism must be positive");
+    this.options = options;
+    this.storageRpc = options.getStorageRpcV1();
+    this.parallelism = parallelism;
+    this.inFlightBatches = new Semaphore(parallelism);
+    this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("storage-bulk-executor-%d")
+        .build());
+  }
+
+  /**
+   * Aggregate statistics of the operations processed by a {@link StorageBulkExecutor}.
+   */
+  public static class Stats {
+
+    private final long operationCount;
+    private final long completedCount;
+    private final long retryCount;
+    private final long batchCount;
+    private final long elapsedMillis;
+
+    Stats(long operationCount, long completedCount, long retryCount, long batchCount,
+        long elapsedMillis) {
+      this.operationCount = operationCount;
+      this.completedCount = completedCount;
+      this.retryCount = retryCount;
+      this.batchCount = batchCount;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns the number of operations added to the executor.
+     */
+    public long getOperationCount() {
+      return operationCount;
+    }
+
+    /**
+     * Returns the number of operations whose result is available, either successful or failed.
+     */
+    public long getCompletedCount() {
+      return completedCount;
+    }
+
+    /**
+     * Returns the number of requests that failed with a retryable error.
+     */
+    public long getRetryCount() {
+      return retryCount;
+    }
+
+    /**
+     * Returns the number of batch requests sent, including retries.
+     */
+    public long getBatchCount() {
+      return batchCount;
+    }
+
+    /**
+     * Returns the time elapsed since the first operation was added, in milliseconds.
+     */
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /**
+     * Returns the number of operations completed per second since the first operation was added.
+     */
+    public double getOperationsPerSecond() {
+      return elapsedMillis == 0 ? 0 : completedCount * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("operationCount", operationCount)
+          .add("completedCount", completedCount)
+          .add("retryCount", retryCount)
+          .add("batchCount", batchCount)
+          .add("elapsedMillis", elapsedMillis)
+          .toString();
+    }
+  }
+
+  /**
+   * A single operation, that can be added to several batches until it completes.
+   */
+  private abstract static class Operation<T> {
+
+    private final StorageBatchResult<?> result;
+    private final RpcBatch.Callback<T> callback;
+    private GoogleJsonError lastError;
+    private boolean completed;
+
+    Operation(StorageBatchResult<?> result, RpcBatch.Callback<T> callback) {
+      this.result = result;
+      this.callback = callback;
+    }
+
+    abstract void addTo(RpcBatch batch, RpcBatch.Callback<T> callback);
+
+    void addTo(RpcBatch batch, final List<Operation<?>> retryable,
+        final AtomicLong completedCount) {
+      addTo(batch, new RpcBatch.Callback<T>() {
+        @Override
+        public void onSuccess(T response) {
+          try {
+            callback.onSuccess(response);
+          } catch (RuntimeException ex) {
+            setError(ex);
+          } finally {
+            complete(completedCount);
+          }
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError googleJsonError) {
+          if (new StorageException(googleJsonError).isRetryable()) {
+            lastError = googleJsonError;
+            retryable.add(Operation.this);
+          } else {
+            fail(googleJsonError, completedCount);
+          }
+        }
+      });
+    }
+
+    void fail(GoogleJsonError googleJsonError, AtomicLong completedCount) {
+      try {
+        callback.onFailure(googleJsonError);
+      } catch (RuntimeException ex) {
+        setError(ex);
+      } finally {
+        complete(completedCount);
+      }
+    }
+
+    /**
+     * Sets the result of the operation to {@code ex} if a callback threw it before the result was
+     * set, e.g. while converting the response. The exception is not rethrown so that it does not
+     * abort the rest of the batch.
+     */
+    private void setError(RuntimeException ex) {
+      if (!result.completed()) {
+        result.error(new StorageException(StorageException.UNKNOWN_CODE, ex.getMessage(), ex));
+      }
+    }
+
+    private void complete(AtomicLong completedCount) {
+      completed = true;
+      completedCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Adds a "delete blob" operation to this executor. Calling {@link StorageBatchResult#get()} on
+   * the return value yields {@code true} upon successful deletion, {@code false} if the blob was
+   * not found, or throws a {@link StorageException} if the operation failed.
+   */
+  public StorageBatchResult<Boolean> delete(final BlobId blob, BlobSourceOption... options) {
+    StorageBatchResult<Boolean> result = new StorageBatchResult<>();
+    final Map<StorageRpc.Option, ?> optionMap = StorageImpl.optionMap(blob, options);
+    add(new Operation<Void>(result, StorageBatch.createDeleteCallback(result)) {
+      @Override
+      void addTo(RpcBatch batch, RpcBatch.Callback<Void> callback) {
+        batch.addDelete(blob.toPb(), callback, optionMap);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Adds an "update blob" operation to this executor. The {@code options} can be used in the same
+   * way as for {@link Storage#update(BlobInfo, BlobTargetOption...)}. Calling
+   * {@link StorageBatchResult#get()} on the return value yields the updated {@link Blob} if
+   * successful, or throws a {@link StorageException} if the operation failed.
+   */
+  public StorageBatchResult<Blob> update(final BlobInfo blobInfo, BlobTargetOption... options) {
+    StorageBatchResult<Blob> result = new StorageBatchResult<>();
+    final Map<StorageRpc.Option, ?> optionMap = StorageImpl.optionMap(blobInfo, options);
+    RpcBatch.Callback<StorageObject> callback =
+        StorageBatch.createUpdateCallback(this.options, result);
+    add(new Operation<StorageObject>(result, callback) {
+      @Override
+      void addTo(RpcBatch batch, RpcBatch.Callback<StorageObject> callback) {
+        batch.addPatch(blobInfo.toPb(), callback, optionMap);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Adds a "get blob" operation to this executor. The {@code options} can be used in the same way
+   * as for {@link Storage#get(BlobId, BlobGetOption...)}. Calling {@link StorageBatchResult#get()}
+   * on the return value yields the requested {@link Blob} if successful, {@code null} if no such
+   * blob exists, or throws a {@link StorageException} if the operation failed.
+   */
+  public StorageBatchResult<Blob> get(final BlobId blob, BlobGetOption... options) {
+    StorageBatchResult<Blob> result = new StorageBatchResult<>();
+    final Map<StorageRpc.Option, ?> optionMap = StorageImpl.optionMap(blob, options);
+    add(new Operation<StorageObject>(result, StorageBatch.createGetCallback(this.options, result)) {
+      @Override
+      void addTo(RpcBatch batch, RpcBatch.Callback<StorageObject> callback) {
+        batch.addGet(blob.toPb(), callback, optionMap);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Submits all pending operations and waits for all batches in flight to complete.
+   */
+  public void flush() {
+    List<Operation<?>> operations;
+    synchronized (this) {
+      checkState(isOpen, "The executor is closed");
+      operations = takePending();
+    }
+    submit(operations);
+    awaitBatches();
+  }
+
+  /**
+   * Returns a snapshot of the statistics of the operations processed so far.
+   */
+  public Stats getStats() {
+    long elapsedMillis;
+    synchronized (stopwatch) {
+      elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    }
+    return new Stats(operationCount.get(), completedCount.get(), retryCount.get(),
+        batchCount.get(), elapsedMillis);
+  }
+
+  /**
+   * Submits all pending operations, waits for them to complete and releases the executor's
+   * threads. Calling this method on a closed executor has no effect.
+   */
+  @Override
+  public void close() {
+    List<Operation<?>> operations;
+    synchronized (this) {
+      if (!isOpen) {
+        return;
+      }
+      isOpen = false;
+      operations = takePending();
+    }
+    submit(operations);
+    awaitBatches();
+    executor.shutdown();
+  }
+
+  private void add(Operation<?> operation) {
+    List<Operation<?>> operations = null;
+    synchronized (this) {
+      checkState(isOpen, "The executor is closed");
+      if (pending.size() >= MAX_BATCH_SIZE) {
+        operations = takePending();
+      }
+      synchronized (stopwatch) {
+        if (!stopwatch.isRunning()) {
+          stopwatch.start();
+        }
+      }
+      operationCount.incrementAndGet();
+      pending.add(operation);
+    }
+    submit(operations);
+  }
+
+  /**
+   * Takes the pending operations, if any, to be passed to {@link #submit(List)} outside of the
+   * lock. Must be called while holding the lock.
+   */
+  private List<Operation<?>> takePending() {
+    if (pending.isEmpty()) {
+      return null;
+    }
+    List<Operation<?>> operations = pending;
+    pending = new ArrayList<>();
+    submitting++;
+    return operations;
+  }
+
+  /**
+   * Submits a batch taken by {@link #takePending()}, blocking until fewer than {@code parallelism}
+   * batches are in flight. Must not be called while holding the lock.
+   */
+  private void submit(final List<Operation<?>> operations) {
+    if (operations == null) {
+      return;
+    }
+    try {
+      inFlightBatches.acquireUninterruptibly();
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              process(operations);
+            } finally {
+              inFlightBatches.release();
+            }
+          }
+        });
+      } catch (RuntimeException ex) {
+        inFlightBatches.release();
+        throw ex;
+      }
+    } finally {
+      synchronized (this) {
+        submitting--;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits for the batches being submitted by other threads and for all batches in flight to
+   * complete.
+   */
+  private void awaitBatches() {
+    boolean interrupted = false;
+    synchronized (this) {
+      while (submitting > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    inFlightBatches.acquireUninterruptibly(parallelism);
+    inFlightBatches.release(parallelism);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void process(final List<Operation<?>> operations) {
+    try {
+      runWithRetries(new Callable<Void>() {
+        private List<Operation<?>> toSend = operations;
+
+        @Override
+        public Void call() {
+          List<Operation<?>> retryable = new ArrayList<>();
+          RpcBatch batch = storageRpc.createBatch();
+          for (Operation<?> operation : toSend) {
+            if (!operation.completed) {
+              operation.addTo(batch, retryable, completedCount);
+            }
+          }
+          batchCount.incrementAndGet();
+          batch.submit();
+          if (!retryable.isEmpty()) {
+            retryCount.addAndGet(retryable.size());
+            toSend = retryable;
+            throw new StorageException(retryable.get(0).lastError);
+          }
+          return null;
+        }
+      }, options.getRetrySettings(), StorageImpl.EXCEPTION_HANDLER, options.getClock());
+    } catch (RetryHelper.RetryHelperException e) {
+      GoogleJsonError batchError = new GoogleJsonError();
+      batchError.setCode(StorageException.UNKNOWN_CODE);
+      batchError.setMessage(e.getMessage());
+      if (e.getCause() instanceof StorageException) {
+        batchError.setCode(((StorageException) e.getCause()).getCode());
+        batchError.setMessage(e.getCause().getMessage());
+      }
+      for (Operation<?> operation : operations) {
+        if (!operation.completed) {
+          operation.fail(
+              operation.lastError != null ? operation.lastError : batchError, completedCount);
+        }
+      }
+    }
+  }
+}
@@ -46,6 +46,7 @@ import com.google.cloud.PageImpl.NextPageFetcher;
 import com.google.cloud.Policy;
 import com.google.cloud.ReadChannel;
 import com.google.cloud.RetryHelper.RetryHelperException;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.Acl.Entity;
 import com.google.cloud.storage.spi.v1.StorageRpc;
 import com.google.cloud.storage.spi.v1.StorageRpc.RewriteResponse;
@@ -70,18 +71,19 @@ import java.net.URLEncoder;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
-final class StorageImpl extends BaseService<StorageOptions> implements Storage {
+final class StorageImpl extends BaseService<StorageOptions> implements Storage, ParallelStorage {
 
   private static final byte[] EMPTY_BYTE_ARRAY = {};
   private static final String EMPTY_BYTE_ARRAY_MD5 = "1B2M2Y8AsgTpgAmY7PhCfg==";
   private static final String EMPTY_BYTE_ARRAY_CRC32C = "AAAAAA==";
-  private static final String PATH_DELIMITER = "/";
+  static final String PATH_DELIMITER = "/";
 
   private static final Function<Tuple<Storage, Boolean>, Boolean> DELETE_FUNCTION =
       new Function<Tuple<Storage, Boolean>, Boolean>() {
@@ -255,6 +257,30 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return listBlobs(bucket, getOptions(), optionMap(options));
   }
 
+  @Override
+  public Iterable<Blob> listAll(final String bucket, final int parallelism,
+      BlobListOption... options) {
+    final Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
+    return new Iterable<Blob>() {
+      @Override
+      public Iterator<Blob> iterator() {
+        return BlobListIterator.create(bucket, getOptions(), parallelism, optionsMap);
+      }
+    };
+  }
+
+  @Override
+  public Iterable<Blob> listAll(final String bucket, final Iterable<String> prefixes,
+      final int parallelism, BlobListOption... options) {
+    final Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
+    return new Iterable<Blob>() {
+      @Override
+      public Iterator<Blob> iterator() {
+        return BlobListIterator.create(bucket, getOptions(), parallelism, prefixes, optionsMap);
+      }
+    };
+  }
+
   private static Page<Bucket> listBuckets(final StorageOptions serviceOptions,
       final Map<StorageRpc.Option, ?> optionsMap) {
     try {
@@ -282,7 +308,7 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     }
   }
 
-  private static Page<Blob> listBlobs(final String bucket,
+  static Page<Blob> listBlobs(final String bucket,
       final StorageOptions serviceOptions, final Map<StorageRpc.Option, ?> optionsMap) {
     try {
       Tuple<String, Iterable<StorageObject>> result = runWithRetries(
@@ -467,6 +493,16 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return new StorageBatch(this.getOptions());
   }
 
+  @Override
+  public StorageBulkExecutor bulkExecutor(int parallelism) {
+    return new StorageBulkExecutor(this.getOptions(), parallelism);
+  }
+
+  @Override
+  public StorageBulkCopier bulkCopier(int parallelism) {
+    return new StorageBulkCopier(this.getOptions(), parallelism);
+  }
+
   @Override
   public ReadChannel reader(String bucket, String blob, BlobSourceOption... options) {
     Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
@@ -479,6 +515,24 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return new BlobReadChannel(getOptions(), blob, optionsMap);
   }
 
+  @Override
+  public ReadChannel parallelReader(BlobId blob, int parallelism, BlobSourceOption... options) {
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
+    return new ParallelBlobReadChannel(getOptions(), blob, optionsMap, parallelism);
+  }
+
+  @Override
+  public ReadChannel parallelReader(BlobInfo blob, int parallelism, BlobSourceOption... options) {
+    BlobId blobId = blob.getBlobId();
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(blobId, options);
+    ParallelBlobReadChannel channel =
+        new ParallelBlobReadChannel(getOptions(), blobId, optionsMap, parallelism);
+    if (blob.getGeneration() != null && blob.getSize() != null) {
+      channel.pin(blob.getGeneration(), blob.getSize());
+    }
+    return channel;
+  }
+
   @Override
   public BlobWriteChannel writer(BlobInfo blobInfo, BlobWriteOption... options) {
     Tuple<BlobInfo, BlobTargetOption[]> targetOptions = BlobTargetOption.convert(blobInfo, options);
@@ -490,6 +544,17 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return new BlobWriteChannel(getOptions(), blobInfo, optionsMap);
   }
 
+  @Override
+  public WriteChannel parallelWriter(BlobInfo blobInfo, int parallelism,
+      BlobWriteOption... options) {
+    Tuple<BlobInfo, BlobTargetOption[]> targetOptions = BlobTargetOption.convert(blobInfo, options);
+    BlobInfo targetInfo = targetOptions.x();
+    checkArgument(targetInfo.getMd5() == null && targetInfo.getCrc32c() == null,
+        "md5Match and crc32cMatch are not supported by parallel composite uploads");
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(targetInfo, targetOptions.y());
+    return new ParallelCompositeWriteChannel(getOptions(), targetInfo, optionsMap, parallelism);
+  }
+
   @Override
   public URL signUrl(BlobInfo blobInfo, long duration, TimeUnit unit, SignUrlOption... options) {
     EnumMap<SignUrlOption.Option, Object> optionMap = Maps.newEnumMap(SignUrlOption.Option.class);
@@ -963,7 +1028,7 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return ImmutableMap.copyOf(temp);
   }
 
-  private static Map<StorageRpc.Option, ?> optionMap(Option... options) {
+  static Map<StorageRpc.Option, ?> optionMap(Option... options) {
     return optionMap(null, null, Arrays.asList(options));
   }
 
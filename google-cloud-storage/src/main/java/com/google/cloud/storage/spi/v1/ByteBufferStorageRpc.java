@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.spi.v1;
+
+import com.google.cloud.storage.StorageException;
+import java.nio.ByteBuffer;
+
+/**
+ * Optional interface of {@link StorageRpc} implementations that can upload the content of a
+ * {@link ByteBuffer}, typically a direct one, without copying it to an array first. The client uses
+ * it when the RPC layer implements it, and otherwise copies the buffer and calls
+ * {@link StorageRpc#write(String, byte[], int, long, int, boolean)} instead.
+ */
+public interface ByteBufferStorageRpc {
+
+  /**
+   * Writes the remaining bytes of the provided buffer to a storage object at the provided
+   * location. The position of {@code toWrite} is not modified, so that the same buffer can be
+   * written again if the request is retried.
+   *
+   * @throws StorageException upon failure
+   */
+  void write(String uploadId, ByteBuffer toWrite, long destOffset, boolean last);
+}
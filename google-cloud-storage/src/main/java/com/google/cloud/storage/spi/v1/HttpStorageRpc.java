@@ -23,8 +23,10 @@ import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 import com.google.api.client.googleapis.batch.BatchRequest;
 import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
 import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.AbstractHttpContent;
 import com.google.api.client.http.ByteArrayContent;
 import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
 import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
@@ -65,15 +67,19 @@ import com.google.common.io.BaseEncoding;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import org.apache.http.HttpStatus;
 
-public class HttpStorageRpc implements StorageRpc {
+public class HttpStorageRpc implements StorageRpc, ByteBufferStorageRpc {
 
   public static final String DEFAULT_PROJECTION = "full";
   private static final String ENCRYPTION_KEY_PREFIX = "x-goog-encryption-";
@@ -440,6 +446,7 @@ public class HttpStorageRpc implements StorageRpc {
     try {
       return storage.objects()
           .compose(target.getBucket(), target.getName(), request)
+          .setDestinationPredefinedAcl(Option.PREDEFINED_ACL.getString(targetOptions))
           .setIfMetagenerationMatch(Option.IF_METAGENERATION_MATCH.getLong(targetOptions))
           .setIfGenerationMatch(Option.IF_GENERATION_MATCH.getLong(targetOptions))
           .execute();
@@ -522,13 +529,30 @@ public class HttpStorageRpc implements StorageRpc {
   @Override
   public void write(String uploadId, byte[] toWrite, int toWriteOffset, long destOffset, int length,
       boolean last) {
+    write(uploadId, new ByteArrayContent(null, toWrite, toWriteOffset, length), destOffset, length,
+        last);
+  }
+
+  @Override
+  public void write(String uploadId, ByteBuffer toWrite, long destOffset, boolean last) {
+    HttpContent content;
+    if (toWrite.hasArray()) {
+      content = new ByteArrayContent(null, toWrite.array(),
+          toWrite.arrayOffset() + toWrite.position(), toWrite.remaining());
+    } else {
+      content = new ByteBufferContent(toWrite);
+    }
+    write(uploadId, content, destOffset, toWrite.remaining(), last);
+  }
+
+  private void write(String uploadId, HttpContent content, long destOffset, int length,
+      boolean last) {
     try {
       if (length == 0 && !last) {
         return;
       }
       GenericUrl url = new GenericUrl(uploadId);
-      HttpRequest httpRequest = storage.getRequestFactory().buildPutRequest(url,
-          new ByteArrayContent(null, toWrite, toWriteOffset, length));
+      HttpRequest httpRequest = storage.getRequestFactory().buildPutRequest(url, content);
       long limit = destOffset + length;
       StringBuilder range = new StringBuilder("bytes ");
       if (length == 0) {
@@ -863,4 +887,38 @@ public class HttpStorageRpc implements StorageRpc {
       throw translate(ex);
     }
   }
+
+  /**
+   * HTTP content that streams the remaining bytes of a {@link ByteBuffer}, typically a direct one,
+   * without first copying them into a {@code byte[]}.
+   */
+  private static class ByteBufferContent extends AbstractHttpContent {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferContent(ByteBuffer buffer) {
+      super((String) null);
+      this.buffer = buffer;
+    }
+
+    @Override
+    public long getLength() {
+      return buffer.remaining();
+    }
+
+    @Override
+    public boolean retrySupported() {
+      return true;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      WritableByteChannel channel = Channels.newChannel(out);
+      ByteBuffer data = buffer.duplicate();
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+      out.flush();
+    }
+  }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.cloud.storage.spi.v1.StorageRpc.Tuple;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class BlobListIteratorTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = createMock(StorageRpcFactory.class);
+    storageRpcMock = createMock(StorageRpc.class);
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock);
+    replay(rpcFactoryMock);
+    options = StorageOptions.newBuilder()
+        .setProjectId("projectid")
+        .setServiceRpcFactory(rpcFactoryMock)
+        .setRetrySettings(ServiceOptions.getNoRetrySettings())
+        .build();
+  }
+
+  @After
+  public void tearDown() {
+    verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testPagesAreReturnedInOrder() {
+    expect(storageRpcMock.list(BUCKET_NAME, EMPTY_RPC_OPTIONS))
+        .andReturn(page("token", objects("a", "b")));
+    expect(storageRpcMock.list(BUCKET_NAME,
+        ImmutableMap.of(StorageRpc.Option.PAGE_TOKEN, "token")))
+        .andReturn(page(null, objects("c")));
+    replay(storageRpcMock);
+    Iterator<Blob> iterator =
+        BlobListIterator.create(BUCKET_NAME, options, 1, EMPTY_RPC_OPTIONS);
+    assertEquals(ImmutableList.of("a", "b", "c"), names(iterator));
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  public void testEmptyListing() {
+    expect(storageRpcMock.list(BUCKET_NAME, EMPTY_RPC_OPTIONS))
+        .andReturn(page(null, null));
+    replay(storageRpcMock);
+    Iterator<Blob> iterator =
+        BlobListIterator.create(BUCKET_NAME, options, 1, EMPTY_RPC_OPTIONS);
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  public void testDirectoriesAreListedAsShards() {
+    expect(storageRpcMock.list(BUCKET_NAME,
+        ImmutableMap.of(StorageRpc.Option.DELIMITER, StorageImpl.PATH_DELIMITER)))
+        .andReturn(page(null, ImmutableList.<StorageObject>builder()
+            .addAll(objects("top"))
+            .add(directory("d1/"))
+            .add(directory("d2/"))
+            .build()));
+    expect(storageRpcMock.list(BUCKET_NAME, ImmutableMap.of(StorageRpc.Option.PREFIX, "d1/")))
+        .andReturn(page("token", objects("d1/a")));
+    expect(storageRpcMock.list(BUCKET_NAME,
+        ImmutableMap.of(StorageRpc.Option.PREFIX, "d1/", StorageRpc.Option.PAGE_TOKEN, "token")))
+        .andReturn(page(null, objects("d1/b")));
+    expect(storageRpcMock.list(BUCKET_NAME, ImmutableMap.of(StorageRpc.Option.PREFIX, "d2/")))
+        .andReturn(page(null, objects("d2/a")));
+    replay(storageRpcMock);
+    Iterator<Blob> iterator =
+        BlobListIterator.create(BUCKET_NAME, options, 2, EMPTY_RPC_OPTIONS);
+    List<String> names = names(iterator);
+    assertEquals(4, names.size());
+    assertEquals(ImmutableSet.of("top", "d1/a", "d1/b", "d2/a"), new HashSet<>(names));
+    assertEquals("top", names.get(0));
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  public void testCurrentDirectoryIsNotSharded() {
+    Map<StorageRpc.Option, ?> directoryOptions =
+        ImmutableMap.of(StorageRpc.Option.DELIMITER, StorageImpl.PATH_DELIMITER);
+    expect(storageRpcMock.list(BUCKET_NAME, directoryOptions))
+        .andReturn(page(null, ImmutableList.<StorageObject>builder()
+            .addAll(objects("top"))
+            .add(directory("d1/"))
+            .build()));
+    replay(storageRpcMock);
+    Iterator<Blob> iterator = BlobListIterator.create(BUCKET_NAME, options, 4, directoryOptions);
+    assertEquals(ImmutableList.of("top", "d1/"), names(iterator));
+  }
+
+  @Test
+  public void testExplicitPrefixes() {
+    expect(storageRpcMock.list(BUCKET_NAME, ImmutableMap.of(StorageRpc.Option.PREFIX, "x")))
+        .andReturn(page(null, objects("x1", "x2")));
+    expect(storageRpcMock.list(BUCKET_NAME, ImmutableMap.of(StorageRpc.Option.PREFIX, "y")))
+        .andReturn(page(null, objects("y1")));
+    replay(storageRpcMock);
+    Iterator<Blob> iterator = BlobListIterator.create(BUCKET_NAME, options, 2,
+        ImmutableList.of("x", "y"), EMPTY_RPC_OPTIONS);
+    assertEquals(ImmutableSet.of("x1", "x2", "y1"), new HashSet<>(names(iterator)));
+  }
+
+  @Test
+  public void testListingError() {
+    expect(storageRpcMock.list(BUCKET_NAME, EMPTY_RPC_OPTIONS))
+        .andThrow(new StorageException(403, "Forbidden"));
+    replay(storageRpcMock);
+    Iterator<Blob> iterator =
+        BlobListIterator.create(BUCKET_NAME, options, 1, EMPTY_RPC_OPTIONS);
+    try {
+      iterator.hasNext();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(403, ex.getCode());
+    }
+  }
+
+  @Test
+  public void testListingErrorIsSticky() {
+    expect(storageRpcMock.list(BUCKET_NAME, ImmutableMap.of(StorageRpc.Option.PREFIX, "x")))
+        .andThrow(new StorageException(403, "Forbidden"));
+    replay(storageRpcMock);
+    Iterator<Blob> iterator = BlobListIterator.create(BUCKET_NAME, options, 1,
+        ImmutableList.of("x", "y"), EMPTY_RPC_OPTIONS);
+    try {
+      iterator.hasNext();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(403, ex.getCode());
+    }
+    try {
+      iterator.hasNext();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(403, ex.getCode());
+    }
+    try {
+      iterator.next();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(403, ex.getCode());
+    }
+  }
+
+  private static Tuple<String, Iterable<StorageObject>> page(String cursor,
+      Iterable<StorageObject> objects) {
+    return Tuple.of(cursor, objects);
+  }
+
+  private static List<StorageObject> objects(String... names) {
+    List<StorageObject> objects = new ArrayList<>();
+    for (String name : names) {
+      objects.add(BlobId.of(BUCKET_NAME, name).toPb());
+    }
+    return objects;
+  }
+
+  private static StorageObject directory(String name) {
+    return new StorageObject()
+        .set("isDirectory", true)
+        .setBucket(BUCKET_NAME)
+        .setName(name)
+        .setSize(BigInteger.ZERO);
+  }
+
+  private static List<String> names(Iterator<Blob> iterator) {
+    List<String> names = new ArrayList<>();
+    while (iterator.hasNext()) {
+      names.add(iterator.next().getName());
+    }
+    return names;
+  }
+}
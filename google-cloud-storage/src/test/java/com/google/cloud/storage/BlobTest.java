@@ -118,6 +118,8 @@ public class BlobTest {
   private static final Key KEY =
       new SecretKeySpec(BaseEncoding.base64().decode(BASE64_KEY), "AES256");
 
+  private interface ParallelStorageService extends Storage, ParallelStorage {}
+
   private Storage storage;
   private Blob blob;
   private Blob expectedBlob;
@@ -320,6 +322,19 @@ public class BlobTest {
     assertSame(channel, blob.reader());
   }
 
+  @Test
+  public void testParallelReader() throws Exception {
+    initializeExpectedBlob(2);
+    ReadChannel channel = createMock(ReadChannel.class);
+    ParallelStorageService parallelStorage = createStrictMock(ParallelStorageService.class);
+    expect(parallelStorage.getOptions()).andReturn(mockOptions);
+    expect(parallelStorage.parallelReader(BLOB_INFO.getBlobId(), 4)).andReturn(channel);
+    replay(storage, parallelStorage);
+    blob = new Blob(parallelStorage, new BlobInfo.BuilderImpl(BLOB_INFO));
+    assertSame(channel, blob.parallelReader(4));
+    verify(parallelStorage);
+  }
+
   @Test
   public void testReaderWithDecryptionKey() throws Exception {
     initializeExpectedBlob(2);
@@ -27,17 +27,20 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.cloud.RestorableState;
 import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.spi.v1.ByteBufferStorageRpc;
 import com.google.cloud.storage.spi.v1.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpcFactory;
 import com.google.common.collect.ImmutableMap;
 
 import org.easymock.Capture;
 import org.easymock.CaptureType;
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -50,6 +53,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 public class BlobWriteChannelTest {
 
@@ -68,14 +72,17 @@ public class BlobWriteChannelTest {
 
   private StorageOptions options;
   private StorageRpcFactory rpcFactoryMock;
-  private StorageRpc storageRpcMock;
+  private ByteBufferRpc storageRpcMock;
   private BlobWriteChannel writer;
 
+  private interface ByteBufferRpc extends StorageRpc, ByteBufferStorageRpc {}
+
   @Before
   public void setUp() {
     rpcFactoryMock = createMock(StorageRpcFactory.class);
-    storageRpcMock = createMock(StorageRpc.class);
-    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock);
+    storageRpcMock = createMock(ByteBufferRpc.class);
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock)
+        .anyTimes();
     replay(rpcFactoryMock);
     options = StorageOptions.newBuilder()
         .setProjectId("projectid")
@@ -137,6 +144,45 @@ public class BlobWriteChannelTest {
     assertArrayEquals(buffer.array(), capturedBuffer.getValue());
   }
 
+  @Test
+  public void testWriteDirectBufferWithFlush() throws IOException {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    Capture<ByteBuffer> capturedBuffer = Capture.newInstance();
+    storageRpcMock.write(eq(UPLOAD_ID), capture(capturedBuffer), eq(0L), eq(false));
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS);
+    writer.setChunkSize(CUSTOM_CHUNK_SIZE);
+    ByteBuffer content = randomBuffer(CUSTOM_CHUNK_SIZE);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(CUSTOM_CHUNK_SIZE);
+    buffer.put(content.duplicate()).flip();
+    assertEquals(CUSTOM_CHUNK_SIZE, writer.write(buffer));
+    assertEquals(content, capturedBuffer.getValue());
+  }
+
+  @Test
+  public void testWriteDirectBufferWithoutByteBufferRpc() throws IOException {
+    replay(storageRpcMock);
+    StorageRpcFactory arrayRpcFactoryMock = createMock(StorageRpcFactory.class);
+    StorageRpc arrayRpcMock = createMock(StorageRpc.class);
+    expect(arrayRpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(arrayRpcMock);
+    expect(arrayRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    Capture<byte[]> capturedBuffer = Capture.newInstance();
+    arrayRpcMock.write(eq(UPLOAD_ID), capture(capturedBuffer), eq(0), eq(0L),
+        eq(CUSTOM_CHUNK_SIZE), eq(false));
+    replay(arrayRpcFactoryMock, arrayRpcMock);
+    StorageOptions arrayOptions = options.toBuilder()
+        .setServiceRpcFactory(arrayRpcFactoryMock)
+        .build();
+    writer = new BlobWriteChannel(arrayOptions, BLOB_INFO, EMPTY_RPC_OPTIONS);
+    writer.setChunkSize(CUSTOM_CHUNK_SIZE);
+    ByteBuffer content = randomBuffer(CUSTOM_CHUNK_SIZE);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(CUSTOM_CHUNK_SIZE);
+    buffer.put(content.duplicate()).flip();
+    assertEquals(CUSTOM_CHUNK_SIZE, writer.write(buffer));
+    assertArrayEquals(content.array(), capturedBuffer.getValue());
+    verify(arrayRpcFactoryMock, arrayRpcMock);
+  }
+
   @Test
   public void testWritesAndFlush() throws IOException {
     expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
@@ -150,6 +196,8 @@ public class BlobWriteChannelTest {
       buffers[i] = randomBuffer(MIN_CHUNK_SIZE);
       assertEquals(MIN_CHUNK_SIZE, writer.write(buffers[i]));
     }
+    // waits for the chunk upload running in the background
+    writer.capture();
     for (int i = 0; i < buffers.length; i++) {
       assertArrayEquals(
           buffers[i].array(),
@@ -158,6 +206,94 @@ public class BlobWriteChannelTest {
     }
   }
 
+  @Test
+  public void testWriteWhileChunkInFlight() throws Exception {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    final CountDownLatch uploadStarted = new CountDownLatch(1);
+    final CountDownLatch releaseUpload = new CountDownLatch(1);
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0), eq(0L),
+        eq(DEFAULT_CHUNK_SIZE), eq(false));
+    expectLastCall().andAnswer(new IAnswer<Void>() {
+      @Override
+      public Void answer() throws InterruptedException {
+        uploadStarted.countDown();
+        releaseUpload.await();
+        return null;
+      }
+    });
+    Capture<byte[]> capturedBuffer = Capture.newInstance();
+    storageRpcMock.write(eq(UPLOAD_ID), capture(capturedBuffer), eq(0),
+        eq((long) DEFAULT_CHUNK_SIZE), eq(MIN_CHUNK_SIZE), eq(true));
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS);
+    for (int i = 0; i < DEFAULT_CHUNK_SIZE / MIN_CHUNK_SIZE; i++) {
+      assertEquals(MIN_CHUNK_SIZE, writer.write(randomBuffer(MIN_CHUNK_SIZE)));
+    }
+    uploadStarted.await();
+    ByteBuffer buffer = randomBuffer(MIN_CHUNK_SIZE);
+    assertEquals(MIN_CHUNK_SIZE, writer.write(buffer));
+    releaseUpload.countDown();
+    writer.close();
+    assertArrayEquals(buffer.array(), Arrays.copyOf(capturedBuffer.getValue(), MIN_CHUNK_SIZE));
+    assertFalse(writer.isOpen());
+  }
+
+  @Test
+  public void testChunkUploadErrorIsThrownOnClose() throws IOException {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0), eq(0L),
+        eq(DEFAULT_CHUNK_SIZE), eq(false));
+    expectLastCall().andThrow(new StorageException(400, "Bad request"));
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS);
+    for (int i = 0; i < DEFAULT_CHUNK_SIZE / MIN_CHUNK_SIZE; i++) {
+      assertEquals(MIN_CHUNK_SIZE, writer.write(randomBuffer(MIN_CHUNK_SIZE)));
+    }
+    try {
+      writer.close();
+      fail("Expected BlobWriteChannel close to throw StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.getCode());
+    }
+    assertFalse(writer.isOpen());
+    // closing again has no effect
+    writer.close();
+  }
+
+  @Test
+  public void testChunkUploadErrorIsSticky() throws IOException {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0), eq(0L),
+        eq(DEFAULT_CHUNK_SIZE), eq(false));
+    expectLastCall().andThrow(new StorageException(400, "Bad request"));
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS);
+    for (int i = 0; i < DEFAULT_CHUNK_SIZE / MIN_CHUNK_SIZE; i++) {
+      assertEquals(MIN_CHUNK_SIZE, writer.write(randomBuffer(MIN_CHUNK_SIZE)));
+    }
+    try {
+      writer.capture();
+      fail("Expected BlobWriteChannel capture to throw StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.getCode());
+    }
+    try {
+      writer.write(randomBuffer(DEFAULT_CHUNK_SIZE));
+      fail("Expected BlobWriteChannel write to throw StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.getCode());
+    }
+    try {
+      writer.close();
+      fail("Expected BlobWriteChannel close to throw StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.getCode());
+    }
+    assertFalse(writer.isOpen());
+    // closing again has no effect
+    writer.close();
+  }
+
   @Test
   public void testCloseWithoutFlush() throws IOException {
     expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
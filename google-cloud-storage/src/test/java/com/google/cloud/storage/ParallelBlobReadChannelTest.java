@@ -0,0 +1,348 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.common.collect.ImmutableMap;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class ParallelBlobReadChannelTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final String BLOB_NAME = "n";
+  private static final long GENERATION = 42L;
+  private static final BlobId BLOB_ID = BlobId.of(BUCKET_NAME, BLOB_NAME);
+  private static final BlobId PINNED_BLOB_ID = BlobId.of(BUCKET_NAME, BLOB_NAME, GENERATION);
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final int CHUNK_SIZE = 1024;
+  private static final int PARALLELISM = 2;
+  private static final Random RANDOM = new Random();
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+  private ParallelBlobReadChannel reader;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = createMock(StorageRpcFactory.class);
+    storageRpcMock = createMock(StorageRpc.class);
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock);
+    replay(rpcFactoryMock);
+    options = StorageOptions.newBuilder()
+        .setProjectId("projectId")
+        .setServiceRpcFactory(rpcFactoryMock)
+        .setRetrySettings(ServiceOptions.getNoRetrySettings())
+        .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (reader != null) {
+      reader.close();
+    }
+    verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testCreate() {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    assertTrue(reader.isOpen());
+  }
+
+  @Test
+  public void testReadInOrder() throws IOException {
+    byte[] content = randomByteArray(3 * CHUNK_SIZE + 42);
+    expectMetadata(content.length);
+    expectRead(content, 0, CHUNK_SIZE);
+    expectRead(content, CHUNK_SIZE, CHUNK_SIZE);
+    expectRead(content, 2 * CHUNK_SIZE, CHUNK_SIZE);
+    expectRead(content, 3 * CHUNK_SIZE, 42);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.setChunkSize(CHUNK_SIZE);
+    assertArrayEquals(content, readFully(reader, content.length));
+    assertEquals(-1, reader.read(ByteBuffer.allocate(42)));
+  }
+
+  @Test
+  public void testReadEmptyBlob() throws IOException {
+    expectMetadata(0);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    assertEquals(-1, reader.read(ByteBuffer.allocate(42)));
+  }
+
+  @Test
+  public void testReadNotFound() throws IOException {
+    expect(storageRpcMock.get(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS)).andReturn(null);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    try {
+      reader.read(ByteBuffer.allocate(42));
+      fail("Expected ReadChannel read to throw StorageException");
+    } catch (StorageException ex) {
+      assertEquals(404, ex.getCode());
+    }
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    byte[] content = randomByteArray(2 * CHUNK_SIZE);
+    expectMetadata(content.length);
+    expectRead(content, 42, CHUNK_SIZE);
+    expectRead(content, 42 + CHUNK_SIZE, CHUNK_SIZE - 42);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.setChunkSize(CHUNK_SIZE);
+    reader.seek(42);
+    assertArrayEquals(Arrays.copyOfRange(content, 42, content.length),
+        readFully(reader, content.length - 42));
+  }
+
+  @Test
+  public void testSeekForwardKeepsPendingReads() throws IOException {
+    byte[] content = randomByteArray(3 * CHUNK_SIZE);
+    expectMetadata(content.length);
+    expectRead(content, 0, CHUNK_SIZE);
+    expectRead(content, CHUNK_SIZE, CHUNK_SIZE);
+    expectRead(content, 2 * CHUNK_SIZE, CHUNK_SIZE);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.setChunkSize(CHUNK_SIZE);
+    assertArrayEquals(Arrays.copyOf(content, 42), readFully(reader, 42));
+    reader.seek(CHUNK_SIZE + 42);
+    assertArrayEquals(Arrays.copyOfRange(content, CHUNK_SIZE + 42, content.length),
+        readFully(reader, 2 * CHUNK_SIZE - 42));
+  }
+
+  @Test
+  public void testInterruptedReadIsResumed() throws Exception {
+    byte[] content = randomByteArray(3 * CHUNK_SIZE);
+    final CountDownLatch readStarted = new CountDownLatch(1);
+    expectMetadata(content.length);
+    expectRead(content, 0, CHUNK_SIZE);
+    expect(storageRpcMock.read(PINNED_BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, CHUNK_SIZE, CHUNK_SIZE))
+        .andAnswer(new IAnswer<StorageRpc.Tuple<String, byte[]>>() {
+          @Override
+          public StorageRpc.Tuple<String, byte[]> answer() throws InterruptedException {
+            readStarted.countDown();
+            // blocks until the read is cancelled
+            new CountDownLatch(1).await(10, TimeUnit.SECONDS);
+            throw new AssertionError("Read was not cancelled");
+          }
+        });
+    expectRead(content, CHUNK_SIZE, CHUNK_SIZE);
+    // the read in flight after the interrupted one is issued again
+    expectRead(content, 2 * CHUNK_SIZE, CHUNK_SIZE);
+    expectLastCall().times(1, 2);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.setChunkSize(CHUNK_SIZE);
+    assertArrayEquals(Arrays.copyOf(content, CHUNK_SIZE), readFully(reader, CHUNK_SIZE));
+    assertTrue(readStarted.await(10, TimeUnit.SECONDS));
+    Thread.currentThread().interrupt();
+    try {
+      reader.read(ByteBuffer.allocate(CHUNK_SIZE));
+      fail("Expected ReadChannel read to throw InterruptedIOException");
+    } catch (InterruptedIOException ex) {
+      assertTrue(Thread.interrupted());
+    }
+    assertArrayEquals(Arrays.copyOfRange(content, CHUNK_SIZE, content.length),
+        readFully(reader, 2 * CHUNK_SIZE));
+  }
+
+  @Test
+  public void testShortReadIsResumed() throws IOException {
+    byte[] content = randomByteArray(3 * CHUNK_SIZE);
+    expectMetadata(content.length);
+    expect(storageRpcMock.read(PINNED_BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, CHUNK_SIZE))
+        .andReturn(StorageRpc.Tuple.of("etag", Arrays.copyOf(content, 42)));
+    // the read in flight after the short one may or may not be issued before it is discarded
+    expectRead(content, CHUNK_SIZE, CHUNK_SIZE);
+    expectLastCall().times(0, 1);
+    expectRead(content, 42, CHUNK_SIZE);
+    expectRead(content, 42 + CHUNK_SIZE, CHUNK_SIZE);
+    expectRead(content, 42 + 2 * CHUNK_SIZE, CHUNK_SIZE - 42);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.setChunkSize(CHUNK_SIZE);
+    assertArrayEquals(content, readFully(reader, content.length));
+    assertEquals(-1, reader.read(ByteBuffer.allocate(42)));
+  }
+
+  @Test
+  public void testSharedExecutorIsNotShutDown() throws IOException {
+    byte[] content = randomByteArray(CHUNK_SIZE);
+    expectMetadata(content.length);
+    expectRead(content, 0, CHUNK_SIZE);
+    replay(storageRpcMock);
+    ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+    try {
+      reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM,
+          executor, null);
+      reader.setChunkSize(CHUNK_SIZE);
+      assertArrayEquals(content, readFully(reader, content.length));
+      reader.close();
+      assertFalse(executor.isShutdown());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSharedSlotsLimitReadAhead() throws IOException {
+    byte[] content = randomByteArray(3 * CHUNK_SIZE);
+    expectMetadata(content.length);
+    expectRead(content, 0, CHUNK_SIZE);
+    expectRead(content, CHUNK_SIZE, CHUNK_SIZE);
+    expectRead(content, 2 * CHUNK_SIZE, CHUNK_SIZE);
+    replay(storageRpcMock);
+    Semaphore sharedSlots = new Semaphore(1);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM, null,
+        sharedSlots);
+    reader.setChunkSize(CHUNK_SIZE);
+    assertArrayEquals(Arrays.copyOf(content, 42), readFully(reader, 42));
+    assertEquals(0, sharedSlots.availablePermits());
+    assertArrayEquals(Arrays.copyOfRange(content, 42, content.length),
+        readFully(reader, content.length - 42));
+    assertEquals(1, sharedSlots.availablePermits());
+  }
+
+  @Test
+  public void testClose() {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    assertTrue(reader.isOpen());
+    reader.close();
+    assertFalse(reader.isOpen());
+  }
+
+  @Test
+  public void testReadClosed() throws IOException {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.close();
+    try {
+      reader.read(ByteBuffer.allocate(42));
+      fail("Expected ParallelBlobReadChannel read to throw ClosedChannelException");
+    } catch (ClosedChannelException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSaveAndRestore() throws IOException {
+    byte[] content = randomByteArray(CHUNK_SIZE);
+    expectMetadata(content.length);
+    expectRead(content, 0, CHUNK_SIZE);
+    expect(storageRpcMock.get(PINNED_BLOB_ID.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(PINNED_BLOB_ID.toPb().setSize(BigInteger.valueOf(content.length)));
+    expect(storageRpcMock.read(PINNED_BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 42, CHUNK_SIZE - 42))
+        .andReturn(StorageRpc.Tuple.of("etag",
+            Arrays.copyOfRange(content, 42, CHUNK_SIZE)));
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.setChunkSize(CHUNK_SIZE);
+    ByteBuffer firstReadBuffer = ByteBuffer.allocate(42);
+    reader.read(firstReadBuffer);
+    RestorableState<ReadChannel> readerState = reader.capture();
+    ReadChannel restoredReader = readerState.restore();
+    ByteBuffer secondReadBuffer = ByteBuffer.allocate(CHUNK_SIZE - 42);
+    restoredReader.read(secondReadBuffer);
+    restoredReader.close();
+    assertArrayEquals(Arrays.copyOf(content, 42), firstReadBuffer.array());
+    assertArrayEquals(Arrays.copyOfRange(content, 42, CHUNK_SIZE), secondReadBuffer.array());
+  }
+
+  @Test
+  public void testStateEquals() {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    @SuppressWarnings("resource")
+    ReadChannel secondReader =
+        new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    RestorableState<ReadChannel> state = reader.capture();
+    RestorableState<ReadChannel> secondState = secondReader.capture();
+    assertEquals(state, secondState);
+    assertEquals(state.hashCode(), secondState.hashCode());
+    assertEquals(state.toString(), secondState.toString());
+  }
+
+  private void expectMetadata(long size) {
+    StorageObject metadata = BLOB_ID.toPb()
+        .setGeneration(GENERATION)
+        .setSize(BigInteger.valueOf(size));
+    expect(storageRpcMock.get(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS)).andReturn(metadata);
+  }
+
+  private void expectRead(byte[] content, int position, int length) {
+    expect(storageRpcMock.read(PINNED_BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, position, length))
+        .andReturn(StorageRpc.Tuple.of("etag",
+            Arrays.copyOfRange(content, position, position + length)));
+  }
+
+  private static byte[] readFully(ReadChannel channel, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+      // keep reading
+    }
+    return buffer.array();
+  }
+
+  private static byte[] randomByteArray(int size) {
+    byte[] byteArray = new byte[size];
+    RANDOM.nextBytes(byteArray);
+    return byteArray;
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelCompositeWriteChannelTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final String BLOB_NAME = "n";
+  private static final BlobInfo BLOB_INFO = BlobInfo.newBuilder(BUCKET_NAME, BLOB_NAME).build();
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final Map<StorageRpc.Option, ?> TARGET_RPC_OPTIONS = ImmutableMap.of(
+      StorageRpc.Option.PREDEFINED_ACL, "private", StorageRpc.Option.IF_GENERATION_MATCH, 0L);
+  private static final int MIN_CHUNK_SIZE = 256 * 1024;
+  private static final Random RANDOM = new Random();
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+  private Map<String, byte[]> uploadedParts;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = createMock(StorageRpcFactory.class);
+    storageRpcMock = createMock(StorageRpc.class);
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock)
+        .anyTimes();
+    replay(rpcFactoryMock);
+    options = StorageOptions.newBuilder()
+        .setProjectId("projectid")
+        .setServiceRpcFactory(rpcFactoryMock)
+        .setRetrySettings(ServiceOptions.getNoRetrySettings())
+        .build();
+    uploadedParts = new ConcurrentHashMap<>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testCreate() {
+    replay(storageRpcMock);
+    ParallelCompositeWriteChannel writer =
+        new ParallelCompositeWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS, 2);
+    assertTrue(writer.isOpen());
+  }
+
+  @Test
+  public void testCreateWithEncryptionKeyFails() {
+    replay(storageRpcMock);
+    try {
+      new ParallelCompositeWriteChannel(options, BLOB_INFO,
+          ImmutableMap.of(StorageRpc.Option.CUSTOMER_SUPPLIED_KEY, "key"), 2);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCreateWithGenerationNotMatchFails() {
+    replay(storageRpcMock);
+    try {
+      new ParallelCompositeWriteChannel(options, BLOB_INFO,
+          ImmutableMap.of(StorageRpc.Option.IF_GENERATION_NOT_MATCH, 42L), 2);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCreateWithMetagenerationNotMatchFails() {
+    replay(storageRpcMock);
+    try {
+      new ParallelCompositeWriteChannel(options, BLOB_INFO,
+          ImmutableMap.of(StorageRpc.Option.IF_METAGENERATION_NOT_MATCH, 42L), 2);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testTargetOptionsAreAppliedToDirectUpload() throws IOException {
+    byte[] content = randomByteArray(42);
+    expect(storageRpcMock.create(eq(BLOB_INFO.toPb()), anyObject(InputStream.class),
+        eq(TARGET_RPC_OPTIONS))).andAnswer(new UploadAnswer());
+    replay(storageRpcMock);
+    ParallelCompositeWriteChannel writer =
+        new ParallelCompositeWriteChannel(options, BLOB_INFO, TARGET_RPC_OPTIONS, 2);
+    writer.write(ByteBuffer.wrap(content));
+    writer.close();
+    assertArrayEquals(content, uploadedParts.get(BLOB_NAME));
+  }
+
+  @Test
+  public void testTargetOptionsAreAppliedToCompose() throws IOException {
+    expect(storageRpcMock.create(anyObject(StorageObject.class), anyObject(InputStream.class),
+        eq(EMPTY_RPC_OPTIONS))).andAnswer(new UploadAnswer()).times(2);
+    expect(storageRpcMock.compose(EasyMock.<Iterable<StorageObject>>anyObject(),
+        eq(BLOB_INFO.toPb()), eq(TARGET_RPC_OPTIONS))).andReturn(BLOB_INFO.toPb());
+    expect(storageRpcMock.delete(anyObject(StorageObject.class), eq(EMPTY_RPC_OPTIONS)))
+        .andReturn(true).times(2);
+    replay(storageRpcMock);
+    ParallelCompositeWriteChannel writer =
+        new ParallelCompositeWriteChannel(options, BLOB_INFO, TARGET_RPC_OPTIONS, 2);
+    writer.setChunkSize(MIN_CHUNK_SIZE);
+    writer.write(ByteBuffer.wrap(randomByteArray(MIN_CHUNK_SIZE + 42)));
+    writer.close();
+    assertFalse(writer.isOpen());
+  }
+
+  @Test
+  public void testSmallBlobIsUploadedDirectly() throws IOException {
+    byte[] content = randomByteArray(42);
+    expect(storageRpcMock.create(eq(BLOB_INFO.toPb()), anyObject(InputStream.class),
+        eq(EMPTY_RPC_OPTIONS))).andAnswer(new UploadAnswer());
+    replay(storageRpcMock);
+    ParallelCompositeWriteChannel writer =
+        new ParallelCompositeWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS, 2);
+    writer.write(ByteBuffer.wrap(content));
+    writer.close();
+    assertFalse(writer.isOpen());
+    assertArrayEquals(content, uploadedParts.get(BLOB_NAME));
+  }
+
+  @Test
+  public void testPartsAreComposedInOrder() throws IOException {
+    byte[] content = randomByteArray(2 * MIN_CHUNK_SIZE + 42);
+    Capture<Iterable<StorageObject>> sources = Capture.newInstance();
+    expect(storageRpcMock.create(anyObject(StorageObject.class), anyObject(InputStream.class),
+        eq(EMPTY_RPC_OPTIONS))).andAnswer(new UploadAnswer()).times(3);
+    expect(storageRpcMock.compose(capture(sources), eq(BLOB_INFO.toPb()), eq(EMPTY_RPC_OPTIONS)))
+        .andReturn(BLOB_INFO.toPb());
+    expect(storageRpcMock.delete(anyObject(StorageObject.class), eq(EMPTY_RPC_OPTIONS)))
+        .andReturn(true).times(3);
+    replay(storageRpcMock);
+    ParallelCompositeWriteChannel writer =
+        new ParallelCompositeWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS, 2);
+    writer.setChunkSize(MIN_CHUNK_SIZE);
+    writer.write(ByteBuffer.wrap(content));
+    writer.close();
+    ByteArrayOutputStream composed = new ByteArrayOutputStream();
+    for (StorageObject source : sources.getValue()) {
+      assertEquals(Long.valueOf(1L), source.getGeneration());
+      composed.write(uploadedParts.get(source.getName()));
+    }
+    assertArrayEquals(content, composed.toByteArray());
+  }
+
+  @Test
+  public void testManyPartsAreComposedRecursively() throws IOException {
+    int numParts = ParallelCompositeWriteChannel.MAX_COMPOSE_SOURCES + 1;
+    final AtomicInteger composeCalls = new AtomicInteger();
+    expect(storageRpcMock.create(anyObject(StorageObject.class), anyObject(InputStream.class),
+        eq(EMPTY_RPC_OPTIONS))).andAnswer(new UploadAnswer()).times(numParts);
+    expect(storageRpcMock.compose(EasyMock.<Iterable<StorageObject>>anyObject(),
+        anyObject(StorageObject.class), eq(EMPTY_RPC_OPTIONS)))
+        .andAnswer(new IAnswer<StorageObject>() {
+          @Override
+          public StorageObject answer() {
+            composeCalls.incrementAndGet();
+            return ((StorageObject) getCurrentArguments()[1]).clone().setGeneration(1L);
+          }
+        }).times(3);
+    expect(storageRpcMock.delete(anyObject(StorageObject.class), eq(EMPTY_RPC_OPTIONS)))
+        .andReturn(true).times(numParts + 2);
+    replay(storageRpcMock);
+    ParallelCompositeWriteChannel writer =
+        new ParallelCompositeWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS, 4);
+    writer.setChunkSize(MIN_CHUNK_SIZE);
+    writer.write(ByteBuffer.wrap(randomByteArray(numParts * MIN_CHUNK_SIZE)));
+    writer.close();
+    assertEquals(3, composeCalls.get());
+  }
+
+  @Test
+  public void testFailedPartDeletesTemporaries() throws IOException {
+    expect(storageRpcMock.create(anyObject(StorageObject.class), anyObject(InputStream.class),
+        eq(EMPTY_RPC_OPTIONS))).andAnswer(new UploadAnswer());
+    expect(storageRpcMock.create(anyObject(StorageObject.class), anyObject(InputStream.class),
+        eq(EMPTY_RPC_OPTIONS))).andThrow(new StorageException(400, "boom"));
+    expect(storageRpcMock.delete(anyObject(StorageObject.class), eq(EMPTY_RPC_OPTIONS)))
+        .andReturn(true).times(2);
+    replay(storageRpcMock);
+    ParallelCompositeWriteChannel writer =
+        new ParallelCompositeWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS, 1);
+    writer.setChunkSize(MIN_CHUNK_SIZE);
+    writer.write(ByteBuffer.wrap(randomByteArray(2 * MIN_CHUNK_SIZE)));
+    try {
+      writer.close();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals("boom", ex.getMessage());
+    }
+    assertFalse(writer.isOpen());
+  }
+
+  private class UploadAnswer implements IAnswer<StorageObject> {
+
+    @Override
+    public StorageObject answer() throws IOException {
+      StorageObject object = (StorageObject) getCurrentArguments()[0];
+      InputStream content = (InputStream) getCurrentArguments()[1];
+      uploadedParts.put(object.getName(), ByteStreams.toByteArray(content));
+      return object.clone().setGeneration(1L);
+    }
+  }
+
+  private static byte[] randomByteArray(int size) {
+    byte[] byteArray = new byte[size];
+    RANDOM.nextBytes(byteArray);
+    return byteArray;
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.Storage.CopyRequest;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+import com.google.cloud.storage.spi.v1.StorageRpc.RewriteRequest;
+import com.google.cloud.storage.spi.v1.StorageRpc.RewriteResponse;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class StorageBulkCopierTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final BlobId SOURCE = BlobId.of(BUCKET_NAME, "source");
+  private static final BlobId TARGET = BlobId.of(BUCKET_NAME, "target");
+  private static final long GENERATION = 42L;
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final RewriteRequest REWRITE_REQUEST = new RewriteRequest(SOURCE.toPb(),
+      EMPTY_RPC_OPTIONS, false, BlobInfo.newBuilder(TARGET).build().toPb(), EMPTY_RPC_OPTIONS,
+      null);
+  private static final int RANGE_SIZE = 1024;
+  private static final Random RANDOM = new Random();
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+  private List<Long> progress;
+
+  private final StorageBulkCopier.ProgressListener listener =
+      new StorageBulkCopier.ProgressListener() {
+        @Override
+        public void onProgress(CopyRequest request, long bytesCopied, long blobSize) {
+          assertEquals(SOURCE, request.getSource());
+          progress.add(bytesCopied);
+          progress.add(blobSize);
+        }
+      };
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = EasyMock.createMock(StorageRpcFactory.class);
+    storageRpcMock = EasyMock.createMock(StorageRpc.class);
+    EasyMock.expect(rpcFactoryMock.create(EasyMock.anyObject(StorageOptions.class)))
+        .andReturn(storageRpcMock).anyTimes();
+    EasyMock.replay(rpcFactoryMock);
+    options = StorageOptions.newBuilder()
+        .setProjectId("projectid")
+        .setServiceRpcFactory(rpcFactoryMock)
+        .setRetrySettings(ServiceOptions.getNoRetrySettings())
+        .build();
+    progress = Collections.synchronizedList(new ArrayList<Long>());
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testCopyReportsProgress() {
+    RewriteResponse first =
+        new RewriteResponse(REWRITE_REQUEST, null, 42L, false, "token", 21L);
+    RewriteResponse second =
+        new RewriteResponse(REWRITE_REQUEST, TARGET.toPb(), 42L, true, "token", 42L);
+    EasyMock.expect(storageRpcMock.openRewrite(REWRITE_REQUEST)).andReturn(first);
+    EasyMock.expect(storageRpcMock.continueRewrite(first)).andReturn(second);
+    EasyMock.replay(storageRpcMock);
+    StorageBulkCopier copier = new StorageBulkCopier(options, 2);
+    StorageBatchResult<Blob> result = copier.copy(CopyRequest.of(SOURCE, TARGET), listener);
+    copier.close();
+    assertEquals(TARGET.getName(), result.get().getName());
+    assertEquals(Arrays.asList(21L, 42L, 42L, 42L), progress);
+  }
+
+  @Test
+  public void testCopyError() {
+    EasyMock.expect(storageRpcMock.openRewrite(REWRITE_REQUEST))
+        .andThrow(new StorageException(403, "Forbidden"));
+    EasyMock.replay(storageRpcMock);
+    StorageBulkCopier copier = new StorageBulkCopier(options, 1);
+    StorageBatchResult<Blob> result = copier.copy(CopyRequest.of(SOURCE, TARGET));
+    copier.close();
+    try {
+      result.get();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(403, ex.getCode());
+    }
+  }
+
+  @Test
+  public void testRangedCopy() {
+    final byte[] content = new byte[2 * RANGE_SIZE + 42];
+    RANDOM.nextBytes(content);
+    BlobId pinnedSource = BlobId.of(BUCKET_NAME, SOURCE.getName(), GENERATION);
+    StorageObject metadata = pinnedSource.toPb().setSize(BigInteger.valueOf(content.length));
+    EasyMock.expect(storageRpcMock.get(SOURCE.toPb(), EMPTY_RPC_OPTIONS)).andReturn(metadata);
+    EasyMock.expect(storageRpcMock.get(pinnedSource.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(metadata);
+    for (int position = 0; position < content.length; position += RANGE_SIZE) {
+      int length = Math.min(RANGE_SIZE, content.length - position);
+      EasyMock.expect(
+          storageRpcMock.read(pinnedSource.toPb(), EMPTY_RPC_OPTIONS, position, length))
+          .andReturn(StorageRpc.Tuple.of("etag",
+              Arrays.copyOfRange(content, position, position + length)));
+    }
+    // the blob is smaller than a part of the composite upload, so it is created directly
+    EasyMock.expect(storageRpcMock.create(EasyMock.anyObject(StorageObject.class),
+        EasyMock.anyObject(InputStream.class), EasyMock.eq(EMPTY_RPC_OPTIONS)))
+        .andAnswer(new IAnswer<StorageObject>() {
+          @Override
+          public StorageObject answer() throws Throwable {
+            StorageObject target = (StorageObject) EasyMock.getCurrentArguments()[0];
+            assertEquals(TARGET.getName(), target.getName());
+            InputStream stream = (InputStream) EasyMock.getCurrentArguments()[1];
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+            return target;
+          }
+        });
+    EasyMock.expect(storageRpcMock.get(TARGET.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn(TARGET.toPb().setSize(BigInteger.valueOf(content.length)));
+    EasyMock.replay(storageRpcMock);
+    StorageBulkCopier copier = new StorageBulkCopier(options, 2, RANGE_SIZE);
+    StorageBatchResult<Blob> result =
+        copier.rangedCopy(CopyRequest.of(SOURCE, TARGET), listener);
+    copier.close();
+    assertEquals(content.length, (long) result.get().getSize());
+    int last = progress.size();
+    assertEquals(Arrays.asList((long) content.length, (long) content.length),
+        progress.subList(last - 2, last));
+  }
+
+  @Test
+  public void testRangedCopySourceNotFound() {
+    EasyMock.expect(storageRpcMock.get(SOURCE.toPb(), EMPTY_RPC_OPTIONS)).andReturn(null);
+    EasyMock.replay(storageRpcMock);
+    StorageBulkCopier copier = new StorageBulkCopier(options, 1);
+    StorageBatchResult<Blob> result = copier.rangedCopy(CopyRequest.of(SOURCE, TARGET));
+    copier.close();
+    try {
+      result.get();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(404, ex.getCode());
+    }
+  }
+
+  @Test
+  public void testCloseTwice() {
+    EasyMock.replay(storageRpcMock);
+    StorageBulkCopier copier = new StorageBulkCopier(options, 1);
+    copier.close();
+    copier.close();
+    try {
+      copier.copy(CopyRequest.of(SOURCE, TARGET));
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.gax.core.RetrySettings;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.BatchResult;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.cloud.storage.spi.v1.RpcBatch;
+import com.google.cloud.storage.spi.v1.StorageRpc;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class StorageBulkExecutorTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final RetrySettings RETRY_SETTINGS = RetrySettings.newBuilder()
+      .setMaxAttempts(3)
+      .setInitialRetryDelay(Duration.millis(1L))
+      .setMaxRetryDelay(Duration.millis(1L))
+      .setRetryDelayMultiplier(1.0)
+      .setTotalTimeout(Duration.millis(10_000L))
+      .setInitialRpcTimeout(Duration.millis(10_000L))
+      .setRpcTimeoutMultiplier(1.0)
+      .setMaxRpcTimeout(Duration.millis(10_000L))
+      .build();
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+  private List<Integer> batchSizes;
+  private Map<String, Integer> errors;
+
+  /**
+   * A batch that succeeds all requests, except for the blobs in {@code errors} that fail once
+   * with the associated error code.
+   */
+  private class FakeRpcBatch implements RpcBatch {
+
+    private final List<StorageObject> objects = new ArrayList<>();
+    private final List<Object> responses = new ArrayList<>();
+    private final List<Callback<?>> callbacks = new ArrayList<>();
+
+    @Override
+    public void addDelete(StorageObject storageObject, Callback<Void> callback,
+        Map<StorageRpc.Option, ?> options) {
+      objects.add(storageObject);
+      responses.add(null);
+      callbacks.add(callback);
+    }
+
+    @Override
+    public void addPatch(StorageObject storageObject, Callback<StorageObject> callback,
+        Map<StorageRpc.Option, ?> options) {
+      objects.add(storageObject);
+      responses.add(storageObject);
+      callbacks.add(callback);
+    }
+
+    @Override
+    public void addGet(StorageObject storageObject, Callback<StorageObject> callback,
+        Map<StorageRpc.Option, ?> options) {
+      objects.add(storageObject);
+      responses.add(storageObject);
+      callbacks.add(callback);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void submit() {
+      batchSizes.add(objects.size());
+      for (int i = 0; i < objects.size(); i++) {
+        Callback<Object> callback = (Callback<Object>) callbacks.get(i);
+        Integer code = errors.remove(objects.get(i).getName());
+        if (code != null) {
+          GoogleJsonError error = new GoogleJsonError();
+          error.setCode(code);
+          callback.onFailure(error);
+        } else {
+          callback.onSuccess(responses.get(i));
+        }
+      }
+    }
+  }
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = EasyMock.createMock(StorageRpcFactory.class);
+    storageRpcMock = EasyMock.createMock(StorageRpc.class);
+    EasyMock.expect(rpcFactoryMock.create(EasyMock.anyObject(StorageOptions.class)))
+        .andReturn(storageRpcMock);
+    EasyMock.expect(storageRpcMock.createBatch()).andAnswer(new IAnswer<RpcBatch>() {
+      @Override
+      public RpcBatch answer() {
+        return new FakeRpcBatch();
+      }
+    }).anyTimes();
+    EasyMock.replay(rpcFactoryMock, storageRpcMock);
+    options = StorageOptions.newBuilder()
+        .setProjectId("projectid")
+        .setServiceRpcFactory(rpcFactoryMock)
+        .setRetrySettings(RETRY_SETTINGS)
+        .build();
+    batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    errors = new ConcurrentHashMap<>();
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testOperationsAreSplitIntoBatches() {
+    List<StorageBatchResult<Boolean>> results = new ArrayList<>();
+    StorageBulkExecutor executor = new StorageBulkExecutor(options, 2);
+    for (int i = 0; i < 250; i++) {
+      results.add(executor.delete(BlobId.of(BUCKET_NAME, "blob" + i)));
+    }
+    executor.close();
+    for (StorageBatchResult<Boolean> result : results) {
+      assertTrue(result.get());
+    }
+    List<Integer> sortedSizes = new ArrayList<>(batchSizes);
+    Collections.sort(sortedSizes);
+    assertEquals(
+        Arrays.asList(50, StorageBulkExecutor.MAX_BATCH_SIZE,
+            StorageBulkExecutor.MAX_BATCH_SIZE),
+        sortedSizes);
+    StorageBulkExecutor.Stats stats = executor.getStats();
+    assertEquals(250, stats.getOperationCount());
+    assertEquals(250, stats.getCompletedCount());
+    assertEquals(0, stats.getRetryCount());
+    assertEquals(3, stats.getBatchCount());
+  }
+
+  @Test
+  public void testRetryableErrorsAreRetried() {
+    errors.put("blob1", 503);
+    StorageBulkExecutor executor = new StorageBulkExecutor(options, 1);
+    StorageBatchResult<Boolean> first = executor.delete(BlobId.of(BUCKET_NAME, "blob0"));
+    StorageBatchResult<Blob> second =
+        executor.update(BlobInfo.newBuilder(BUCKET_NAME, "blob1").setContentType("text").build());
+    executor.flush();
+    assertTrue(first.get());
+    assertEquals("text", second.get().getContentType());
+    assertEquals(Arrays.asList(2, 1), batchSizes);
+    StorageBulkExecutor.Stats stats = executor.getStats();
+    assertEquals(2, stats.getCompletedCount());
+    assertEquals(1, stats.getRetryCount());
+    assertEquals(2, stats.getBatchCount());
+    executor.close();
+  }
+
+  @Test
+  public void testNonRetryableErrorsAreReported() {
+    errors.put("blob0", 403);
+    errors.put("blob1", 404);
+    StorageBulkExecutor executor = new StorageBulkExecutor(options, 1);
+    StorageBatchResult<Boolean> deleteResult = executor.delete(BlobId.of(BUCKET_NAME, "blob0"));
+    StorageBatchResult<Blob> getResult = executor.get(BlobId.of(BUCKET_NAME, "blob1"));
+    executor.close();
+    try {
+      deleteResult.get();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(403, ex.getCode());
+    }
+    assertNull(getResult.get());
+    assertEquals(Arrays.asList(2), batchSizes);
+    assertEquals(0, executor.getStats().getRetryCount());
+  }
+
+  @Test
+  public void testThrowingCallbackDoesNotAbortBatch() {
+    StorageBulkExecutor executor = new StorageBulkExecutor(options, 1);
+    StorageBatchResult<Boolean> first = executor.delete(BlobId.of(BUCKET_NAME, "blob0"));
+    first.notify(new BatchResult.Callback<Boolean, StorageException>() {
+      @Override
+      public void success(Boolean result) {
+        throw new IllegalStateException("callback failure");
+      }
+
+      @Override
+      public void error(StorageException exception) {
+        // not expected
+      }
+    });
+    StorageBatchResult<Boolean> second = executor.delete(BlobId.of(BUCKET_NAME, "blob1"));
+    executor.close();
+    assertTrue(first.get());
+    assertTrue(second.get());
+    assertEquals(Arrays.asList(2), batchSizes);
+    assertEquals(2, executor.getStats().getCompletedCount());
+  }
+
+  @Test
+  public void testCloseTwice() {
+    StorageBulkExecutor executor = new StorageBulkExecutor(options, 1);
+    executor.close();
+    executor.close();
+    try {
+      executor.delete(BlobId.of(BUCKET_NAME, "blob0"));
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+  }
+}
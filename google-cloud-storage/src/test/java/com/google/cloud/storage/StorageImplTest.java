@@ -800,6 +800,19 @@ public class StorageImplTest {
     assertArrayEquals(blobList.toArray(), Iterables.toArray(page.getValues(), Blob.class));
   }
 
+  @Test
+  public void testListAllBlobs() {
+    ImmutableList<BlobInfo> blobInfoList = ImmutableList.of(BLOB_INFO1, BLOB_INFO2);
+    Tuple<String, Iterable<com.google.api.services.storage.model.StorageObject>> result =
+        Tuple.of(null, Iterables.transform(blobInfoList, BlobInfo.INFO_TO_PB_FUNCTION));
+    EasyMock.expect(storageRpcMock.list(BUCKET_NAME1, EMPTY_RPC_OPTIONS)).andReturn(result);
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    ImmutableList<Blob> blobList = ImmutableList.of(expectedBlob1, expectedBlob2);
+    Iterable<Blob> blobs = ((ParallelStorage) storage).listAll(BUCKET_NAME1, 1);
+    assertArrayEquals(blobList.toArray(), Iterables.toArray(blobs, Blob.class));
+  }
+
   @Test
   public void testListBlobsEmpty() {
     EasyMock.expect(storageRpcMock.list(BUCKET_NAME1, EMPTY_RPC_OPTIONS))
@@ -1266,6 +1279,24 @@ public class StorageImplTest {
     assertArrayEquals(BLOB_CONTENT, readBytes);
   }
 
+  @Test
+  public void testBulkExecutor() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    StorageBulkExecutor executor = ((ParallelStorage) storage).bulkExecutor(2);
+    assertNotNull(executor);
+    executor.close();
+  }
+
+  @Test
+  public void testBulkCopier() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    StorageBulkCopier copier = ((ParallelStorage) storage).bulkCopier(2);
+    assertNotNull(copier);
+    copier.close();
+  }
+
   @Test
   public void testBatch() {
     RpcBatch batchMock = EasyMock.mock(RpcBatch.class);
@@ -1343,6 +1374,35 @@ public class StorageImplTest {
     channel.read(ByteBuffer.allocate(42));
   }
 
+  @Test
+  public void testParallelReader() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    ReadChannel channel =
+        ((ParallelStorage) storage).parallelReader(BlobId.of(BUCKET_NAME1, BLOB_NAME1), 4);
+    assertNotNull(channel);
+    assertTrue(channel.isOpen());
+    channel.close();
+  }
+
+  @Test
+  public void testParallelReaderWithKnownMetadata() throws IOException {
+    byte[] content = {0xD, 0xE, 0xA, 0xD};
+    BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(BUCKET_NAME1, BLOB_NAME1, 42L))
+        .setSize((long) content.length)
+        .build();
+    // the blob's metadata is not fetched again
+    EasyMock.expect(storageRpcMock.read(blobInfo.getBlobId().toPb(), EMPTY_RPC_OPTIONS, 0,
+        content.length)).andReturn(StorageRpc.Tuple.of("etag", content));
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    ReadChannel channel = ((ParallelStorage) storage).parallelReader(blobInfo, 4);
+    ByteBuffer buffer = ByteBuffer.allocate(content.length);
+    assertEquals(content.length, channel.read(buffer));
+    assertArrayEquals(content, buffer.array());
+    channel.close();
+  }
+
   @Test
   public void testWriter() {
     BlobInfo.Builder infoBuilder = BLOB_INFO1.toBuilder();
@@ -1357,6 +1417,33 @@ public class StorageImplTest {
     assertTrue(channel.isOpen());
   }
 
+  @Test
+  public void testParallelWriter() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    WriteChannel channel = ((ParallelStorage) storage).parallelWriter(BLOB_INFO1, 4);
+    assertNotNull(channel);
+    assertTrue(channel.isOpen());
+  }
+
+  @Test
+  public void testParallelWriterWithGenerationNotMatchFails() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    thrown.expect(IllegalArgumentException.class);
+    ((ParallelStorage) storage).parallelWriter(BLOB_INFO1, 4,
+        Storage.BlobWriteOption.generationNotMatch());
+  }
+
+  @Test
+  public void testParallelWriterWithMetagenerationNotMatchFails() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    thrown.expect(IllegalArgumentException.class);
+    ((ParallelStorage) storage).parallelWriter(BLOB_INFO1, 4,
+        Storage.BlobWriteOption.metagenerationNotMatch());
+  }
+
   @Test
   public void testWriterWithOptions() {
     BlobInfo info = BLOB_INFO1.toBuilder().setMd5(CONTENT_MD5).setCrc32c(CONTENT_CRC32C).build();